@@ -0,0 +1,90 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import java.util.ArrayList;
+import java.util.List;
+import org.tensorflow.lite.examples.detection.core.Detection;
+import org.tensorflow.lite.examples.detection.tools.ScriptedEngine;
+
+/**
+ * Classifier backed by a {@link ScriptedEngine}, so that the detection pipeline of the app can run
+ * without the TensorFlow Lite models.
+ */
+public class ScriptedClassifier implements Classifier {
+  private final ScriptedEngine engine;
+  private int[] pixels = new int[0];
+
+  public ScriptedClassifier(final ScriptedEngine engine) {
+    this.engine = engine;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final int width = bitmap.getWidth();
+    final int height = bitmap.getHeight();
+    if (pixels.length != width * height) {
+      pixels = new int[width * height];
+    }
+    bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+    return toRecognitions(engine.recognize(pixels, width, height));
+  }
+
+  @Override
+  public List<Recognition> recognizeLumaImage(final byte[] luma, final int width, final int height) {
+    return toRecognitions(engine.recognizeLuma(luma, width, height));
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImageBatch(
+      final int[] argb, final int count, final int width, final int height) {
+    final List<List<Recognition>> batch = new ArrayList<>(count);
+    for (final List<Detection> detections : engine.recognizeBatch(argb, count, width, height)) {
+      batch.add(toRecognitions(detections));
+    }
+    return batch;
+  }
+
+  private static List<Recognition> toRecognitions(final List<Detection> detections) {
+    final ArrayList<Recognition> recognitions = new ArrayList<>(detections.size());
+    for (final Detection detection : detections) {
+      recognitions.add(Recognition.fromDetection(detection));
+    }
+    return recognitions;
+  }
+
+  @Override
+  public void enableStatLogging(final boolean debug) {}
+
+  @Override
+  public String getStatString() {
+    return String.format(
+        "Scripted: %d calls, %d failures, %d stalls",
+        engine.getCalls(), engine.getFailures(), engine.getStalls());
+  }
+
+  @Override
+  public void close() {
+    engine.close();
+  }
+
+  @Override
+  public void setNumThreads(final int num_threads) {}
+
+  @Override
+  public void setUseNNAPI(final boolean isChecked) {}
+}
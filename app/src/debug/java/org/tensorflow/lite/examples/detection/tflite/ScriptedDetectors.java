@@ -0,0 +1,50 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.IOException;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.tools.ScriptedEngine;
+import org.tensorflow.lite.examples.detection.tools.ScriptedEngineFactory;
+
+/**
+ * Stand-in detectors of a scripted fixture, so that the app runs without models. The scripted
+ * engines live in detection-tools, which only debug builds link against.
+ */
+public final class ScriptedDetectors {
+  private final ScriptedEngineFactory factory;
+
+  /** Loads a fixture from a path, or the fixture bundled with the tools for {@code "default"}. */
+  public ScriptedDetectors(final String fixture) throws IOException {
+    factory = "default".equals(fixture)
+        ? new ScriptedEngineFactory()
+        : new ScriptedEngineFactory(fixture);
+  }
+
+  public InferenceEngine createBoxEngine(final PipelineConfig config) {
+    return factory.createBoxEngine(config);
+  }
+
+  public InferenceEngine createDigitEngine(final PipelineConfig config) {
+    return factory.createDigitEngine(config);
+  }
+
+  /** Wraps an engine created by this instance into a classifier. */
+  public Classifier classifier(final InferenceEngine engine) {
+    return new ScriptedClassifier((ScriptedEngine) engine);
+  }
+}
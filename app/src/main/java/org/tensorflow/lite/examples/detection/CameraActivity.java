@@ -1,259 +0,0 @@
-/*
- * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *       http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-
-package org.tensorflow.lite.examples.detection;
-
-import android.Manifest;
-import android.app.Fragment;
-import android.content.pm.PackageManager;
-import android.hardware.Camera;
-import android.os.Build;
-import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
-
-import androidx.appcompat.app.AppCompatActivity;
-
-import android.util.Size;
-import android.view.Surface;
-import android.view.View;
-import android.view.WindowManager;
-import android.widget.Button;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import org.tensorflow.lite.examples.detection.env.ImageUtils;
-
-public abstract class CameraActivity extends AppCompatActivity
-        implements Camera.PreviewCallback, Camera.PictureCallback,
-        View.OnClickListener {
-    private static final int PERMISSIONS_REQUEST = 1;
-
-    private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
-    protected int previewWidth = 0;
-    protected int previewHeight = 0;
-    private boolean debug = false;
-    private Handler handler;
-    private HandlerThread handlerThread;
-    private boolean isProcessingFrame = false;
-    private byte[][] yuvBytes = new byte[3][];
-    private int[] rgbBytes = null;
-    private int yRowStride;
-    private Runnable postInferenceCallback;
-    private Runnable imageConverter;
-    private Button capt_img;
-    private TextView pred_view;
-
-    @Override
-    protected void onCreate(final Bundle savedInstanceState) {
-        super.onCreate(null);
-        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
-
-        setContentView(R.layout.activity_camera);
-        getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
-                WindowManager.LayoutParams.FLAG_FULLSCREEN);
-
-        if (hasPermission()) {
-            setFragment();
-        } else {
-            requestPermission();
-        }
-
-        pred_view = findViewById(R.id.predictionView);
-        capt_img = findViewById(R.id.captBtn);
-        capt_img.setOnClickListener(this);
-    }
-
-    protected int[] getRgbBytes() {
-        imageConverter.run();
-        return rgbBytes;
-    }
-
-    @Override
-    public void onPictureTaken(byte[] data, Camera camera) {
-
-    }
-
-    /**
-     * Callback for android.hardware.Camera API
-     */
-    @Override
-    public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-        if (isProcessingFrame) {
-            return;
-        }
-
-        try {
-            // Initialize the storage bitmaps once when the resolution is known.
-            if (rgbBytes == null) {
-                Camera.Size previewSize = camera.getParameters().getPreviewSize();
-                previewHeight = previewSize.height;
-                previewWidth = previewSize.width;
-
-                // TODO
-                /*
-                System.out.println("---------------------------------\n");
-                for (Camera.Size s : camera.getParameters().getSupportedPictureSizes())
-                    if ((float)(s.width) / s.height == (float)(16)/9)
-                        System.out.println(s.width + " : " + s.height);
-                 */
-
-                rgbBytes = new int[previewWidth * previewHeight];
-                onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
-            }
-        } catch (final Exception e) {
-            System.err.println(e);
-            return;
-        }
-
-        isProcessingFrame = true;
-        yuvBytes[0] = bytes;
-        yRowStride = previewWidth;
-
-        imageConverter = () -> ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-
-        postInferenceCallback = () -> {
-                    camera.addCallbackBuffer(bytes);
-                    isProcessingFrame = false;
-                };
-        processImage();
-    }
-
-    @Override
-    public synchronized void onStart() {
-        super.onStart();
-    }
-
-    @Override
-    public synchronized void onResume() {
-        super.onResume();
-
-        handlerThread = new HandlerThread("inference");
-        handlerThread.start();
-        handler = new Handler(handlerThread.getLooper());
-    }
-
-    @Override
-    public synchronized void onPause() {
-        handlerThread.quitSafely();
-        try {
-            handlerThread.join();
-            handlerThread = null;
-            handler = null;
-        } catch (final InterruptedException e) {
-            System.out.println(e);
-        }
-
-        super.onPause();
-    }
-
-    @Override
-    public synchronized void onStop() {
-        super.onStop();
-    }
-
-    @Override
-    public synchronized void onDestroy() {
-        super.onDestroy();
-    }
-
-    protected synchronized void runInBackground(final Runnable r) {
-        if (handler != null) {
-            handler.post(r);
-        }
-    }
-
-    @Override
-    public void onRequestPermissionsResult(
-            final int requestCode, final String[] permissions, final int[] grantResults) {
-        if (requestCode == PERMISSIONS_REQUEST) {
-            if (grantResults.length > 0
-                    && grantResults[0] == PackageManager.PERMISSION_GRANTED
-                    && grantResults[1] == PackageManager.PERMISSION_GRANTED) {
-                setFragment();
-            } else {
-                requestPermission();
-            }
-        }
-    }
-
-    private boolean hasPermission() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            return checkSelfPermission(PERMISSION_CAMERA) == PackageManager.PERMISSION_GRANTED;
-        } else {
-            return true;
-        }
-    }
-
-    private void requestPermission() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (shouldShowRequestPermissionRationale(PERMISSION_CAMERA)) {
-                Toast.makeText(CameraActivity.this, "Camera permission is required",
-                        Toast.LENGTH_LONG).show();
-            }
-            requestPermissions(new String[]{PERMISSION_CAMERA}, PERMISSIONS_REQUEST);
-        }
-    }
-
-    protected void setFragment() {
-        Fragment fragment = new LegacyCameraConnectionFragment(this, getLayoutId(), getDesiredPreviewFrameSize());
-        getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
-    }
-
-    public boolean isDebug() {
-        return debug;
-    }
-
-    protected void readyForNextImage() {
-        if (postInferenceCallback != null) {
-            postInferenceCallback.run();
-        }
-    }
-
-    protected int getScreenOrientation() {
-        switch (getWindowManager().getDefaultDisplay().getRotation()) {
-            case Surface.ROTATION_270:
-                return 270;
-            case Surface.ROTATION_180:
-                return 180;
-            case Surface.ROTATION_90:
-                return 90;
-            default:
-                return 0;
-        }
-    }
-
-    @Override
-    public void onClick(View v) {
-        if (v.getId() == R.id.captBtn) {
-            readyForNextImage();
-            //camera.startPreview();
-            //camera.takePicture(null, null, new PhotoHandler(getApplicationContext()));
-        }
-    }
-
-    protected void setPredictionView(String prediction) {
-        pred_view.setText(prediction);
-    }
-
-    protected abstract void processImage();
-
-    protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
-
-    protected abstract int getLayoutId();
-
-    protected abstract Size getDesiredPreviewFrameSize();
-}
@@ -227,9 +227,9 @@ public class CameraConnectionFragment extends Fragment {
       }
     }
 
-    LOGGER.i("Desired size: " + desiredSize + ", min size: " + minSize + "x" + minSize);
-    LOGGER.i("Valid preview sizes: [" + TextUtils.join(", ", bigEnough) + "]");
-    LOGGER.i("Rejected preview sizes: [" + TextUtils.join(", ", tooSmall) + "]");
+    LOGGER.i("Desired size: %s, min size: %dx%d", desiredSize, minSize, minSize);
+    LOGGER.i("Valid preview sizes: [%s]", TextUtils.join(", ", bigEnough));
+    LOGGER.i("Rejected preview sizes: [%s]", TextUtils.join(", ", tooSmall));
 
     if (exactSizeFound) {
       LOGGER.i("Exact size match found.");
@@ -239,7 +239,7 @@ public class CameraConnectionFragment extends Fragment {
     // Pick the smallest of those, assuming we found any
     if (bigEnough.size() > 0) {
       final Size chosenSize = Collections.min(bigEnough, new CompareSizesByArea());
-      LOGGER.i("Chosen size: " + chosenSize.getWidth() + "x" + chosenSize.getHeight());
+      LOGGER.i("Chosen size: %dx%d", chosenSize.getWidth(), chosenSize.getHeight());
       return chosenSize;
     } else {
       LOGGER.e("Couldn't find any suitable preview size");
@@ -436,7 +436,7 @@ public class CameraConnectionFragment extends Fragment {
       previewRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
       previewRequestBuilder.addTarget(surface);
 
-      LOGGER.i("Opening camera preview: " + previewSize.getWidth() + "x" + previewSize.getHeight());
+      LOGGER.i("Opening camera preview: %dx%d", previewSize.getWidth(), previewSize.getHeight());
 
       // Create the reader for the preview frames.
       previewReader =
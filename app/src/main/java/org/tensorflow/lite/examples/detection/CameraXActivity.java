@@ -1,15 +1,18 @@
 package org.tensorflow.lite.examples.detection;
 
-import android.annotation.SuppressLint;
+import android.app.Fragment;
+import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Size;
 import android.view.OrientationEventListener;
 import android.view.Surface;
+import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.TextView;
@@ -18,12 +21,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
-import androidx.camera.core.ImageAnalysis;
-import androidx.camera.core.ImageCapture;
-import androidx.camera.core.ImageCaptureException;
-import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
-import androidx.camera.extensions.HdrImageCaptureExtender;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
@@ -31,18 +29,69 @@ import androidx.core.content.ContextCompat;
 
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.detection.camera.Camera1FrameSource;
+import org.tensorflow.lite.examples.detection.camera.Camera2FrameSource;
+import org.tensorflow.lite.examples.detection.camera.CameraXFrameSource;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FrameClock;
+import org.tensorflow.lite.examples.detection.core.FrameContext;
+import org.tensorflow.lite.examples.detection.core.FrameLatencyTracker;
+import org.tensorflow.lite.examples.detection.core.FrameRecorder;
+import org.tensorflow.lite.examples.detection.core.FrameSource;
+import org.tensorflow.lite.examples.detection.core.ReplayFrameSource;
+import org.tensorflow.lite.examples.detection.core.TraceRecorder;
+import org.tensorflow.lite.examples.detection.core.YuvPlaneConverter;
+import org.tensorflow.lite.examples.detection.env.InferenceWorker;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * partly source: https://github.com/akhilbattula/android-camerax-java
  */
 
 public abstract class CameraXActivity extends AppCompatActivity {
+    private static final Logger LOGGER = new Logger();
+
+    /**
+     * Intent extra selecting the camera backend: "camerax" (default), "camera2", "camera1" or
+     * "replay".
+     */
+    public static final String EXTRA_FRAME_SOURCE = "frame_source";
+    /**
+     * Intent extra with the directory of the recording played by the "replay" backend.
+     */
+    public static final String EXTRA_RECORDING = "recording";
+    /**
+     * Boolean intent extra, records all camera frames to the "recordings" directory of the app.
+     */
+    public static final String EXTRA_RECORD_FRAMES = "record_frames";
+
+    // Frame slots of the inference worker. The slot is held until its frame is processed, so with
+    // one slot the frames that arrive meanwhile are dropped and the next scan sees the latest frame
+    static final int FRAME_RING_SIZE = 1;
+    // Preview size requested from the camera, in sensor orientation
+    private static final Size DESIRED_PREVIEW_SIZE = new Size(1280, 720);
+    // Number of preview buffers rotated through the legacy camera
+    private static final int NUM_CALLBACK_BUFFERS = 3;
+    // Process every frame instead of only the frame after a tap
+    private static final boolean CONTINUOUS_SCAN = false;
+    // Frames between two frame rate log entries
+    private static final int STATS_INTERVAL = 100;
+    // Disk space of the frame recording ring and size of one of its segments
+    private static final long RECORDING_BUDGET_BYTES = 512L * 1024 * 1024;
+    private static final int RECORDING_SEGMENT_BYTES = 32 * 1024 * 1024;
+    // Age of a result at its display up to which it is fresh, older ones are flagged
+    private static final long RESULT_AGE_BUDGET_MS = 250;
+    private static final String STALE_SUFFIX = " (verzögert)";
+    // Stage events kept for a trace, about the last 500 frames, and the minimum time between two
+    // traces written for stale results
+    private static final int TRACE_EVENTS = 4096;
+    private static final long TRACE_DUMP_INTERVAL_MS = 10000;
+    private static final String TRACE_DIR = "traces";
 
-    private Executor executor = Executors.newSingleThreadExecutor();
     private int REQUEST_CODE_PERMISSIONS = 196;
     private final String[] REQUIRED_PERMISSIONS = new String[]{"android.permission.CAMERA", "android.permission.WRITE_EXTERNAL_STORAGE"};
 
@@ -50,10 +99,35 @@ public abstract class CameraXActivity extends AppCompatActivity {
     protected int previewHeight = 0;
     private int currentOrientation = 0;
 
-    private Handler handler;
-    private HandlerThread handlerThread;
+    private volatile InferenceWorker<FrameSlot> inferenceWorker;
+    private FrameSource frameSource;
+    private volatile FrameRecorder frameRecorder;
+    private volatile boolean scanRequested = false;
     protected Bitmap rgbFrameBitmap;
 
+    // Pooled conversion buffers, the planes are read in place
+    private final YuvPlaneConverter yuvConverter = new YuvPlaneConverter();
+    private int[] rgbBytes = null;
+
+    // Clock of the capture timestamps, timestamps of the frame being processed and their statistics
+    private final FrameClock frameClock = new FrameClock(SystemClock::elapsedRealtimeNanos, System::nanoTime);
+    protected final FrameContext frameContext = new FrameContext();
+    // Result waiting for the UI thread, guarded by pendingFrame. A newer result replaces one that
+    // was not displayed yet, so at most one display is posted at a time.
+    private final FrameContext pendingFrame = new FrameContext();
+    private String pendingPrediction = null;
+    // Result being displayed, UI thread only
+    private final FrameContext shownFrame = new FrameContext();
+    private final Runnable displayResult = this::displayResult;
+    private final FrameLatencyTracker latencyTracker = new FrameLatencyTracker(RESULT_AGE_BUDGET_MS * 1000000L);
+    // Pipeline stages of the last frames, per process like the loaded detectors
+    protected static final TraceRecorder traceRecorder = new TraceRecorder(TRACE_EVENTS);
+
+    // Frame source statistics
+    private long framesDelivered = 0;
+    private long framesDropped = 0;
+    private long statsStartTime = 0;
+
     private PreviewView previewView;
     private Button captureImage;
     private TextView predView;
@@ -78,76 +152,194 @@ public abstract class CameraXActivity extends AppCompatActivity {
     }
 
     private void startCamera() {
-        final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+        final String backend = getIntent().getStringExtra(EXTRA_FRAME_SOURCE);
+        if ("camera2".equals(backend)) {
+            final Camera2FrameSource source = new Camera2FrameSource();
+            final CameraConnectionFragment fragment = CameraConnectionFragment.newInstance(
+                    source, source, R.layout.camera_connection_fragment_tracking, DESIRED_PREVIEW_SIZE);
+            fragment.setCamera(getBackCameraId());
+            startFrameSource(source, fragment);
+        } else if ("replay".equals(backend)) {
+            final String recording = getIntent().getStringExtra(EXTRA_RECORDING);
+            try {
+                if (recording == null)
+                    throw new IOException("No recording given");
+                // replay at the recorded frame rate, looping until the activity ends
+                startFrameSource(new ReplayFrameSource(new File(recording), true, 0), null);
+            } catch (final IOException e) {
+                LOGGER.e(e, "Could not open recording");
+                Toast.makeText(this, "Recording could not be opened", Toast.LENGTH_SHORT).show();
+                finish();
+                return;
+            }
+        } else if ("camera1".equals(backend)) {
+            final Camera1FrameSource source = new Camera1FrameSource(NUM_CALLBACK_BUFFERS);
+            startFrameSource(source, new LegacyCameraConnectionFragment(
+                    source, R.layout.camera_connection_fragment_tracking, DESIRED_PREVIEW_SIZE,
+                    NUM_CALLBACK_BUFFERS));
+        } else {
+            // CameraX expects the resolution in display orientation
+            final CameraXFrameSource source = new CameraXFrameSource(
+                    new Size(DESIRED_PREVIEW_SIZE.getHeight(), DESIRED_PREVIEW_SIZE.getWidth()));
+            final ListenableFuture<ProcessCameraProvider> cameraProviderFuture = ProcessCameraProvider.getInstance(this);
+
+            cameraProviderFuture.addListener(() -> {
+                try {
+                    ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                    bindPreview(cameraProvider, source);
+                } catch (ExecutionException | InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }, ContextCompat.getMainExecutor(this));
+            startFrameSource(source, null);
+        }
 
-        cameraProviderFuture.addListener(() -> {
+        captureImage.setOnClickListener(v -> scanRequested = true);
+        // a long press writes the trace of the last frames, e.g. after a slow scan
+        predView.setOnLongClickListener(v -> {
+            dumpTrace();
+            Toast.makeText(this, "Trace saved to " + TRACE_DIR, Toast.LENGTH_SHORT).show();
+            return true;
+        });
+    }
+
+    /**
+     * @param fragment camera fragment of the Camera2 and Camera1 backends, null for CameraX
+     */
+    private void startFrameSource(FrameSource source, Fragment fragment) {
+        if (fragment != null) {
+            previewView.setVisibility(View.GONE);
+            findViewById(R.id.container).setVisibility(View.VISIBLE);
+            getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
+        }
+        LOGGER.i("Using frame source %s", source.getName());
+        if (getIntent().getBooleanExtra(EXTRA_RECORD_FRAMES, false)) {
             try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
-                bindPreview(cameraProvider);
-            } catch (ExecutionException | InterruptedException e) {
-                e.printStackTrace();
+                frameRecorder = new FrameRecorder(new File(getExternalFilesDir(null), "recordings"),
+                        RECORDING_BUDGET_BYTES, RECORDING_SEGMENT_BYTES);
+            } catch (final IOException e) {
+                LOGGER.e(e, "Could not start frame recording");
             }
-        }, ContextCompat.getMainExecutor(this));
+        }
+        frameSource = source;
+        frameSource.start(this::onFrameAvailable);
     }
 
-    private void bindPreview(@NonNull ProcessCameraProvider cameraProvider) {
+    private void bindPreview(@NonNull ProcessCameraProvider cameraProvider, CameraXFrameSource source) {
         Preview preview = new Preview.Builder().build();
 
         CameraSelector cameraSelector = new CameraSelector.Builder()
                 .requireLensFacing(CameraSelector.LENS_FACING_BACK)
                 .build();
 
-        ImageAnalysis imageAnalysis = new ImageAnalysis.Builder().build();
-        ImageCapture.Builder builder = new ImageCapture.Builder();
+        cameraProvider.bindToLifecycle(this, cameraSelector, preview, source.getUseCase());
+
+        preview.setSurfaceProvider(previewView.createSurfaceProvider());
+    }
 
-        //Vendor-Extensions (The CameraX extensions dependency in build.gradle)
-        HdrImageCaptureExtender hdrImageCaptureExtender = HdrImageCaptureExtender.create(builder);
+    private String getBackCameraId() {
+        final CameraManager manager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+        try {
+            for (final String cameraId : manager.getCameraIdList()) {
+                final Integer facing = manager.getCameraCharacteristics(cameraId)
+                        .get(CameraCharacteristics.LENS_FACING);
+                if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK)
+                    return cameraId;
+            }
+        } catch (final CameraAccessException e) {
+            LOGGER.e(e, "Not allowed to access camera");
+        }
+        return null;
+    }
 
-        // Query if extension is available (optional).
-        if (hdrImageCaptureExtender.isExtensionAvailable(cameraSelector)) {
-            // Enable the extension if available.
-            hdrImageCaptureExtender.enableExtension(cameraSelector);
+    /**
+     * Runs on the frame source thread, hands the frame to the inference worker.
+     */
+    private void onFrameAvailable(Frame frame) {
+        final long start = TraceRecorder.now();
+        logFrameRate();
+        recordFrame(frame);
+
+        final InferenceWorker<FrameSlot> worker = inferenceWorker;
+        final FrameSlot slot = (CONTINUOUS_SCAN || scanRequested) && worker != null ? worker.claim() : null;
+
+        // drop the frame while not scanning or while the inference worker is busy
+        if (slot == null) {
+            framesDropped++;
+            frame.release();
+            traceRecorder.record(TraceRecorder.CAMERA, start);
+            return;
         }
 
-        final ImageCapture imageCapture = builder
-                .setTargetRotation(this.getWindowManager().getDefaultDisplay().getRotation())
-                .build();
+        scanRequested = false;
+        slot.frame = frame;
+        // sensor timestamps of CameraX and Camera2 may be on either clock, see FrameClock
+        frameClock.calibrate(frame.getTimestampNs());
+        slot.context.start(frame.getTimestampNs(), frameClock.nowNs());
+        worker.publish();
+        traceRecorder.record(TraceRecorder.CAMERA, start);
+    }
 
-        cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageAnalysis, imageCapture);
+    private void recordFrame(Frame frame) {
+        final FrameRecorder recorder = frameRecorder;
+        if (recorder == null)
+            return;
+        try {
+            recorder.record(frame, getOrientationDegrees());
+        } catch (final IOException e) {
+            LOGGER.e(e, "Frame recording failed, stopping it");
+            frameRecorder = null;
+            recorder.close();
+        }
+    }
 
-        preview.setSurfaceProvider(previewView.createSurfaceProvider());
+    private void logFrameRate() {
+        final long now = SystemClock.uptimeMillis();
+        if (statsStartTime == 0)
+            statsStartTime = now;
+        if (++framesDelivered % STATS_INTERVAL == 0) {
+            LOGGER.i("%s: %d frames, %.1f fps, %d not processed",
+                    frameSource.getName(), framesDelivered,
+                    1000.0f * framesDelivered / Math.max(1, now - statsStartTime), framesDropped);
+            final FrameRecorder recorder = frameRecorder;
+            if (recorder != null)
+                LOGGER.i(recorder.getStatString());
+            LOGGER.i(latencyTracker.getStatString());
+        }
+    }
 
-        captureImage.setOnClickListener(v -> imageCapture.takePicture(executor, new ImageCapture.OnImageCapturedCallback() {
-            @Override
-            @SuppressLint("UnsafeExperimentalUsageError")
-            public void onCaptureSuccess(@NonNull ImageProxy image) {
-                rgbFrameBitmap = getBitmap(image);
-                image.close();
-
-                // only init detector once
-                if (previewWidth == 0) {
-                    previewWidth = rgbFrameBitmap.getWidth();
-                    previewHeight = rgbFrameBitmap.getHeight();
-                    initDetector();
-                }
-                processImage();
-            }
+    /**
+     * Runs on the inference worker thread for every frame handed off by the frame source.
+     */
+    private void onFrame(FrameSlot slot) {
+        final Frame frame = slot.frame;
+        slot.frame = null;
+        frameContext.copyFrom(slot.context);
+        frameContext.markInferenceStart(frameClock.nowNs());
 
-            @Override
-            public void onError(@NonNull final ImageCaptureException exception) {
-                exception.printStackTrace();
+        try {
+            // only init detector once
+            if (previewWidth == 0) {
+                previewWidth = frame.getWidth();
+                previewHeight = frame.getHeight();
+                rgbBytes = new int[previewWidth * previewHeight];
+                rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Bitmap.Config.ARGB_8888);
+                initDetector();
             }
-        }));
-    }
 
-    // TODO no error check, test on different devices
-    private Bitmap getBitmap(ImageProxy image) {
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-        buffer.rewind();
-        byte[] bytes = new byte[buffer.capacity()];
-        buffer.get(bytes);
-        byte[] clonedBytes = bytes.clone();
-        return BitmapFactory.decodeByteArray(clonedBytes, 0, clonedBytes.length);
+            if (!processLuma(frame))
+                return;
+            final long convertStart = TraceRecorder.now();
+            yuvConverter.convert(frame, rgbBytes);
+            traceRecorder.record(TraceRecorder.PREPROCESS, convertStart);
+        } finally {
+            frame.release();
+        }
+
+        final long copyStart = TraceRecorder.now();
+        rgbFrameBitmap.setPixels(rgbBytes, 0, previewWidth, 0, 0, previewWidth, previewHeight);
+        traceRecorder.record(TraceRecorder.PREPROCESS, copyStart);
+        processImage();
     }
 
     private void startOrientationListener() {
@@ -166,6 +358,13 @@ public abstract class CameraXActivity extends AppCompatActivity {
         }.enable();
     }
 
+    /**
+     * @return ARGB pixels of the current frame, valid in processImage
+     */
+    protected int[] getRgbBytes() {
+        return rgbBytes;
+    }
+
     protected int getOrientationDegrees() {
         return currentOrientation * 90;
     }
@@ -174,8 +373,77 @@ public abstract class CameraXActivity extends AppCompatActivity {
         predView.setText(prediction);
     }
 
+    /**
+     * Called on the inference worker thread with the result of the current frame. Displays it and
+     * records the latency from the capture of the frame to the display, results older than
+     * RESULT_AGE_BUDGET_MS are flagged and the trace of the frames before is written. A result
+     * that is replaced before the UI thread got to it is not displayed and not recorded.
+     */
+    protected void showResult(String prediction) {
+        final boolean post;
+        synchronized (pendingFrame) {
+            pendingFrame.copyFrom(frameContext);
+            pendingFrame.markInferenceEnd(frameClock.nowNs());
+            post = pendingPrediction == null;
+            pendingPrediction = prediction;
+        }
+        if (post)
+            runOnUiThread(displayResult);
+    }
+
+    /** Displays the pending result, on the UI thread. */
+    private void displayResult() {
+        final long start = TraceRecorder.now();
+        final String prediction;
+        synchronized (pendingFrame) {
+            prediction = pendingPrediction;
+            pendingPrediction = null;
+            shownFrame.copyFrom(pendingFrame);
+        }
+        shownFrame.markDisplay(frameClock.nowNs());
+        final boolean stale = latencyTracker.record(shownFrame);
+        if (stale) {
+            LOGGER.w("Result displayed %.0f ms after capture", shownFrame.getCaptureToDisplayNs() / 1e6);
+            setPredictionView(prediction + STALE_SUFFIX);
+        } else {
+            setPredictionView(prediction);
+        }
+        traceRecorder.record(TraceRecorder.UI, start);
+        if (stale && traceRecorder.claimDump(start, TRACE_DUMP_INTERVAL_MS * 1000000L))
+            dumpTrace();
+    }
+
+    /**
+     * writes the trace of the last frames as Chrome trace JSON to the "traces" directory of the
+     * app, off the calling thread
+     */
+    private void dumpTrace() {
+        final File dir = new File(getExternalFilesDir(null), TRACE_DIR);
+        new Thread(() -> {
+            try {
+                LOGGER.i("Trace written to %s", traceRecorder.dump(dir));
+            } catch (final IOException e) {
+                LOGGER.e(e, "Could not write the trace to %s", dir);
+            }
+        }, "trace-dump").start();
+    }
+
+    /**
+     * Called on the inference worker thread with the current frame in rgbFrameBitmap, regardless of
+     * the camera backend that delivered it.
+     */
     protected abstract void processImage();
 
+    /**
+     * Called on the inference worker thread with the YUV frame before it is converted to RGB. The
+     * frame is released afterwards, so the luma plane can be read in place.
+     *
+     * @return false to drop the frame without converting it and without calling processImage
+     */
+    protected boolean processLuma(Frame frame) {
+        return true;
+    }
+
     protected abstract void initDetector();
 
     /**
@@ -214,12 +482,6 @@ public abstract class CameraXActivity extends AppCompatActivity {
      * -------------------------------------------------
      */
 
-    protected synchronized void runInBackground(final Runnable r) {
-        if (handler != null) {
-            handler.post(r);
-        }
-    }
-
     @Override
     public synchronized void onStart() {
         super.onStart();
@@ -229,20 +491,17 @@ public abstract class CameraXActivity extends AppCompatActivity {
     public synchronized void onResume() {
         super.onResume();
 
-        handlerThread = new HandlerThread("inference");
-        handlerThread.start();
-        handler = new Handler(handlerThread.getLooper());
+        // the inference thread outlives the activity, see DetectionEngine
+        inferenceWorker = DetectionEngine.resumeWorker(this::onFrame);
     }
 
     @Override
     public synchronized void onPause() {
-        handlerThread.quitSafely();
-        try {
-            handlerThread.join();
-            handlerThread = null;
-            handler = null;
-        } catch (final InterruptedException e) {
-            e.printStackTrace();
+        // finish the frames already handed off before handing the worker on
+        final InferenceWorker<FrameSlot> worker = inferenceWorker;
+        inferenceWorker = null;
+        if (worker != null) {
+            worker.pause();
         }
 
         super.onPause();
@@ -255,6 +514,22 @@ public abstract class CameraXActivity extends AppCompatActivity {
 
     @Override
     public synchronized void onDestroy() {
+        if (frameSource != null) {
+            frameSource.stop();
+            frameSource = null;
+        }
+        if (frameRecorder != null) {
+            frameRecorder.close();
+            frameRecorder = null;
+        }
         super.onDestroy();
     }
+
+    /**
+     * Preallocated descriptor of a frame handed from the camera callback to the inference worker.
+     */
+    static class FrameSlot {
+        Frame frame;
+        final FrameContext context = new FrameContext();
+    }
 }
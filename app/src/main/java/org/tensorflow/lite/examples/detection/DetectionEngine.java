@@ -0,0 +1,339 @@
+/*
+ * Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.tensorflow.lite.examples.detection;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.ShadowDigitReader;
+import org.tensorflow.lite.examples.detection.core.SpeculativeDigitReader;
+import org.tensorflow.lite.examples.detection.core.TiledBoxDetector;
+import org.tensorflow.lite.examples.detection.env.FrameRing;
+import org.tensorflow.lite.examples.detection.env.InferenceWorker;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.Classifier;
+
+/**
+ * The detectors of the tag pipeline with their worker threads and input buffers, kept for the
+ * whole application. An activity acquires the engine when it gets its first frame and releases it
+ * in onDestroy, so the activity recreated after a rotation, or a scan resumed after a pause, gets
+ * the loaded interpreters back instead of mapping the models again.
+ *
+ * <p>The inference thread the activities run the pipeline on is kept the same way, see {@link
+ * #resumeWorker}, and stopped with an idle engine when the memory is trimmed.
+ *
+ * <p>An engine that no activity holds stays loaded until the system asks the application to trim
+ * its memory in the background.
+ *
+ * <p>New model versions are swapped into a running engine: {@link #swapAsync} loads and warms them
+ * up on a thread of its own, and the pipeline picks them up between two frames with {@link
+ * #update()}.
+ */
+public class DetectionEngine implements ComponentCallbacks2 {
+    private static final Logger LOGGER = new Logger();
+
+    /** Creates the engine when there is none to reuse, on the thread that acquires it. */
+    public interface Loader {
+        DetectionEngine load() throws IOException;
+    }
+
+    private static DetectionEngine instance = null;
+    // inference thread of the activities, paused while none is in the foreground
+    private static InferenceWorker<CameraXActivity.FrameSlot> worker = null;
+
+    public Classifier box_detector;
+    public Classifier digit_detector;
+    // digit_detector as an engine for the speculative reader
+    public InferenceEngine digit_engine;
+    public TiledBoxDetector tiled_detector = null;
+    public SpeculativeDigitReader speculativeReader = null;
+    // candidate digit model in shadow mode, null without a candidate
+    public ShadowDigitReader shadowReader = null;
+
+    // native input sizes of the models
+    public int input_w;
+    public int input_h;
+    public int digit_w;
+    public int digit_h;
+    // input size of box_detector and the smaller digit input sizes it was prepared for
+    public int box_w;
+    public int box_h;
+    public int[] digitSizes = new int[0];
+
+    public Bitmap box_bitmap;
+    public Bitmap full_digit_bitmap;
+    public Bitmap[] digitBitmaps = new Bitmap[0];
+    public byte[] boxLuma;
+    public int[] digitPixels;
+    public int[] batchPixels;
+
+    // what the engine was loaded for, the fixture of scripted detectors or the models
+    private String key;
+    private Context context;
+    private int refs = 0;
+    private boolean closed = false;
+    // loaded by swapAsync, taken over by update
+    private DetectionEngine pending = null;
+    private boolean swapping = false;
+
+    /**
+     * @param context Any context, the engine keeps the application context.
+     * @param key What the engine is loaded for. A cached engine for another key is never returned,
+     *     it is closed, or detached and closed by its last {@link #release()}.
+     * @param loader Creates the engine if there is none for the key.
+     * @return The engine, held once more until {@link #release()}.
+     */
+    public static DetectionEngine acquire(Context context, String key, Loader loader)
+            throws IOException {
+        synchronized (DetectionEngine.class) {
+            final DetectionEngine cached = reuse(key);
+            if (cached != null)
+                return cached;
+        }
+        // loaded without the lock, so release, update and onTrimMemory don't wait for the models
+        final long start = System.nanoTime();
+        final DetectionEngine engine = loader.load();
+        synchronized (DetectionEngine.class) {
+            final DetectionEngine cached = reuse(key);
+            if (cached != null) {
+                // another acquire loaded the same key in the meantime
+                engine.closeModels();
+                return cached;
+            }
+            engine.key = key;
+            engine.context = context.getApplicationContext();
+            engine.context.registerComponentCallbacks(engine);
+            engine.refs++;
+            instance = engine;
+        }
+        LOGGER.i("Loaded detection engine for %s in %.1f ms", key, (System.nanoTime() - start) / 1e6);
+        return engine;
+    }
+
+    /**
+     * The cached engine for the key, held once more, or null. A cached engine for another key is
+     * closed, or detached if it is still held. Called with the lock held.
+     */
+    private static DetectionEngine reuse(String key) {
+        if (instance != null && !instance.key.equals(key)) {
+            // an engine still held stays with its holders, release closes it once they are done
+            if (instance.refs == 0)
+                instance.close();
+            else
+                instance = null;
+        }
+        if (instance == null)
+            return null;
+        LOGGER.i("Reusing detection engine for %s", instance.key);
+        instance.refs++;
+        return instance;
+    }
+
+    /**
+     * Hands the inference thread to an activity, on its onResume. The thread is started on the
+     * first call and paused with {@link InferenceWorker#pause()} in onPause, so an activity
+     * recreated after a rotation or resumed after a pause keeps running on the same thread. A
+     * paused thread is stopped when the memory of the application is trimmed in the background,
+     * the next call starts a new one.
+     *
+     * @param handler Called on the inference thread for every frame published to the worker.
+     */
+    static synchronized InferenceWorker<CameraXActivity.FrameSlot> resumeWorker(
+            InferenceWorker.FrameHandler<CameraXActivity.FrameSlot> handler) {
+        if (worker == null) {
+            worker = new InferenceWorker<>(new FrameRing<CameraXActivity.FrameSlot>(
+                    CameraXActivity.FRAME_RING_SIZE, CameraXActivity.FrameSlot::new), handler);
+            worker.start("inference");
+        } else {
+            worker.resume(handler);
+        }
+        return worker;
+    }
+
+    /**
+     * Hands the engine back. It stays loaded for the next activity, unless one acquired an engine
+     * for another key in the meantime.
+     */
+    public void release() {
+        synchronized (DetectionEngine.class) {
+            if (refs > 0)
+                refs--;
+            if (refs == 0 && instance != this)
+                close();
+        }
+    }
+
+    /** What the engine was loaded for, see {@link #acquire}. */
+    public String getKey() {
+        synchronized (DetectionEngine.class) {
+            return key;
+        }
+    }
+
+    /**
+     * Loads the engine for another key, e.g. new model versions, on a thread of its own while the
+     * current one keeps running. The loader should warm the detectors up, the pipeline switches
+     * over on its next {@link #update()}. A failed load keeps the current engine.
+     *
+     * @return false if the engine already is for that key or a swap is in progress.
+     */
+    public boolean swapAsync(final String key, final Loader loader) {
+        synchronized (DetectionEngine.class) {
+            if (closed || swapping || key.equals(this.key)
+                    || (pending != null && key.equals(pending.key)))
+                return false;
+            swapping = true;
+        }
+        final Thread thread = new Thread(() -> {
+            DetectionEngine next = null;
+            try {
+                final long start = System.nanoTime();
+                next = loader.load();
+                next.key = key;
+                LOGGER.i("Loaded %s in %.1f ms, swapping it in", key, (System.nanoTime() - start) / 1e6);
+            } catch (final IOException | RuntimeException e) {
+                LOGGER.e(e, "Can't load %s, keeping %s", key, getKey());
+            }
+            synchronized (DetectionEngine.class) {
+                swapping = false;
+                if (next == null)
+                    return;
+                if (closed) {
+                    next.closeModels();
+                    return;
+                }
+                if (pending != null)
+                    pending.closeModels();
+                pending = next;
+            }
+        }, "model-swap");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Takes over the engine loaded by {@link #swapAsync} and closes the replaced detectors. Called
+     * by the pipeline between two frames, so no detector is closed while it runs.
+     *
+     * @return true if the detectors, sizes or buffers changed.
+     */
+    public boolean update() {
+        synchronized (DetectionEngine.class) {
+            final DetectionEngine next = pending;
+            if (next == null || closed)
+                return false;
+            pending = null;
+            closeModels();
+
+            key = next.key;
+            box_detector = next.box_detector;
+            digit_detector = next.digit_detector;
+            digit_engine = next.digit_engine;
+            tiled_detector = next.tiled_detector;
+            speculativeReader = next.speculativeReader;
+            shadowReader = next.shadowReader;
+            input_w = next.input_w;
+            input_h = next.input_h;
+            digit_w = next.digit_w;
+            digit_h = next.digit_h;
+            box_w = next.box_w;
+            box_h = next.box_h;
+            digitSizes = next.digitSizes;
+            box_bitmap = next.box_bitmap;
+            full_digit_bitmap = next.full_digit_bitmap;
+            digitBitmaps = next.digitBitmaps;
+            boxLuma = next.boxLuma;
+            digitPixels = next.digitPixels;
+            batchPixels = next.batchPixels;
+            LOGGER.i("Swapped in %s", key);
+            return true;
+        }
+    }
+
+    /**
+     * Closes the interpreters, stops the threads of the tiled detector and the digit readers and
+     * recycles the bitmaps, even if the engine is still held. The next acquire loads a new engine.
+     * The inference thread is not the engine's, see {@link #resumeWorker}.
+     */
+    public void close() {
+        synchronized (DetectionEngine.class) {
+            if (closed)
+                return;
+            closed = true;
+            if (instance == this)
+                instance = null;
+            if (context != null)
+                context.unregisterComponentCallbacks(this);
+
+            LOGGER.i("Closing detection engine for %s", key);
+            closeModels();
+            if (pending != null) {
+                pending.closeModels();
+                pending = null;
+            }
+        }
+    }
+
+    private void closeModels() {
+        if (speculativeReader != null)
+            speculativeReader.close();
+        if (shadowReader != null)
+            shadowReader.close();
+        if (tiled_detector != null)
+            tiled_detector.close();
+        if (box_detector != null)
+            box_detector.close();
+        if (digit_detector != null)
+            digit_detector.close();
+        if (box_bitmap != null)
+            box_bitmap.recycle();
+        if (full_digit_bitmap != null)
+            full_digit_bitmap.recycle();
+        for (final Bitmap bitmap : digitBitmaps)
+            bitmap.recycle();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // an engine in use is kept, the scan would load it again right away
+        synchronized (DetectionEngine.class) {
+            if (refs == 0 && level >= TRIM_MEMORY_BACKGROUND) {
+                close();
+                // no activity runs on a paused worker, the next resumeWorker starts a new one
+                if (worker != null && worker.isPaused()) {
+                    worker.stop();
+                    worker = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+}
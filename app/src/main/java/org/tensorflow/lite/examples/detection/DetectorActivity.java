@@ -16,22 +16,49 @@
 
 package org.tensorflow.lite.examples.detection;
 
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
-import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.Bundle;
+import android.os.FileObserver;
+import android.os.SystemClock;
 import android.util.Size;
 import android.widget.Toast;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.tensorflow.lite.examples.detection.core.Box;
+import org.tensorflow.lite.examples.detection.core.Detection;
+import org.tensorflow.lite.examples.detection.core.DigitLayout;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.ImageOps;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.PresenceFilter;
+import org.tensorflow.lite.examples.detection.core.ShadowDigitReader;
+import org.tensorflow.lite.examples.detection.core.SpeculativeDigitReader;
+import org.tensorflow.lite.examples.detection.core.TagGeometry;
+import org.tensorflow.lite.examples.detection.core.TiledBoxDetector;
+import org.tensorflow.lite.examples.detection.core.TraceRecorder;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.SceneChangeDetector;
+import org.tensorflow.lite.examples.detection.env.TagReadCache;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
+import org.tensorflow.lite.examples.detection.tflite.ModelRegistry;
+import org.tensorflow.lite.examples.detection.tflite.ScriptedDetectors;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
 
 /**
@@ -39,63 +66,223 @@ import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIMod
  * objects.
  */
 public class DetectorActivity extends CameraXActivity {
-    // SSD-Model configuration
-    private static final int w = 360;
-    private static final int h = 640;
-    private static final int w2 = 600;
-    private static final int h2 = 600;
-    private static final boolean TF_IS_QUANTIZED = false;
+    private static final Logger LOGGER = new Logger();
+
+    /**
+     * Intent extra with the path of a JSON fixture for the scripted stand-in detectors, or
+     * "default" for the bundled fixture. Without it the TensorFlow Lite models are used.
+     */
+    public static final String EXTRA_SCRIPTED_FIXTURE = "scripted_fixture";
+    /**
+     * Float intent extra, the minimum PresenceFilter score to run the box model on a frame. Without
+     * it the threshold last calibrated on the device is used, or PRESENCE_THRESHOLD.
+     */
+    public static final String EXTRA_PRESENCE_THRESHOLD = "presence_threshold";
+    /**
+     * Float intent extra, calibrates the presence threshold on the device for this share of the
+     * frames with a read tag, e.g. 0.98. The box model runs on every frame until the scores of
+     * PRESENCE_CALIBRATION_TAGS such frames are collected, the threshold is then kept for later
+     * starts.
+     */
+    public static final String EXTRA_PRESENCE_RECALL = "presence_recall";
+
+    // SSD-Model configuration, the bundled models. Input sizes and types are read from the models,
+    // newer versions installed into the ModelRegistry replace them
+    private static final String MODELS_DIR = "models";
+    // Directory in the app's private files directory that new model versions are pushed to, see
+    // ModelRegistry.installInbox, and the interval of the checks for versions installed otherwise.
+    // Not in the external files directory, which other apps can write to before Android Q
+    private static final String MODEL_INBOX_DIR = "models_inbox";
+    private static final long MODEL_CHECK_INTERVAL_MS = 30 * 1000;
+    private static final String BOX_MODEL = "box";
+    private static final String DIGIT_MODEL = "numbers";
     private static final String TF_BOX_MODEL = "box.tflite";
     private static final String TF_BOX_LABELS = "file:///android_asset/labels_box.txt";
+    // Run the box model on the luma plane only, frames without a tag are never converted to RGB.
+    // The digit model always gets RGB, its input is a rotated crop of the RGB frame.
+    private static final boolean TF_BOX_LUMA = false;
+    // Grid of full resolution tiles the box model runs on when it finds no tag in the whole frame,
+    // for tags too small at the box input size. 0 disables it. Each worker has its own box interpreter.
+    private static final int TF_BOX_TILES = 2;
+    private static final int TF_BOX_TILE_WORKERS = 2;
+    // Coarse-to-fine box detection: the box model runs on the whole frame at this fraction of its
+    // input size, and once more at that size on a crop around the most confident box, which sees it
+    // at the pixel density of the full input. 0 runs a single pass at the full input
+    private static final float TF_BOX_PROXY_SCALE = 0.5f;
+    // Minimum confidence of a proxy box for the refinement pass
+    private static final float BOX_PROXY_CONFIDENCE = 0.2f;
+    // Fraction of the proxy box size kept around it in the refinement crop
+    private static final float BOX_REFINE_MARGIN = 0.5f;
     private static final String TF_DIGIT_MODEL = "numbers.tflite";
     private static final String TF_DIGIT_LABELS = "file:///android_asset/labels.txt";
+    // Smaller digit model inputs, a tag is read at the smallest one that holds its crop without
+    // downscaling, so distant tags don't run the model at full size on an upscaled crop
+    private static final int[] DIGIT_INPUT_SIZES = {320, 384, 480};
+    // Tags read per frame, the most confident boxes first, with one batched digit model call
+    private static final int TF_MAX_TAGS = 4;
+    // Read the tag box predicted from the previous frames while the box model runs, the read is
+    // kept if the box found overlaps the prediction by this IoU. 0 disables it. Needs RGB frames,
+    // so it doesn't run with TF_BOX_LUMA
+    private static final float TF_SPECULATIVE_IOU = 0.6f;
+    // Shadow mode: share of the single tag reads that the candidate digit model of the ModelRegistry
+    // reads too, on a background thread, to compare its latency and result with the live model.
+    // Only runs while a candidate is installed, the comparison is written to SHADOW_REPORT on pause
+    private static final float TF_SHADOW_FRACTION = 0.2f;
+    private static final String SHADOW_REPORT = "shadow.csv";
     private static final float MINIMUM_CONFIDENCE = 0.4f;
     private static final boolean MAINTAIN_ASPECT = false;
-    private static int tagRotation;
+    // Minimum PresenceFilter score of the box input to run the box model, 0 runs it on every frame.
+    // Default until a threshold is calibrated on the device with EXTRA_PRESENCE_RECALL, or offline
+    // for a recall target with the --presence-recall option of the accuracy benchmark
+    private static final float PRESENCE_THRESHOLD = 0.0f;
+    // Frames with a read tag whose scores calibrate the threshold, and where it is kept
+    private static final int PRESENCE_CALIBRATION_TAGS = 200;
+    private static final String PRESENCE_PREFS = "presence_filter";
+    private static final String PRESENCE_THRESHOLD_KEY = "threshold";
+    // Mean absolute luma difference up to which the previous result is reused
+    private static final float SCENE_TOLERANCE = 6.0f;
+    // Cache of recent tag reads
+    private static final int TAG_CACHE_ENTRIES = 64;
+    private static final long TAG_CACHE_BYTES = 64 * 1024;
+    private static final long TAG_CACHE_TTL_MS = 8 * 60 * 60 * 1000;
+    private static final int TAG_CACHE_VERIFY_INTERVAL = 10;
 
+    // detectors and buffers shared with later instances of the activity, see initDetector
+    private DetectionEngine engine = null;
+    private ModelRegistry modelRegistry;
+    // look for new model versions on the next frame, and every MODEL_CHECK_INTERVAL_MS
+    private volatile boolean checkModels = true;
+    private boolean watchModels = false;
+    private long lastModelCheck = 0;
+    private FileObserver modelInbox = null;
     private Classifier box_detector;
     private Classifier digit_detector;
+    // digit_detector as an engine for the speculative reader
+    private InferenceEngine digit_engine;
+    private SpeculativeDigitReader speculativeReader = null;
+    private ShadowDigitReader shadowReader = null;
+    private TiledBoxDetector tiled_detector = null;
+    // native input sizes of the models
+    private int input_w;
+    private int input_h;
+    private int digit_w;
+    private int digit_h;
+    // box model input size, the proxy size with coarse-to-fine detection
+    private int box_w;
+    private int box_h;
+    private final int[] refineRect = new int[4];
 
     private Bitmap box_bitmap = null;
     private Bitmap digit_bitmap = null;
-
-    private boolean computingDetection = false;
+    private Bitmap full_digit_bitmap = null;
+    // digit input sizes the digit detector was prepared for, and their bitmaps
+    private int[] digitSizes = new int[0];
+    private Bitmap[] digitBitmaps;
 
     private Matrix frameToCropTransform;
     private Matrix cropToFrameTransform;
+    // reused by cropDetectedBox for every tag
+    private final Canvas digitCanvas = new Canvas();
+    private final Matrix tagToDigitTransform = new Matrix();
+
+    private final SceneChangeDetector sceneDetector = new SceneChangeDetector(SCENE_TOLERANCE);
+    private PresenceFilter presenceFilter;
+    private float presenceThreshold = PRESENCE_THRESHOLD;
+    // score of the current frame, and the scores of frames with a read tag while calibrating
+    private float presenceScore = -1;
+    private float presenceRecall = 0;
+    private float[] presenceScores = null;
+    private int presenceScoreCount = 0;
+    // box detector input as luma, for the presence filter and the luma-only box input
+    private byte[] boxLuma;
+    private int[] digitPixels;
+    private int[] batchPixels;
+    private final TagReadCache tagCache = new TagReadCache(
+            TAG_CACHE_ENTRIES,
+            TAG_CACHE_BYTES,
+            TAG_CACHE_TTL_MS,
+            TAG_CACHE_VERIFY_INTERVAL);
+    private String lastResult = null;
+    private long lastInferenceMs = 0;
+    private long startTime;
+    // boxes in frame coordinates found by processLuma for the frame passed on to processImage
+    private List<Classifier.Recognition> lumaBoxes = null;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        modelRegistry = new ModelRegistry(getAssets(), new File(getFilesDir(), MODELS_DIR));
+        modelRegistry.register(BOX_MODEL, TF_BOX_MODEL, TF_BOX_LABELS);
+        modelRegistry.register(DIGIT_MODEL, TF_DIGIT_MODEL, TF_DIGIT_LABELS);
+
+        final SharedPreferences prefs = getSharedPreferences(PRESENCE_PREFS, MODE_PRIVATE);
+        presenceThreshold = getIntent().getFloatExtra(EXTRA_PRESENCE_THRESHOLD,
+                prefs.getFloat(PRESENCE_THRESHOLD_KEY, PRESENCE_THRESHOLD));
+        presenceRecall = getIntent().getFloatExtra(EXTRA_PRESENCE_RECALL, 0);
+        if (presenceRecall > 0) {
+            presenceThreshold = 0;
+            presenceScores = new float[PRESENCE_CALIBRATION_TAGS];
+        }
+        LOGGER.i("Presence threshold %.3f%s", presenceThreshold,
+                presenceScores != null ? ", calibrating for a recall of " + presenceRecall : "");
+    }
 
     @Override
     public void initDetector() {
+        final String fixture = getIntent().getStringExtra(EXTRA_SCRIPTED_FIXTURE);
         try {
-            box_detector = TFLiteObjectDetectionAPIModel.create(
-                    getAssets(),
-                    TF_BOX_MODEL,
-                    TF_BOX_LABELS,
-                    w,
-                    h,
-                    TF_IS_QUANTIZED);
-            digit_detector = TFLiteObjectDetectionAPIModel.create(
-                    getAssets(),
-                    TF_DIGIT_MODEL,
-                    TF_DIGIT_LABELS,
-                    w2,
-                    h2,
-                    TF_IS_QUANTIZED);
+            // the engine of a previous instance of the activity is reused if it is still loaded
+            if (fixture != null) {
+                engine = DetectionEngine.acquire(this, "fixture " + fixture, () -> loadScriptedEngine(fixture));
+            } else {
+                final ModelRegistry.Model box_model = modelRegistry.current(BOX_MODEL);
+                final ModelRegistry.Model digit_model = modelRegistry.current(DIGIT_MODEL);
+                final ModelRegistry.Model shadow_model = getShadowModel();
+                engine = DetectionEngine.acquire(
+                        this, getEngineKey(box_model, digit_model, shadow_model),
+                        () -> loadEngine(box_model, digit_model, shadow_model));
+            }
+            checkModels = fixture == null;
+            watchModels = fixture == null;
         } catch (final IOException e) {
             e.printStackTrace();
             Toast toast = Toast.makeText(
                     getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
             toast.show();
             finish();
+            return;
         }
+        useEngine();
+    }
 
-        box_bitmap = Bitmap.createBitmap(w, h, Config.ARGB_8888);
-        digit_bitmap = Bitmap.createBitmap(w2, h2, Config.ARGB_8888);
+    /** takes the detectors, sizes and buffers of the engine, again after it swapped models */
+    private void useEngine() {
+        box_detector = engine.box_detector;
+        digit_detector = engine.digit_detector;
+        digit_engine = engine.digit_engine;
+        tiled_detector = engine.tiled_detector;
+        speculativeReader = engine.speculativeReader;
+        shadowReader = engine.shadowReader;
+        input_w = engine.input_w;
+        input_h = engine.input_h;
+        digit_w = engine.digit_w;
+        digit_h = engine.digit_h;
+        box_w = engine.box_w;
+        box_h = engine.box_h;
+        digitSizes = engine.digitSizes;
+        box_bitmap = engine.box_bitmap;
+        full_digit_bitmap = engine.full_digit_bitmap;
+        digit_bitmap = full_digit_bitmap;
+        digitBitmaps = engine.digitBitmaps;
+        boxLuma = engine.boxLuma;
+        digitPixels = engine.digitPixels;
+        batchPixels = engine.batchPixels;
+        presenceFilter = new PresenceFilter(presenceThreshold, box_w, box_h);
 
         frameToCropTransform = ImageUtils.getTransformationMatrix(
                         previewWidth, previewHeight,
                         //cropSize, cropSize,
-                        w, h,
+                        box_w, box_h,
                         0, MAINTAIN_ASPECT
         );
 
@@ -103,212 +290,739 @@ public class DetectorActivity extends CameraXActivity {
         frameToCropTransform.invert(cropToFrameTransform);
     }
 
+    /**
+     * Loads the stand-in detectors of a scripted fixture, no models needed, and allocates their
+     * buffers. Only debug builds link the scripted engines. Runs once per process unless the
+     * engine was closed to free memory in the meantime.
+     */
+    private DetectionEngine loadScriptedEngine(String fixture) throws IOException {
+        final DetectionEngine e = new DetectionEngine();
+        final ScriptedDetectors scripted = new ScriptedDetectors(fixture);
+        // the scripted detectors run at the default input sizes
+        final PipelineConfig config = getPipelineConfig();
+        e.input_w = config.boxWidth;
+        e.input_h = config.boxHeight;
+        e.digit_w = config.digitWidth;
+        e.digit_h = config.digitHeight;
+        e.box_detector = scripted.classifier(scripted.createBoxEngine(config));
+        e.box_w = config.proxyWidth();
+        e.box_h = config.proxyHeight();
+        final InferenceEngine digitEngine = scripted.createDigitEngine(config);
+        e.digit_detector = scripted.classifier(digitEngine);
+        e.digit_engine = digitEngine;
+        e.digitSizes = DIGIT_INPUT_SIZES;
+        if (TF_BOX_TILES > 1) {
+            final List<InferenceEngine> engines = new ArrayList<>();
+            for (int i = 0; i < TF_BOX_TILE_WORKERS; i++)
+                engines.add(scripted.createBoxEngine(config));
+            e.tiled_detector = new TiledBoxDetector(config, engines);
+        }
+        LOGGER.i("Using scripted detectors from %s", fixture);
+        return allocateBuffers(e);
+    }
+
+    /**
+     * Loads versions of the box and digit model from the registry, prepares the input sizes of the
+     * pipeline and warms the interpreters up, so the first frame they see doesn't stall. Runs on
+     * the inference thread when the activity starts without a loaded engine, on the model-swap
+     * thread when new versions were installed.
+     */
+    private DetectionEngine loadEngine(
+            ModelRegistry.Model box_model, ModelRegistry.Model digit_model, ModelRegistry.Model shadow_model)
+            throws IOException {
+        final DetectionEngine e = new DetectionEngine();
+        final TFLiteObjectDetectionAPIModel boxModel = modelRegistry.load(box_model);
+        e.input_w = boxModel.getInputWidth();
+        e.input_h = boxModel.getInputHeight();
+        e.box_w = e.input_w;
+        e.box_h = e.input_h;
+        e.box_detector = boxModel;
+        final TFLiteObjectDetectionAPIModel digitModel = modelRegistry.load(digit_model);
+        e.digit_w = digitModel.getInputWidth();
+        e.digit_h = digitModel.getInputHeight();
+        final PipelineConfig config = getPipelineConfig();
+        config.boxWidth = e.input_w;
+        config.boxHeight = e.input_h;
+        config.digitWidth = e.digit_w;
+        config.digitHeight = e.digit_h;
+        // the proxy pass needs the model to run at the reduced size, else it stays at its input size
+        if (config.hasBoxProxy() && boxModel.prepareInputSize(config.proxyWidth(), config.proxyHeight())) {
+            e.box_w = config.proxyWidth();
+            e.box_h = config.proxyHeight();
+        }
+        e.digitSizes = digitModel.prepareInputSizes(DIGIT_INPUT_SIZES);
+        LOGGER.i("Digit batch size: %d", digitModel.prepareBatch(TF_MAX_TAGS));
+        e.digit_detector = digitModel;
+        e.digit_engine = digitModel;
+        boxModel.warmUp();
+        digitModel.warmUp();
+        boxModel.setTraceRecorder(traceRecorder);
+        digitModel.setTraceRecorder(traceRecorder);
+        if (TF_BOX_TILES > 1) {
+            // the tile workers share the cores, one interpreter each
+            final List<InferenceEngine> engines = new ArrayList<>();
+            for (int i = 0; i < TF_BOX_TILE_WORKERS; i++) {
+                final TFLiteObjectDetectionAPIModel tileModel = modelRegistry.load(box_model);
+                tileModel.setNumThreads(Math.max(1, 4 / TF_BOX_TILE_WORKERS));
+                tileModel.warmUp();
+                tileModel.setTraceRecorder(traceRecorder);
+                engines.add(tileModel);
+            }
+            e.tiled_detector = new TiledBoxDetector(config, engines);
+        }
+        if (shadow_model != null) {
+            // the candidate must run at the input sizes of the live model, on one core
+            final TFLiteObjectDetectionAPIModel candidate = modelRegistry.load(shadow_model);
+            if (candidate.getInputWidth() != e.digit_w || candidate.getInputHeight() != e.digit_h)
+                candidate.prepareInputSize(e.digit_w, e.digit_h);
+            candidate.prepareInputSizes(e.digitSizes);
+            candidate.setNumThreads(1);
+            candidate.warmUp();
+            e.shadowReader = new ShadowDigitReader(candidate, TF_SHADOW_FRACTION, MINIMUM_CONFIDENCE);
+        }
+        LOGGER.i("Loaded %s and %s", box_model, digit_model);
+        return allocateBuffers(e);
+    }
+
+    private static DetectionEngine allocateBuffers(DetectionEngine e) {
+        LOGGER.i("Box input size: %dx%d", e.box_w, e.box_h);
+        LOGGER.i("Digit input sizes: %s", Arrays.toString(e.digitSizes));
+
+        e.box_bitmap = Bitmap.createBitmap(e.box_w, e.box_h, Config.ARGB_8888);
+        e.full_digit_bitmap = Bitmap.createBitmap(e.digit_w, e.digit_h, Config.ARGB_8888);
+        e.digitBitmaps = new Bitmap[e.digitSizes.length];
+        for (int i = 0; i < e.digitSizes.length; i++)
+            e.digitBitmaps[i] = Bitmap.createBitmap(e.digitSizes[i], e.digitSizes[i], Config.ARGB_8888);
+        e.boxLuma = new byte[e.box_w * e.box_h];
+        e.digitPixels = new int[e.digit_w * e.digit_h];
+        e.batchPixels = new int[e.digit_w * e.digit_h * TF_MAX_TAGS];
+
+        if (TF_SPECULATIVE_IOU > 0 && !TF_BOX_LUMA && e.digit_engine != null)
+            e.speculativeReader = new SpeculativeDigitReader(e.digit_engine, TF_SPECULATIVE_IOU);
+        return e;
+    }
+
+    private ModelRegistry.Model getShadowModel() {
+        return TF_SHADOW_FRACTION > 0 ? modelRegistry.candidate(DIGIT_MODEL) : null;
+    }
+
+    private static String getEngineKey(
+            ModelRegistry.Model box_model, ModelRegistry.Model digit_model, ModelRegistry.Model shadow_model) {
+        return box_model + ", " + digit_model + (shadow_model != null ? ", shadow " + shadow_model : "");
+    }
+
+    /**
+     * Starts loading newly installed model versions on resume, after an install from the inbox and
+     * every MODEL_CHECK_INTERVAL_MS, and switches to them once they are loaded. Called on the
+     * inference thread before each frame.
+     *
+     * @return false if there is no engine to run the frame on
+     */
+    private boolean syncEngine() {
+        if (engine == null)
+            return false;
+        final long now = SystemClock.uptimeMillis();
+        if (checkModels || (watchModels && now - lastModelCheck >= MODEL_CHECK_INTERVAL_MS)) {
+            checkModels = false;
+            lastModelCheck = now;
+            final ModelRegistry.Model box_model = modelRegistry.current(BOX_MODEL);
+            final ModelRegistry.Model digit_model = modelRegistry.current(DIGIT_MODEL);
+            final ModelRegistry.Model shadow_model = getShadowModel();
+            engine.swapAsync(getEngineKey(box_model, digit_model, shadow_model),
+                    () -> loadEngine(box_model, digit_model, shadow_model));
+        }
+        if (engine.update()) {
+            useEngine();
+            lastResult = null;
+        }
+        return true;
+    }
+
     @Override
-    protected void processImage() {
+    public synchronized void onResume() {
+        super.onResume();
+        final boolean scripted = getIntent().getStringExtra(EXTRA_SCRIPTED_FIXTURE) != null;
+        checkModels = engine != null && !scripted;
+        if (!scripted)
+            startModelInbox();
+    }
 
-        // Skip requests while computing detection
-        if (computingDetection) return;
+    /**
+     * Watches the model inbox, so that models pushed to it are installed and swapped in while the
+     * scan runs. Models delivered while the activity was paused are installed right away.
+     */
+    private void startModelInbox() {
+        final File inbox = new File(getFilesDir(), MODEL_INBOX_DIR);
+        if (!inbox.isDirectory() && !inbox.mkdirs()) {
+            LOGGER.w("Can't create %s", inbox);
+            return;
+        }
+        // events arrive on the observer thread, the install copies the model there
+        modelInbox = new FileObserver(inbox.getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (path != null && path.endsWith(".tflite"))
+                    installModels(inbox);
+            }
+        };
+        modelInbox.startWatching();
+        new Thread(() -> installModels(inbox), "model-install").start();
+    }
 
-        // Start detection process
-        computingDetection = true;
+    /** installs the models in the inbox, the next frame starts loading them */
+    private void installModels(File inbox) {
+        if (!modelRegistry.installInbox(inbox).isEmpty())
+            checkModels = true;
+    }
 
-        final Canvas canvas = new Canvas(box_bitmap);
-        canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    @Override
+    public synchronized void onPause() {
+        if (modelInbox != null) {
+            modelInbox.stopWatching();
+            modelInbox = null;
+        }
+        super.onPause();
+        // the inference worker is paused, the shadow reader may still finish its last read
+        final ShadowDigitReader shadow = shadowReader;
+        if (shadow == null || shadow.getCompared() == 0)
+            return;
+        writeShadowReport(shadow);
+    }
+
+    /**
+     * writes the comparison of the shadow reader to SHADOW_REPORT in the external files directory,
+     * off the calling thread
+     */
+    private void writeShadowReport(ShadowDigitReader shadow) {
+        final File report = new File(getExternalFilesDir(null), SHADOW_REPORT);
+        new Thread(() -> {
+            LOGGER.i(shadow.getStatString());
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(report), "UTF-8")) {
+                shadow.writeCsv(out);
+            } catch (final IOException e) {
+                LOGGER.e(e, "Can't write %s", report);
+            }
+        }, "shadow-report").start();
+    }
+
+    @Override
+    public synchronized void onDestroy() {
+        // the engine stays loaded for the next instance, e.g. after a rotation
+        if (engine != null) {
+            engine.release();
+            engine = null;
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    protected boolean processLuma(Frame frame) {
+        if (!syncEngine())
+            return false;
+        if (!TF_BOX_LUMA)
+            return checkFrame(frame);
+
+        runOnUiThread(() -> setPredictionView("Führe Erkennung durch..."));
+
+        // box detector input straight from the Y plane, same sampling as frameToCropTransform
+        final long scaleStart = TraceRecorder.now();
+        ImageOps.scaleLuma(
+                frame.getYPlane(), frame.getYRowStride(), previewWidth, previewHeight,
+                MAINTAIN_ASPECT, boxLuma, box_w, box_h);
+        traceRecorder.record(TraceRecorder.PREPROCESS, scaleStart);
+
+        // reuse the previous result while the scene has not changed
+        sceneDetector.update(boxLuma, box_w, box_h, box_w);
+        if (reuseLastResult())
+            return false;
+        sceneDetector.recordMiss();
+        startTime = SystemClock.uptimeMillis();
+
+        // first stage of the cascade, frames without a tag-like region skip the box detector
+        presenceScore = presenceFilter.score(boxLuma, box_w, box_h);
+        if (!presenceFilter.accept(presenceScore)) {
+            LOGGER.d(presenceFilter::getStatString);
+            showResult("Erkannt: Nichts");
+            return false;
+        }
+
+        // returns list sorted by confidence
+        final List<Classifier.Recognition> detected_boxes = box_detector.recognizeLumaImage(boxLuma, box_w, box_h);
+        final List<Classifier.Recognition> refined_boxes = refineBoxes(detected_boxes, frame);
+        if (refined_boxes != null) {
+            if (hasBox(refined_boxes)) {
+                lumaBoxes = getConfidentBoxes(refined_boxes);
+                return true;
+            }
+        } else if (hasBox(detected_boxes)) {
+            lumaBoxes = getDetectedBoxes(detected_boxes);
+            return true;
+        }
+
+        // small tags: tiles of the full resolution Y plane
+        if (tiled_detector != null) {
+            final List<Classifier.Recognition> tiled_boxes = toRecognitions(tiled_detector.detectLuma(
+                    frame.getYPlane(), frame.getYRowStride(), previewWidth, previewHeight));
+            if (hasBox(tiled_boxes)) {
+                lumaBoxes = getConfidentBoxes(tiled_boxes);
+                return true;
+            }
+        }
+
+        // case: nothing detected, the frame is dropped before its chroma is decoded
+        showResult("Erkannt: Nichts");
+        return false;
+    }
+
+    @Override
+    protected void processImage() {
+        final List<Classifier.Recognition> detected_boxes;
+        List<List<String>> speculative_reads = null;
+        if (lumaBoxes != null) {
+            // the box detector already ran on the luma plane of this frame
+            detected_boxes = lumaBoxes;
+            lumaBoxes = null;
+        } else {
+            final long scaleStart = TraceRecorder.now();
+            final Canvas canvas = new Canvas(box_bitmap);
+            canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+            traceRecorder.record(TraceRecorder.PREPROCESS, scaleStart);
 
-        runInBackground(() -> {
             runOnUiThread(() -> setPredictionView("Führe Erkennung durch..."));
 
+            // read the predicted tag on the speculative reader thread meanwhile
+            startSpeculation();
+
             // returns list sorted by confidence
-            final List<Classifier.Recognition> detected_boxes = box_detector.recognizeImage(box_bitmap);
+            final List<Classifier.Recognition> boxes = box_detector.recognizeImage(box_bitmap);
+            final List<Classifier.Recognition> refined_boxes = refineBoxes(boxes, null);
+            if (refined_boxes != null && hasBox(refined_boxes)) {
+                detected_boxes = getConfidentBoxes(refined_boxes);
+            } else if (refined_boxes == null && hasBox(boxes)) {
+                detected_boxes = getDetectedBoxes(boxes);
+            } else if (tiled_detector != null) {
+                // small tags: tiles of the full resolution frame, already in frame coordinates
+                detected_boxes = getConfidentBoxes(
+                        toRecognitions(tiled_detector.detect(getRgbBytes(), previewWidth, previewHeight)));
+            } else {
+                detected_boxes = new ArrayList<>();
+            }
+            speculative_reads = finishSpeculation(detected_boxes);
 
             // case: nothing detected
-            if (detected_boxes.isEmpty() || detected_boxes.get(0).getConfidence() < MINIMUM_CONFIDENCE) {
-                runOnUiThread(() -> setPredictionView("Erkannt: Nichts"));
-                computingDetection = false;
+            if (detected_boxes.isEmpty()) {
+                showResult("Erkannt: Nichts");
                 return;
             }
+        }
 
-            final Classifier.Recognition detected_box = getDetectedBox(detected_boxes);
-            cropDetectedBox(detected_box);
+        final List<List<String>> reads = speculative_reads != null
+                ? speculative_reads
+                : readTags(detected_boxes);
 
-            final List<Classifier.Recognition> detected_digits = digit_detector.recognizeImage(digit_bitmap);
+        // return if no tag had at least 3 numbers detected
+        if (reads.isEmpty()) {
+            showResult("Erkannt: Nichts");
+            //switchBackToCallerActivity(new ArrayList<>());
+            return;
+        }
+        LOGGER.d(tagCache::getStatString);
 
-            // keep results with minimum confidence
-            ArrayList<Classifier.Recognition> res = new ArrayList<>();
-            for (final Classifier.Recognition result : detected_digits)
-                if (result.getConfidence() >= MINIMUM_CONFIDENCE)
-                    res.add(result);
+        // remember the confident result and its scene for reuse
+        final StringBuilder result = new StringBuilder();
+        for (final List<String> read : reads) {
+            if (result.length() > 0)
+                result.append('\n');
+            result.append(read.toString());
+        }
+        lastInferenceMs = SystemClock.uptimeMillis() - startTime;
+        lastResult = result.toString();
+        calibratePresence();
+        sceneDetector.setReference();
+        LOGGER.d(sceneDetector::getStatString);
+        LOGGER.d(presenceFilter::getStatString);
 
-            // return if less than 3 numbers detected
-            if (res.size() < 3) {
-                runOnUiThread(() -> setPredictionView("Erkannt: Nichts"));
-                //switchBackToCallerActivity(new ArrayList<>());
-                return;
-            }
+        // printing prediction on view
+        final String prediction = lastResult;
+        showResult("Erkannt: " + prediction);
+        //switchBackToCallerActivity(reads.get(0));
+    }
 
-            // TODO remove boxes with same location
-            // TODO not working for two hidden small numbers
-            ArrayList<String> return_res = getSmallDigits(res);
-            createReturnString(return_res, res);
+    /**
+     * Decides on the Y plane whether a frame of the RGB pipeline is processed, before it is
+     * converted. The scene signature samples the plane in place, the presence filter gets the
+     * plane scaled to the box input, only while it is enabled.
+     *
+     * @return false if the frame is skipped
+     */
+    private boolean checkFrame(Frame frame) {
+        // reuse the previous result while the scene has not changed
+        sceneDetector.update(frame.getYPlane(), previewWidth, previewHeight, frame.getYRowStride());
+        if (reuseLastResult())
+            return false;
+        sceneDetector.recordMiss();
+        startTime = SystemClock.uptimeMillis();
 
-            // printing prediction on view
-            runOnUiThread(() -> setPredictionView("Erkannt: " + return_res.toString()));
-            computingDetection = false;
-            //switchBackToCallerActivity(return_res);
-        });
+        // first stage of the cascade, frames without a tag-like region skip the box detector
+        if (presenceFilter.getThreshold() <= 0 && presenceScores == null)
+            return true;
+        final long scaleStart = TraceRecorder.now();
+        ImageOps.scaleLuma(
+                frame.getYPlane(), frame.getYRowStride(), previewWidth, previewHeight,
+                MAINTAIN_ASPECT, boxLuma, box_w, box_h);
+        traceRecorder.record(TraceRecorder.PREPROCESS, scaleStart);
+        presenceScore = presenceFilter.score(boxLuma, box_w, box_h);
+        if (presenceFilter.accept(presenceScore))
+            return true;
+        LOGGER.d(presenceFilter::getStatString);
+        if (speculativeReader != null)
+            speculativeReader.update(null);
+        showResult("Erkannt: Nichts");
+        return false;
     }
 
     /**
-     * @param detected_box stores detected part of image into bitmap
+     * While calibrating, keeps the presence score of the frame whose tags were just read. Once
+     * there are PRESENCE_CALIBRATION_TAGS of them, sets the threshold that passes the recall
+     * target and stores it for later starts.
      */
-    private void cropDetectedBox(Classifier.Recognition detected_box) {
-        Rect rect = new Rect(
-                (int) detected_box.getLocation().left,
-                (int) detected_box.getLocation().top,
-                (int) detected_box.getLocation().right,
-                (int) detected_box.getLocation().bottom
-        );
+    private void calibratePresence() {
+        if (presenceScores == null)
+            return;
+        presenceScores[presenceScoreCount++] = presenceScore;
+        if (presenceScoreCount < presenceScores.length)
+            return;
+        presenceThreshold = PresenceFilter.calibrate(presenceScores, presenceRecall);
+        presenceScores = null;
+        presenceFilter = new PresenceFilter(presenceThreshold, box_w, box_h);
+        getSharedPreferences(PRESENCE_PREFS, MODE_PRIVATE).edit()
+                .putFloat(PRESENCE_THRESHOLD_KEY, presenceThreshold)
+                .apply();
+        LOGGER.i("Presence threshold calibrated to %.3f for a recall of %.2f on %d tags",
+                presenceThreshold, presenceRecall, PRESENCE_CALIBRATION_TAGS);
+    }
 
-        expandToSquare(rect);
+    /**
+     * shows the previous result if the scene detector found the last updated frame unchanged
+     *
+     * @return true if the previous result was reused
+     */
+    private boolean reuseLastResult() {
+        if (lastResult == null || !sceneDetector.isUnchanged())
+            return false;
+        sceneDetector.recordHit(lastInferenceMs);
+        LOGGER.d(sceneDetector::getStatString);
+        final String reused = lastResult;
+        showResult("Erkannt: " + reused);
+        return true;
+    }
 
-        //  create our resulting bitmap and draw source into it
-        Bitmap tagBitmap = Bitmap.createBitmap(rect.right - rect.left, rect.bottom - rect.top, Bitmap.Config.ARGB_8888);
-        new Canvas(tagBitmap).drawBitmap(rgbFrameBitmap, -rect.left, -rect.top, null);
+    /**
+     * crops the tag box predicted from the previous frames into the digit input and starts reading
+     * it on the speculative reader thread, digit_detector must not run until finishSpeculation
+     */
+    private void startSpeculation() {
+        if (speculativeReader == null)
+            return;
+        final Box predicted = speculativeReader.predict(previewWidth, previewHeight);
+        if (predicted == null)
+            return;
+        final int[] rect = {(int) predicted.left, (int) predicted.top, (int) predicted.right, (int) predicted.bottom};
+        final int rotation = TagGeometry.expandToSquare(rect, rgbFrameBitmap.getWidth(), rgbFrameBitmap.getHeight());
+        if (rect[TagGeometry.RIGHT] <= rect[TagGeometry.LEFT] || rect[TagGeometry.BOTTOM] <= rect[TagGeometry.TOP])
+            return;
 
-        // rotation + 90 caused by portrait mode
-        Matrix frameToBoxTransform = ImageUtils.getTransformationMatrix(
-                tagBitmap.getWidth(), tagBitmap.getHeight(), w2, h2,
-                getOrientationDegrees() + tagRotation, MAINTAIN_ASPECT);
-        frameToBoxTransform.invert(new Matrix());
+        digit_bitmap = getDigitBitmap(TagGeometry.chooseInputSize(Math.max(
+                rect[TagGeometry.RIGHT] - rect[TagGeometry.LEFT],
+                rect[TagGeometry.BOTTOM] - rect[TagGeometry.TOP]), digitSizes, Math.min(digit_w, digit_h)));
+        cropDetectedBox(rect, rotation);
+        final int digitWidth = digit_bitmap.getWidth();
+        final int digitHeight = digit_bitmap.getHeight();
+        digit_bitmap.getPixels(digitPixels, 0, digitWidth, 0, 0, digitWidth, digitHeight);
+        speculativeReader.start(predicted, digitPixels, digitWidth, digitHeight);
+    }
+
+    /**
+     * waits for the speculative read and keeps it if this frame has a single tag box that overlaps
+     * the predicted one, frames with more tags read them all in one batch
+     *
+     * @param detected_boxes tag boxes in frame coordinates, most confident first
+     * @return the digit layout of the committed read, empty if it had less than 3 numbers, null if
+     * there was no read or it was discarded
+     */
+    private List<List<String>> finishSpeculation(List<Classifier.Recognition> detected_boxes) {
+        if (speculativeReader == null)
+            return null;
+        final RectF location = detected_boxes.isEmpty() ? null : detected_boxes.get(0).getLocation();
+        final Box box = location != null ? new Box(location.left, location.top, location.right, location.bottom) : null;
+        speculativeReader.update(box);
+        if (!speculativeReader.isRunning())
+            return null;
 
-        // draw transformed bitmap onto croppedBitmap
-        new Canvas(digit_bitmap).drawBitmap(tagBitmap, frameToBoxTransform, null);
+        final List<Detection> digits = speculativeReader.finish(detected_boxes.size() == 1 ? box : null);
+        LOGGER.d(speculativeReader::getStatString);
+        if (digits == null)
+            return null;
+        final List<String> layout = DigitLayout.parse(digits, MINIMUM_CONFIDENCE);
+        return layout != null ? Collections.singletonList(layout) : new ArrayList<>();
+    }
+
+    private static List<Classifier.Recognition> toRecognitions(List<Detection> detections) {
+        final List<Classifier.Recognition> recognitions = new ArrayList<>(detections.size());
+        for (final Detection detection : detections)
+            recognitions.add(Classifier.Recognition.fromDetection(detection));
+        return recognitions;
+    }
+
+    // input sizes are the defaults of PipelineConfig, the models set their own
+    private static PipelineConfig getPipelineConfig() {
+        final PipelineConfig config = new PipelineConfig();
+        config.minConfidence = MINIMUM_CONFIDENCE;
+        config.maintainAspect = MAINTAIN_ASPECT;
+        config.boxLuma = TF_BOX_LUMA;
+        config.boxTiles = TF_BOX_TILES;
+        config.boxTileWorkers = TF_BOX_TILE_WORKERS;
+        config.maxTags = TF_MAX_TAGS;
+        config.boxProxyScale = TF_BOX_PROXY_SCALE;
+        config.boxProxyConfidence = BOX_PROXY_CONFIDENCE;
+        return config;
     }
 
     /**
-     * @param r adjust box coordinates to crop a square for better detection
+     * second pass of coarse-to-fine detection, runs the box detector at the proxy size on the crop
+     * of the frame around the most confident proxy box, see TagGeometry.refineRegion. Proxy boxes
+     * outside the crop are kept
+     *
+     * @param boxes proxy pass results in box input coordinates, sorted by confidence
+     * @param frame frame to crop from its Y plane, null to crop from rgbFrameBitmap
+     * @return the boxes in frame coordinates sorted by confidence, null if there was no candidate
+     * or one too large to gain from the refinement
      */
-    private void expandToSquare(Rect r) {
-        // detection caused coordinate rotation by 90 deg clockwise, width <-> height etc..
-        int delta = (r.bottom - r.top) - (r.right - r.left);
-        int upperBound = rgbFrameBitmap.getWidth();
-        int min = r.left;
-        int max = r.right;
-        tagRotation = 90;
-
-        // width smaller than height
-        if (delta < 0) {
-            tagRotation = 0;
-            upperBound = rgbFrameBitmap.getHeight();
-            delta = -delta;
-            min = r.top;
-            max = r.bottom;
-        }
+    private List<Classifier.Recognition> refineBoxes(List<Classifier.Recognition> boxes, Frame frame) {
+        if (box_w == input_w || boxes.isEmpty() || boxes.get(0).getConfidence() < BOX_PROXY_CONFIDENCE)
+            return null;
+        final RectF candidate = boxes.get(0).getLocation();
+        cropToFrameTransform.mapRect(candidate);
+        if (!TagGeometry.refineRegion(
+                new Box(candidate.left, candidate.top, candidate.right, candidate.bottom),
+                previewWidth, previewHeight, TF_BOX_PROXY_SCALE, BOX_REFINE_MARGIN, refineRect))
+            return null;
+        final int left = refineRect[TagGeometry.LEFT];
+        final int top = refineRect[TagGeometry.TOP];
+        final int region_w = refineRect[TagGeometry.RIGHT] - left;
+        final int region_h = refineRect[TagGeometry.BOTTOM] - top;
 
-        if (max + delta < upperBound)
-            max += delta;
-        else {
-            delta -= upperBound - max;
-            max = upperBound;
-            if (min - delta > 0)
-                min -= delta;
-            else
-                min = 0;
+        // proxy boxes the crop doesn't cover
+        final List<Classifier.Recognition> refined_boxes = new ArrayList<>();
+        for (final Classifier.Recognition box : boxes) {
+            final RectF location = box.getLocation();
+            cropToFrameTransform.mapRect(location);
+            if (!new RectF(left, top, left + region_w, top + region_h).contains(location.centerX(), location.centerY())) {
+                box.setLocation(location);
+                refined_boxes.add(box);
+            }
         }
 
-        if (upperBound == rgbFrameBitmap.getHeight()) {
-            r.top = min;
-            r.bottom = max;
+        final Matrix frameToRegionTransform = ImageUtils.getTransformationMatrix(
+                region_w, region_h, box_w, box_h, 0, MAINTAIN_ASPECT);
+        frameToRegionTransform.preTranslate(-left, -top);
+        final List<Classifier.Recognition> region_boxes;
+        if (frame != null) {
+            final ByteBuffer region = frame.getYPlane().duplicate();
+            region.position(region.position() + top * frame.getYRowStride() + left);
+            ImageOps.scaleLuma(
+                    region, frame.getYRowStride(), region_w, region_h, MAINTAIN_ASPECT, boxLuma, box_w, box_h);
+            region_boxes = box_detector.recognizeLumaImage(boxLuma, box_w, box_h);
         } else {
-            r.left = min;
-            r.right = max;
+            new Canvas(box_bitmap).drawBitmap(rgbFrameBitmap, frameToRegionTransform, null);
+            region_boxes = box_detector.recognizeImage(box_bitmap);
         }
+
+        final Matrix regionToFrameTransform = new Matrix();
+        frameToRegionTransform.invert(regionToFrameTransform);
+        for (final Classifier.Recognition box : region_boxes) {
+            final RectF location = box.getLocation();
+            regionToFrameTransform.mapRect(location);
+            box.setLocation(location);
+            refined_boxes.add(box);
+        }
+        Collections.sort(refined_boxes, (a, b) -> Float.compare(b.getConfidence(), a.getConfidence()));
+        return refined_boxes;
+    }
+
+    private static boolean hasBox(List<Classifier.Recognition> detected_boxes) {
+        return !detected_boxes.isEmpty() && detected_boxes.get(0).getConfidence() >= MINIMUM_CONFIDENCE;
     }
 
     /**
-     * @param res detected results
-     * @return box with mapped location
+     * crops every tag and reads them with one digit detector call, tags found in the cache of
+     * recent reads only run the detector when the cache is verified
+     *
+     * @param detected_boxes tag boxes in frame coordinates, most confident first
+     * @return digit layouts of the tags read, in the order of their boxes
      */
-    private Classifier.Recognition getDetectedBox(List<Classifier.Recognition> res) {
-        Classifier.Recognition detected_box = res.get(0);
-        RectF location = detected_box.getLocation();
-        cropToFrameTransform.mapRect(location);
-        detected_box.setLocation(location);
-        return detected_box;
-    }
-
-    private void sortDigitsByX(ArrayList<Classifier.Recognition> al) {
-        Collections.sort(al, (r1, r2) ->
-                Float.compare(
-                        r1.getLocation().centerX(),
-                        r2.getLocation().centerX()
-                )
-        );
+    private List<List<String>> readTags(List<Classifier.Recognition> detected_boxes) {
+        final int count = detected_boxes.size();
+        final int[][] rects = new int[count][];
+        final int[] rotations = new int[count];
+        int cropSize = 0;
+        for (int i = 0; i < count; i++) {
+            final RectF location = detected_boxes.get(i).getLocation();
+            rects[i] = new int[] {(int) location.left, (int) location.top, (int) location.right, (int) location.bottom};
+
+            // adjust box coordinates to crop a square for better detection
+            rotations[i] = TagGeometry.expandToSquare(rects[i], rgbFrameBitmap.getWidth(), rgbFrameBitmap.getHeight());
+            cropSize = Math.max(cropSize, Math.max(
+                    rects[i][TagGeometry.RIGHT] - rects[i][TagGeometry.LEFT],
+                    rects[i][TagGeometry.BOTTOM] - rects[i][TagGeometry.TOP]));
+        }
+
+        // smallest digit input that keeps the native pixel density of the largest tag, the batch
+        // shares one input size
+        digit_bitmap = getDigitBitmap(TagGeometry.chooseInputSize(cropSize, digitSizes, Math.min(digit_w, digit_h)));
+        final int digitWidth = digit_bitmap.getWidth();
+        final int digitHeight = digit_bitmap.getHeight();
+        final int digitSize = digitWidth * digitHeight;
+
+        // position of each tag in the batch, -1 if its read comes from the cache
+        final int[] slots = new int[count];
+        final long[] tagHashes = new long[count];
+        final List<List<String>> cachedReads = new ArrayList<>(count);
+        int batch = 0;
+        final long cropStart = TraceRecorder.now();
+        for (int i = 0; i < count; i++) {
+            if (rects[i][TagGeometry.RIGHT] <= rects[i][TagGeometry.LEFT]
+                    || rects[i][TagGeometry.BOTTOM] <= rects[i][TagGeometry.TOP]) {
+                slots[i] = -1;
+                cachedReads.add(null);
+                continue;
+            }
+            cropDetectedBox(rects[i], rotations[i]);
+
+            // look up the tag crop in the cache of recent reads
+            digit_bitmap.getPixels(digitPixels, 0, digitWidth, 0, 0, digitWidth, digitHeight);
+            tagHashes[i] = ImageUtils.computeTagHash(digitPixels, digitWidth, digitHeight);
+            final List<String> cached = tagCache.get(tagHashes[i]);
+            cachedReads.add(cached);
+            if (cached != null && !tagCache.shouldVerify()) {
+                slots[i] = -1;
+            } else {
+                slots[i] = batch;
+                System.arraycopy(digitPixels, 0, batchPixels, batch * digitSize, digitSize);
+                batch++;
+            }
+        }
+
+        traceRecorder.record(TraceRecorder.PREPROCESS, cropStart);
+
+        final long digitStart = System.nanoTime();
+        final List<List<Classifier.Recognition>> detected_digits = batch > 0
+                ? digit_detector.recognizeImageBatch(batchPixels, batch, digitWidth, digitHeight)
+                : new ArrayList<>();
+        final long digitNs = System.nanoTime() - digitStart;
+
+        final long parseStart = TraceRecorder.now();
+        final List<List<String>> reads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final List<String> cached = cachedReads.get(i);
+            if (slots[i] < 0) {
+                if (cached != null)
+                    reads.add(cached);
+                continue;
+            }
+
+            // skip the tag if less than 3 numbers detected
+            final ArrayList<String> layout = parseDigits(detected_digits.get(slots[i]));
+            // compare single reads with the candidate digit model, off the inference thread
+            if (shadowReader != null && batch == 1)
+                shadowReader.offer(batchPixels, digitWidth, digitHeight, layout, digitNs);
+            if (layout == null)
+                continue;
+
+            if (cached != null)
+                tagCache.verify(tagHashes[i], cached, layout);
+            else
+                tagCache.put(tagHashes[i], layout);
+            reads.add(layout);
+        }
+        traceRecorder.record(TraceRecorder.POSTPROCESS, parseStart);
+        return reads;
     }
 
     /**
-     * sort recognized items by vertical position weighted by
-     * digitHeight*2 to detect the small numbers first
+     * @param detected_digits digit detector results of one tag
+     * @return digit layout, null if less than 3 numbers were detected
      */
-    private void sortDigitsByYAndHeight(ArrayList<Classifier.Recognition> al) {
-        Collections.sort(al, (r1, r2) ->
-                Float.compare(
-                        r1.getLocation().centerY() + r1.getLocation().height() * 2,
-                        r2.getLocation().centerY() + r2.getLocation().height() * 2
-                )
-        );
+    private static ArrayList<String> parseDigits(List<Classifier.Recognition> detected_digits) {
+        final ArrayList<Detection> digits = new ArrayList<>(detected_digits.size());
+        for (final Classifier.Recognition result : detected_digits)
+            digits.add(result.toDetection());
+        return DigitLayout.parse(digits, MINIMUM_CONFIDENCE);
     }
 
-    private ArrayList<String> getSmallDigits(ArrayList<Classifier.Recognition> res) {
-        ArrayList<String> ret_string = new ArrayList<>();
-
-        sortDigitsByYAndHeight(res);
-        float num_height = res.get(0).getLocation().height();
-        float pos1 = res.get(0).getLocation().centerY() + res.get(0).getLocation().centerX();
-        float pos2 = res.get(1).getLocation().centerY() + res.get(1).getLocation().centerX();
-        float pos3 = res.get(2).getLocation().centerY() + res.get(2).getLocation().centerX();
-
-        if (Math.abs(pos1 - pos2) > num_height) {
-            // one small one big number
-            ret_string.add(res.remove(0).getTitle());
-            ret_string.add("-");
-        } else if (Math.abs(pos1 - pos3) > num_height) {
-            // two small numbers
-            int pos = 0;
-            if (res.get(1).getLocation().centerX() < res.get(0).getLocation().centerX())
-                pos = 1;
-            ret_string.add(res.remove(pos).getTitle());
-            ret_string.add(res.remove(0).getTitle());
-        } else {
-            // no small number, add two null elements for the unrecognized number
-            ret_string.add("-");
-            ret_string.add("-");
-        }
-        return ret_string;
+    /**
+     * draws the square crop of a tag into digit_bitmap
+     *
+     * @param rect square crop in frame coordinates
+     * @param tagRotation rotation of the tag from TagGeometry.expandToSquare
+     */
+    private void cropDetectedBox(int[] rect, int tagRotation) {
+        final int left = rect[TagGeometry.LEFT];
+        final int top = rect[TagGeometry.TOP];
+        final int tag_w = rect[TagGeometry.RIGHT] - left;
+        final int tag_h = rect[TagGeometry.BOTTOM] - top;
+
+        // rotation + 90 caused by portrait mode
+        ImageUtils.getTransformationMatrix(
+                tag_w, tag_h, digit_bitmap.getWidth(), digit_bitmap.getHeight(),
+                getOrientationDegrees() + tagRotation, MAINTAIN_ASPECT, tagToDigitTransform);
+
+        // draw the crop of the frame straight into digit_bitmap, clipped to the tag, so no bitmap
+        // of the tag is needed in between
+        digitCanvas.setBitmap(digit_bitmap);
+        digitCanvas.save();
+        digitCanvas.concat(tagToDigitTransform);
+        digitCanvas.clipRect(0, 0, tag_w, tag_h);
+        digitCanvas.drawBitmap(rgbFrameBitmap, -left, -top, null);
+        digitCanvas.restore();
     }
 
-    private void createReturnString(ArrayList<String> return_res, ArrayList<Classifier.Recognition> res) {
-        float comp_height = -1;
-        sortDigitsByX(res);
+    /**
+     * @param size edge length chosen by TagGeometry.chooseInputSize
+     * @return the digit input bitmap of that size
+     */
+    private Bitmap getDigitBitmap(int size) {
+        for (int i = 0; i < digitSizes.length; i++)
+            if (digitSizes[i] == size)
+                return digitBitmaps[i];
+        return full_digit_bitmap;
+    }
 
-        for (int i = 0; i < 7; i++) {
-            if (res.isEmpty()) {
-                return_res.add("-");
-                continue;
-            }
+    /**
+     * @param res detected results, sorted by confidence
+     * @return the confident boxes, at most TF_MAX_TAGS, with mapped location
+     */
+    private List<Classifier.Recognition> getDetectedBoxes(List<Classifier.Recognition> res) {
+        final List<Classifier.Recognition> detected_boxes = getConfidentBoxes(res);
+        for (final Classifier.Recognition detected_box : detected_boxes) {
+            RectF location = detected_box.getLocation();
+            cropToFrameTransform.mapRect(location);
+            detected_box.setLocation(location);
+        }
+        return detected_boxes;
+    }
 
-            Classifier.Recognition result = res.get(0);
-
-            // if number height smaller than 3/4 of the previous number, it is a small number
-            if (result.getLocation().height() < comp_height * 0.75) {
-                if (return_res.size() < 6) {
-                    return_res.add("-");
-                    continue;
-                }
-            } // initialize the height to compare
-            else if (comp_height == -1)
-                comp_height = result.getLocation().height();
-            return_res.add(res.remove(0).getTitle());
+    /**
+     * @param res detected results, sorted by confidence
+     * @return the boxes above MINIMUM_CONFIDENCE, at most TF_MAX_TAGS
+     */
+    private static List<Classifier.Recognition> getConfidentBoxes(List<Classifier.Recognition> res) {
+        final List<Classifier.Recognition> boxes = new ArrayList<>();
+        for (final Classifier.Recognition box : res) {
+            if (boxes.size() == TF_MAX_TAGS || box.getConfidence() < MINIMUM_CONFIDENCE)
+                break;
+            boxes.add(box);
         }
+        return boxes;
     }
 }
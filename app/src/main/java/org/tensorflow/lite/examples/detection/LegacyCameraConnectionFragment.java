@@ -51,6 +51,8 @@ public class LegacyCameraConnectionFragment extends Fragment {
   private Camera camera;
   private Camera.PreviewCallback imageListener;
   private Size desiredSize;
+  /** Number of preview buffers rotated through the camera. */
+  private int numBuffers;
   /** The layout identifier to inflate for this Fragment. */
   private int layout;
   /** An {@link AutoFitTextureView} for camera preview. */
@@ -94,7 +96,11 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
           camera.setPreviewCallbackWithBuffer(imageListener);
           Camera.Size s = camera.getParameters().getPreviewSize();
-          camera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+          // Several buffers let the camera keep filling frames while one is being converted.
+          final int bufferSize = ImageUtils.getYUVByteSize(s.height, s.width);
+          for (int b = 0; b < numBuffers; ++b) {
+            camera.addCallbackBuffer(new byte[bufferSize]);
+          }
 
           textureView.setAspectRatio(s.height, s.width);
 
@@ -118,9 +124,21 @@ public class LegacyCameraConnectionFragment extends Fragment {
 
   public LegacyCameraConnectionFragment(
       final Camera.PreviewCallback imageListener, final int layout, final Size desiredSize) {
+    this(imageListener, layout, desiredSize, 1);
+  }
+
+  /**
+   * @param numBuffers Number of preview callback buffers rotated through the camera.
+   */
+  public LegacyCameraConnectionFragment(
+      final Camera.PreviewCallback imageListener,
+      final int layout,
+      final Size desiredSize,
+      final int numBuffers) {
     this.imageListener = imageListener;
     this.layout = layout;
     this.desiredSize = desiredSize;
+    this.numBuffers = Math.max(1, numBuffers);
   }
 
   @Override
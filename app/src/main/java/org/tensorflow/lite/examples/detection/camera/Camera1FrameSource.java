@@ -0,0 +1,131 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.camera;
+
+import android.hardware.Camera;
+import android.os.SystemClock;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FramePool;
+import org.tensorflow.lite.examples.detection.core.FrameSource;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * {@link FrameSource} backed by the NV21 preview callback of the legacy camera API. Releasing a
+ * frame hands its preview buffer back to the camera.
+ */
+public class Camera1FrameSource implements FrameSource, Camera.PreviewCallback {
+  private static final Logger LOGGER = new Logger();
+
+  /** Maximum number of preview buffers rotated through the camera. */
+  public static final int MAX_BUFFERS = 8;
+
+  private final FramePool pool;
+  private volatile Listener listener;
+  private volatile Camera camera;
+  private int width = 0;
+  private int height = 0;
+
+  // Plane views of each preview buffer, created once per buffer.
+  private final byte[][] buffers = new byte[MAX_BUFFERS][];
+  private final ByteBuffer[][] planes = new ByteBuffer[MAX_BUFFERS][];
+
+  /** @param numBuffers Number of preview buffers registered with the camera. */
+  public Camera1FrameSource(final int numBuffers) {
+    pool = new FramePool(Math.min(numBuffers, MAX_BUFFERS), this::returnBuffer);
+  }
+
+  @Override
+  public void start(final Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void stop() {
+    listener = null;
+  }
+
+  @Override
+  public String getName() {
+    return "Camera1";
+  }
+
+  @Override
+  public void onPreviewFrame(final byte[] bytes, final Camera camera) {
+    this.camera = camera;
+    final Listener l = listener;
+    final Frame frame = l != null ? pool.obtain() : null;
+    if (frame == null) {
+      camera.addCallbackBuffer(bytes);
+      return;
+    }
+
+    if (width == 0) {
+      final Camera.Size previewSize = camera.getParameters().getPreviewSize();
+      width = previewSize.width;
+      height = previewSize.height;
+    }
+
+    // NV21: full resolution luma followed by interleaved V/U samples.
+    final ByteBuffer[] p = getPlanes(bytes);
+    frame.set(
+        p[0], p[1], p[2], width, height, width, width, 2, 90, SystemClock.elapsedRealtimeNanos(),
+        bytes);
+    l.onFrame(frame);
+  }
+
+  private ByteBuffer[] getPlanes(final byte[] bytes) {
+    int free = -1;
+    for (int i = 0; i < MAX_BUFFERS; ++i) {
+      if (buffers[i] == bytes) {
+        return planes[i];
+      }
+      if (buffers[i] == null && free < 0) {
+        free = i;
+      }
+    }
+
+    final int frameSize = width * height;
+    final ByteBuffer[] p = {
+      ByteBuffer.wrap(bytes, 0, frameSize).slice(),
+      sliceAt(bytes, frameSize + 1),
+      sliceAt(bytes, frameSize)
+    };
+    if (free >= 0) {
+      buffers[free] = bytes;
+      planes[free] = p;
+    }
+    return p;
+  }
+
+  private static ByteBuffer sliceAt(final byte[] bytes, final int offset) {
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    buffer.position(offset);
+    return buffer.slice();
+  }
+
+  private void returnBuffer(final Frame frame) {
+    final Camera c = camera;
+    if (c == null) {
+      return;
+    }
+    try {
+      c.addCallbackBuffer((byte[]) frame.getPayload());
+    } catch (final RuntimeException e) {
+      LOGGER.w("Camera released before the preview buffer was returned");
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.camera;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.util.Size;
+import org.tensorflow.lite.examples.detection.CameraConnectionFragment;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FramePool;
+import org.tensorflow.lite.examples.detection.core.FrameSource;
+
+/**
+ * {@link FrameSource} backed by the YUV_420_888 {@link ImageReader} of a {@link
+ * CameraConnectionFragment}. Frames wrap the Image planes without copying them.
+ */
+public class Camera2FrameSource
+    implements FrameSource,
+        ImageReader.OnImageAvailableListener,
+        CameraConnectionFragment.ConnectionCallback {
+  // The reader is created with 2 max images and acquireLatestImage needs one to spare.
+  private static final int POOL_SIZE = 1;
+
+  private final FramePool pool =
+      new FramePool(POOL_SIZE, frame -> ((Image) frame.getPayload()).close());
+  private volatile Listener listener;
+  private volatile int sensorOrientation = 90;
+
+  @Override
+  public void start(final Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void stop() {
+    listener = null;
+  }
+
+  @Override
+  public String getName() {
+    return "Camera2";
+  }
+
+  @Override
+  public void onPreviewSizeChosen(final Size size, final int cameraRotation) {
+    sensorOrientation = cameraRotation;
+  }
+
+  @Override
+  public void onImageAvailable(final ImageReader reader) {
+    final Image image = reader.acquireLatestImage();
+    if (image == null) {
+      return;
+    }
+
+    final Listener l = listener;
+    final Frame frame = l != null ? pool.obtain() : null;
+    if (frame == null) {
+      image.close();
+      return;
+    }
+
+    final Image.Plane[] planes = image.getPlanes();
+    frame.set(
+        planes[0].getBuffer(),
+        planes[1].getBuffer(),
+        planes[2].getBuffer(),
+        image.getWidth(),
+        image.getHeight(),
+        planes[0].getRowStride(),
+        planes[1].getRowStride(),
+        planes[1].getPixelStride(),
+        sensorOrientation,
+        image.getTimestamp(),
+        image);
+    l.onFrame(frame);
+  }
+}
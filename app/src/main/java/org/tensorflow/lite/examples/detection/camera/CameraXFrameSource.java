@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.camera;
+
+import android.util.Size;
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FramePool;
+import org.tensorflow.lite.examples.detection.core.FrameSource;
+
+/** {@link FrameSource} backed by a CameraX {@link ImageAnalysis} use case. */
+public class CameraXFrameSource implements FrameSource, ImageAnalysis.Analyzer {
+  // ImageAnalysis keeps only the latest image, one more may be in flight to the listener.
+  private static final int POOL_SIZE = 2;
+
+  private final ImageAnalysis imageAnalysis;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final FramePool pool =
+      new FramePool(POOL_SIZE, frame -> ((ImageProxy) frame.getPayload()).close());
+  private volatile Listener listener;
+
+  /**
+   * @param targetResolution Analysis resolution in the coordinate frame of the display.
+   */
+  public CameraXFrameSource(final Size targetResolution) {
+    imageAnalysis =
+        new ImageAnalysis.Builder()
+            .setTargetResolution(targetResolution)
+            .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+            .build();
+  }
+
+  /** The use case to bind to the camera lifecycle together with the preview. */
+  public ImageAnalysis getUseCase() {
+    return imageAnalysis;
+  }
+
+  @Override
+  public void start(final Listener listener) {
+    this.listener = listener;
+    imageAnalysis.setAnalyzer(executor, this);
+  }
+
+  @Override
+  public void stop() {
+    imageAnalysis.clearAnalyzer();
+    listener = null;
+  }
+
+  @Override
+  public String getName() {
+    return "CameraX";
+  }
+
+  @Override
+  public void analyze(@NonNull final ImageProxy image) {
+    final Listener l = listener;
+    final Frame frame = l != null ? pool.obtain() : null;
+    if (frame == null) {
+      image.close();
+      return;
+    }
+
+    final ImageProxy.PlaneProxy[] planes = image.getPlanes();
+    frame.set(
+        planes[0].getBuffer(),
+        planes[1].getBuffer(),
+        planes[2].getBuffer(),
+        image.getWidth(),
+        image.getHeight(),
+        planes[0].getRowStride(),
+        planes[1].getRowStride(),
+        planes[1].getPixelStride(),
+        image.getImageInfo().getRotationDegrees(),
+        image.getImageInfo().getTimestamp(),
+        image);
+    l.onFrame(frame);
+  }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring of preallocated frame slots.
+ *
+ * <p>The producer calls {@link #claim()}, fills the returned slot and then {@link #publish()}. The
+ * consumer calls {@link #peek()}, processes the slot and then {@link #release()}. Neither side
+ * locks or allocates; if all slots are in use {@link #claim()} returns null and the producer is
+ * expected to drop the frame.
+ */
+public class FrameRing<T> {
+  /** Creates the preallocated slots. */
+  public interface Factory<T> {
+    T create();
+  }
+
+  private final Object[] slots;
+  private final int mask;
+
+  // Index of the next slot to be consumed, only advanced by the consumer.
+  private final AtomicLong head = new AtomicLong();
+  // Index of the next slot to be published, only advanced by the producer.
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * @param capacity Number of slots, must be a power of two.
+   * @param factory Creates the slot objects.
+   */
+  public FrameRing(final int capacity, final Factory<T> factory) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    slots = new Object[capacity];
+    mask = capacity - 1;
+    for (int i = 0; i < capacity; ++i) {
+      slots[i] = factory.create();
+    }
+  }
+
+  /** Producer: returns the next free slot, or null if the ring is full. */
+  public T claim() {
+    final long t = tail.get();
+    if (t - head.get() >= slots.length) {
+      return null;
+    }
+    return slot(t);
+  }
+
+  /** Producer: hands the slot returned by {@link #claim()} to the consumer. */
+  public void publish() {
+    tail.lazySet(tail.get() + 1);
+  }
+
+  /** Consumer: returns the oldest published slot, or null if the ring is empty. */
+  public T peek() {
+    final long h = head.get();
+    if (h >= tail.get()) {
+      return null;
+    }
+    return slot(h);
+  }
+
+  /** Consumer: returns the slot returned by {@link #peek()} to the producer. */
+  public void release() {
+    head.lazySet(head.get() + 1);
+  }
+
+  public boolean isEmpty() {
+    return head.get() >= tail.get();
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T slot(final long index) {
+    return (T) slots[(int) (index & mask)];
+  }
+}
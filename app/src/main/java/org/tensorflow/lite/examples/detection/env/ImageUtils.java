@@ -20,13 +20,11 @@ import android.graphics.Matrix;
 import android.os.Environment;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.examples.detection.core.LutYuvConverter;
 
 /** Utility class for manipulating images. */
 public class ImageUtils {
-  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
-  // are normalized to eight bits.
-  static final int kMaxChannelValue = 262143;
-
   @SuppressWarnings("unused")
   private static final Logger LOGGER = new Logger();
 
@@ -86,46 +84,7 @@ public class ImageUtils {
   }
 
   public static void convertYUV420SPToARGB8888(byte[] input, int width, int height, int[] output) {
-    final int frameSize = width * height;
-    for (int j = 0, yp = 0; j < height; j++) {
-      int uvp = frameSize + (j >> 1) * width;
-      int u = 0;
-      int v = 0;
-
-      for (int i = 0; i < width; i++, yp++) {
-        int y = 0xff & input[yp];
-        if ((i & 1) == 0) {
-          v = 0xff & input[uvp++];
-          u = 0xff & input[uvp++];
-        }
-
-        output[yp] = YUV2RGB(y, u, v);
-      }
-    }
-  }
-
-  private static int YUV2RGB(int y, int u, int v) {
-    // Adjust and check YUV values
-    y = (y - 16) < 0 ? 0 : (y - 16);
-    u -= 128;
-    v -= 128;
-
-    // This is the floating point equivalent. We do the conversion in integer
-    // because some Android devices do not have floating point in hardware.
-    // nR = (int)(1.164 * nY + 2.018 * nU);
-    // nG = (int)(1.164 * nY - 0.813 * nV - 0.391 * nU);
-    // nB = (int)(1.164 * nY + 1.596 * nV);
-    int y1192 = 1192 * y;
-    int r = (y1192 + 1634 * v);
-    int g = (y1192 - 833 * v - 400 * u);
-    int b = (y1192 + 2066 * u);
-
-    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
-    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
-    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
-    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
-
-    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+    LutYuvConverter.convertYUV420SPToARGB8888(input, width, height, output);
   }
 
   public static void convertYUV420ToARGB8888(
@@ -138,17 +97,71 @@ public class ImageUtils {
       int uvRowStride,
       int uvPixelStride,
       int[] out) {
-    int yp = 0;
-    for (int j = 0; j < height; j++) {
-      int pY = yRowStride * j;
-      int pUV = uvRowStride * (j >> 1);
+    LutYuvConverter.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+  }
+
+  /** Converts straight from the plane buffers of an Image or ImageProxy, without copying them. */
+  public static void convertYUV420ToARGB8888(
+      ByteBuffer yPlane,
+      ByteBuffer uPlane,
+      ByteBuffer vPlane,
+      int width,
+      int height,
+      int yRowStride,
+      int uvRowStride,
+      int uvPixelStride,
+      int[] out) {
+    LutYuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+  }
 
-      for (int i = 0; i < width; i++) {
-        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+  /**
+   * Computes the cache key of a tag crop: a difference hash of a 33x32 luma grid, about six cells
+   * per digit of a 600x600 crop, folded into 64 bits. The bits are not comparable by Hamming
+   * distance like those of a plain difference hash, only equal keys stand for the same crop, so two
+   * tags that differ in a single digit get different keys.
+   *
+   * @param argb Pixels as returned by Bitmap.getPixels.
+   * @param width Width of the image.
+   * @param height Height of the image.
+   */
+  public static long computeTagHash(final int[] argb, final int width, final int height) {
+    final int cols = 33;
+    final int rows = 32;
+    final int samples = 2;
+    final int[] cells = new int[cols];
+    long hash = 0xcbf29ce484222325L;
+    for (int cy = 0; cy < rows; ++cy) {
+      for (int cx = 0; cx < cols; ++cx) {
+        int sum = 0;
+        for (int sy = 0; sy < samples; ++sy) {
+          final int y = ((cy * samples + sy) * height) / (rows * samples);
+          for (int sx = 0; sx < samples; ++sx) {
+            final int x = ((cx * samples + sx) * width) / (cols * samples);
+            final int p = argb[y * width + x];
+            sum += 77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF);
+          }
+        }
+        cells[cx] = sum;
+      }
 
-        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+      // one 32 bit row of the difference hash, mixed into the key
+      int bits = 0;
+      for (int cx = 0; cx < cols - 1; ++cx) {
+        bits <<= 1;
+        if (cells[cx] < cells[cx + 1]) {
+          bits |= 1;
+        }
       }
+      hash = (hash ^ (bits & 0xFFFFFFFFL)) * 0x100000001b3L;
+      hash ^= hash >>> 29;
     }
+    // final avalanche, so the keys of similar crops share no structure
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
   }
 
   /**
@@ -172,7 +185,25 @@ public class ImageUtils {
       final int dstHeight,
       final int applyRotation,
       final boolean maintainAspectRatio) {
-    final Matrix matrix = new Matrix();
+    return getTransformationMatrix(
+        srcWidth, srcHeight, dstWidth, dstHeight, applyRotation, maintainAspectRatio, new Matrix());
+  }
+
+  /**
+   * Like {@link #getTransformationMatrix(int, int, int, int, int, boolean)}, but overwrites the
+   * given matrix, for callers that compute a transformation per frame.
+   *
+   * @return matrix
+   */
+  public static Matrix getTransformationMatrix(
+      final int srcWidth,
+      final int srcHeight,
+      final int dstWidth,
+      final int dstHeight,
+      final int applyRotation,
+      final boolean maintainAspectRatio,
+      final Matrix matrix) {
+    matrix.reset();
 
     if (applyRotation != 0) {
       if (applyRotation % 90 != 0) {
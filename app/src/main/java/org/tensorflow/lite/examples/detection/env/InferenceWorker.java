@@ -0,0 +1,167 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated thread that consumes frame slots from a {@link FrameRing}. The camera callback is the
+ * single producer: it claims a slot, fills it and publishes it, which wakes the worker without
+ * taking a lock or allocating a message.
+ *
+ * <p>A worker that outlives its producer is paused instead of stopped, and resumed with the handler
+ * of the next one, so the thread is not started again.
+ */
+public class InferenceWorker<T> implements Runnable {
+  private static final Logger LOGGER = new Logger();
+  // Longest wait of pause for the worker between two checks of the ring.
+  private static final long PAUSE_POLL_MS = 10;
+
+  /** Called on the worker thread for every published frame. */
+  public interface FrameHandler<T> {
+    void onFrame(T frame);
+  }
+
+  private final FrameRing<T> ring;
+  private volatile FrameHandler<T> handler;
+  private volatile boolean running = false;
+  private volatile Thread thread;
+  // Producers between claim and publish, stop waits for them so no claimed frame is left behind.
+  private final AtomicInteger producing = new AtomicInteger();
+  // Set by stop once no producer can publish anymore, the worker then exits on an empty ring.
+  private volatile boolean stopped = false;
+
+  public InferenceWorker(final FrameRing<T> ring, final FrameHandler<T> handler) {
+    this.ring = ring;
+    this.handler = handler;
+  }
+
+  public void start(final String name) {
+    running = true;
+    stopped = false;
+    thread = new Thread(this, name);
+    thread.start();
+  }
+
+  /**
+   * Stops accepting frames, lets the worker finish all frames already published and waits for it
+   * to exit.
+   */
+  public void stop() {
+    running = false;
+    // a producer that claimed before it saw running == false publishes before the worker exits
+    while (producing.get() > 0) {
+      Thread.yield();
+    }
+    stopped = true;
+    final Thread t = thread;
+    if (t == null) {
+      return;
+    }
+    LockSupport.unpark(t);
+    try {
+      t.join();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Interrupted while draining frames");
+      Thread.currentThread().interrupt();
+    }
+    thread = null;
+  }
+
+  /**
+   * Stops accepting frames and waits until the worker processed all frames already published, but
+   * keeps its thread for {@link #resume}. The handler is dropped, the paused worker does not hold
+   * on to it.
+   */
+  public void pause() {
+    running = false;
+    while (producing.get() > 0) {
+      Thread.yield();
+    }
+    synchronized (this) {
+      while (thread != null && !ring.isEmpty()) {
+        try {
+          wait(PAUSE_POLL_MS);
+        } catch (final InterruptedException e) {
+          LOGGER.e(e, "Interrupted while draining frames");
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    handler = null;
+  }
+
+  /** True between {@link #pause()} and {@link #resume}, the thread waits for no producer then. */
+  public boolean isPaused() {
+    return thread != null && !running;
+  }
+
+  /** Accepts frames again after {@link #pause()} and hands them to the given handler. */
+  public void resume(final FrameHandler<T> handler) {
+    this.handler = handler;
+    running = true;
+  }
+
+  /**
+   * Producer: returns a free slot, or null if the frame should be dropped. A slot returned must be
+   * published.
+   */
+  public T claim() {
+    producing.incrementAndGet();
+    final T slot = running ? ring.claim() : null;
+    if (slot == null) {
+      producing.decrementAndGet();
+    }
+    return slot;
+  }
+
+  /** Producer: publishes the claimed slot and wakes the worker. */
+  public void publish() {
+    ring.publish();
+    LockSupport.unpark(thread);
+    producing.decrementAndGet();
+  }
+
+  @Override
+  public void run() {
+    while (true) {
+      // read before the ring, so every frame published before stop is seen
+      final boolean exit = stopped;
+      final T frame = ring.peek();
+      if (frame == null) {
+        if (exit) {
+          return;
+        }
+        LockSupport.park(this);
+        continue;
+      }
+      try {
+        handler.onFrame(frame);
+      } catch (final RuntimeException e) {
+        LOGGER.e(e, "Exception while processing frame");
+      } finally {
+        ring.release();
+      }
+      if (!running) {
+        synchronized (this) {
+          notifyAll();
+        }
+      }
+    }
+  }
+}
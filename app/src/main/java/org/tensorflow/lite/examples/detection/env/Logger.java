@@ -18,11 +18,29 @@ package org.tensorflow.lite.examples.detection.env;
 import android.util.Log;
 import java.util.HashSet;
 import java.util.Set;
+import org.tensorflow.lite.examples.detection.BuildConfig;
 
-/** Wrapper for the platform log function, allows convenient message prefixing and log disabling. */
+/**
+ * Wrapper for the platform log function, allows convenient message prefixing and log disabling.
+ *
+ * <p>Which levels are enabled is checked once, when the logger is created, so a disabled call
+ * costs a field read and a branch. Its arguments are still evaluated though: messages are passed
+ * as a format with arguments, formatted only if the level is enabled, or as a {@link
+ * MessageSupplier}. Never concatenate a message at the call site. On hot paths, where even the
+ * varargs array, the boxing of the arguments or a capturing lambda cost too much, guard the call:
+ *
+ * <pre>
+ * if (LOGGER.isVerboseEnabled()) {
+ *   LOGGER.v("Result %s mapped to %s", location, screenRect);
+ * }
+ * </pre>
+ *
+ * Debug and verbose messages are disabled in release builds unless enabled for the tag with {@code
+ * adb shell setprop log.tag.tensorflow VERBOSE} before the app starts.
+ */
 public final class Logger {
   private static final String DEFAULT_TAG = "tensorflow";
-  private static final int DEFAULT_MIN_LOG_LEVEL = Log.DEBUG;
+  private static final int DEFAULT_MIN_LOG_LEVEL = BuildConfig.DEBUG ? Log.DEBUG : Log.INFO;
 
   // Classes to be ignored when examining the stack trace
   private static final Set<String> IGNORED_CLASS_NAMES;
@@ -34,9 +52,16 @@ public final class Logger {
     IGNORED_CLASS_NAMES.add(Logger.class.getCanonicalName());
   }
 
+  /** Message built only if its level is enabled. */
+  public interface MessageSupplier {
+    String get();
+  }
+
   private final String tag;
   private final String messagePrefix;
   private int minLogLevel = DEFAULT_MIN_LOG_LEVEL;
+  // Bit 1 << level is set for every enabled level.
+  private volatile int enabledLevels;
 
   /**
    * Creates a Logger using the class name as the message prefix.
@@ -71,9 +96,13 @@ public final class Logger {
     this.tag = tag;
     final String prefix = messagePrefix == null ? getCallerSimpleName() : messagePrefix;
     this.messagePrefix = (prefix.length() > 0) ? prefix + ": " : prefix;
+    refreshLevels();
   }
 
-  /** Creates a Logger using the caller's class name as the message prefix. */
+  /**
+   * Creates a Logger using the caller's class name as the message prefix. It walks the stack, so
+   * keep the logger in a static field.
+   */
   public Logger() {
     this(DEFAULT_TAG, null);
   }
@@ -81,7 +110,7 @@ public final class Logger {
   /** Creates a Logger using the caller's class name as the message prefix. */
   public Logger(final int minLogLevel) {
     this(DEFAULT_TAG, null);
-    this.minLogLevel = minLogLevel;
+    setMinLogLevel(minLogLevel);
   }
 
   /**
@@ -104,8 +133,7 @@ public final class Logger {
       final String className = elem.getClassName();
       if (!IGNORED_CLASS_NAMES.contains(className)) {
         // We're only interested in the simple name of the class, not the complete package.
-        final String[] classParts = className.split("\\.");
-        return classParts[classParts.length - 1];
+        return className.substring(className.lastIndexOf('.') + 1);
       }
     }
 
@@ -114,10 +142,33 @@ public final class Logger {
 
   public void setMinLogLevel(final int minLogLevel) {
     this.minLogLevel = minLogLevel;
+    refreshLevels();
+  }
+
+  /**
+   * Checks again which levels are enabled, after the log.tag property of the tag was changed while
+   * the app runs.
+   */
+  public void refreshLevels() {
+    int levels = 0;
+    for (int level = Log.VERBOSE; level <= Log.ASSERT; ++level) {
+      if (level >= minLogLevel || Log.isLoggable(tag, level)) {
+        levels |= 1 << level;
+      }
+    }
+    enabledLevels = levels;
   }
 
   public boolean isLoggable(final int logLevel) {
-    return logLevel >= minLogLevel || Log.isLoggable(tag, logLevel);
+    return (enabledLevels & (1 << logLevel)) != 0;
+  }
+
+  public boolean isVerboseEnabled() {
+    return isLoggable(Log.VERBOSE);
+  }
+
+  public boolean isDebugEnabled() {
+    return isLoggable(Log.DEBUG);
   }
 
   private String toMessage(final String format, final Object... args) {
@@ -130,6 +181,12 @@ public final class Logger {
     }
   }
 
+  public void v(final MessageSupplier message) {
+    if (isLoggable(Log.VERBOSE)) {
+      Log.v(tag, messagePrefix + message.get());
+    }
+  }
+
   public void v(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.VERBOSE)) {
       Log.v(tag, toMessage(format, args), t);
@@ -142,6 +199,12 @@ public final class Logger {
     }
   }
 
+  public void d(final MessageSupplier message) {
+    if (isLoggable(Log.DEBUG)) {
+      Log.d(tag, messagePrefix + message.get());
+    }
+  }
+
   public void d(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.DEBUG)) {
       Log.d(tag, toMessage(format, args), t);
@@ -154,6 +217,12 @@ public final class Logger {
     }
   }
 
+  public void i(final MessageSupplier message) {
+    if (isLoggable(Log.INFO)) {
+      Log.i(tag, messagePrefix + message.get());
+    }
+  }
+
   public void i(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.INFO)) {
       Log.i(tag, toMessage(format, args), t);
@@ -166,6 +235,12 @@ public final class Logger {
     }
   }
 
+  public void w(final MessageSupplier message) {
+    if (isLoggable(Log.WARN)) {
+      Log.w(tag, messagePrefix + message.get());
+    }
+  }
+
   public void w(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.WARN)) {
       Log.w(tag, toMessage(format, args), t);
@@ -178,6 +253,12 @@ public final class Logger {
     }
   }
 
+  public void e(final MessageSupplier message) {
+    if (isLoggable(Log.ERROR)) {
+      Log.e(tag, messagePrefix + message.get());
+    }
+  }
+
   public void e(final Throwable t, final String format, final Object... args) {
     if (isLoggable(Log.ERROR)) {
       Log.e(tag, toMessage(format, args), t);
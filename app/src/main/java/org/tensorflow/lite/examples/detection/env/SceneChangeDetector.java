@@ -0,0 +1,147 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes a cheap luma signature of a frame (a mean-normalized thumbnail) and compares it to the
+ * signature of the last frame that produced a confident result. While the scene stays within
+ * tolerance the previous result can be reused instead of running inference again.
+ */
+public class SceneChangeDetector {
+  // Thumbnail edge length in cells.
+  private static final int THUMB_SIZE = 16;
+  // Number of pixels sampled per cell along each axis.
+  private static final int SAMPLES_PER_CELL = 4;
+
+  private final float tolerance;
+
+  private final float[] current = new float[THUMB_SIZE * THUMB_SIZE];
+  private final float[] reference = new float[THUMB_SIZE * THUMB_SIZE];
+  private boolean hasReference = false;
+  private float lastScore = Float.MAX_VALUE;
+
+  // Statistics.
+  private long hits;
+  private long misses;
+  private long savedMs;
+
+  /**
+   * @param tolerance Mean absolute luma difference (0-255) below which two frames are considered
+   *     the same scene.
+   */
+  public SceneChangeDetector(final float tolerance) {
+    this.tolerance = tolerance;
+  }
+
+  /** Computes the signature directly from a luma (Y) plane. */
+  public void update(final byte[] luma, final int width, final int height, final int rowStride) {
+    for (int cy = 0; cy < THUMB_SIZE; ++cy) {
+      for (int cx = 0; cx < THUMB_SIZE; ++cx) {
+        int sum = 0;
+        for (int sy = 0; sy < SAMPLES_PER_CELL; ++sy) {
+          final int y = ((cy * SAMPLES_PER_CELL + sy) * height) / (THUMB_SIZE * SAMPLES_PER_CELL);
+          for (int sx = 0; sx < SAMPLES_PER_CELL; ++sx) {
+            final int x = ((cx * SAMPLES_PER_CELL + sx) * width) / (THUMB_SIZE * SAMPLES_PER_CELL);
+            sum += luma[y * rowStride + x] & 0xFF;
+          }
+        }
+        current[cy * THUMB_SIZE + cx] = sum / (float) (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+      }
+    }
+    finishUpdate();
+  }
+
+  /**
+   * Computes the signature from the luma plane of a camera frame, read in place.
+   *
+   * @param yPlane Luma plane, positioned at the first pixel. Its position is not changed.
+   */
+  public void update(
+      final ByteBuffer yPlane, final int width, final int height, final int rowStride) {
+    final int base = yPlane.position();
+    for (int cy = 0; cy < THUMB_SIZE; ++cy) {
+      for (int cx = 0; cx < THUMB_SIZE; ++cx) {
+        int sum = 0;
+        for (int sy = 0; sy < SAMPLES_PER_CELL; ++sy) {
+          final int y = ((cy * SAMPLES_PER_CELL + sy) * height) / (THUMB_SIZE * SAMPLES_PER_CELL);
+          for (int sx = 0; sx < SAMPLES_PER_CELL; ++sx) {
+            final int x = ((cx * SAMPLES_PER_CELL + sx) * width) / (THUMB_SIZE * SAMPLES_PER_CELL);
+            sum += yPlane.get(base + y * rowStride + x) & 0xFF;
+          }
+        }
+        current[cy * THUMB_SIZE + cx] = sum / (float) (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+      }
+    }
+    finishUpdate();
+  }
+
+  private void finishUpdate() {
+    // Remove the mean so that small auto-exposure drifts don't count as a scene change.
+    float mean = 0;
+    for (final float v : current) {
+      mean += v;
+    }
+    mean /= current.length;
+    for (int i = 0; i < current.length; ++i) {
+      current[i] -= mean;
+    }
+
+    if (!hasReference) {
+      lastScore = Float.MAX_VALUE;
+      return;
+    }
+    float diff = 0;
+    for (int i = 0; i < current.length; ++i) {
+      diff += Math.abs(current[i] - reference[i]);
+    }
+    lastScore = diff / current.length;
+  }
+
+  /** @return true if the last updated frame matches the reference within tolerance. */
+  public boolean isUnchanged() {
+    return hasReference && lastScore <= tolerance;
+  }
+
+  /** Stores the last updated frame as the reference for subsequent comparisons. */
+  public void setReference() {
+    System.arraycopy(current, 0, reference, 0, current.length);
+    hasReference = true;
+  }
+
+  /**
+   * Records a reused result.
+   *
+   * @param inferenceMs Inference time of the reference frame, i.e. the time saved by the reuse.
+   */
+  public void recordHit(final long inferenceMs) {
+    hits++;
+    savedMs += inferenceMs;
+  }
+
+  public void recordMiss() {
+    misses++;
+  }
+
+  public String getStatString() {
+    final long total = hits + misses;
+    final float hitRate = total > 0 ? 100.0f * hits / total : 0.0f;
+    return String.format(
+        "Scene reuse: %d/%d (%.1f%%), saved %d ms, last score %.2f",
+        hits, total, hitRate, savedMs, hasReference ? lastScore : -1.0f);
+  }
+}
@@ -0,0 +1,174 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache with time-based expiry that maps the hash of a tag crop to its decoded digit
+ * layout. Only an equal hash is a hit, a similar one is a miss and runs the detector: tags with the
+ * same printed layout and different numbers look alike at any coarse resolution. Every n-th hit is
+ * flagged for re-verification so that a stale or colliding entry gets corrected by a real
+ * inference run.
+ */
+public class TagReadCache {
+  private static final Logger LOGGER = new Logger();
+
+  // Rough per-entry overhead of the map node, the boxed key and the list.
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+  // Rough overhead of a String object excluding its characters.
+  private static final int STRING_OVERHEAD_BYTES = 40;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlMs;
+  private final int verifyInterval;
+
+  // Access ordered, the eldest entry is the least recently used one.
+  private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+  private long bytes = 0;
+  private int hitsSinceVerify = 0;
+
+  // Statistics.
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+  private long verifications;
+  private long mismatches;
+
+  /**
+   * @param maxEntries Maximum number of cached tags.
+   * @param maxBytes Maximum estimated memory footprint of all entries.
+   * @param ttlMs Time after which an entry expires.
+   * @param verifyInterval Every n-th hit is re-verified by running the detector, 0 disables it.
+   */
+  public TagReadCache(
+      final int maxEntries, final long maxBytes, final long ttlMs, final int verifyInterval) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlMs = ttlMs;
+    this.verifyInterval = verifyInterval;
+  }
+
+  /**
+   * @param hash Hash of the tag crop, see ImageUtils.computeTagHash.
+   * @return The cached digit layout, or null on a miss.
+   */
+  public synchronized List<String> get(final long hash) {
+    final long now = now();
+    Entry entry = entries.get(hash);
+    if (entry != null && now - entry.timestamp > ttlMs) {
+      remove(entry);
+      expirations++;
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    hitsSinceVerify++;
+    return entry.layout;
+  }
+
+  /** @return true if the hit just returned by {@link #get} should be re-verified. */
+  public synchronized boolean shouldVerify() {
+    if (verifyInterval <= 0 || hitsSinceVerify < verifyInterval) {
+      return false;
+    }
+    hitsSinceVerify = 0;
+    return true;
+  }
+
+  public synchronized void put(final long hash, final List<String> layout) {
+    final Entry old = entries.get(hash);
+    if (old != null) {
+      remove(old);
+    }
+    final Entry entry =
+        new Entry(hash, Collections.unmodifiableList(new ArrayList<String>(layout)), now());
+    entries.put(hash, entry);
+    bytes += entry.bytes;
+    trim();
+  }
+
+  /**
+   * Compares a re-verified hit to the actual detector result and replaces the entry on mismatch.
+   */
+  public synchronized void verify(
+      final long hash, final List<String> cached, final List<String> actual) {
+    verifications++;
+    if (!cached.equals(actual)) {
+      mismatches++;
+      LOGGER.w("Cached read %s did not match %s", cached, actual);
+      put(hash, actual);
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    bytes = 0;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        "Tag cache: %d entries (%d bytes), hits %d, misses %d, evictions %d, expired %d,"
+            + " verified %d, mismatches %d",
+        entries.size(), bytes, hits, misses, evictions, expirations, verifications, mismatches);
+  }
+
+  private void remove(final Entry entry) {
+    entries.remove(entry.hash);
+    bytes -= entry.bytes;
+  }
+
+  private void trim() {
+    final Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+      bytes -= it.next().getValue().bytes;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  private static long now() {
+    return System.nanoTime() / 1000000;
+  }
+
+  private static class Entry {
+    final long hash;
+    final List<String> layout;
+    final long timestamp;
+    final int bytes;
+
+    Entry(final long hash, final List<String> layout, final long timestamp) {
+      this.hash = hash;
+      this.layout = layout;
+      this.timestamp = timestamp;
+      int size = ENTRY_OVERHEAD_BYTES;
+      for (final String s : layout) {
+        size += STRING_OVERHEAD_BYTES + 2 * s.length();
+      }
+      this.bytes = size;
+    }
+  }
+}
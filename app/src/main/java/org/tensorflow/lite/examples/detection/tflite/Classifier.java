@@ -18,11 +18,22 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.graphics.Bitmap;
 import android.graphics.RectF;
 import java.util.List;
+import org.tensorflow.lite.examples.detection.core.Box;
+import org.tensorflow.lite.examples.detection.core.Detection;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /** Runs the classifier on full range luma, one byte per pixel, at the input size. */
+  List<Recognition> recognizeLumaImage(byte[] luma, int width, int height);
+
+  /**
+   * Runs the classifier on count ARGB images of the input size, width * height pixels each, one
+   * after the other.
+   */
+  List<List<Recognition>> recognizeImageBatch(int[] argb, int count, int width, int height);
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -79,6 +90,25 @@ public interface Classifier {
       this.location = location;
     }
 
+    /** Converts a result of the pure Java detection core. */
+    public static Recognition fromDetection(final Detection detection) {
+      final Box box = detection.getLocation();
+      return new Recognition(
+          detection.getId(),
+          detection.getTitle(),
+          detection.getConfidence(),
+          new RectF(box.left, box.top, box.right, box.bottom));
+    }
+
+    /** Converts this result for the pure Java detection core. */
+    public Detection toDetection() {
+      return new Detection(
+          id,
+          title,
+          confidence,
+          new Box(location.left, location.top, location.right, location.bottom));
+    }
+
     @Override
     public String toString() {
       String resultString = "";
@@ -0,0 +1,308 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.content.res.AssetManager;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * Versions of the detection models, so that new ones can be rolled out without a new APK.
+ *
+ * <p>Version 0 of a model is the one bundled in the assets. Installed versions live in app-private
+ * storage as {@code <root>/<name>/<version>/model.tflite}, and the newest one is used. Labels are
+ * read from the label file packed into the model with its metadata if there is one (models with
+ * metadata are zip archives behind the flatbuffer), else from a {@code labels.txt} next to the
+ * model, else from the bundled label file.
+ *
+ * <p>New versions are delivered to an inbox directory as {@code <name>.tflite}, optionally with
+ * {@code <name>.txt} labels, and installed from there with {@link #installInbox}.
+ *
+ * <p>A candidate for the next version can be put into {@code <root>/<name>/candidate/} to be
+ * compared with the current one in shadow mode before it is installed.
+ */
+public class ModelRegistry {
+  private static final Logger LOGGER = new Logger();
+
+  private static final String MODEL_FILE = "model.tflite";
+  private static final String LABEL_FILE = "labels.txt";
+  private static final String CANDIDATE_DIR = "candidate";
+  private static final String INBOX_MODEL_SUFFIX = ".tflite";
+  private static final String INBOX_LABEL_SUFFIX = ".txt";
+  private static final String ASSET_PREFIX = "file:///android_asset/";
+  // Versions kept when a new one is installed: the new one and the one it replaces.
+  private static final int VERSIONS_KEPT = 2;
+
+  /** One version of a model. */
+  public static class Model {
+    public final String name;
+    /** 0 for the bundled model, -1 for a candidate. */
+    public final int version;
+    // null for the bundled model
+    private final File dir;
+
+    private Model(final String name, final int version, final File dir) {
+      this.name = name;
+      this.version = version;
+      this.dir = dir;
+    }
+
+    @Override
+    public String toString() {
+      return version < 0 ? name + " candidate" : name + " v" + version;
+    }
+  }
+
+  private final AssetManager assets;
+  private final File root;
+  // model name -> asset file name and asset label URI of the bundled version
+  private final Map<String, String[]> bundled = new HashMap<>();
+
+  /**
+   * @param assets The assets with the bundled models.
+   * @param root The directory versions are installed into, e.g. models in the files directory.
+   */
+  public ModelRegistry(final AssetManager assets, final File root) {
+    this.assets = assets;
+    this.root = root;
+  }
+
+  /**
+   * Registers a model with its bundled version.
+   *
+   * @param name The name of the model, also its directory under the root.
+   * @param assetModel The file name of the bundled model in the assets.
+   * @param assetLabels The file:///android_asset/ URI of its label file.
+   */
+  public synchronized void register(
+      final String name, final String assetModel, final String assetLabels) {
+    bundled.put(name, new String[] {assetModel, assetLabels});
+  }
+
+  /** The newest version of a registered model. */
+  public synchronized Model current(final String name) {
+    final int[] versions = versions(name);
+    if (versions.length == 0) {
+      return new Model(name, 0, null);
+    }
+    final int version = versions[versions.length - 1];
+    return new Model(name, version, new File(new File(root, name), Integer.toString(version)));
+  }
+
+  /** The candidate for the next version of a model, null if there is none. */
+  public synchronized Model candidate(final String name) {
+    final File dir = new File(new File(root, name), CANDIDATE_DIR);
+    return new File(dir, MODEL_FILE).isFile() ? new Model(name, -1, dir) : null;
+  }
+
+  /**
+   * Memory-maps a version of a model and creates its interpreter, with the input size, type and
+   * labels the model comes with.
+   */
+  public TFLiteObjectDetectionAPIModel load(final Model model) throws IOException {
+    final String[] asset = bundled.get(model.name);
+    if (asset == null) {
+      throw new IllegalArgumentException("Unknown model " + model.name);
+    }
+    if (model.dir == null) {
+      return TFLiteObjectDetectionAPIModel.create(
+          TFLiteObjectDetectionAPIModel.loadModelFile(assets, asset[0]),
+          TFLiteObjectDetectionAPIModel.loadLabels(
+              assets.open(asset[1].substring(ASSET_PREFIX.length()))));
+    }
+
+    final File modelFile = new File(model.dir, MODEL_FILE);
+    List<String> labels = loadPackedLabels(modelFile);
+    if (labels == null) {
+      final File labelFile = new File(model.dir, LABEL_FILE);
+      labels =
+          TFLiteObjectDetectionAPIModel.loadLabels(
+              labelFile.exists()
+                  ? new FileInputStream(labelFile)
+                  : assets.open(asset[1].substring(ASSET_PREFIX.length())));
+    }
+    LOGGER.i("Loading %s with %d labels", model, labels.size());
+    return TFLiteObjectDetectionAPIModel.create(
+        TFLiteObjectDetectionAPIModel.loadModelFile(modelFile), labels);
+  }
+
+  /**
+   * Installs a new version of a model. The files are copied next to the versions directory first
+   * and renamed into place, so {@link #current} never sees a partly written version. Versions
+   * older than the one replaced are deleted, interpreters that still map them keep working.
+   *
+   * @param modelFile The new model.
+   * @param labelFile Its labels, null if the model carries them or has the labels of the bundled
+   *     version.
+   * @return the installed version.
+   */
+  public synchronized Model install(final String name, final File modelFile, final File labelFile)
+      throws IOException {
+    if (!bundled.containsKey(name)) {
+      throw new IllegalArgumentException("Unknown model " + name);
+    }
+    final File modelDir = new File(root, name);
+    if (!modelDir.isDirectory() && !modelDir.mkdirs()) {
+      throw new IOException("Can't create " + modelDir);
+    }
+    final int[] versions = versions(name);
+    final int version = versions.length > 0 ? versions[versions.length - 1] + 1 : 1;
+
+    // not a number, so it is never taken for a version
+    final File staging = new File(modelDir, "." + version);
+    deleteRecursively(staging);
+    if (!staging.mkdir()) {
+      throw new IOException("Can't create " + staging);
+    }
+    copy(modelFile, new File(staging, MODEL_FILE));
+    if (labelFile != null) {
+      copy(labelFile, new File(staging, LABEL_FILE));
+    }
+    final File dir = new File(modelDir, Integer.toString(version));
+    if (!staging.renameTo(dir)) {
+      deleteRecursively(staging);
+      throw new IOException("Can't rename " + staging + " to " + dir);
+    }
+    LOGGER.i("Installed %s v%d", name, version);
+
+    for (int i = 0; i <= versions.length - VERSIONS_KEPT; ++i) {
+      deleteRecursively(new File(modelDir, Integer.toString(versions[i])));
+    }
+    return new Model(name, version, dir);
+  }
+
+  /**
+   * Installs every registered model found in the inbox as its next version and deletes it from
+   * the inbox. A model that fails to install is left there.
+   *
+   * @param inbox Directory the models are delivered to, {@code <name>.tflite} with optional {@code
+   *     <name>.txt} labels. The labels have to be delivered before the model.
+   * @return the installed versions, empty if the inbox holds no model.
+   */
+  public synchronized List<Model> installInbox(final File inbox) {
+    final List<Model> installed = new ArrayList<>();
+    for (final String name : bundled.keySet()) {
+      final File modelFile = new File(inbox, name + INBOX_MODEL_SUFFIX);
+      if (!modelFile.isFile()) {
+        continue;
+      }
+      final File labelFile = new File(inbox, name + INBOX_LABEL_SUFFIX);
+      try {
+        installed.add(install(name, modelFile, labelFile.isFile() ? labelFile : null));
+      } catch (final IOException e) {
+        LOGGER.e(e, "Can't install %s from %s", name, modelFile);
+        continue;
+      }
+      deleteRecursively(modelFile);
+      deleteRecursively(labelFile);
+    }
+    return installed;
+  }
+
+  /** Installed versions of a model, ascending. */
+  private int[] versions(final String name) {
+    final String[] entries = new File(root, name).list();
+    if (entries == null) {
+      return new int[0];
+    }
+    int[] versions = new int[entries.length];
+    int count = 0;
+    for (final String entry : entries) {
+      try {
+        final int version = Integer.parseInt(entry);
+        if (version > 0 && new File(new File(new File(root, name), entry), MODEL_FILE).isFile()) {
+          versions[count++] = version;
+        }
+      } catch (final NumberFormatException e) {
+        // staging directory or foreign file
+      }
+    }
+    versions = Arrays.copyOf(versions, count);
+    Arrays.sort(versions);
+    return versions;
+  }
+
+  /** The first label file packed into the model with its metadata, null if there is none. */
+  private static List<String> loadPackedLabels(final File modelFile) {
+    ZipFile zip = null;
+    try {
+      zip = new ZipFile(modelFile);
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (!entry.isDirectory() && entry.getName().endsWith(".txt")) {
+          return TFLiteObjectDetectionAPIModel.loadLabels(zip.getInputStream(entry));
+        }
+      }
+      return null;
+    } catch (final IOException e) {
+      // a plain flatbuffer without metadata
+      return null;
+    } finally {
+      if (zip != null) {
+        try {
+          zip.close();
+        } catch (final IOException e) {
+          LOGGER.w("Can't close %s", modelFile);
+        }
+      }
+    }
+  }
+
+  private static void copy(final File from, final File to) throws IOException {
+    final InputStream in = new FileInputStream(from);
+    try {
+      final OutputStream out = new FileOutputStream(to);
+      try {
+        final byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          out.write(buffer, 0, read);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void deleteRecursively(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    if (file.exists() && !file.delete()) {
+      LOGGER.w("Can't delete %s", file);
+    }
+  }
+}
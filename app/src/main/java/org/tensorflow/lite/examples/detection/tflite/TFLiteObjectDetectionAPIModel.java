@@ -18,9 +18,9 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
-import android.graphics.RectF;
 import android.os.Trace;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,25 +30,35 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.detection.core.Detection;
+import org.tensorflow.lite.examples.detection.core.ImageOps;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.OutputDecoder;
+import org.tensorflow.lite.examples.detection.core.Preprocessor;
+import org.tensorflow.lite.examples.detection.core.TraceRecorder;
 import org.tensorflow.lite.examples.detection.env.Logger;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API:
  * github.com/tensorflow/models/tree/master/research/object_detection
+ *
+ * <p>Also usable as an {@link InferenceEngine} of the pure Java detection core.
  */
-public class TFLiteObjectDetectionAPIModel implements Classifier {
+public class TFLiteObjectDetectionAPIModel implements Classifier, InferenceEngine {
   private static final Logger LOGGER = new Logger();
 
-  //TODO tmp
+  // Input size of the current interpreter.
   private int width;
   private int height;
 
-  // Only return this many results.
+  // Only return this many results, unless the model's outputs say otherwise.
   private static final int NUM_DETECTIONS = 10;
   // Float modelwidth
   private static final float IMAGE_MEAN = 128.0f;
@@ -58,37 +68,160 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
+  // 3 for RGB input, 1 for models that take luma only
+  private int inputChannels;
+  private int numBytesPerChannel;
+  // Number of detections in the outputs of the model.
+  private int numResults = NUM_DETECTIONS;
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
+  private byte[] lumaValues;
+  // Buffers of every input size the interpreter can be resized to, the native size first.
+  private final List<InputBuffers> inputs = new ArrayList<>();
 
   private ByteBuffer imgData;
+  // Largest number of images run in one invocation, 1 if the graph only takes single images.
+  private int maxBatch = 1;
+  // Input of a batch at the native size, sliced for smaller ones.
+  private ByteBuffer batchData;
 
+  // The mapped model, shared by the interpreters of all input sizes.
+  private ByteBuffer model;
+  // Interpreter and buffers of the current input size.
   private Interpreter tfLite;
+  private InputBuffers currentInput;
+  private int numThreads = NUM_THREADS;
+  private boolean useNNAPI = false;
+  // Records the stages of each invocation, null records nothing.
+  private TraceRecorder trace;
+
+  /** Interpreter and pre-allocated input buffers of one input size. */
+  private static class InputBuffers {
+    final int width;
+    final int height;
+    final ByteBuffer imgData;
+    final int[] intValues;
+    final byte[] lumaValues;
+    Interpreter interpreter;
+    // Images in the input tensor of the interpreter, 0 before it was first resized. The tensor is
+    // only resized when that changes.
+    int batch = 0;
+    // Outputs of every batch size the interpreter ran, indexed by the batch size.
+    Outputs[] outputs = new Outputs[2];
+
+    InputBuffers(int width, int height, int channels, int numBytesPerChannel) {
+      this.width = width;
+      this.height = height;
+      imgData = ByteBuffer.allocateDirect(1 * width * height * channels * numBytesPerChannel);
+      imgData.order(ByteOrder.nativeOrder());
+      intValues = new int[width * height];
+      lumaValues = channels == 1 ? new byte[width * height] : null;
+    }
+
+    /** The outputs of a batch size, allocated on its first run. */
+    Outputs outputs(final int batch, final int numResults) {
+      if (batch >= outputs.length) {
+        outputs = Arrays.copyOf(outputs, batch + 1);
+      }
+      if (outputs[batch] == null) {
+        outputs[batch] = new Outputs(batch, numResults);
+      }
+      return outputs[batch];
+    }
+  }
+
+  /** Pre-allocated output arrays of one batch size and the map handing them to the interpreter. */
+  private static class Outputs {
+    // locations: array of shape [Batchsize, NUM_DETECTIONS,4]
+    // contains the location of detected boxes
+    final float[][][] locations;
+    // classes: array of shape [Batchsize, NUM_DETECTIONS]
+    // contains the classes of detected boxes
+    final float[][] classes;
+    // scores: array of shape [Batchsize, NUM_DETECTIONS]
+    // contains the scores of detected boxes
+    final float[][] scores;
+    // detected: array of shape [Batchsize]
+    // contains the number of detected boxes
+    final float[] detected;
+    final Map<Integer, Object> map = new HashMap<>();
+    // The outputs of each image as a batch of one, the shape OutputDecoder takes.
+    final float[][][][] imageLocations;
+    final float[][][] imageClasses;
+    final float[][][] imageScores;
+    // The single input of a run, and the batch view of batchData it was sliced from.
+    final Object[] inputArray = new Object[1];
+    ByteBuffer batchSource;
+
+    Outputs(final int batch, final int numResults) {
+      locations = new float[batch][numResults][4];
+      classes = new float[batch][numResults];
+      scores = new float[batch][numResults];
+      detected = new float[batch];
+      map.put(0, locations);
+      map.put(1, classes);
+      map.put(2, scores);
+      map.put(3, detected);
+      imageLocations = new float[batch][][][];
+      imageClasses = new float[batch][][];
+      imageScores = new float[batch][][];
+      for (int i = 0; i < batch; ++i) {
+        imageLocations[i] = new float[][][] {locations[i]};
+        imageClasses[i] = new float[][] {classes[i]};
+        imageScores[i] = new float[][] {scores[i]};
+      }
+    }
+  }
 
   private TFLiteObjectDetectionAPIModel() {}
 
-  /** Memory-map the model file in Assets. */
-  private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
+  /** Memory-map the model file in Assets. The mapping stays valid after the file is closed. */
+  static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
       throws IOException {
     AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
-    FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-    FileChannel fileChannel = inputStream.getChannel();
-    long startOffset = fileDescriptor.getStartOffset();
-    long declaredLength = fileDescriptor.getDeclaredLength();
-    return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    try {
+      FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+      try {
+        FileChannel fileChannel = inputStream.getChannel();
+        long startOffset = fileDescriptor.getStartOffset();
+        long declaredLength = fileDescriptor.getDeclaredLength();
+        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+      } finally {
+        inputStream.close();
+      }
+    } finally {
+      fileDescriptor.close();
+    }
+  }
+
+  /** Memory-map a model file, e.g. one installed into app storage. */
+  static MappedByteBuffer loadModelFile(File modelFile) throws IOException {
+    FileInputStream inputStream = new FileInputStream(modelFile);
+    try {
+      FileChannel fileChannel = inputStream.getChannel();
+      return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /** Reads a label file, one label per line. */
+  static List<String> loadLabels(InputStream labelsInput) throws IOException {
+    final List<String> labels = new ArrayList<>();
+    BufferedReader br = new BufferedReader(new InputStreamReader(labelsInput));
+    try {
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (LOGGER.isVerboseEnabled()) {
+          LOGGER.v("Label: %s", line);
+        }
+        labels.add(line);
+      }
+    } finally {
+      br.close();
+    }
+    return labels;
   }
 
   /**
@@ -101,7 +234,7 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
    * @param inputHeight The height of the image input
    * @param isQuantized Boolean representing model is quantized or not
    */
-  public static Classifier create(
+  public static TFLiteObjectDetectionAPIModel create(
       final AssetManager assetManager,
       final String modelFilename,
       final String labelFilename,
@@ -109,131 +242,441 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       final int inputHeight,
       final boolean isQuantized)
       throws IOException {
-    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
-
-    InputStream labelsInput = null;
     String actualFilename = labelFilename.split("file:///android_asset/")[1];
-    labelsInput = assetManager.open(actualFilename);
-    BufferedReader br = null;
-    br = new BufferedReader(new InputStreamReader(labelsInput));
-    String line;
-    while ((line = br.readLine()) != null) {
-      LOGGER.w(line);
-      d.labels.add(line);
-    }
-    br.close();
+    final List<String> labels = loadLabels(assetManager.open(actualFilename));
+    return create(loadModelFile(assetManager, modelFilename), labels, inputWidth, inputHeight,
+        isQuantized);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for a model that describes its own input: the input
+   * size and channels are read from the shape of its input tensor [1, height, width, channels],
+   * quantization from the input type and the number of detections from the shape of the box
+   * output [1, detections, 4].
+   *
+   * @param model The memory-mapped model, see {@link ModelRegistry}.
+   * @param labels The labels of its classes.
+   */
+  public static TFLiteObjectDetectionAPIModel create(
+      final ByteBuffer model, final List<String> labels) {
+    return create(model, labels, 0, 0, false);
+  }
+
+  /** Input sizes of 0 are read from the model, and so is the quantization then. */
+  private static TFLiteObjectDetectionAPIModel create(
+      final ByteBuffer model,
+      final List<String> labels,
+      final int inputWidth,
+      final int inputHeight,
+      boolean isQuantized) {
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    d.labels.addAll(labels);
+    d.model = model;
 
     //d.inputSize = inputSize;
     d.width = inputWidth;
     d.height = inputHeight;
 
     try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+      d.tfLite = new Interpreter(model);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
 
+    if (inputWidth <= 0 || inputHeight <= 0) {
+      final int[] shape = d.tfLite.getInputTensor(0).shape();
+      if (shape.length != 4) {
+        d.tfLite.close();
+        throw new IllegalArgumentException(
+            "Expected an input of shape [1, height, width, channels], got "
+                + Arrays.toString(shape));
+      }
+      d.width = shape[2];
+      d.height = shape[1];
+      isQuantized = d.tfLite.getInputTensor(0).dataType() == DataType.UINT8;
+    }
+
     d.isModelQuantized = isQuantized;
     // Pre-allocate buffers.
-    int numBytesPerChannel;
     if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
+      d.numBytesPerChannel = 1; // Quantized
     } else {
-      numBytesPerChannel = 4; // Floating point
+      d.numBytesPerChannel = 4; // Floating point
+    }
+    // input tensor of shape [1, height, width, channels]
+    final int[] inputShape = d.tfLite.getInputTensor(0).shape();
+    d.inputChannels = inputShape.length == 4 ? inputShape[3] : 3;
+    // box output of shape [1, detections, 4]
+    final int[] outputShape = d.tfLite.getOutputTensor(0).shape();
+    if (outputShape.length == 3 && outputShape[1] > 0) {
+      d.numResults = outputShape[1];
     }
     //d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData = ByteBuffer.allocateDirect(1 * d.width * d.height * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
     //d.intValues = new int[d.inputSize * d.inputSize];
-    d.intValues = new int[d.width * d.height];
+    final InputBuffers input =
+        new InputBuffers(d.width, d.height, d.inputChannels, d.numBytesPerChannel);
+    input.interpreter = d.tfLite;
+    d.inputs.add(input);
+    d.useInput(input);
     d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
     return d;
   }
 
+  /** Width of the native input of the model. */
+  public int getInputWidth() {
+    return inputs.get(0).width;
+  }
+
+  /** Height of the native input of the model. */
+  public int getInputHeight() {
+    return inputs.get(0).height;
+  }
+
+  /** Records the preprocessing, inference and output decoding of every invocation. */
+  public void setTraceRecorder(final TraceRecorder trace) {
+    this.trace = trace;
+  }
+
+  private void trace(final int stage, final long startNs) {
+    if (trace != null) {
+      trace.record(stage, startNs);
+    }
+  }
+
+  /**
+   * Runs the model once at its native input size, so that the first frame doesn't pay for the
+   * allocation of its tensors.
+   */
+  public void warmUp() {
+    useInput(inputs.get(0));
+    runInference();
+  }
+
+  /**
+   * Prepares running the model at smaller square input sizes, each with an interpreter and
+   * pre-allocated buffers of its own. Switching between the sizes from one frame to the next then
+   * doesn't reallocate any tensors, at the cost of the tensor memory of each interpreter, while
+   * the mapped model is shared. Each size is run once, sizes the model can't run at (e.g.
+   * because its anchors are baked in for the native size) are dropped.
+   *
+   * @param sizes Edge lengths of the square input sizes.
+   * @return the usable sizes, in the given order.
+   */
+  public int[] prepareInputSizes(final int[] sizes) {
+    final ArrayList<Integer> usable = new ArrayList<>();
+    for (final int size : sizes) {
+      if (prepareInputSize(size, size)) {
+        usable.add(size);
+      }
+    }
+
+    final int[] result = new int[usable.size()];
+    for (int i = 0; i < result.length; ++i) {
+      result[i] = usable.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Prepares running the model at another input size, e.g. the reduced box input of the proxy pass
+   * of coarse-to-fine detection, with an interpreter of its own. The model keeps running at its
+   * native input size until the prepared one is used.
+   *
+   * @return false if the model can't run at that size.
+   */
+  public boolean prepareInputSize(final int inputWidth, final int inputHeight) {
+    final InputBuffers nativeInput = inputs.get(0);
+    final InputBuffers input =
+        new InputBuffers(inputWidth, inputHeight, inputChannels, numBytesPerChannel);
+    try {
+      input.interpreter = new Interpreter(model);
+      input.interpreter.setNumThreads(numThreads);
+      if (useNNAPI) {
+        input.interpreter.setUseNNAPI(true);
+      }
+      useInput(input);
+      runInference();
+      inputs.add(input);
+      return true;
+    } catch (final RuntimeException e) {
+      LOGGER.w("Model can't run at %dx%d: %s", inputWidth, inputHeight, e.getMessage());
+      if (input.interpreter != null) {
+        input.interpreter.close();
+      }
+      return false;
+    } finally {
+      useInput(nativeInput);
+    }
+  }
+
+  /**
+   * Prepares running up to batch images in one invocation through Interpreter.resizeInput, at each
+   * prepared input size. Models that can't (e.g. because the SSD post-processing op takes a single
+   * image) keep running one invocation per image.
+   *
+   * @return the usable batch size, 1 if the model doesn't batch.
+   */
+  public int prepareBatch(final int batch) {
+    if (batch <= 1) {
+      return maxBatch;
+    }
+    final InputBuffers nativeInput = inputs.get(0);
+    batchData = ByteBuffer.allocateDirect(batch * nativeInput.imgData.capacity());
+    batchData.order(ByteOrder.nativeOrder());
+    try {
+      for (final InputBuffers input : inputs) {
+        useInput(input);
+        runBatch(batch);
+      }
+      maxBatch = batch;
+    } catch (final RuntimeException e) {
+      LOGGER.w("Model can't run a batch of %d: %s", batch, e.getMessage());
+      batchData = null;
+    }
+    useInput(nativeInput);
+    return maxBatch;
+  }
+
+  /** Switches to the interpreter of a prepared size, no-op if it already has that size. */
+  private void useInput(final int inputWidth, final int inputHeight) {
+    if (inputWidth == width && inputHeight == height) {
+      return;
+    }
+    for (final InputBuffers input : inputs) {
+      if (input.width == inputWidth && input.height == inputHeight) {
+        useInput(input);
+        return;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Input size " + inputWidth + "x" + inputHeight + " was not prepared");
+  }
+
+  // Each size has its own interpreter, switching sizes keeps the tensors of all of them.
+  private void useInput(final InputBuffers input) {
+    currentInput = input;
+    tfLite = input.interpreter;
+    width = input.width;
+    height = input.height;
+    imgData = input.imgData;
+    intValues = input.intValues;
+    lumaValues = input.lumaValues;
+  }
+
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    useInput(bitmap.getWidth(), bitmap.getHeight());
+    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    final List<Detection> detections = recognize(intValues, bitmap.getWidth(), bitmap.getHeight());
+
+    final ArrayList<Recognition> recognitions = new ArrayList<>(detections.size());
+    for (final Detection detection : detections) {
+      recognitions.add(Recognition.fromDetection(detection));
+    }
+    return recognitions;
+  }
+
+  @Override
+  public List<Detection> recognize(final int[] argb, final int imageWidth, final int imageHeight) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    useInput(imageWidth, imageHeight);
 
     Trace.beginSection("preprocessBitmap");
+    final long preprocessStart = TraceRecorder.now();
+    preprocess(argb);
+    trace(TraceRecorder.PREPROCESS, preprocessStart);
+    Trace.endSection(); // preprocessBitmap
+
+    final List<Detection> detections = runInference();
+    Trace.endSection(); // "recognizeImage"
+    return detections;
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImageBatch(
+      final int[] argb, final int count, final int imageWidth, final int imageHeight) {
+    final List<List<Detection>> batch = recognizeBatch(argb, count, imageWidth, imageHeight);
+
+    final List<List<Recognition>> recognitions = new ArrayList<>(count);
+    for (final List<Detection> detections : batch) {
+      final ArrayList<Recognition> image = new ArrayList<>(detections.size());
+      for (final Detection detection : detections) {
+        image.add(Recognition.fromDetection(detection));
+      }
+      recognitions.add(image);
+    }
+    return recognitions;
+  }
+
+  @Override
+  public List<List<Detection>> recognizeBatch(
+      final int[] argb, final int count, final int imageWidth, final int imageHeight) {
+    final List<List<Detection>> results = new ArrayList<>(count);
+    if (count == 1) {
+      results.add(recognize(argb, imageWidth, imageHeight));
+      return results;
+    }
+
+    Trace.beginSection("recognizeBatch");
+    useInput(imageWidth, imageHeight);
+    final int pixels = width * height;
+    if (count > maxBatch) {
+      // one invocation per image
+      for (int i = 0; i < count; ++i) {
+        System.arraycopy(argb, i * pixels, intValues, 0, pixels);
+        results.add(recognize(intValues, width, height));
+      }
+    } else {
+      Trace.beginSection("preprocessBatch");
+      final long preprocessStart = TraceRecorder.now();
+      batchData.clear();
+      for (int i = 0; i < count; ++i) {
+        System.arraycopy(argb, i * pixels, intValues, 0, pixels);
+        preprocess(intValues);
+        imgData.rewind();
+        batchData.put(imgData);
+      }
+      trace(TraceRecorder.PREPROCESS, preprocessStart);
+      Trace.endSection(); // preprocessBatch
+      results.addAll(runBatch(count));
+    }
+    Trace.endSection(); // "recognizeBatch"
+    return results;
+  }
+
+  /** Writes one image at the current input size into imgData. */
+  private void preprocess(final int[] argb) {
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    if (inputChannels == 1) {
+      ImageOps.toLuma(argb, width * height, lumaValues);
+      Preprocessor.normalizeLuma(
+          lumaValues, width * height, imgData, isModelQuantized, IMAGE_MEAN, IMAGE_STD, 1);
+    } else {
+      Preprocessor.normalize(argb, width * height, imgData, isModelQuantized, IMAGE_MEAN, IMAGE_STD);
+    }
+  }
 
-    imgData.rewind();
-    //for (int i = 0; i < inputSize; ++i) {
-      //for (int j = 0; j < inputSize; ++j) {
-        //int pixelValue = intValues[i * inputSize + j];
-
-    for (int i = 0; i < width; ++i) {
-      for (int j = 0; j < height; ++j) {
-        int pixelValue = intValues[i * height + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-        }
-      }
+  /**
+   * Resizes the input tensor to a batch of images at the current input size, if it holds another
+   * number of images. The tensors are reallocated on the next run, so consecutive batches of the
+   * same size and consecutive single images keep theirs.
+   */
+  private void useBatch(final int batch) {
+    if (batch == currentInput.batch) {
+      return;
+    }
+    tfLite.resizeInput(0, new int[] {batch, height, width, inputChannels});
+    currentInput.batch = batch;
+  }
+
+  /**
+   * Runs the model once on the first count images of batchData and decodes the outputs of each.
+   * The input tensor keeps the batch shape until a run with another number of images.
+   */
+  private List<List<Detection>> runBatch(final int count) {
+    final Outputs outputs = currentInput.outputs(count, numResults);
+    if (outputs.batchSource != batchData) {
+      // the interpreter takes the whole buffer, so hand it a view of exactly the batch
+      batchData.clear();
+      batchData.limit(count * imgData.capacity());
+      outputs.inputArray[0] = batchData.slice().order(ByteOrder.nativeOrder());
+      outputs.batchSource = batchData;
     }
-    Trace.endSection(); // preprocessBitmap
 
+    Trace.beginSection("runBatch");
+    final long runStart = TraceRecorder.now();
+    useBatch(count);
+    try {
+      tfLite.runForMultipleInputsOutputs(outputs.inputArray, outputs.map);
+    } finally {
+      trace(TraceRecorder.INFERENCE, runStart);
+      Trace.endSection();
+    }
+
+    final long decodeStart = TraceRecorder.now();
+    final List<List<Detection>> results = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      results.add(
+          OutputDecoder.decode(
+              outputs.imageLocations[i],
+              outputs.imageClasses[i],
+              outputs.imageScores[i],
+              numResults,
+              labels,
+              1,
+              width,
+              height));
+    }
+    trace(TraceRecorder.POSTPROCESS, decodeStart);
+    return results;
+  }
+
+  @Override
+  public List<Recognition> recognizeLumaImage(
+      final byte[] luma, final int imageWidth, final int imageHeight) {
+    final List<Detection> detections = recognizeLuma(luma, imageWidth, imageHeight);
+
+    final ArrayList<Recognition> recognitions = new ArrayList<>(detections.size());
+    for (final Detection detection : detections) {
+      recognitions.add(Recognition.fromDetection(detection));
+    }
+    return recognitions;
+  }
+
+  @Override
+  public List<Detection> recognizeLuma(
+      final byte[] luma, final int imageWidth, final int imageHeight) {
+    Trace.beginSection("recognizeLuma");
+    useInput(imageWidth, imageHeight);
+
+    Trace.beginSection("preprocessLuma");
+    final long preprocessStart = TraceRecorder.now();
+    // the same grey level in every channel, or the luma alone for single channel models
+    Preprocessor.normalizeLuma(
+        luma, width * height, imgData, isModelQuantized, IMAGE_MEAN, IMAGE_STD, inputChannels);
+    trace(TraceRecorder.PREPROCESS, preprocessStart);
+    Trace.endSection(); // preprocessLuma
+
+    final List<Detection> detections = runInference();
+    Trace.endSection(); // "recognizeLuma"
+    return detections;
+  }
+
+  /** Runs the model on imgData and decodes its outputs. */
+  private List<Detection> runInference() {
     // Copy the input data into TensorFlow.
     Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    final Outputs outputs = currentInput.outputs(1, numResults);
+    outputs.inputArray[0] = imgData;
     Trace.endSection();
 
     // Run the inference call.
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    final long runStart = TraceRecorder.now();
+    useBatch(1);
+    tfLite.runForMultipleInputsOutputs(outputs.inputArray, outputs.map);
+    trace(TraceRecorder.INFERENCE, runStart);
     Trace.endSection();
 
-    // Show the best detections.
-    // after scaling them back to the input size.
-    final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
-    for (int i = 0; i < NUM_DETECTIONS; ++i) {
-      final RectF detection =
-              new RectF(
-              outputLocations[0][i][1] * width,
-              outputLocations[0][i][0] * height,
-              outputLocations[0][i][3] * width,
-              outputLocations[0][i][2] * height);
-          /*new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);*/
-      // SSD Mobilenet V1 Model assumes class 0 is background class
-      // in label file and class labels start from 1 to number_of_classes+1,
-      // while outputClasses correspond to class index from 0 to number_of_classes
-      int labelOffset = 1;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
-    }
-    Trace.endSection(); // "recognizeImage"
-    return recognitions;
+    // Show the best detections after scaling them back to the input size.
+    // SSD Mobilenet V1 Model assumes class 0 is background class
+    // in label file and class labels start from 1 to number_of_classes+1,
+    // while the output classes correspond to class index from 0 to number_of_classes
+    final long decodeStart = TraceRecorder.now();
+    final List<Detection> detections =
+        OutputDecoder.decode(
+            outputs.locations,
+            outputs.classes,
+            outputs.scores,
+            numResults,
+            labels,
+            1,
+            width,
+            height);
+    trace(TraceRecorder.POSTPROCESS, decodeStart);
+    return detections;
   }
 
   @Override
@@ -245,14 +688,31 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    // frees the native interpreters, the model mapping goes with the last reference to it
+    for (final InputBuffers buffers : inputs) {
+      buffers.interpreter.close();
+    }
+    tfLite = null;
+    currentInput = null;
+    model = null;
+    inputs.clear();
+    imgData = null;
+    batchData = null;
+  }
 
   public void setNumThreads(int num_threads) {
-    if (tfLite != null) tfLite.setNumThreads(num_threads);
+    numThreads = num_threads;
+    for (final InputBuffers buffers : inputs) {
+      buffers.interpreter.setNumThreads(num_threads);
+    }
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    useNNAPI = isChecked;
+    for (final InputBuffers buffers : inputs) {
+      buffers.interpreter.setUseNNAPI(isChecked);
+    }
   }
 }
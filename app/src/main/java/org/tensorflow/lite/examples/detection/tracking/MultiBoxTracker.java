@@ -57,7 +57,7 @@ public class MultiBoxTracker {
     Color.parseColor("#0D0068")
   };
   final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
-  private final Logger logger = new Logger();
+  private static final Logger LOGGER = new Logger();
   private final Queue<Integer> availableColors = new LinkedList<Integer>();
   private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
   private final Paint boxPaint = new Paint();
@@ -111,8 +111,9 @@ public class MultiBoxTracker {
     }
   }
 
-  public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
-    logger.i("Processing %d results from %d", results.size(), timestamp);
+  /** @param results Detections in frame coordinates. */
+  public synchronized void trackResults(final List<Recognition> results) {
+    LOGGER.i("Processing %d results", results.size());
     processResults(results);
   }
 
@@ -169,13 +170,15 @@ public class MultiBoxTracker {
       final RectF detectionScreenRect = new RectF();
       rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
 
-      logger.v(
-          "Result! Frame: " + result.getLocation() + " mapped to screen:" + detectionScreenRect);
+      if (LOGGER.isVerboseEnabled()) {
+        LOGGER.v(
+            "Result! Frame: %s mapped to screen: %s", result.getLocation(), detectionScreenRect);
+      }
 
       screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
 
       if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
-        logger.w("Degenerate rectangle! " + detectionFrameRect);
+        LOGGER.w("Degenerate rectangle! %s", detectionFrameRect);
         continue;
       }
 
@@ -184,7 +187,7 @@ public class MultiBoxTracker {
 
     trackedObjects.clear();
     if (rectsToTrack.isEmpty()) {
-      logger.v("Nothing to track, aborting.");
+      LOGGER.v("Nothing to track, aborting.");
       return;
     }
 
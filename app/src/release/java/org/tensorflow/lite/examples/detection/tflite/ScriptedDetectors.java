@@ -0,0 +1,39 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.io.IOException;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+
+/** Release builds don't link the scripted engines, every fixture fails to load. */
+public final class ScriptedDetectors {
+  public ScriptedDetectors(final String fixture) throws IOException {
+    throw new IOException("Scripted detectors are only available in debug builds");
+  }
+
+  public InferenceEngine createBoxEngine(final PipelineConfig config) {
+    throw new IllegalStateException();
+  }
+
+  public InferenceEngine createDigitEngine(final PipelineConfig config) {
+    throw new IllegalStateException();
+  }
+
+  public Classifier classifier(final InferenceEngine engine) {
+    throw new IllegalStateException();
+  }
+}
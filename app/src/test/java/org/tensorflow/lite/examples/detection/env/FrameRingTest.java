@@ -0,0 +1,145 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class FrameRingTest {
+  private static class Slot {
+    long sequence;
+  }
+
+  private static FrameRing<Slot> ring(final int capacity) {
+    return new FrameRing<Slot>(capacity, Slot::new);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsCapacityThatIsNoPowerOfTwo() {
+    ring(3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyRing() {
+    ring(0);
+  }
+
+  @Test
+  public void startsEmpty() {
+    final FrameRing<Slot> ring = ring(4);
+    assertTrue(ring.isEmpty());
+    assertNull(ring.peek());
+    assertEquals(4, ring.capacity());
+  }
+
+  @Test
+  public void claimFailsWhenAllSlotsArePublished() {
+    final FrameRing<Slot> ring = ring(4);
+    for (int i = 0; i < 4; ++i) {
+      final Slot slot = ring.claim();
+      assertNotNull(slot);
+      slot.sequence = i;
+      ring.publish();
+    }
+    assertNull(ring.claim());
+
+    assertEquals(0, ring.peek().sequence);
+    ring.release();
+    assertNotNull(ring.claim());
+  }
+
+  @Test
+  public void claimReturnsTheSameSlotUntilPublished() {
+    final FrameRing<Slot> ring = ring(2);
+    final Slot slot = ring.claim();
+    assertSame(slot, ring.claim());
+    assertTrue(ring.isEmpty());
+    ring.publish();
+    assertFalse(ring.isEmpty());
+    assertSame(slot, ring.peek());
+  }
+
+  @Test
+  public void slotsAreConsumedInOrderAndReused() {
+    final FrameRing<Slot> ring = ring(2);
+    final Slot first = ring.claim();
+    ring.publish();
+    final Slot second = ring.claim();
+    ring.publish();
+
+    assertSame(first, ring.peek());
+    ring.release();
+    assertSame(second, ring.peek());
+    ring.release();
+    assertTrue(ring.isEmpty());
+
+    // the preallocated slots wrap around
+    assertSame(first, ring.claim());
+    ring.publish();
+    assertSame(second, ring.claim());
+  }
+
+  @Test
+  public void handsOverEveryFrameBetweenTwoThreads() throws InterruptedException {
+    final FrameRing<Slot> ring = ring(8);
+    final long frames = 200000;
+    final AtomicReference<String> error = new AtomicReference<String>();
+    final Thread consumer =
+        new Thread(
+            () -> {
+              long expected = 0;
+              while (expected < frames) {
+                final Slot slot = ring.peek();
+                if (slot == null) {
+                  Thread.yield();
+                  continue;
+                }
+                if (slot.sequence != expected) {
+                  error.set("expected frame " + expected + ", got " + slot.sequence);
+                  return;
+                }
+                ++expected;
+                ring.release();
+              }
+            });
+    consumer.start();
+
+    for (long i = 0; i < frames; ) {
+      final Slot slot = ring.claim();
+      if (slot == null) {
+        if (!consumer.isAlive()) {
+          break;
+        }
+        Thread.yield();
+        continue;
+      }
+      slot.sequence = i++;
+      ring.publish();
+    }
+    consumer.join(10000);
+
+    assertNull(error.get(), error.get());
+    assertFalse(consumer.isAlive());
+    assertTrue(ring.isEmpty());
+  }
+}
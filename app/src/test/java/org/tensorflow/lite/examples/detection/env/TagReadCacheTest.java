@@ -0,0 +1,172 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class TagReadCacheTest {
+  private static final List<String> TAG =
+      Arrays.asList("1", "-", "2", "3", "4", "5", "6", "7", "8");
+  private static final List<String> OTHER_TAG =
+      Arrays.asList("-", "-", "9", "8", "7", "6", "5", "4", "3");
+
+  private static final long HOUR_MS = 3600000;
+
+  @Test
+  public void onlyAnEqualHashHits() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    assertNull(cache.get(1));
+    cache.put(1, TAG);
+
+    assertEquals(TAG, cache.get(1));
+    assertNull(cache.get(2));
+    assertTrue(cache.getStatString().contains("hits 1, misses 2"));
+  }
+
+  @Test
+  public void keepsACopyOfTheLayout() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    final List<String> layout = new ArrayList<String>(TAG);
+    cache.put(1, layout);
+    layout.set(0, "9");
+
+    assertEquals(TAG, cache.get(1));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void returnsAnUnmodifiableLayout() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    cache.put(1, TAG);
+    cache.get(1).set(0, "9");
+  }
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+    final TagReadCache cache = new TagReadCache(2, 1 << 20, HOUR_MS, 0);
+    cache.put(1, TAG);
+    cache.put(2, OTHER_TAG);
+    // 1 is used more recently than 2 now
+    cache.get(1);
+    cache.put(3, TAG);
+
+    assertEquals(TAG, cache.get(1));
+    assertNull(cache.get(2));
+    assertEquals(TAG, cache.get(3));
+    assertTrue(cache.getStatString().contains("evictions 1"));
+  }
+
+  @Test
+  public void evictsToStayWithinTheMemoryBound() {
+    final TagReadCache probe = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    probe.put(1, TAG);
+    final long entryBytes = bytes(probe);
+
+    final TagReadCache cache = new TagReadCache(10, 2 * entryBytes, HOUR_MS, 0);
+    for (long hash = 1; hash <= 3; ++hash) {
+      cache.put(hash, TAG);
+    }
+
+    assertNull(cache.get(1));
+    assertEquals(TAG, cache.get(2));
+    assertEquals(TAG, cache.get(3));
+    assertEquals(2 * entryBytes, bytes(cache));
+  }
+
+  @Test
+  public void replacingAnEntryKeepsTheSize() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    cache.put(1, TAG);
+    final long entryBytes = bytes(cache);
+    cache.put(1, OTHER_TAG);
+
+    assertEquals(OTHER_TAG, cache.get(1));
+    assertEquals(entryBytes, bytes(cache));
+  }
+
+  @Test
+  public void entriesExpire() throws InterruptedException {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, 1, 0);
+    cache.put(1, TAG);
+    Thread.sleep(10);
+
+    assertNull(cache.get(1));
+    assertTrue(cache.getStatString().contains("expired 1"));
+    assertEquals(0, bytes(cache));
+  }
+
+  @Test
+  public void everyNthHitIsVerified() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 3);
+    cache.put(1, TAG);
+    final boolean[] verified = new boolean[7];
+    for (int i = 0; i < verified.length; ++i) {
+      cache.get(1);
+      verified[i] = cache.shouldVerify();
+    }
+
+    assertTrue(
+        Arrays.equals(new boolean[] {false, false, true, false, false, true, false}, verified));
+  }
+
+  @Test
+  public void verificationIsOffForIntervalZero() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    cache.put(1, TAG);
+    for (int i = 0; i < 5; ++i) {
+      cache.get(1);
+      assertFalse(cache.shouldVerify());
+    }
+  }
+
+  @Test
+  public void mismatchReplacesTheEntry() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 1);
+    cache.put(1, TAG);
+
+    cache.verify(1, cache.get(1), TAG);
+    assertEquals(TAG, cache.get(1));
+    cache.verify(1, cache.get(1), OTHER_TAG);
+    assertEquals(OTHER_TAG, cache.get(1));
+    assertTrue(cache.getStatString().contains("verified 2, mismatches 1"));
+  }
+
+  @Test
+  public void clearDropsAllEntries() {
+    final TagReadCache cache = new TagReadCache(10, 1 << 20, HOUR_MS, 0);
+    cache.put(1, TAG);
+    cache.put(2, OTHER_TAG);
+    cache.clear();
+
+    assertNull(cache.get(1));
+    assertNull(cache.get(2));
+    assertEquals(0, bytes(cache));
+  }
+
+  /** The estimated size from the statistics. */
+  private static long bytes(final TagReadCache cache) {
+    final String stats = cache.getStatString();
+    final int end = stats.indexOf(" bytes)");
+    return Long.parseLong(stats.substring(stats.lastIndexOf('(', end) + 1, end));
+  }
+}
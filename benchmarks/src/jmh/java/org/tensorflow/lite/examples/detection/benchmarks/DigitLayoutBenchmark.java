@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.Box;
+import org.tensorflow.lite.examples.detection.core.Detection;
+import org.tensorflow.lite.examples.detection.core.DigitLayout;
+
+/** Parsing the digit detections of a 600x600 tag crop into the tag layout. */
+@State(Scope.Thread)
+public class DigitLayoutBenchmark {
+  private static final float MINIMUM_CONFIDENCE = 0.4f;
+
+  private final List<Detection> fullTag = new ArrayList<Detection>();
+  private final List<Detection> partialTag = new ArrayList<Detection>();
+
+  @Setup
+  public void setUp() {
+    // Two small digits on top, seven large digits below, as returned by the detector: sorted by
+    // confidence, with a few low confidence duplicates.
+    fullTag.add(digit("1", 0.97f, 336, 270, 390, 390));
+    fullTag.add(digit("2", 0.95f, 48, 270, 102, 390));
+    fullTag.add(digit("6", 0.94f, 192, 270, 246, 390));
+    fullTag.add(digit("7", 0.93f, 120, 270, 174, 390));
+    fullTag.add(digit("4", 0.92f, 264, 270, 318, 390));
+    fullTag.add(digit("5", 0.91f, 408, 270, 462, 390));
+    fullTag.add(digit("6", 0.90f, 276, 90, 312, 150));
+    fullTag.add(digit("3", 0.89f, 480, 270, 534, 390));
+    fullTag.add(digit("0", 0.88f, 216, 90, 252, 150));
+    fullTag.add(digit("8", 0.32f, 480, 272, 534, 392));
+    fullTag.add(digit("9", 0.21f, 120, 268, 174, 388));
+
+    partialTag.add(digit("2", 0.95f, 48, 270, 102, 390));
+    partialTag.add(digit("7", 0.93f, 120, 270, 174, 390));
+    partialTag.add(digit("1", 0.88f, 336, 270, 390, 390));
+    partialTag.add(digit("4", 0.45f, 264, 270, 318, 390));
+  }
+
+  private static Detection digit(
+      final String title,
+      final float confidence,
+      final float left,
+      final float top,
+      final float right,
+      final float bottom) {
+    return new Detection("", title, confidence, new Box(left, top, right, bottom));
+  }
+
+  @Benchmark
+  public List<String> parseFullTag() {
+    return DigitLayout.parse(fullTag, MINIMUM_CONFIDENCE);
+  }
+
+  @Benchmark
+  public List<String> parsePartialTag() {
+    return DigitLayout.parse(partialTag, MINIMUM_CONFIDENCE);
+  }
+}
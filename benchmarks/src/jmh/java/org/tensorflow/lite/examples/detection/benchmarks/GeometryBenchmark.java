@@ -0,0 +1,98 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.Box;
+import org.tensorflow.lite.examples.detection.core.ImageOps;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.TagGeometry;
+import org.tensorflow.lite.examples.detection.core.TagPipeline;
+
+/**
+ * Tag crop geometry on a 720x1280 portrait frame: scaling the frame into the box model input,
+ * expanding the tag box to a square and cropping it into the digit model input.
+ */
+@State(Scope.Thread)
+public class GeometryBenchmark {
+  private static final int FRAME_WIDTH = 720;
+  private static final int FRAME_HEIGHT = 1280;
+  private static final int NUM_BOXES = 64;
+
+  @Param({"0", "90"})
+  public int orientation;
+
+  private final PipelineConfig config = new PipelineConfig();
+  private TagPipeline pipeline;
+  private int[] frame;
+  private int[] boxInput;
+  private int[][] rects;
+  private final int[] rect = new int[4];
+  private Box tag;
+  private int next = 0;
+
+  @Setup
+  public void setUp() {
+    // Only the crop helpers are used, no engines needed.
+    pipeline = new TagPipeline(config, null, null);
+    final Random random = new Random(0);
+    frame = new int[FRAME_WIDTH * FRAME_HEIGHT];
+    for (int i = 0; i < frame.length; ++i) {
+      frame[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    boxInput = new int[config.boxWidth * config.boxHeight];
+
+    // Tag boxes of varying size, aspect and position, some touching the frame border.
+    rects = new int[NUM_BOXES][4];
+    for (int i = 0; i < NUM_BOXES; ++i) {
+      final int w = 80 + random.nextInt(400);
+      final int h = 60 + random.nextInt(300);
+      final int left = random.nextInt(FRAME_WIDTH - w / 2);
+      final int top = random.nextInt(FRAME_HEIGHT - h / 2);
+      rects[i][TagGeometry.LEFT] = left;
+      rects[i][TagGeometry.TOP] = top;
+      rects[i][TagGeometry.RIGHT] = Math.min(FRAME_WIDTH, left + w);
+      rects[i][TagGeometry.BOTTOM] = Math.min(FRAME_HEIGHT, top + h);
+    }
+    tag = new Box(200, 500, 520, 680);
+  }
+
+  @Benchmark
+  public int expandToSquare() {
+    final int[] r = rects[next++ & (NUM_BOXES - 1)];
+    System.arraycopy(r, 0, rect, 0, 4);
+    return TagGeometry.expandToSquare(rect, FRAME_WIDTH, FRAME_HEIGHT) + rect[TagGeometry.RIGHT];
+  }
+
+  @Benchmark
+  public int[] scaleToBoxInput() {
+    ImageOps.transform(
+        frame, FRAME_WIDTH, FRAME_HEIGHT, 0, 0, FRAME_WIDTH, FRAME_HEIGHT, 0,
+        config.maintainAspect, boxInput, config.boxWidth, config.boxHeight);
+    return boxInput;
+  }
+
+  @Benchmark
+  public int[] cropTag() {
+    pipeline.cropTag(frame, FRAME_WIDTH, FRAME_HEIGHT, tag, orientation);
+    return pipeline.getDigitPixels();
+  }
+}
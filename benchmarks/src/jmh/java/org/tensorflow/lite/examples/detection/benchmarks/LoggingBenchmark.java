@@ -0,0 +1,129 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.Box;
+
+/**
+ * A disabled verbose log call of the tracker, once per detection of every frame. The app logger
+ * needs android.util.Log, so both of its level checks are modeled here: the old one looked up the
+ * log.tag property on every call (Log.isLoggable), after the caller had concatenated the message,
+ * the new one reads the levels cached when the logger was created. Run with {@code -prof gc} to
+ * see the allocations too, ART doesn't eliminate them like the JIT may.
+ */
+@State(Scope.Thread)
+public class LoggingBenchmark {
+  private static final int VERBOSE = 2;
+  private static final int DEBUG = 3;
+
+  /** Message built only if its level is enabled, as Logger.MessageSupplier. */
+  interface MessageSupplier {
+    String get();
+  }
+
+  /** Level check of env.Logger, with or without the cached levels. Never logs at VERBOSE. */
+  static final class ModelLogger {
+    private final String tag = "tensorflow";
+    private final int minLogLevel = DEBUG;
+    private final boolean cached;
+    private final int enabledLevels;
+    String last;
+
+    ModelLogger(final boolean cached) {
+      this.cached = cached;
+      int levels = 0;
+      for (int level = VERBOSE; level <= 7; ++level) {
+        if (level >= minLogLevel || isLoggableProperty()) {
+          levels |= 1 << level;
+        }
+      }
+      enabledLevels = levels;
+    }
+
+    // Log.isLoggable reads the system property log.tag.<tag>
+    private boolean isLoggableProperty() {
+      return System.getProperty("log.tag." + tag) != null;
+    }
+
+    boolean isLoggable(final int level) {
+      if (cached) {
+        return (enabledLevels & (1 << level)) != 0;
+      }
+      return level >= minLogLevel || isLoggableProperty();
+    }
+
+    boolean isVerboseEnabled() {
+      return isLoggable(VERBOSE);
+    }
+
+    void v(final String format, final Object... args) {
+      if (isLoggable(VERBOSE)) {
+        last = args.length > 0 ? String.format(format, args) : format;
+      }
+    }
+
+    void v(final MessageSupplier message) {
+      if (isLoggable(VERBOSE)) {
+        last = message.get();
+      }
+    }
+  }
+
+  private final ModelLogger uncached = new ModelLogger(false);
+  private final ModelLogger cached = new ModelLogger(true);
+  private final Box location = new Box(120.5f, 310.0f, 480.25f, 520.75f);
+  private final Box screenRect = new Box(90.0f, 412.5f, 630.0f, 727.5f);
+
+  /** The tracker before: concatenated message, property lookup. */
+  @Benchmark
+  public ModelLogger concatenatedUncached() {
+    uncached.v("Result! Frame: " + location + " mapped to screen:" + screenRect);
+    return uncached;
+  }
+
+  @Benchmark
+  public ModelLogger concatenatedCached() {
+    cached.v("Result! Frame: " + location + " mapped to screen:" + screenRect);
+    return cached;
+  }
+
+  /** Format and arguments, only the varargs array is built. */
+  @Benchmark
+  public ModelLogger varargsCached() {
+    cached.v("Result! Frame: %s mapped to screen: %s", location, screenRect);
+    return cached;
+  }
+
+  /** Capturing lambda, one allocation. */
+  @Benchmark
+  public ModelLogger supplierCached() {
+    cached.v(() -> "Result! Frame: " + location + " mapped to screen:" + screenRect);
+    return cached;
+  }
+
+  /** The tracker now: the guard skips the call. */
+  @Benchmark
+  public ModelLogger guardedCached() {
+    if (cached.isVerboseEnabled()) {
+      cached.v("Result! Frame: %s mapped to screen: %s", location, screenRect);
+    }
+    return cached;
+  }
+}
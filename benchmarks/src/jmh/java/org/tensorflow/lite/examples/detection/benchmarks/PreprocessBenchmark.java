@@ -0,0 +1,74 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.Preprocessor;
+
+/**
+ * The normalization loops of recognizeImage and recognizeLuma at the input sizes of the box and
+ * digit models, luma replicated into the three channels.
+ */
+@State(Scope.Thread)
+public class PreprocessBenchmark {
+  // Same as TFLiteObjectDetectionAPIModel
+  private static final float IMAGE_MEAN = 128.0f;
+  private static final float IMAGE_STD = 128.0f;
+
+  @Param({"360x640", "600x600"})
+  public String size;
+
+  @Param({"false", "true"})
+  public boolean quantized;
+
+  private int[] argb;
+  private byte[] luma;
+  private ByteBuffer imgData;
+
+  @Setup
+  public void setUp() {
+    final String[] wh = size.split("x");
+    final int count = Integer.parseInt(wh[0]) * Integer.parseInt(wh[1]);
+    argb = new int[count];
+    final Random random = new Random(0);
+    for (int i = 0; i < count; ++i) {
+      argb[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    luma = new byte[count];
+    random.nextBytes(luma);
+    imgData = ByteBuffer.allocateDirect(count * 3 * (quantized ? 1 : 4));
+    imgData.order(ByteOrder.nativeOrder());
+  }
+
+  @Benchmark
+  public ByteBuffer normalize() {
+    Preprocessor.normalize(argb, argb.length, imgData, quantized, IMAGE_MEAN, IMAGE_STD);
+    return imgData;
+  }
+
+  @Benchmark
+  public ByteBuffer normalizeLuma() {
+    Preprocessor.normalizeLuma(luma, luma.length, imgData, quantized, IMAGE_MEAN, IMAGE_STD, 3);
+    return imgData;
+  }
+}
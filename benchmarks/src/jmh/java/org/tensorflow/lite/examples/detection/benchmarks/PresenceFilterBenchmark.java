@@ -0,0 +1,60 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.PresenceFilter;
+
+/**
+ * The presence filter that runs in front of the box model on every frame, scoring the 360x640 box
+ * input as ARGB and as luma. Its cost is what each skipped box model run has to pay for.
+ */
+@State(Scope.Thread)
+public class PresenceFilterBenchmark {
+  private final PipelineConfig config = new PipelineConfig();
+  private PresenceFilter filter;
+  private int[] argb;
+  private byte[] luma;
+
+  @Setup
+  public void setUp() {
+    filter = new PresenceFilter(0.0f, config.boxWidth, config.boxHeight);
+    final int count = config.boxWidth * config.boxHeight;
+    argb = new int[count];
+    final Random random = new Random(0);
+    for (int i = 0; i < count; ++i) {
+      argb[i] = 0xff000000 | random.nextInt(0x1000000);
+    }
+    luma = new byte[count];
+    random.nextBytes(luma);
+  }
+
+  @Benchmark
+  public float scoreArgb() {
+    return filter.score(argb, config.boxWidth, config.boxHeight);
+  }
+
+  @Benchmark
+  public float scoreLuma() {
+    return filter.score(luma, config.boxWidth, config.boxHeight);
+  }
+}
@@ -0,0 +1,184 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.tensorflow.lite.examples.detection.core.ImageOps;
+import org.tensorflow.lite.examples.detection.core.LutYuvConverter;
+import org.tensorflow.lite.examples.detection.core.YuvConverter;
+import org.tensorflow.lite.examples.detection.core.YuvPlaneConverter;
+
+/**
+ * YUV to ARGB conversion of a preview frame. The strides follow what the cameras deliver: luma and
+ * chroma rows padded to 64 bytes, chroma either planar (pixel stride 1) or interleaved (pixel stride
+ * 2, the usual YUV_420_888 layout of NV21 sensors). The plane benchmarks read the same data from
+ * direct buffers, like the planes of an Image or ImageProxy. The box input benchmarks compare
+ * scaling the RGB frame into the box detector input with scaling the luma plane alone.
+ */
+@State(Scope.Thread)
+public class YuvConversionBenchmark {
+  private static final int ROW_ALIGNMENT = 64;
+  // Input size of the box detector
+  private static final int BOX_WIDTH = 360;
+  private static final int BOX_HEIGHT = 640;
+
+  @Param({"1280x720", "720x1280"})
+  public String size;
+
+  @Param({"1", "2"})
+  public int uvPixelStride;
+
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private byte[] nv21;
+  private byte[] yData;
+  private byte[] uData;
+  private byte[] vData;
+  private ByteBuffer yPlane;
+  private ByteBuffer uPlane;
+  private ByteBuffer vPlane;
+  private byte[][] planeCopies;
+  private final YuvPlaneConverter planeConverter = new YuvPlaneConverter();
+  private int[] out;
+  private int[] boxPixels;
+  private byte[] boxLuma;
+
+  @Setup
+  public void setUp() {
+    final String[] wh = size.split("x");
+    width = Integer.parseInt(wh[0]);
+    height = Integer.parseInt(wh[1]);
+    yRowStride = align(width);
+    uvRowStride = align(width / 2 * uvPixelStride);
+
+    final Random random = new Random(0);
+    nv21 = new byte[width * height * 3 / 2];
+    random.nextBytes(nv21);
+    yData = new byte[yRowStride * height];
+    random.nextBytes(yData);
+    // With pixel stride 2 both planes view the same interleaved buffer, shifted by one byte.
+    final int uvSize = uvRowStride * (height / 2);
+    uData = new byte[uvSize];
+    random.nextBytes(uData);
+    if (uvPixelStride == 2) {
+      vData = shiftedCopy(uData);
+    } else {
+      vData = new byte[uvSize];
+      random.nextBytes(vData);
+    }
+    yPlane = direct(yData);
+    uPlane = direct(uData);
+    vPlane = direct(vData);
+    planeCopies = new byte[][] {new byte[yData.length], new byte[uvSize], new byte[uvSize]};
+    out = new int[width * height];
+    boxPixels = new int[BOX_WIDTH * BOX_HEIGHT];
+    boxLuma = new byte[BOX_WIDTH * BOX_HEIGHT];
+  }
+
+  private static ByteBuffer direct(final byte[] data) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static int align(final int stride) {
+    return (stride + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+  }
+
+  private static byte[] shiftedCopy(final byte[] data) {
+    final byte[] copy = new byte[data.length];
+    System.arraycopy(data, 1, copy, 0, data.length - 1);
+    return copy;
+  }
+
+  @Benchmark
+  public int[] convertYUV420SP() {
+    YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] convertYUV420() {
+    YuvConverter.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] lutConvertYUV420SP() {
+    LutYuvConverter.convertYUV420SPToARGB8888(nv21, width, height, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] lutConvertYUV420() {
+    LutYuvConverter.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    return out;
+  }
+
+  /** The previous app path: copy each plane into a pooled array, then convert. */
+  @Benchmark
+  public int[] copyPlanesAndConvert() {
+    yPlane.duplicate().get(planeCopies[0]);
+    uPlane.duplicate().get(planeCopies[1]);
+    vPlane.duplicate().get(planeCopies[2]);
+    LutYuvConverter.convertYUV420ToARGB8888(
+        planeCopies[0], planeCopies[1], planeCopies[2], width, height, yRowStride, uvRowStride,
+        uvPixelStride, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] convertPlanesAbsolute() {
+    LutYuvConverter.convertYUV420ToARGB8888(
+        yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] convertPlanesByRow() {
+    planeConverter.convert(
+        yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    return out;
+  }
+
+  /** Box detector input on the RGB path: convert the whole frame, then scale it. */
+  @Benchmark
+  public int[] rgbBoxInput() {
+    planeConverter.convert(
+        yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    ImageOps.transform(
+        out, width, height, 0, 0, width, height, 0, false, boxPixels, BOX_WIDTH, BOX_HEIGHT);
+    return boxPixels;
+  }
+
+  /** Box detector input on the luma path, chroma is not read. */
+  @Benchmark
+  public byte[] lumaBoxInput() {
+    ImageOps.scaleLuma(yPlane, yRowStride, width, height, false, boxLuma, BOX_WIDTH, BOX_HEIGHT);
+    return boxLuma;
+  }
+}
@@ -0,0 +1,92 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+/** Axis aligned rectangle with float coordinates, the pure Java counterpart of RectF. */
+public class Box {
+  public float left;
+  public float top;
+  public float right;
+  public float bottom;
+
+  public Box() {}
+
+  public Box(final float left, final float top, final float right, final float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public Box(final Box other) {
+    this(other.left, other.top, other.right, other.bottom);
+  }
+
+  public void set(final float left, final float top, final float right, final float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public final float width() {
+    return right - left;
+  }
+
+  public final float height() {
+    return bottom - top;
+  }
+
+  public final float centerX() {
+    return (left + right) * 0.5f;
+  }
+
+  public final float centerY() {
+    return (top + bottom) * 0.5f;
+  }
+
+  /** Scales all coordinates, e.g. to map a box from model input to frame coordinates. */
+  public void scale(final float scaleX, final float scaleY) {
+    left *= scaleX;
+    right *= scaleX;
+    top *= scaleY;
+    bottom *= scaleY;
+  }
+
+  public void offset(final float dx, final float dy) {
+    left += dx;
+    right += dx;
+    top += dy;
+    bottom += dy;
+  }
+
+  /** @return intersection over union of two boxes, 0 if they don't overlap. */
+  public static float iou(final Box a, final Box b) {
+    final float iw = Math.min(a.right, b.right) - Math.max(a.left, b.left);
+    final float ih = Math.min(a.bottom, b.bottom) - Math.max(a.top, b.top);
+    if (iw <= 0 || ih <= 0) {
+      return 0.0f;
+    }
+    final float intersection = iw * ih;
+    final float union = a.width() * a.height() + b.width() * b.height() - intersection;
+    return union > 0 ? intersection / union : 0.0f;
+  }
+
+  @Override
+  public String toString() {
+    return "Box(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+  }
+}
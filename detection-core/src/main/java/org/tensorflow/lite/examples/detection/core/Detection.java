@@ -0,0 +1,64 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+/** A result of an {@link InferenceEngine}, the pure Java counterpart of Classifier.Recognition. */
+public class Detection {
+  /** Identifier of the detection slot it was decoded from. */
+  private final String id;
+
+  /** Display name for the detection. */
+  private final String title;
+
+  /** A sortable score for how good the detection is. Higher should be better. */
+  private final float confidence;
+
+  /** Location within the source image. */
+  private Box location;
+
+  public Detection(final String id, final String title, final float confidence, final Box location) {
+    this.id = id;
+    this.title = title;
+    this.confidence = confidence;
+    this.location = location;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public float getConfidence() {
+    return confidence;
+  }
+
+  /** @return a copy of the location. */
+  public Box getLocation() {
+    return new Box(location);
+  }
+
+  public void setLocation(final Box location) {
+    this.location = location;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("[%s] %s (%.1f%%) %s", id, title, confidence * 100.0f, location);
+  }
+}
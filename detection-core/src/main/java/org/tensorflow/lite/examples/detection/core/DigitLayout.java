@@ -0,0 +1,140 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Turns the digits found on a tag into the tag layout: two small digits on top followed by the
+ * seven large digits, unrecognized positions are filled with "-".
+ */
+public final class DigitLayout {
+  private DigitLayout() {}
+
+  /** Number of entries of a parsed layout. */
+  public static final int LAYOUT_SIZE = 9;
+
+  /** Placeholder of an unrecognized digit. */
+  public static final String MISSING = "-";
+
+  private static final Comparator<Detection> BY_X =
+      new Comparator<Detection>() {
+        @Override
+        public int compare(final Detection r1, final Detection r2) {
+          return Float.compare(r1.getLocation().centerX(), r2.getLocation().centerX());
+        }
+      };
+
+  /**
+   * sort recognized items by vertical position weighted by digitHeight*2 to detect the small
+   * numbers first
+   */
+  private static final Comparator<Detection> BY_Y_AND_HEIGHT =
+      new Comparator<Detection>() {
+        @Override
+        public int compare(final Detection r1, final Detection r2) {
+          return Float.compare(
+              r1.getLocation().centerY() + r1.getLocation().height() * 2,
+              r2.getLocation().centerY() + r2.getLocation().height() * 2);
+        }
+      };
+
+  /**
+   * @param digits Detections of the digit detector.
+   * @param minConfidence Digits below this confidence are ignored.
+   * @return the layout, or null if less than 3 digits were detected.
+   */
+  public static ArrayList<String> parse(final List<Detection> digits, final float minConfidence) {
+    // keep results with minimum confidence
+    final ArrayList<Detection> res = new ArrayList<Detection>();
+    for (final Detection result : digits) {
+      if (result.getConfidence() >= minConfidence) {
+        res.add(result);
+      }
+    }
+
+    if (res.size() < 3) {
+      return null;
+    }
+
+    // TODO remove boxes with same location
+    // TODO not working for two hidden small numbers
+    final ArrayList<String> layout = getSmallDigits(res);
+    createReturnString(layout, res);
+    return layout;
+  }
+
+  /** Removes the small digits from res and returns them as the start of the layout. */
+  public static ArrayList<String> getSmallDigits(final ArrayList<Detection> res) {
+    final ArrayList<String> retString = new ArrayList<String>(LAYOUT_SIZE);
+
+    Collections.sort(res, BY_Y_AND_HEIGHT);
+    final float numHeight = res.get(0).getLocation().height();
+    final float pos1 = res.get(0).getLocation().centerY() + res.get(0).getLocation().centerX();
+    final float pos2 = res.get(1).getLocation().centerY() + res.get(1).getLocation().centerX();
+    final float pos3 = res.get(2).getLocation().centerY() + res.get(2).getLocation().centerX();
+
+    if (Math.abs(pos1 - pos2) > numHeight) {
+      // one small one big number
+      retString.add(res.remove(0).getTitle());
+      retString.add(MISSING);
+    } else if (Math.abs(pos1 - pos3) > numHeight) {
+      // two small numbers
+      int pos = 0;
+      if (res.get(1).getLocation().centerX() < res.get(0).getLocation().centerX()) {
+        pos = 1;
+      }
+      retString.add(res.remove(pos).getTitle());
+      retString.add(res.remove(0).getTitle());
+    } else {
+      // no small number, add two null elements for the unrecognized number
+      retString.add(MISSING);
+      retString.add(MISSING);
+    }
+    return retString;
+  }
+
+  /** Appends the seven large digits of res to the layout, left to right. */
+  public static void createReturnString(
+      final ArrayList<String> returnRes, final ArrayList<Detection> res) {
+    float compHeight = -1;
+    Collections.sort(res, BY_X);
+
+    for (int i = 0; i < 7; i++) {
+      if (res.isEmpty()) {
+        returnRes.add(MISSING);
+        continue;
+      }
+
+      final Detection result = res.get(0);
+
+      // if number height smaller than 3/4 of the previous number, it is a small number
+      if (result.getLocation().height() < compHeight * 0.75) {
+        if (returnRes.size() < 6) {
+          returnRes.add(MISSING);
+          continue;
+        }
+      } // initialize the height to compare
+      else if (compHeight == -1) {
+        compHeight = result.getLocation().height();
+      }
+      returnRes.add(res.remove(0).getTitle());
+    }
+  }
+}
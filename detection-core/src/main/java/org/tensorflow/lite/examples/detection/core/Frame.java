@@ -0,0 +1,145 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A timestamped YUV_420 frame delivered by a {@link FrameSource}. Frames are pooled by their source
+ * and must be handed back with {@link #release()} once the pixel data is no longer needed.
+ */
+public final class Frame {
+  /** Returns a released frame and the buffer behind it to its source. */
+  public interface Recycler {
+    void recycle(Frame frame);
+  }
+
+  private final Recycler recycler;
+  final int index;
+
+  private ByteBuffer yPlane;
+  private ByteBuffer uPlane;
+  private ByteBuffer vPlane;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private int rotation;
+  private long timestampNs;
+  // Backend specific object behind the frame, e.g. the Image to close.
+  private Object payload;
+
+  Frame(final Recycler recycler, final int index) {
+    this.recycler = recycler;
+    this.index = index;
+  }
+
+  /**
+   * @param yPlane Luma plane, positioned at the first pixel.
+   * @param uPlane U plane, positioned at the first sample.
+   * @param vPlane V plane, positioned at the first sample.
+   * @param width Width of the frame in pixels.
+   * @param height Height of the frame in pixels.
+   * @param yRowStride Bytes between two luma rows.
+   * @param uvRowStride Bytes between two chroma rows.
+   * @param uvPixelStride Bytes between two chroma samples of a row.
+   * @param rotation Clockwise rotation in degrees needed to display the frame upright.
+   * @param timestampNs Sensor timestamp of the frame.
+   * @param payload Backend specific object behind the frame.
+   */
+  public void set(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int rotation,
+      final long timestampNs,
+      final Object payload) {
+    this.yPlane = yPlane;
+    this.uPlane = uPlane;
+    this.vPlane = vPlane;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.rotation = rotation;
+    this.timestampNs = timestampNs;
+    this.payload = payload;
+  }
+
+  public ByteBuffer getYPlane() {
+    return yPlane;
+  }
+
+  public ByteBuffer getUPlane() {
+    return uPlane;
+  }
+
+  public ByteBuffer getVPlane() {
+    return vPlane;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+
+  public int getRotation() {
+    return rotation;
+  }
+
+  public long getTimestampNs() {
+    return timestampNs;
+  }
+
+  public Object getPayload() {
+    return payload;
+  }
+
+  /** Hands the frame back to its source. The frame must not be used afterwards. */
+  public void release() {
+    recycler.recycle(this);
+  }
+
+  /** Drops the references to the released buffers. */
+  void clear() {
+    yPlane = null;
+    uPlane = null;
+    vPlane = null;
+    payload = null;
+  }
+}
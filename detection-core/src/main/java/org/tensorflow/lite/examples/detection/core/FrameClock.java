@@ -0,0 +1,77 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+/**
+ * The current time on the clock of the capture timestamps of the frames. Camera backends stamp
+ * frames with different clocks, e.g. the time since boot including deep sleep or the monotonic
+ * time without it, so the clock is picked from the candidates by the timestamp of the first frame:
+ * the first clock whose time is a little after it. If none is, e.g. for frames replayed from a
+ * recording, the first clock is offset so that the first frame is captured when it arrives.
+ */
+public final class FrameClock {
+  /** A clock in nanoseconds. */
+  public interface Clock {
+    long nowNs();
+  }
+
+  // A timestamp up to this much older than the time of a clock is on that clock.
+  private static final long MAX_CAPTURE_AGE_NS = 1000000000L;
+
+  private final Clock[] clocks;
+  private volatile Clock clock;
+  // Added to the time of the clock.
+  private volatile long offsetNs;
+  private volatile boolean calibrated = false;
+
+  /** @param clocks The clocks the capture timestamps may be on, in order of preference. */
+  public FrameClock(final Clock... clocks) {
+    if (clocks.length == 0) {
+      throw new IllegalArgumentException("No clock");
+    }
+    this.clocks = clocks.clone();
+    clock = clocks[0];
+  }
+
+  /** Picks the clock by the capture timestamp of a frame that just arrived, once. */
+  public synchronized void calibrate(final long captureNs) {
+    if (isCalibrated()) {
+      return;
+    }
+    for (final Clock candidate : clocks) {
+      final long ageNs = candidate.nowNs() - captureNs;
+      if (ageNs >= 0 && ageNs < MAX_CAPTURE_AGE_NS) {
+        clock = candidate;
+        offsetNs = 0;
+        calibrated = true;
+        return;
+      }
+    }
+    clock = clocks[0];
+    offsetNs = captureNs - clocks[0].nowNs();
+    calibrated = true;
+  }
+
+  public boolean isCalibrated() {
+    return calibrated;
+  }
+
+  /** The current time on the clock of the capture timestamps. */
+  public long nowNs() {
+    return clock.nowNs() + offsetNs;
+  }
+}
@@ -0,0 +1,97 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+/**
+ * Timestamps of a frame on its way from the camera to the displayed result, all on the clock of its
+ * capture timestamp, see {@link FrameClock}. Preallocated with the slot that carries the frame,
+ * copy it to keep it beyond the frame. A stage that wasn't marked yet has a timestamp of 0.
+ */
+public final class FrameContext {
+  private long captureNs;
+  private long receivedNs;
+  private long inferenceStartNs;
+  private long inferenceEndNs;
+  private long displayNs;
+
+  /**
+   * Starts the context of a new frame.
+   *
+   * @param captureNs Sensor timestamp of the frame.
+   * @param receivedNs Time the frame source delivered it.
+   */
+  public void start(final long captureNs, final long receivedNs) {
+    this.captureNs = captureNs;
+    this.receivedNs = receivedNs;
+    inferenceStartNs = 0;
+    inferenceEndNs = 0;
+    displayNs = 0;
+  }
+
+  public void markInferenceStart(final long nowNs) {
+    inferenceStartNs = nowNs;
+  }
+
+  public void markInferenceEnd(final long nowNs) {
+    inferenceEndNs = nowNs;
+  }
+
+  public void markDisplay(final long nowNs) {
+    displayNs = nowNs;
+  }
+
+  public void copyFrom(final FrameContext other) {
+    captureNs = other.captureNs;
+    receivedNs = other.receivedNs;
+    inferenceStartNs = other.inferenceStartNs;
+    inferenceEndNs = other.inferenceEndNs;
+    displayNs = other.displayNs;
+  }
+
+  public long getCaptureNs() {
+    return captureNs;
+  }
+
+  /** Time from the capture until the frame source delivered the frame, -1 if not marked. */
+  public long getCaptureToReceivedNs() {
+    return span(captureNs, receivedNs);
+  }
+
+  /** Time from the capture until the inference started, -1 if not marked. */
+  public long getCaptureToInferenceNs() {
+    return span(captureNs, inferenceStartNs);
+  }
+
+  /** Time the inference took, -1 if not marked. */
+  public long getInferenceNs() {
+    return span(inferenceStartNs, inferenceEndNs);
+  }
+
+  /** Time from the capture until the result was displayed, -1 if not marked. */
+  public long getCaptureToDisplayNs() {
+    return span(captureNs, displayNs);
+  }
+
+  /** Age of the frame at a time on the clock of its capture timestamp. */
+  public long getAgeNs(final long nowNs) {
+    return nowNs - captureNs;
+  }
+
+  private static long span(final long from, final long to) {
+    return from != 0 && to != 0 ? Math.max(0, to - from) : -1;
+  }
+}
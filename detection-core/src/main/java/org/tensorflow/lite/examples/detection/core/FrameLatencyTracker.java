@@ -0,0 +1,88 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.Locale;
+
+/**
+ * End-to-end latency of the displayed results: histograms of the time from the capture of a frame
+ * to the start of its inference, of the inference and of the time from the capture to the display
+ * of its result. Results displayed later than the age budget after their capture are counted as
+ * stale. Thread safe.
+ */
+public class FrameLatencyTracker {
+  private final long budgetNs;
+  private final LatencyHistogram captureToInference = new LatencyHistogram();
+  private final LatencyHistogram inference = new LatencyHistogram();
+  private final LatencyHistogram captureToDisplay = new LatencyHistogram();
+  private long recorded;
+  private long stale;
+
+  /** @param budgetNs Age up to which a displayed result is considered fresh. */
+  public FrameLatencyTracker(final long budgetNs) {
+    this.budgetNs = budgetNs;
+  }
+
+  /**
+   * Records the timestamps of a frame whose result was displayed.
+   *
+   * @return true if the result was older than the budget when it was displayed.
+   */
+  public synchronized boolean record(final FrameContext frame) {
+    ++recorded;
+    final long queued = frame.getCaptureToInferenceNs();
+    if (queued >= 0) {
+      captureToInference.record(queued);
+    }
+    final long inferred = frame.getInferenceNs();
+    if (inferred >= 0) {
+      inference.record(inferred);
+    }
+    final long displayed = frame.getCaptureToDisplayNs();
+    if (displayed < 0) {
+      return false;
+    }
+    captureToDisplay.record(displayed);
+    if (displayed > budgetNs) {
+      ++stale;
+      return true;
+    }
+    return false;
+  }
+
+  public synchronized long getRecorded() {
+    return recorded;
+  }
+
+  public synchronized long getStale() {
+    return stale;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.ROOT,
+        "End-to-end latency of %d results, %d (%.1f%%) older than %.0f ms:%n"
+            + "  capture to inference %s%n  inference            %s%n  capture to display   %s",
+        recorded,
+        stale,
+        recorded > 0 ? 100.0f * stale / recorded : 0.0f,
+        budgetNs / 1e6,
+        captureToInference,
+        inference,
+        captureToDisplay);
+  }
+}
@@ -0,0 +1,79 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed set of reusable {@link Frame} descriptors. Frames are obtained on the camera thread and
+ * released on the inference thread, the free list is a lock-free bit mask.
+ */
+public class FramePool {
+  private static final int MAX_FRAMES = 32;
+
+  private final Frame[] frames;
+  private final AtomicInteger freeMask;
+  private final Frame.Recycler onRelease;
+
+  /**
+   * @param size Number of frames, at most 32.
+   * @param onRelease Called with every released frame before it becomes available again, used to
+   *     close or return the buffer behind it.
+   */
+  public FramePool(final int size, final Frame.Recycler onRelease) {
+    if (size <= 0 || size > MAX_FRAMES) {
+      throw new IllegalArgumentException("Pool size must be in [1, " + MAX_FRAMES + "]: " + size);
+    }
+    this.onRelease = onRelease;
+    frames = new Frame[size];
+    final Frame.Recycler recycler =
+        new Frame.Recycler() {
+          @Override
+          public void recycle(final Frame frame) {
+            FramePool.this.recycle(frame);
+          }
+        };
+    for (int i = 0; i < size; ++i) {
+      frames[i] = new Frame(recycler, i);
+    }
+    freeMask = new AtomicInteger(size == MAX_FRAMES ? -1 : (1 << size) - 1);
+  }
+
+  /** @return a free frame, or null if all frames are in use. */
+  public Frame obtain() {
+    while (true) {
+      final int mask = freeMask.get();
+      if (mask == 0) {
+        return null;
+      }
+      final int bit = Integer.numberOfTrailingZeros(mask);
+      if (freeMask.compareAndSet(mask, mask & ~(1 << bit))) {
+        return frames[bit];
+      }
+    }
+  }
+
+  private void recycle(final Frame frame) {
+    onRelease.recycle(frame);
+    frame.clear();
+    while (true) {
+      final int mask = freeMask.get();
+      if (freeMask.compareAndSet(mask, mask | (1 << frame.index))) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Appends raw YUV frames and their metadata to memory-mapped segment files, see {@link
+ * FrameRecording} for the format. The recording is a ring: once the segments exceed the byte budget
+ * the oldest segment is deleted, so the last minutes before a problem are always available.
+ * Segments of earlier sessions in the same directory count towards the budget.
+ */
+public class FrameRecorder implements Closeable {
+  private final File dir;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final ArrayDeque<File> segments = new ArrayDeque<File>();
+
+  private long nextSequence = 0;
+  private MappedByteBuffer segment;
+  private boolean closed = false;
+
+  // Statistics.
+  private long framesRecorded;
+  private long framesSkipped;
+  private long segmentsDeleted;
+
+  /**
+   * @param dir Directory of the recording, created if needed.
+   * @param budgetBytes Maximum size of all segments together.
+   * @param segmentBytes Size of one segment, must hold at least one frame.
+   */
+  public FrameRecorder(final File dir, final long budgetBytes, final int segmentBytes)
+      throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = (int) Math.max(1, budgetBytes / segmentBytes);
+    for (final File f : FrameRecording.listSegments(dir)) {
+      segments.add(f);
+      final String name = f.getName();
+      final String number =
+          name.substring(
+              FrameRecording.SEGMENT_PREFIX.length(),
+              name.length() - FrameRecording.SEGMENT_SUFFIX.length());
+      try {
+        nextSequence = Math.max(nextSequence, Long.parseLong(number) + 1);
+      } catch (final NumberFormatException e) {
+        // not one of ours, keep the name order
+      }
+    }
+  }
+
+  /**
+   * Appends the frame. The planes are read from their current position without moving it.
+   *
+   * @param orientation Device orientation in degrees, stored alongside the frame rotation.
+   * @return false if the recorder is closed or the frame doesn't fit into a segment.
+   */
+  public synchronized boolean record(final Frame frame, final int orientation) throws IOException {
+    if (closed) {
+      return false;
+    }
+    final ByteBuffer y = frame.getYPlane().duplicate();
+    final ByteBuffer u = frame.getUPlane().duplicate();
+    final ByteBuffer v = frame.getVPlane().duplicate();
+    final int length =
+        FrameRecording.RECORD_HEADER_BYTES + y.remaining() + u.remaining() + v.remaining();
+    if (FrameRecording.SEGMENT_HEADER_BYTES + 4 + length > segmentBytes) {
+      framesSkipped++;
+      return false;
+    }
+    if (segment == null || segment.remaining() < 4 + length) {
+      nextSegment();
+    }
+
+    segment.putInt(length);
+    segment.putLong(frame.getTimestampNs());
+    segment.putInt(frame.getWidth());
+    segment.putInt(frame.getHeight());
+    segment.putInt(frame.getYRowStride());
+    segment.putInt(frame.getUvRowStride());
+    segment.putInt(frame.getUvPixelStride());
+    segment.putInt(frame.getRotation());
+    segment.putInt(orientation);
+    segment.putInt(y.remaining());
+    segment.putInt(u.remaining());
+    segment.putInt(v.remaining());
+    segment.put(y);
+    segment.put(u);
+    segment.put(v);
+    framesRecorded++;
+    return true;
+  }
+
+  private void nextSegment() throws IOException {
+    finishSegment();
+    while (segments.size() >= maxSegments) {
+      final File oldest = segments.removeFirst();
+      if (!oldest.delete()) {
+        throw new IOException("Could not delete " + oldest);
+      }
+      segmentsDeleted++;
+    }
+
+    final long sequence = nextSequence++;
+    final File file = new File(dir, FrameRecording.segmentName(sequence));
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    } finally {
+      // The mapping stays valid after the channel is closed.
+      raf.close();
+    }
+    segment.order(ByteOrder.LITTLE_ENDIAN);
+    segment.putInt(FrameRecording.MAGIC);
+    segment.putInt(FrameRecording.VERSION);
+    segment.putLong(sequence);
+    segments.addLast(file);
+  }
+
+  private void finishSegment() {
+    if (segment == null) {
+      return;
+    }
+    // The rest of a new mapping is zero, which reads as the end marker.
+    if (segment.remaining() >= 4) {
+      segment.putInt(0);
+    }
+    segment.force();
+    segment = null;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.ROOT,
+        "Recorder: %d frames, %d skipped, %d segments of %d KB, %d deleted",
+        framesRecorded, framesSkipped, segments.size(), segmentBytes / 1024, segmentsDeleted);
+  }
+
+  /** Flushes the current segment. The mapping itself is released by the garbage collector. */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    finishSegment();
+  }
+}
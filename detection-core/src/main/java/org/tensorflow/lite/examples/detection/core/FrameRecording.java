@@ -0,0 +1,180 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the raw frames written by a {@link FrameRecorder}, oldest first. The planes of the returned
+ * frames are views into the memory-mapped segment files, nothing is copied.
+ *
+ * <p>A recording is a directory of segment files. Every segment starts with a header (magic,
+ * version, sequence number) followed by length-prefixed records:
+ *
+ * <pre>
+ * int   length of the record after this field, 0 marks the end of the segment
+ * long  timestampNs
+ * int   width, height, yRowStride, uvRowStride, uvPixelStride, rotation, orientation
+ * int   ySize, uSize, vSize
+ * byte  y[ySize], u[uSize], v[vSize]
+ * </pre>
+ *
+ * All values are little endian.
+ */
+public class FrameRecording {
+  static final int MAGIC = 0x52565559; // "YUVR"
+  static final int VERSION = 1;
+  static final int SEGMENT_HEADER_BYTES = 16;
+  static final int RECORD_HEADER_BYTES = 8 + 10 * 4;
+  static final String SEGMENT_PREFIX = "frames-";
+  static final String SEGMENT_SUFFIX = ".seg";
+
+  private final List<File> segments;
+  private int segmentIndex = -1;
+  private MappedByteBuffer segment;
+
+  // Metadata of the last frame read that doesn't fit into a Frame.
+  private int orientation;
+
+  public FrameRecording(final File dir) throws IOException {
+    segments = listSegments(dir);
+    if (segments.isEmpty()) {
+      throw new IOException("No recorded segments in " + dir);
+    }
+  }
+
+  /** @return the segment files of a recording directory, oldest first. */
+  public static List<File> listSegments(final File dir) {
+    final List<File> files = new ArrayList<File>();
+    final File[] entries = dir.listFiles();
+    if (entries == null) {
+      return files;
+    }
+    // The sequence number is zero padded, so the name order is the recording order.
+    Arrays.sort(entries);
+    for (final File f : entries) {
+      if (f.isFile()
+          && f.getName().startsWith(SEGMENT_PREFIX)
+          && f.getName().endsWith(SEGMENT_SUFFIX)) {
+        files.add(f);
+      }
+    }
+    return files;
+  }
+
+  static String segmentName(final long sequence) {
+    return String.format("%s%010d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+  }
+
+  /**
+   * Reads the next frame into frame.
+   *
+   * @return false at the end of the recording.
+   */
+  public boolean next(final Frame frame, final Object payload) throws IOException {
+    while (true) {
+      if (segment == null || segment.remaining() < 4 || peekLength() <= 0) {
+        if (!openSegment(segmentIndex + 1)) {
+          return false;
+        }
+        continue;
+      }
+      final int length = segment.getInt();
+      if (length < RECORD_HEADER_BYTES || length > segment.remaining()) {
+        throw new IOException(
+            "Corrupt record in " + segments.get(segmentIndex) + " at " + (segment.position() - 4));
+      }
+      final int end = segment.position() + length;
+      final long timestampNs = segment.getLong();
+      final int width = segment.getInt();
+      final int height = segment.getInt();
+      final int yRowStride = segment.getInt();
+      final int uvRowStride = segment.getInt();
+      final int uvPixelStride = segment.getInt();
+      final int rotation = segment.getInt();
+      orientation = segment.getInt();
+      final int ySize = segment.getInt();
+      final int uSize = segment.getInt();
+      final int vSize = segment.getInt();
+      if (RECORD_HEADER_BYTES + ySize + uSize + vSize != length) {
+        throw new IOException("Plane sizes don't match the record length");
+      }
+      final ByteBuffer y = slice(ySize);
+      final ByteBuffer u = slice(uSize);
+      final ByteBuffer v = slice(vSize);
+      segment.position(end);
+      frame.set(
+          y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride, rotation, timestampNs,
+          payload);
+      return true;
+    }
+  }
+
+  /** Device orientation in degrees when the last frame read was recorded. */
+  public int getOrientation() {
+    return orientation;
+  }
+
+  /** Starts reading from the oldest frame again. */
+  public void rewind() {
+    segmentIndex = -1;
+    segment = null;
+  }
+
+  private int peekLength() {
+    return segment.getInt(segment.position());
+  }
+
+  private ByteBuffer slice(final int size) {
+    final ByteBuffer plane = segment.duplicate();
+    plane.limit(plane.position() + size);
+    segment.position(segment.position() + size);
+    return plane.slice();
+  }
+
+  private boolean openSegment(final int index) throws IOException {
+    segment = null;
+    segmentIndex = index;
+    if (index >= segments.size()) {
+      return false;
+    }
+    final File file = segments.get(index);
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } finally {
+      // The mapping stays valid after the channel is closed.
+      raf.close();
+    }
+    segment.order(ByteOrder.LITTLE_ENDIAN);
+    if (segment.remaining() < SEGMENT_HEADER_BYTES
+        || segment.getInt() != MAGIC
+        || segment.getInt() != VERSION) {
+      throw new IOException("Not a frame recording segment: " + file);
+    }
+    segment.getLong(); // sequence number
+    return true;
+  }
+}
@@ -0,0 +1,36 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+/**
+ * Backend independent producer of YUV_420 frames. All frames are delivered on a single thread, the
+ * listener owns each frame until it calls {@link Frame#release()}.
+ */
+public interface FrameSource {
+  /** Receives the frames of a source. */
+  interface Listener {
+    void onFrame(Frame frame);
+  }
+
+  /** Starts delivering frames to the listener. */
+  void start(Listener listener);
+
+  /** Stops delivering frames. Frames already delivered stay valid until released. */
+  void stop();
+
+  /** Short name of the backend, used in logs and benchmarks. */
+  String getName();
+}
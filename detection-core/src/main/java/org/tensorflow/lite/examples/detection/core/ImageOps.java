@@ -0,0 +1,195 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel operations on ARGB_8888 arrays. They mirror drawing a bitmap through a matrix from
+ * ImageUtils.getTransformationMatrix so the pipeline can run without android.graphics.
+ */
+public final class ImageOps {
+  private ImageOps() {}
+
+  // Video range luma (16-235) to the grey level the RGB conversion gives it with neutral chroma.
+  private static final byte[] LUMA_TO_GREY = new byte[256];
+
+  static {
+    for (int y = 0; y < 256; ++y) {
+      LUMA_TO_GREY[y] = (byte) YuvConverter.YUV2RGB(y, 128, 128);
+    }
+  }
+
+  /**
+   * Resamples a region of the source into the destination with nearest neighbour sampling,
+   * applying the same rotation and scaling as ImageUtils.getTransformationMatrix. Destination
+   * pixels that map outside of the source are set to 0.
+   *
+   * @param src Source pixels.
+   * @param srcWidth Width of the source image.
+   * @param srcHeight Height of the source image.
+   * @param cropLeft Left edge of the source region.
+   * @param cropTop Top edge of the source region.
+   * @param cropWidth Width of the source region.
+   * @param cropHeight Height of the source region.
+   * @param rotation Clockwise rotation in degrees, a multiple of 90.
+   * @param maintainAspect Scale both axes by the same factor, cropping if necessary.
+   * @param dst Destination pixels.
+   * @param dstWidth Width of the destination image.
+   * @param dstHeight Height of the destination image.
+   */
+  public static void transform(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int cropLeft,
+      final int cropTop,
+      final int cropWidth,
+      final int cropHeight,
+      final int rotation,
+      final boolean maintainAspect,
+      final int[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    transform(
+        src, srcWidth, srcHeight, cropLeft, cropTop, cropWidth, cropHeight, rotation,
+        maintainAspect, dst, 0, dstWidth, dstHeight);
+  }
+
+  /**
+   * {@link #transform} into the destination image starting at dstOffset, e.g. one image of a
+   * batch.
+   */
+  public static void transform(
+      final int[] src,
+      final int srcWidth,
+      final int srcHeight,
+      final int cropLeft,
+      final int cropTop,
+      final int cropWidth,
+      final int cropHeight,
+      final int rotation,
+      final boolean maintainAspect,
+      final int[] dst,
+      final int dstOffset,
+      final int dstWidth,
+      final int dstHeight) {
+    final int normalized = ((rotation % 360) + 360) % 360;
+    final boolean transpose = normalized % 180 == 90;
+    final int inWidth = transpose ? cropHeight : cropWidth;
+    final int inHeight = transpose ? cropWidth : cropHeight;
+
+    float scaleX = dstWidth / (float) inWidth;
+    float scaleY = dstHeight / (float) inHeight;
+    if (maintainAspect) {
+      scaleX = scaleY = Math.max(scaleX, scaleY);
+    }
+
+    // Inverse rotation, rotating by -rotation.
+    final int cos = normalized == 0 ? 1 : (normalized == 180 ? -1 : 0);
+    final int sin = normalized == 90 ? 1 : (normalized == 270 ? -1 : 0);
+
+    for (int y = 0; y < dstHeight; ++y) {
+      for (int x = 0; x < dstWidth; ++x) {
+        float u;
+        float v;
+        if (normalized == 0) {
+          u = (x + 0.5f) / scaleX;
+          v = (y + 0.5f) / scaleY;
+        } else {
+          // Undo the translation to the destination center and the scaling.
+          final float px = (x + 0.5f - dstWidth / 2.0f) / scaleX;
+          final float py = (y + 0.5f - dstHeight / 2.0f) / scaleY;
+          // Undo the rotation and the translation of the source center to the origin.
+          u = px * cos + py * sin + cropWidth / 2.0f;
+          v = -px * sin + py * cos + cropHeight / 2.0f;
+        }
+
+        final int cx = (int) Math.floor(u);
+        final int cy = (int) Math.floor(v);
+        final int sx = cropLeft + cx;
+        final int sy = cropTop + cy;
+        if (cx < 0 || cy < 0 || cx >= cropWidth || cy >= cropHeight
+            || sx < 0 || sy < 0 || sx >= srcWidth || sy >= srcHeight) {
+          dst[dstOffset + y * dstWidth + x] = 0;
+        } else {
+          dst[dstOffset + y * dstWidth + x] = src[sy * srcWidth + sx];
+        }
+      }
+    }
+  }
+
+  /**
+   * Scales a camera luma plane into the destination, sampling the same pixels as {@link
+   * #transform} of the whole frame without rotation. The video range of the plane is expanded to
+   * full range, so a grey frame gives the same values as the ARGB path. Chroma is never read.
+   *
+   * @param yPlane Luma plane, positioned at the first pixel. Its position is not changed.
+   * @param rowStride Bytes between two luma rows.
+   * @param srcWidth Width of the frame.
+   * @param srcHeight Height of the frame.
+   * @param maintainAspect Scale both axes by the same factor, cropping if necessary.
+   * @param dst Destination luma, one byte per pixel.
+   * @param dstWidth Width of the destination image.
+   * @param dstHeight Height of the destination image.
+   */
+  public static void scaleLuma(
+      final ByteBuffer yPlane,
+      final int rowStride,
+      final int srcWidth,
+      final int srcHeight,
+      final boolean maintainAspect,
+      final byte[] dst,
+      final int dstWidth,
+      final int dstHeight) {
+    float scaleX = dstWidth / (float) srcWidth;
+    float scaleY = dstHeight / (float) srcHeight;
+    if (maintainAspect) {
+      scaleX = scaleY = Math.max(scaleX, scaleY);
+    }
+
+    final int base = yPlane.position();
+    for (int y = 0; y < dstHeight; ++y) {
+      // Truncation is floor here, the sample positions are never negative.
+      final int sy = (int) ((y + 0.5f) / scaleY);
+      final int row = base + sy * rowStride;
+      final int out = y * dstWidth;
+      for (int x = 0; x < dstWidth; ++x) {
+        final int sx = (int) ((x + 0.5f) / scaleX);
+        if (sx >= srcWidth || sy >= srcHeight) {
+          dst[out + x] = 0;
+        } else {
+          dst[out + x] = LUMA_TO_GREY[yPlane.get(row + sx) & 0xFF];
+        }
+      }
+    }
+  }
+
+  /**
+   * Integer approximation of full range BT.601 luma, for ARGB images that don't come from a
+   * camera luma plane.
+   *
+   * @param argb Pixels in ARGB_8888.
+   * @param count Number of pixels to convert.
+   * @param luma Destination luma, one byte per pixel.
+   */
+  public static void toLuma(final int[] argb, final int count, final byte[] luma) {
+    for (int i = 0; i < count; ++i) {
+      final int p = argb[i];
+      luma[i] = (byte) ((77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF)) >> 8);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.List;
+
+/**
+ * Detection model behind the tag pipeline. Implementations are not required to be thread safe,
+ * each pipeline thread owns its own engines.
+ */
+public interface InferenceEngine {
+  /**
+   * @param argb Input image in ARGB_8888, already scaled to the input size of the model.
+   * @param width Width of the input image.
+   * @param height Height of the input image.
+   * @return detections in input image coordinates, sorted by confidence.
+   */
+  List<Detection> recognize(int[] argb, int width, int height);
+
+  /**
+   * Runs the model on a grey image, used for models configured to take luma only.
+   *
+   * @param luma Full range luma, one byte per pixel, already scaled to the input size of the model.
+   * @param width Width of the input image.
+   * @param height Height of the input image.
+   * @return detections in input image coordinates, sorted by confidence.
+   */
+  List<Detection> recognizeLuma(byte[] luma, int width, int height);
+
+  /**
+   * Runs the model on several images of the same size, in one invocation if the model takes a
+   * batch dimension.
+   *
+   * @param argb count input images in ARGB_8888, width * height pixels each, one after the other.
+   * @param count Number of images.
+   * @param width Width of each input image.
+   * @param height Height of each input image.
+   * @return detections of each image in input image coordinates, sorted by confidence.
+   */
+  List<List<Detection>> recognizeBatch(int[] argb, int count, int width, int height);
+
+  /** Releases the resources of the engine. */
+  void close();
+
+  /** Creates the box and digit engines of a pipeline. */
+  interface Factory {
+    InferenceEngine createBoxEngine(PipelineConfig config) throws Exception;
+
+    InferenceEngine createDigitEngine(PipelineConfig config) throws Exception;
+  }
+}
@@ -0,0 +1,121 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.Locale;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets: every power of two is split
+ * into 8 buckets, so a percentile is off by at most an eighth of its value, and the histogram has
+ * a fixed size whatever the range of the latencies. Not thread safe.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Enough buckets for any positive long.
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sumUs;
+  private long maxUs;
+
+  /** Records one latency. */
+  public void record(final long ns) {
+    final long us = Math.max(0, ns / 1000);
+    ++counts[bucket(us)];
+    ++count;
+    sumUs += us;
+    maxUs = Math.max(maxUs, us);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  /** Mean latency in ms, 0 if empty. */
+  public double getMeanMs() {
+    return count > 0 ? sumUs / 1e3 / count : 0;
+  }
+
+  public double getMaxMs() {
+    return maxUs / 1e3;
+  }
+
+  /**
+   * The latency in ms below which p percent of the recorded ones are, the upper bound of its
+   * bucket. 0 if empty.
+   */
+  public double percentileMs(final double p) {
+    if (count == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(count * p / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(maxUs, lowerBoundUs(i + 1) - 1) / 1e3;
+      }
+    }
+    return getMaxMs();
+  }
+
+  /** Number of buckets, {@link #getBucketCount(int)} is 0 beyond the last non-empty one. */
+  public int size() {
+    for (int i = BUCKETS - 1; i >= 0; --i) {
+      if (counts[i] > 0) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  public long getBucketCount(final int bucket) {
+    return counts[bucket];
+  }
+
+  /** Smallest latency in microseconds that falls into a bucket. */
+  public static long lowerBoundUs(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    final int shift = bucket / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+  }
+
+  static int bucket(final long us) {
+    if (us < SUB_BUCKETS) {
+      return (int) us;
+    }
+    final int shift = 63 - Long.numberOfLeadingZeros(us) - SUB_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((us >> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /** Mean, p50, p95, p99 and max in ms. */
+  @Override
+  public String toString() {
+    return String.format(
+        Locale.ROOT,
+        "mean %.2f ms, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms",
+        getMeanMs(),
+        percentileMs(50),
+        percentileMs(95),
+        percentileMs(99),
+        getMaxMs());
+  }
+}
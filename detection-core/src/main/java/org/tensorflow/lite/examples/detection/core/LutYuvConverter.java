@@ -0,0 +1,255 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table driven YUV to ARGB_8888 conversion, bit-exact with {@link YuvConverter}.
+ *
+ * <p>The per-channel contributions of Y, U and V are precomputed, so a pixel costs three table
+ * lookups for the sums and three for the clamped, shifted channels instead of six multiplies and
+ * three range checks. The chroma contributions are looked up once per chroma sample and shared by
+ * the two pixels of a row that use it. Verified by LutYuvConverterTest.
+ */
+public final class LutYuvConverter {
+  private LutYuvConverter() {}
+
+  // Contribution of each channel value to the 2^18 fixed point sums of YuvConverter.YUV2RGB.
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GUV_U_TABLE = new int[256];
+  private static final int[] GUV_V_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+
+  // Clamping the sum to [0, 2^18 - 1] and then shifting it by 10 is the same as shifting first
+  // and clamping to [0, 255], so the clamp is a lookup by the shifted sum. The sums lie in
+  // [-264448, 547270], i.e. [-259, 534] after the shift.
+  private static final int CLAMP_OFFSET = 384;
+  private static final int CLAMP_SIZE = 1024;
+  // Clamped channels already at their position in the pixel, alpha included in red.
+  private static final int[] R_CLAMP = new int[CLAMP_SIZE];
+  private static final int[] G_CLAMP = new int[CLAMP_SIZE];
+  private static final int[] B_CLAMP = new int[CLAMP_SIZE];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      Y_TABLE[i] = 1192 * Math.max(i - 16, 0);
+      RV_TABLE[i] = 1634 * (i - 128);
+      GUV_U_TABLE[i] = -400 * (i - 128);
+      GUV_V_TABLE[i] = -833 * (i - 128);
+      BU_TABLE[i] = 2066 * (i - 128);
+    }
+    for (int i = 0; i < CLAMP_SIZE; ++i) {
+      final int c = Math.min(Math.max(i - CLAMP_OFFSET, 0), 255);
+      R_CLAMP[i] = 0xff000000 | (c << 16);
+      G_CLAMP[i] = c << 8;
+      B_CLAMP[i] = c;
+    }
+  }
+
+  /** Converts one pixel, same result as YuvConverter.YUV2RGB. */
+  static int toArgb(final int y, final int u, final int v) {
+    final int yy = Y_TABLE[y];
+    return R_CLAMP[((yy + RV_TABLE[v]) >> 10) + CLAMP_OFFSET]
+        | G_CLAMP[((yy + GUV_U_TABLE[u] + GUV_V_TABLE[v]) >> 10) + CLAMP_OFFSET]
+        | B_CLAMP[((yy + BU_TABLE[u]) >> 10) + CLAMP_OFFSET];
+  }
+
+  /** Converts an NV21 frame, see {@link YuvConverter#convertYUV420SPToARGB8888}. */
+  public static void convertYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final int[] output) {
+    final int frameSize = width * height;
+    final int pairs = width >> 1;
+    for (int j = 0, yp = 0; j < height; j++) {
+      int uvp = frameSize + (j >> 1) * width;
+      for (int k = 0; k < pairs; k++) {
+        final int v = 0xff & input[uvp++];
+        final int u = 0xff & input[uvp++];
+        final int rv = RV_TABLE[v] + (CLAMP_OFFSET << 10);
+        final int guv = GUV_U_TABLE[u] + GUV_V_TABLE[v] + (CLAMP_OFFSET << 10);
+        final int bu = BU_TABLE[u] + (CLAMP_OFFSET << 10);
+
+        int yy = Y_TABLE[0xff & input[yp]];
+        output[yp++] =
+            R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+        yy = Y_TABLE[0xff & input[yp]];
+        output[yp++] =
+            R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+      }
+      if ((width & 1) != 0) {
+        output[yp] = toArgb(0xff & input[yp], 0xff & input[uvp + 1], 0xff & input[uvp]);
+        yp++;
+      }
+    }
+  }
+
+  /**
+   * Converts a YUV_420_888 frame, see {@link YuvConverter#convertYUV420ToARGB8888}. Planar (pixel
+   * stride 1) and interleaved (pixel stride 2) chroma take specialized loops.
+   */
+  public static void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    for (int j = 0; j < height; j++) {
+      final int pUV = uvRowStride * (j >> 1);
+      convertRow(
+          yData, yRowStride * j, uData, pUV, vData, pUV, uvPixelStride, width, out, width * j);
+    }
+  }
+
+  /**
+   * Converts a YUV_420_888 frame straight from its plane buffers with absolute gets, without
+   * copying the planes first. The planes are read from their current position, which is left
+   * unchanged. {@link YuvPlaneConverter} is faster for direct buffers.
+   */
+  public static void convertYUV420ToARGB8888(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    final int yBase = yPlane.position();
+    final int uBase = uPlane.position();
+    final int vBase = vPlane.position();
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yBase + yRowStride * j;
+      final int pUV = uvRowStride * (j >> 1);
+      int pU = uBase + pUV;
+      int pV = vBase + pUV;
+      for (int i = 0; i < width; i += 2, pU += uvPixelStride, pV += uvPixelStride) {
+        final int u = 0xff & uPlane.get(pU);
+        final int v = 0xff & vPlane.get(pV);
+        final int rv = RV_TABLE[v] + (CLAMP_OFFSET << 10);
+        final int guv = GUV_U_TABLE[u] + GUV_V_TABLE[v] + (CLAMP_OFFSET << 10);
+        final int bu = BU_TABLE[u] + (CLAMP_OFFSET << 10);
+
+        int yy = Y_TABLE[0xff & yPlane.get(pY++)];
+        out[yp++] =
+            R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+        if (i + 1 < width) {
+          yy = Y_TABLE[0xff & yPlane.get(pY++)];
+          out[yp++] =
+              R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts one row of pixels.
+   *
+   * @param pY Offset of the first luma sample of the row.
+   * @param pU Offset of the first U sample of the row.
+   * @param pV Offset of the first V sample of the row.
+   * @param yp Offset of the first output pixel.
+   */
+  static void convertRow(
+      final byte[] yData,
+      final int pY,
+      final byte[] uData,
+      final int pU,
+      final byte[] vData,
+      final int pV,
+      final int uvPixelStride,
+      final int width,
+      final int[] out,
+      final int yp) {
+    if (uvPixelStride == 1) {
+      convertRowPlanar(yData, pY, uData, pU, vData, pV, width, out, yp);
+    } else if (uvPixelStride == 2) {
+      convertRowInterleaved(yData, pY, uData, pU, vData, pV, width, out, yp);
+    } else {
+      for (int i = 0; i < width; i++) {
+        final int uvOffset = (i >> 1) * uvPixelStride;
+        out[yp + i] =
+            toArgb(0xff & yData[pY + i], 0xff & uData[pU + uvOffset], 0xff & vData[pV + uvOffset]);
+      }
+    }
+  }
+
+  private static void convertRowPlanar(
+      final byte[] yData,
+      int pY,
+      final byte[] uData,
+      int pU,
+      final byte[] vData,
+      int pV,
+      final int width,
+      final int[] out,
+      int yp) {
+    final int pairs = width >> 1;
+    for (int k = 0; k < pairs; k++) {
+      final int u = 0xff & uData[pU++];
+      final int v = 0xff & vData[pV++];
+      final int rv = RV_TABLE[v] + (CLAMP_OFFSET << 10);
+      final int guv = GUV_U_TABLE[u] + GUV_V_TABLE[v] + (CLAMP_OFFSET << 10);
+      final int bu = BU_TABLE[u] + (CLAMP_OFFSET << 10);
+
+      int yy = Y_TABLE[0xff & yData[pY++]];
+      out[yp++] =
+          R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+      yy = Y_TABLE[0xff & yData[pY++]];
+      out[yp++] =
+          R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+    }
+    if ((width & 1) != 0) {
+      out[yp] = toArgb(0xff & yData[pY], 0xff & uData[pU], 0xff & vData[pV]);
+    }
+  }
+
+  private static void convertRowInterleaved(
+      final byte[] yData,
+      int pY,
+      final byte[] uData,
+      int pU,
+      final byte[] vData,
+      int pV,
+      final int width,
+      final int[] out,
+      int yp) {
+    final int pairs = width >> 1;
+    for (int k = 0; k < pairs; k++, pU += 2, pV += 2) {
+      final int u = 0xff & uData[pU];
+      final int v = 0xff & vData[pV];
+      final int rv = RV_TABLE[v] + (CLAMP_OFFSET << 10);
+      final int guv = GUV_U_TABLE[u] + GUV_V_TABLE[v] + (CLAMP_OFFSET << 10);
+      final int bu = BU_TABLE[u] + (CLAMP_OFFSET << 10);
+
+      int yy = Y_TABLE[0xff & yData[pY++]];
+      out[yp++] =
+          R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+      yy = Y_TABLE[0xff & yData[pY++]];
+      out[yp++] =
+          R_CLAMP[(yy + rv) >> 10] | G_CLAMP[(yy + guv) >> 10] | B_CLAMP[(yy + bu) >> 10];
+    }
+    if ((width & 1) != 0) {
+      out[yp] = toArgb(0xff & yData[pY], 0xff & uData[pU], 0xff & vData[pV]);
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Greedy non-maximum suppression over detections. */
+public final class NonMaxSuppression {
+  private NonMaxSuppression() {}
+
+  private static final Comparator<Detection> BY_CONFIDENCE =
+      new Comparator<Detection>() {
+        @Override
+        public int compare(final Detection a, final Detection b) {
+          return Float.compare(b.getConfidence(), a.getConfidence());
+        }
+      };
+
+  /**
+   * Keeps the most confident detections and drops every detection overlapping a kept one by more
+   * than the IoU threshold.
+   *
+   * @param detections Candidates, not modified.
+   * @param minConfidence Candidates below this confidence are dropped.
+   * @param iouThreshold Maximum overlap between two kept detections.
+   * @param perClass If true only detections with the same title suppress each other.
+   * @param maxResults Maximum number of detections returned.
+   * @return kept detections sorted by confidence.
+   */
+  public static List<Detection> apply(
+      final List<Detection> detections,
+      final float minConfidence,
+      final float iouThreshold,
+      final boolean perClass,
+      final int maxResults) {
+    final List<Detection> candidates = new ArrayList<Detection>(detections.size());
+    for (final Detection d : detections) {
+      if (d.getConfidence() >= minConfidence) {
+        candidates.add(d);
+      }
+    }
+    Collections.sort(candidates, BY_CONFIDENCE);
+
+    final List<Detection> kept = new ArrayList<Detection>();
+    final List<Box> keptBoxes = new ArrayList<Box>();
+    for (final Detection candidate : candidates) {
+      if (kept.size() >= maxResults) {
+        break;
+      }
+      final Box box = candidate.getLocation();
+      boolean suppressed = false;
+      for (int i = 0; i < kept.size(); ++i) {
+        if (perClass && !kept.get(i).getTitle().equals(candidate.getTitle())) {
+          continue;
+        }
+        if (Box.iou(keptBoxes.get(i), box) > iouThreshold) {
+          suppressed = true;
+          break;
+        }
+      }
+      if (!suppressed) {
+        kept.add(candidate);
+        keptBoxes.add(box);
+      }
+    }
+    return kept;
+  }
+}
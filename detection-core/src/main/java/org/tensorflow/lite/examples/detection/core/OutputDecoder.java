@@ -0,0 +1,59 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Decodes the outputs of an SSD model exported by the TensorFlow Object Detection API. */
+public final class OutputDecoder {
+  private OutputDecoder() {}
+
+  /**
+   * @param locations Boxes of shape [1, count, 4] as normalized (top, left, bottom, right).
+   * @param classes Class indices of shape [1, count].
+   * @param scores Scores of shape [1, count].
+   * @param count Number of detection slots to decode.
+   * @param labels Labels of the model.
+   * @param labelOffset Offset between class index and label index, 1 if label 0 is background.
+   * @param width Width of the model input, used to scale the boxes.
+   * @param height Height of the model input, used to scale the boxes.
+   * @return one detection per slot, in model order (sorted by score for SSD models).
+   */
+  public static List<Detection> decode(
+      final float[][][] locations,
+      final float[][] classes,
+      final float[][] scores,
+      final int count,
+      final List<String> labels,
+      final int labelOffset,
+      final int width,
+      final int height) {
+    final ArrayList<Detection> detections = new ArrayList<Detection>(count);
+    for (int i = 0; i < count; ++i) {
+      final Box detection =
+          new Box(
+              locations[0][i][1] * width,
+              locations[0][i][0] * height,
+              locations[0][i][3] * width,
+              locations[0][i][2] * height);
+      detections.add(
+          new Detection(
+              "" + i, labels.get((int) classes[0][i] + labelOffset), scores[0][i], detection));
+    }
+    return detections;
+  }
+}
@@ -0,0 +1,131 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.Arrays;
+
+/** Parameters of the two-stage tag pipeline. */
+public class PipelineConfig {
+  /** Input width of the box detector. */
+  public int boxWidth = 360;
+  /** Input height of the box detector. */
+  public int boxHeight = 640;
+  /** Input width of the digit detector. */
+  public int digitWidth = 600;
+  /** Input height of the digit detector. */
+  public int digitHeight = 600;
+  /**
+   * Edge lengths of smaller square digit detector inputs, ascending. Each tag is read at the
+   * smallest of them that holds its crop at native pixel density, or at digitWidth x digitHeight
+   * if none does. Null always uses digitWidth x digitHeight.
+   */
+  public int[] digitSizes = null;
+  /** Minimum confidence of a box or a digit. */
+  public float minConfidence = 0.4f;
+  /** Crop instead of squeeze when scaling into the model inputs. */
+  public boolean maintainAspect = false;
+  /**
+   * Feed the box detector with luma only. Frames given as YUV planes are then only converted to
+   * ARGB when a tag box was found.
+   */
+  public boolean boxLuma = false;
+  /**
+   * Grid size of the tiled box detection that runs when the coarse pass finds no tag, e.g. 2 for
+   * 2x2 tiles at twice the resolution. 0 disables it.
+   */
+  public int boxTiles = 0;
+  /** Fraction of a tile that overlaps its neighbour. */
+  public float boxTileOverlap = 0.25f;
+  /** Box engines that run the tiles in parallel. */
+  public int boxTileWorkers = 2;
+  /**
+   * Tags read per frame, the most confident boxes first. Above 1 the tags are cropped into the
+   * images of one batched digit detector call.
+   */
+  public int maxTags = 1;
+  /**
+   * Minimum {@link PresenceFilter} score of the box detector input for the box detector to run, 0
+   * runs it on every frame.
+   */
+  public float presenceThreshold = 0.0f;
+  /**
+   * Size of the proxy box pass relative to the box input, e.g. 0.5 for half of boxWidth x
+   * boxHeight. The proxy pass looks at the whole frame, a second pass at the same reduced size
+   * refines its most confident box on a crop around it. 0 runs a single pass at the full size.
+   */
+  public float boxProxyScale = 0.0f;
+  /** Minimum confidence of a proxy pass box for the refinement pass to run on it. */
+  public float boxProxyConfidence = 0.2f;
+  /**
+   * Minimum IoU of the tag box found in a frame with the one predicted from the previous frames to
+   * commit the digits read speculatively from the predicted box while the box detector ran. 0
+   * disables the speculative read.
+   */
+  public float speculativeIou = 0.0f;
+
+  public PipelineConfig copy() {
+    final PipelineConfig c = new PipelineConfig();
+    c.boxWidth = boxWidth;
+    c.boxHeight = boxHeight;
+    c.digitWidth = digitWidth;
+    c.digitHeight = digitHeight;
+    c.digitSizes = digitSizes != null ? digitSizes.clone() : null;
+    c.minConfidence = minConfidence;
+    c.maintainAspect = maintainAspect;
+    c.boxLuma = boxLuma;
+    c.boxTiles = boxTiles;
+    c.boxTileOverlap = boxTileOverlap;
+    c.boxTileWorkers = boxTileWorkers;
+    c.maxTags = maxTags;
+    c.presenceThreshold = presenceThreshold;
+    c.boxProxyScale = boxProxyScale;
+    c.boxProxyConfidence = boxProxyConfidence;
+    c.speculativeIou = speculativeIou;
+    return c;
+  }
+
+  /** True if the box detector runs coarse-to-fine, see {@link #boxProxyScale}. */
+  public boolean hasBoxProxy() {
+    return boxProxyScale > 0 && boxProxyScale < 1;
+  }
+
+  /** Width of the box detector input of the proxy pass, boxWidth without one. */
+  public int proxyWidth() {
+    return hasBoxProxy() ? Math.round(boxWidth * boxProxyScale) : boxWidth;
+  }
+
+  /** Height of the box detector input of the proxy pass, boxHeight without one. */
+  public int proxyHeight() {
+    return hasBoxProxy() ? Math.round(boxHeight * boxProxyScale) : boxHeight;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "box %dx%d%s%s%s%s, digit %dx%d%s%s%s, confidence %.2f, aspect %b",
+        boxWidth, boxHeight,
+        hasBoxProxy() ? String.format(" proxy %dx%d", proxyWidth(), proxyHeight()) : "",
+        boxLuma ? " luma" : "",
+        presenceThreshold > 0 ? String.format(" presence %.3f", presenceThreshold) : "",
+        boxTiles > 1 ? String.format(" tiled %dx%d", boxTiles, boxTiles) : "",
+        digitWidth, digitHeight,
+        digitSizes != null ? " from " + Arrays.toString(digitSizes) : "",
+        maxTags > 1 ? " x" + maxTags : "",
+        speculativeIou > 0 ? String.format(" speculative %.2f", speculativeIou) : "",
+        minConfidence,
+        maintainAspect);
+  }
+}
@@ -0,0 +1,93 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+
+/** Converts ARGB pixels into the input tensor layout of the detection models. */
+public final class Preprocessor {
+  private Preprocessor() {}
+
+  /**
+   * Writes the RGB channels of each pixel into the input buffer, either as bytes for quantized
+   * models or as floats normalized with (value - mean) / std.
+   *
+   * @param argb Pixels in ARGB_8888.
+   * @param count Number of pixels to write.
+   * @param out Input buffer of the model, rewound before writing.
+   * @param quantized Whether the model takes one byte per channel.
+   * @param mean Mean subtracted from each channel of float models.
+   * @param std Standard deviation each channel of float models is divided by.
+   */
+  public static void normalize(
+      final int[] argb,
+      final int count,
+      final ByteBuffer out,
+      final boolean quantized,
+      final float mean,
+      final float std) {
+    out.rewind();
+    for (int i = 0; i < count; ++i) {
+      final int pixelValue = argb[i];
+      if (quantized) {
+        // Quantized model
+        out.put((byte) ((pixelValue >> 16) & 0xFF));
+        out.put((byte) ((pixelValue >> 8) & 0xFF));
+        out.put((byte) (pixelValue & 0xFF));
+      } else { // Float model
+        out.putFloat((((pixelValue >> 16) & 0xFF) - mean) / std);
+        out.putFloat((((pixelValue >> 8) & 0xFF) - mean) / std);
+        out.putFloat(((pixelValue & 0xFF) - mean) / std);
+      }
+    }
+  }
+
+  /**
+   * Writes luma into the input buffer of a model, replicated into each channel. Three channel
+   * models see a grey image, single channel models take the luma as is.
+   *
+   * @param luma Luma, one byte per pixel.
+   * @param count Number of pixels to write.
+   * @param out Input buffer of the model, rewound before writing.
+   * @param quantized Whether the model takes one byte per channel.
+   * @param mean Mean subtracted from each channel of float models.
+   * @param std Standard deviation each channel of float models is divided by.
+   * @param channels Number of input channels of the model, 1 or 3.
+   */
+  public static void normalizeLuma(
+      final byte[] luma,
+      final int count,
+      final ByteBuffer out,
+      final boolean quantized,
+      final float mean,
+      final float std,
+      final int channels) {
+    out.rewind();
+    for (int i = 0; i < count; ++i) {
+      if (quantized) {
+        final byte value = luma[i];
+        for (int c = 0; c < channels; ++c) {
+          out.put(value);
+        }
+      } else {
+        final float value = ((luma[i] & 0xFF) - mean) / std;
+        for (int c = 0; c < channels; ++c) {
+          out.putFloat(value);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * First stage of the tag cascade, decides from the box detector input whether a frame may contain
+ * a tag before the box detector runs. The luma of the input is averaged into cells of {@link
+ * #CELL} x {@link #CELL} pixels, cells that differ strongly from their right or lower neighbour
+ * are edges, and the score is the highest edge density of any window of cells. The digits and
+ * the border of a tag give a dense cluster of edges, empty frames of fur, straw or floor mostly
+ * don't.
+ *
+ * <p>The threshold comes from {@link #calibrate} on the scores of frames with a tag, at the recall
+ * the box detector may lose. Not thread safe.
+ */
+public class PresenceFilter {
+  /** Edge length of a cell in input pixels. */
+  public static final int CELL = 4;
+  // Edge length of the scored window in cells, about the size of a small tag at the box input.
+  private static final int WINDOW = 12;
+  // Mean luma difference between neighbouring cells that makes an edge.
+  private static final int EDGE_THRESHOLD = 16;
+
+  private final float threshold;
+  private final int cols;
+  private final int rows;
+  // Luma sum of each cell.
+  private final int[] cells;
+  // Integral image of the edge cells, (cols + 1) x (rows + 1).
+  private final int[] edges;
+
+  // Statistics.
+  private long frames;
+  private long skipped;
+  private float lastScore = -1.0f;
+
+  /**
+   * @param threshold Minimum score of a frame to run the box detector on, 0 accepts every frame.
+   * @param width Width of the box detector input.
+   * @param height Height of the box detector input.
+   */
+  public PresenceFilter(final float threshold, final int width, final int height) {
+    this.threshold = threshold;
+    cols = Math.max(1, width / CELL);
+    rows = Math.max(1, height / CELL);
+    cells = new int[cols * rows];
+    edges = new int[(cols + 1) * (rows + 1)];
+  }
+
+  /** Scores a box detector input in ARGB_8888. */
+  public float score(final int[] argb, final int width, final int height) {
+    Arrays.fill(cells, 0);
+    for (int y = 0; y < rows * CELL && y < height; ++y) {
+      final int row = (y / CELL) * cols;
+      for (int x = 0; x < cols * CELL && x < width; ++x) {
+        final int p = argb[y * width + x];
+        // Integer approximation of BT.601 luma.
+        cells[row + x / CELL] +=
+            (77 * ((p >> 16) & 0xFF) + 150 * ((p >> 8) & 0xFF) + 29 * (p & 0xFF)) >> 8;
+      }
+    }
+    return scoreCells();
+  }
+
+  /** Scores a box detector input given as luma, one byte per pixel. */
+  public float score(final byte[] luma, final int width, final int height) {
+    Arrays.fill(cells, 0);
+    for (int y = 0; y < rows * CELL && y < height; ++y) {
+      final int row = (y / CELL) * cols;
+      for (int x = 0; x < cols * CELL && x < width; ++x) {
+        cells[row + x / CELL] += luma[y * width + x] & 0xFF;
+      }
+    }
+    return scoreCells();
+  }
+
+  private float scoreCells() {
+    final int edge = EDGE_THRESHOLD * CELL * CELL;
+    for (int r = 0; r < rows; ++r) {
+      int rowSum = 0;
+      for (int c = 0; c < cols; ++c) {
+        final int i = r * cols + c;
+        final int dx = c + 1 < cols ? Math.abs(cells[i + 1] - cells[i]) : 0;
+        final int dy = r + 1 < rows ? Math.abs(cells[i + cols] - cells[i]) : 0;
+        rowSum += Math.max(dx, dy) > edge ? 1 : 0;
+        edges[(r + 1) * (cols + 1) + c + 1] = edges[r * (cols + 1) + c + 1] + rowSum;
+      }
+    }
+
+    final int windowCols = Math.min(WINDOW, cols);
+    final int windowRows = Math.min(WINDOW, rows);
+    int best = 0;
+    for (int r = 0; r + windowRows <= rows; ++r) {
+      for (int c = 0; c + windowCols <= cols; ++c) {
+        final int r0 = r * (cols + 1);
+        final int r1 = (r + windowRows) * (cols + 1);
+        final int count =
+            edges[r1 + c + windowCols] - edges[r0 + c + windowCols] - edges[r1 + c] + edges[r0 + c];
+        best = Math.max(best, count);
+      }
+    }
+    return best / (float) (windowCols * windowRows);
+  }
+
+  /**
+   * Counts the frame and decides if the box detector runs on it.
+   *
+   * @param score Score of the frame from {@link #score}.
+   * @return false if the frame can't contain a tag.
+   */
+  public boolean accept(final float score) {
+    frames++;
+    lastScore = score;
+    if (score < threshold) {
+      skipped++;
+      return false;
+    }
+    return true;
+  }
+
+  public float getThreshold() {
+    return threshold;
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  /** Number of frames the box detector was not run on. */
+  public long getSkipped() {
+    return skipped;
+  }
+
+  public String getStatString() {
+    return String.format(
+        Locale.ROOT,
+        "Presence filter: skipped box detector on %d/%d frames (%.1f%%), threshold %.3f,"
+            + " last score %.3f",
+        skipped, frames, frames > 0 ? 100.0f * skipped / frames : 0.0f, threshold, lastScore);
+  }
+
+  /**
+   * The highest threshold that accepts at least the given share of frames with a tag.
+   *
+   * @param scores Scores of frames that contain a tag.
+   * @param recall Share of those frames that must pass, e.g. 0.99.
+   */
+  public static float calibrate(final float[] scores, final float recall) {
+    if (scores.length == 0 || recall <= 0) {
+      return 0.0f;
+    }
+    final float[] sorted = scores.clone();
+    Arrays.sort(sorted);
+    // the epsilon keeps float recalls like 0.99f from rounding down a whole frame
+    final int rejected = (int) Math.floor((1.0 - Math.min(recall, 1.0f)) * sorted.length + 1e-6);
+    return sorted[Math.min(rejected, sorted.length - 1)];
+  }
+}
@@ -0,0 +1,156 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link FrameSource} that plays back a {@link FrameRecording} on its own thread, either paced by
+ * the recorded timestamps or as fast as the listener releases the frames. In real time mode a frame
+ * is dropped while all frames are still held by the listener, like a camera would; in fast mode no
+ * frame is dropped. The payload of a replayed frame is the recorded device orientation in degrees
+ * as an Integer.
+ */
+public class ReplayFrameSource implements FrameSource {
+  private static final int POOL_SIZE = 2;
+  // How long fast mode waits for the listener to release a frame before checking again.
+  private static final long RELEASE_POLL_NS = 100000;
+
+  private final FrameRecording recording;
+  private final boolean realtime;
+  private final int loops;
+  private final FramePool pool = new FramePool(POOL_SIZE, frame -> {});
+
+  private volatile boolean running = false;
+  private Thread thread;
+
+  // Statistics.
+  private volatile long framesDelivered;
+  private volatile long framesDropped;
+
+  /**
+   * @param dir Directory of the recording.
+   * @param realtime Pace the frames by their timestamps instead of replaying as fast as possible.
+   * @param loops Number of times the recording is played, 0 to loop until stopped.
+   */
+  public ReplayFrameSource(final File dir, final boolean realtime, final int loops)
+      throws IOException {
+    this.recording = new FrameRecording(dir);
+    this.realtime = realtime;
+    this.loops = loops;
+  }
+
+  @Override
+  public synchronized void start(final Listener listener) {
+    running = true;
+    thread = new Thread(() -> replay(listener), "replay");
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    awaitCompletion();
+  }
+
+  /** Waits until the replay has played all loops or has been stopped. */
+  public void awaitCompletion() {
+    final Thread t;
+    synchronized (this) {
+      t = thread;
+    }
+    if (t == null) {
+      return;
+    }
+    try {
+      t.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return realtime ? "replay" : "replay-fast";
+  }
+
+  /** True if the frames are paced by their timestamps, false if they wait for a free frame. */
+  public boolean isRealtime() {
+    return realtime;
+  }
+
+  public long getFramesDelivered() {
+    return framesDelivered;
+  }
+
+  public long getFramesDropped() {
+    return framesDropped;
+  }
+
+  private void replay(final Listener listener) {
+    // Reads into this frame first, so a frame can be dropped without giving up its slot.
+    final Frame scratch = new Frame(frame -> {}, -1);
+    try {
+      for (int loop = 0; running && (loops == 0 || loop < loops); ++loop) {
+        recording.rewind();
+        long previousTimestampNs = -1;
+        long deadlineNs = System.nanoTime();
+        while (running && recording.next(scratch, null)) {
+          if (realtime) {
+            if (previousTimestampNs >= 0) {
+              deadlineNs += Math.max(0, scratch.getTimestampNs() - previousTimestampNs);
+            }
+            previousTimestampNs = scratch.getTimestampNs();
+            final long waitNs = deadlineNs - System.nanoTime();
+            if (waitNs > 0) {
+              LockSupport.parkNanos(waitNs);
+            }
+          }
+
+          Frame frame = pool.obtain();
+          while (frame == null && !realtime && running) {
+            LockSupport.parkNanos(RELEASE_POLL_NS);
+            frame = pool.obtain();
+          }
+          if (frame == null) {
+            framesDropped++;
+            continue;
+          }
+          frame.set(
+              scratch.getYPlane(),
+              scratch.getUPlane(),
+              scratch.getVPlane(),
+              scratch.getWidth(),
+              scratch.getHeight(),
+              scratch.getYRowStride(),
+              scratch.getUvRowStride(),
+              scratch.getUvPixelStride(),
+              scratch.getRotation(),
+              scratch.getTimestampNs(),
+              Integer.valueOf(recording.getOrientation()));
+          framesDelivered++;
+          listener.onFrame(frame);
+        }
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not read recording", e);
+    } finally {
+      running = false;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shadow mode for a candidate digit model: a sample of the tags the live digit detector reads is
+ * read once more by the candidate on a low priority thread. The latencies of both and whether the
+ * candidate read the same digits are recorded, the live result never waits for the candidate. A
+ * sampled tag that arrives while the candidate still reads the previous one is skipped, so the
+ * shadow reads never queue up behind a slow candidate.
+ *
+ * <p>{@link #offer} is called by one pipeline thread, the statistics may be read from any thread.
+ */
+public class ShadowDigitReader {
+  // Time the candidate gets to finish its read when the reader is closed.
+  private static final long CLOSE_TIMEOUT_MS = 1000;
+
+  private final InferenceEngine candidate;
+  private final float fraction;
+  private final float minConfidence;
+  private final ExecutorService executor;
+
+  // Input of the running read, copied from the live input.
+  private int[] pixels = new int[0];
+  // Written by the pipeline thread only.
+  private float sampled;
+  private boolean running;
+
+  // Statistics, guarded by this.
+  private final LatencyHistogram liveLatency = new LatencyHistogram();
+  private final LatencyHistogram candidateLatency = new LatencyHistogram();
+  private long offered;
+  private long skipped;
+  private long compared;
+  private long agreed;
+  // Tags only one of the two engines read.
+  private long liveOnly;
+  private long candidateOnly;
+  private long failed;
+
+  /**
+   * @param candidate Digit engine to compare, owned by the reader. It runs on the reader thread
+   *     and must accept the input sizes the live engine is given.
+   * @param fraction Share of the live reads that are read by the candidate too, 0 to 1.
+   * @param minConfidence Minimum confidence of a digit, as in the live pipeline.
+   */
+  public ShadowDigitReader(
+      final InferenceEngine candidate, final float fraction, final float minConfidence) {
+    this.candidate = candidate;
+    this.fraction = fraction;
+    this.minConfidence = minConfidence;
+    executor =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              final Thread thread = new Thread(r, "shadow-digits");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+  }
+
+  /**
+   * Offers a tag the live digit detector read. If it is sampled and the candidate is idle, the
+   * input is copied and read by the candidate.
+   *
+   * @param argb Digit detector input of the live read, not kept.
+   * @param width Width of the digit detector input.
+   * @param height Height of the digit detector input.
+   * @param liveDigits The digits the live detector read, null if it read no tag.
+   * @param liveNs Time of the live read.
+   * @return true if the candidate reads the tag.
+   */
+  public boolean offer(
+      final int[] argb,
+      final int width,
+      final int height,
+      final List<String> liveDigits,
+      final long liveNs) {
+    synchronized (this) {
+      ++offered;
+    }
+    sampled += fraction;
+    if (sampled < 1.0f) {
+      return false;
+    }
+    sampled -= 1.0f;
+    synchronized (this) {
+      if (running) {
+        ++skipped;
+        return false;
+      }
+      running = true;
+    }
+
+    final int size = width * height;
+    if (pixels.length < size) {
+      pixels = new int[size];
+    }
+    System.arraycopy(argb, 0, pixels, 0, size);
+    final int[] input = pixels;
+    executor.execute(() -> read(input, width, height, liveDigits, liveNs));
+    return true;
+  }
+
+  private void read(
+      final int[] input,
+      final int width,
+      final int height,
+      final List<String> liveDigits,
+      final long liveNs) {
+    List<String> digits = null;
+    long candidateNs = -1;
+    try {
+      final long start = System.nanoTime();
+      final List<Detection> detections = candidate.recognize(input, width, height);
+      candidateNs = System.nanoTime() - start;
+      digits = DigitLayout.parse(detections, minConfidence);
+    } catch (final RuntimeException e) {
+      // e.g. an input size the candidate can't run at, the live read is unaffected
+    }
+    synchronized (this) {
+      running = false;
+      if (candidateNs < 0) {
+        ++failed;
+        return;
+      }
+      ++compared;
+      liveLatency.record(liveNs);
+      candidateLatency.record(candidateNs);
+      if (liveDigits == null ? digits == null : liveDigits.equals(digits)) {
+        ++agreed;
+      } else if (digits == null) {
+        ++liveOnly;
+      } else if (liveDigits == null) {
+        ++candidateOnly;
+      }
+    }
+  }
+
+  /** Number of tags read by both engines. */
+  public synchronized long getCompared() {
+    return compared;
+  }
+
+  /** Number of compared tags both engines read the same, or neither read. */
+  public synchronized long getAgreed() {
+    return agreed;
+  }
+
+  /** Share of the compared tags both engines read the same, 0 to 1. */
+  public synchronized float getAgreement() {
+    return compared > 0 ? (float) agreed / compared : 0.0f;
+  }
+
+  public synchronized String getStatString() {
+    return String.format(
+        Locale.ROOT,
+        "Shadow digits: %d of %d reads compared (%d skipped, %d failed), agreement %.1f%%"
+            + " (%d only live, %d only candidate)%n  live      %s%n  candidate %s",
+        compared,
+        offered,
+        skipped,
+        failed,
+        100.0f * getAgreement(),
+        liveOnly,
+        candidateOnly,
+        liveLatency,
+        candidateLatency);
+  }
+
+  /**
+   * Writes the latency histograms of the compared reads as CSV, one row per bucket with its
+   * bounds in microseconds, preceded by the counters as comment lines.
+   */
+  public synchronized void writeCsv(final Writer out) throws IOException {
+    out.write(
+        String.format(
+            Locale.ROOT,
+            "# offered %d, compared %d, skipped %d, failed %d, agreed %d, live only %d,"
+                + " candidate only %d%n",
+            offered,
+            compared,
+            skipped,
+            failed,
+            agreed,
+            liveOnly,
+            candidateOnly));
+    out.write("from_us,to_us,live,candidate\n");
+    final int buckets = Math.max(liveLatency.size(), candidateLatency.size());
+    for (int i = 0; i < buckets; ++i) {
+      final long live = liveLatency.getBucketCount(i);
+      final long shadow = candidateLatency.getBucketCount(i);
+      if (live > 0 || shadow > 0) {
+        out.write(
+            String.format(
+                Locale.ROOT,
+                "%d,%d,%d,%d%n",
+                LatencyHistogram.lowerBoundUs(i),
+                LatencyHistogram.lowerBoundUs(i + 1),
+                live,
+                shadow));
+      }
+    }
+  }
+
+  /**
+   * Waits briefly for a running read, stops the reader thread and closes the candidate. A
+   * candidate whose read doesn't finish in time is left open rather than closed under it.
+   */
+  public void close() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        executor.shutdownNow();
+        return;
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    candidate.close();
+  }
+}
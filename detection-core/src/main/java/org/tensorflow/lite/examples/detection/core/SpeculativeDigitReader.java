@@ -0,0 +1,222 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the digits of the tag box predicted from the previous frames while the box detector still
+ * runs on the current one. The caller crops the predicted box into the digit detector input and
+ * starts the read on the reader thread, then runs the box detector and hands the box it found to
+ * {@link #finish}. The speculative read is committed if that box overlaps the predicted one by at
+ * least the minimum IoU, and discarded otherwise.
+ *
+ * <p>The prediction moves the last tag box by the motion of its center between the last two
+ * frames. The digit engine runs on the reader thread between {@link #start} and {@link #finish},
+ * the caller must not use it in between. Not thread safe, one reader per pipeline.
+ */
+public class SpeculativeDigitReader {
+  private final InferenceEngine digitEngine;
+  private final float minIou;
+  private final ExecutorService executor;
+  private final Callable<List<Detection>> read;
+
+  // Input of the running read, written before it is submitted.
+  private int[] pixels;
+  private int inputWidth;
+  private int inputHeight;
+  private final Box predicted = new Box();
+  private Future<List<Detection>> pending;
+  // Written by the reader thread, published by Future.get.
+  private long readNs;
+
+  // Tag boxes of the last two frames, null if a frame had none.
+  private Box lastBox;
+  private Box previousBox;
+
+  // Statistics.
+  private long started;
+  private long committed;
+  private long savedNs;
+  private long wastedNs;
+
+  /**
+   * @param digitEngine Digit engine of the pipeline, not owned by the reader.
+   * @param minIou Minimum overlap of the found box with the predicted one to commit a read.
+   */
+  public SpeculativeDigitReader(final InferenceEngine digitEngine, final float minIou) {
+    this.digitEngine = digitEngine;
+    this.minIou = minIou;
+    read =
+        new Callable<List<Detection>>() {
+          @Override
+          public List<Detection> call() {
+            final long start = System.nanoTime();
+            final List<Detection> digits = digitEngine.recognize(pixels, inputWidth, inputHeight);
+            readNs = System.nanoTime() - start;
+            return digits;
+          }
+        };
+    executor =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              final Thread thread = new Thread(r, "speculative-digits");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** Records the tag box of a frame for the prediction, null if the frame had none. */
+  public void update(final Box box) {
+    previousBox = box != null ? lastBox : null;
+    lastBox = box != null ? new Box(box) : null;
+  }
+
+  /**
+   * The tag box expected in the next frame, clamped to the frame.
+   *
+   * @return null if the last frame had no tag.
+   */
+  public Box predict(final int width, final int height) {
+    if (lastBox == null) {
+      return null;
+    }
+    final Box box = new Box(lastBox);
+    if (previousBox != null) {
+      box.offset(
+          lastBox.centerX() - previousBox.centerX(), lastBox.centerY() - previousBox.centerY());
+    }
+    box.set(
+        Math.max(0, box.left),
+        Math.max(0, box.top),
+        Math.min(width, box.right),
+        Math.min(height, box.bottom));
+    return box.right > box.left && box.bottom > box.top ? box : null;
+  }
+
+  /**
+   * Starts reading the crop of a predicted box, discarding a read that is still running.
+   *
+   * @param box Predicted box from {@link #predict}.
+   * @param argb Digit detector input, not modified until {@link #finish} returns.
+   * @param width Width of the digit detector input.
+   * @param height Height of the digit detector input.
+   */
+  public void start(final Box box, final int[] argb, final int width, final int height) {
+    cancel();
+    predicted.set(box.left, box.top, box.right, box.bottom);
+    pixels = argb;
+    inputWidth = width;
+    inputHeight = height;
+    pending = executor.submit(read);
+    started++;
+  }
+
+  /** True between {@link #start} and {@link #finish}. */
+  public boolean isRunning() {
+    return pending != null;
+  }
+
+  /**
+   * Waits for the running read.
+   *
+   * @param box Tag box found by the box detector in the frame, null if none can be committed.
+   * @return the digit detections of the read, null if it is discarded or none was running.
+   */
+  public List<Detection> finish(final Box box) {
+    if (pending == null) {
+      return null;
+    }
+    final long start = System.nanoTime();
+    final List<Detection> digits;
+    try {
+      digits = pending.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException
+          ? (RuntimeException) cause
+          : new RuntimeException(cause);
+    } finally {
+      pending = null;
+    }
+    final long waitNs = System.nanoTime() - start;
+
+    if (box == null || Box.iou(box, predicted) < minIou) {
+      wastedNs += waitNs;
+      return null;
+    }
+    // the part of the read that ran alongside the box detector
+    committed++;
+    savedNs += Math.max(0, readNs - waitNs);
+    return digits;
+  }
+
+  /** Discards a running read, e.g. after the box detector failed. */
+  public void cancel() {
+    try {
+      finish(null);
+    } catch (final RuntimeException e) {
+      // the frame of the read is gone, so is its failure
+    }
+  }
+
+  /** Number of speculative reads started. */
+  public long getStarted() {
+    return started;
+  }
+
+  /** Number of speculative reads committed. */
+  public long getCommitted() {
+    return committed;
+  }
+
+  /** Digit detector time of the committed reads that overlapped the box detector. */
+  public long getSavedNs() {
+    return savedNs;
+  }
+
+  /** Time spent waiting for discarded reads. */
+  public long getWastedNs() {
+    return wastedNs;
+  }
+
+  public String getStatString() {
+    return String.format(
+        Locale.ROOT,
+        "Speculative digits: committed %d/%d reads (%.1f%%), saved %.1f ms, wasted %.1f ms",
+        committed,
+        started,
+        started > 0 ? 100.0f * committed / started : 0.0f,
+        savedNs / 1e6,
+        wastedNs / 1e6);
+  }
+
+  /** Waits for a running read and stops the reader thread, the digit engine stays open. */
+  public void close() {
+    cancel();
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,138 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+/** Geometry of the tag crop that is handed from the box detector to the digit detector. */
+public final class TagGeometry {
+  private TagGeometry() {}
+
+  /** Index of the left edge in a rectangle array. */
+  public static final int LEFT = 0;
+  /** Index of the top edge in a rectangle array. */
+  public static final int TOP = 1;
+  /** Index of the right edge in a rectangle array. */
+  public static final int RIGHT = 2;
+  /** Index of the bottom edge in a rectangle array. */
+  public static final int BOTTOM = 3;
+
+  /**
+   * Expands the shorter side of a detected box so that the crop becomes square, clamped to the
+   * frame. The detection is rotated by 90 degrees clockwise, so a box that is taller than wide
+   * holds a tag that needs to be rotated for the digit detector.
+   *
+   * @param r Rectangle as {left, top, right, bottom}, adjusted in place.
+   * @param frameWidth Width of the frame the box was detected in.
+   * @param frameHeight Height of the frame the box was detected in.
+   * @return rotation of the tag in degrees, 90 or 0.
+   */
+  public static int expandToSquare(final int[] r, final int frameWidth, final int frameHeight) {
+    int delta = (r[BOTTOM] - r[TOP]) - (r[RIGHT] - r[LEFT]);
+    int upperBound = frameWidth;
+    int min = r[LEFT];
+    int max = r[RIGHT];
+    int tagRotation = 90;
+    boolean vertical = false;
+
+    // width smaller than height
+    if (delta < 0) {
+      tagRotation = 0;
+      vertical = true;
+      upperBound = frameHeight;
+      delta = -delta;
+      min = r[TOP];
+      max = r[BOTTOM];
+    }
+
+    if (max + delta < upperBound) {
+      max += delta;
+    } else {
+      delta -= upperBound - max;
+      max = upperBound;
+      if (min - delta > 0) {
+        min -= delta;
+      } else {
+        min = 0;
+      }
+    }
+
+    if (vertical) {
+      r[TOP] = min;
+      r[BOTTOM] = max;
+    } else {
+      r[LEFT] = min;
+      r[RIGHT] = max;
+    }
+    return tagRotation;
+  }
+
+  /**
+   * Region of the frame the refinement pass of coarse-to-fine box detection runs on. It has the
+   * aspect ratio of the frame and is proxyScale times its size, centered on the candidate box, so
+   * the proxy sized box input sees it at the pixel density of the full box input. Candidates that
+   * don't fit with the margin get a larger region, clamped to the frame.
+   *
+   * @param box Candidate box of the proxy pass in frame coordinates.
+   * @param frameWidth Width of the frame.
+   * @param frameHeight Height of the frame.
+   * @param proxyScale Size of the proxy input relative to the full box input, below 1.
+   * @param margin Fraction of the box size kept free on each side of it.
+   * @param r Region as {left, top, right, bottom}, written.
+   * @return false if the region is too close to the whole frame for the refinement to add detail.
+   */
+  public static boolean refineRegion(
+      final Box box,
+      final int frameWidth,
+      final int frameHeight,
+      final float proxyScale,
+      final float margin,
+      final int[] r) {
+    final float scale =
+        Math.max(
+            proxyScale,
+            Math.max(
+                box.width() * (1.0f + 2.0f * margin) / frameWidth,
+                box.height() * (1.0f + 2.0f * margin) / frameHeight));
+    // less than 1.5 times the density of the proxy pass
+    if (scale * 1.5f > 1.0f) {
+      return false;
+    }
+    final int width = Math.round(frameWidth * scale);
+    final int height = Math.round(frameHeight * scale);
+    r[LEFT] = Math.max(0, Math.min(frameWidth - width, Math.round(box.centerX() - width / 2.0f)));
+    r[TOP] = Math.max(0, Math.min(frameHeight - height, Math.round(box.centerY() - height / 2.0f)));
+    r[RIGHT] = r[LEFT] + width;
+    r[BOTTOM] = r[TOP] + height;
+    return width > 0 && height > 0;
+  }
+
+  /**
+   * Picks the smallest square model input that still holds the tag crop at its native pixel
+   * density, so distant tags aren't upscaled into a full size input.
+   *
+   * @param cropSize Longer edge of the tag crop in frame pixels.
+   * @param sizes Edge lengths of the smaller inputs, ascending.
+   * @param fullSize Edge length of the full size input.
+   * @return the smallest of the sizes that is at least cropSize, fullSize if there is none.
+   */
+  public static int chooseInputSize(final int cropSize, final int[] sizes, final int fullSize) {
+    for (final int size : sizes) {
+      if (size >= cropSize && size < fullSize) {
+        return size;
+      }
+    }
+    return fullSize;
+  }
+}
@@ -0,0 +1,740 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The two-stage tag reader on primitive arrays: the box detector finds the tag in the frame, the
+ * tag is cropped to a square and the digit detector reads it. Mirrors DetectorActivity without
+ * depending on android.graphics. With {@link PipelineConfig#maxTags} above 1, every confident box
+ * up to that count is cropped into one image of a batch and all tags are read with one digit
+ * detector call. With {@link PipelineConfig#presenceThreshold} set, a {@link PresenceFilter} skips
+ * the box detector on frames that can't contain a tag. With {@link PipelineConfig#boxProxyScale}
+ * the box detector runs coarse-to-fine, a proxy pass at reduced size finds the candidate box and
+ * a second pass refines it on a crop around it. With {@link PipelineConfig#speculativeIou} the
+ * digit detector reads the tag box predicted from the previous frames while the box detector
+ * runs, see {@link SpeculativeDigitReader}. A {@link ShadowDigitReader} compares a candidate digit
+ * detector with the live one. Not thread safe, use one pipeline per thread.
+ */
+public class TagPipeline {
+  /** A tag read in a frame. */
+  public static class TagRead {
+    /** Parsed digit layout. */
+    public final List<String> digits;
+    /** Tag box in frame coordinates. */
+    public final Box box;
+    /** Confidence of the tag box. */
+    public final float confidence;
+
+    TagRead(final List<String> digits, final Box box, final float confidence) {
+      this.digits = digits;
+      this.box = box;
+      this.confidence = confidence;
+    }
+  }
+
+  /** Outcome of processing one frame. */
+  public static class Result {
+    /** Parsed digit layout of the most confident tag read, null if no tag was read. */
+    public final List<String> digits;
+    /** Tag box in frame coordinates, null if no tag was found. */
+    public final Box box;
+    /** Confidence of the tag box. */
+    public final float boxConfidence;
+    /** Time spent in the box detector. */
+    public final long boxNs;
+    /** Time spent in the digit detector. */
+    public final long digitNs;
+    /** Width of the digit detector input, 0 if the digit detector didn't run. */
+    public final int digitInputWidth;
+    /** True if the coarse pass found nothing and the tiled box detection ran. */
+    public final boolean tiled;
+    /** Every tag read, most confident box first. Empty if no tag was read. */
+    public final List<TagRead> tags;
+    /** True if the refinement pass of coarse-to-fine box detection ran. */
+    public final boolean refined;
+    /**
+     * True if the digits come from the speculative read of the predicted box. digitNs is then the
+     * time the read ran on after the box detector finished.
+     */
+    public final boolean speculative;
+
+    Result(
+        final List<String> digits,
+        final Box box,
+        final float boxConfidence,
+        final long boxNs,
+        final long digitNs,
+        final int digitInputWidth,
+        final boolean tiled,
+        final List<TagRead> tags,
+        final boolean refined,
+        final boolean speculative) {
+      this.digits = digits;
+      this.box = box;
+      this.boxConfidence = boxConfidence;
+      this.boxNs = boxNs;
+      this.digitNs = digitNs;
+      this.digitInputWidth = digitInputWidth;
+      this.tiled = tiled;
+      this.tags = tags;
+      this.refined = refined;
+      this.speculative = speculative;
+    }
+  }
+
+  // Fraction of the candidate box size kept around it in the refinement region.
+  private static final float REFINE_MARGIN = 0.5f;
+  // Overlap above which a refined box replaces a proxy box.
+  private static final float REFINE_IOU_THRESHOLD = 0.5f;
+
+  private final PipelineConfig config;
+  private final InferenceEngine boxEngine;
+  private final InferenceEngine digitEngine;
+  private final TiledBoxDetector tiledDetector;
+  private final PresenceFilter presenceFilter;
+  private final SpeculativeDigitReader speculativeReader;
+  private ShadowDigitReader shadowReader;
+  private TraceRecorder trace;
+  // Box detector input size of the proxy pass, the full size without coarse-to-fine detection.
+  private final int proxyWidth;
+  private final int proxyHeight;
+  // Region of the frame the refinement pass ran on.
+  private final int[] refineRect = new int[4];
+
+  // Pre-allocated buffers.
+  private final int[] boxPixels;
+  private final byte[] boxLuma;
+  private final int[] digitPixels;
+  // Square crop, rotation and box of each image of the digit detector batch.
+  private final int[][] rects;
+  private final int[] rotations;
+  private final Detection[] slotBoxes;
+  // Digit detector input size of the last crop, the pixels are a prefix of digitPixels.
+  // Batches hold one image of that size per tag, one after the other.
+  private int digitInputWidth;
+  private int digitInputHeight;
+  private final YuvPlaneConverter yuvConverter = new YuvPlaneConverter();
+  private int[] framePixels = new int[0];
+
+  public TagPipeline(
+      final PipelineConfig config,
+      final InferenceEngine boxEngine,
+      final InferenceEngine digitEngine) {
+    this(config, boxEngine, digitEngine, null);
+  }
+
+  /** @param tiledDetector Fallback when the coarse box pass finds nothing, null for none. */
+  public TagPipeline(
+      final PipelineConfig config,
+      final InferenceEngine boxEngine,
+      final InferenceEngine digitEngine,
+      final TiledBoxDetector tiledDetector) {
+    this.config = config.copy();
+    this.boxEngine = boxEngine;
+    this.digitEngine = digitEngine;
+    this.tiledDetector = tiledDetector;
+    proxyWidth = config.proxyWidth();
+    proxyHeight = config.proxyHeight();
+    boxPixels = new int[proxyWidth * proxyHeight];
+    boxLuma = config.boxLuma ? new byte[proxyWidth * proxyHeight] : null;
+    presenceFilter =
+        config.presenceThreshold > 0
+            ? new PresenceFilter(config.presenceThreshold, proxyWidth, proxyHeight)
+            : null;
+    speculativeReader =
+        config.speculativeIou > 0
+            ? new SpeculativeDigitReader(digitEngine, config.speculativeIou)
+            : null;
+    final int maxTags = Math.max(1, config.maxTags);
+    digitPixels = new int[config.digitWidth * config.digitHeight * maxTags];
+    rects = new int[maxTags][4];
+    rotations = new int[maxTags];
+    slotBoxes = new Detection[maxTags];
+  }
+
+  /**
+   * Creates a pipeline with engines from the factory, plus {@link PipelineConfig#boxTileWorkers}
+   * box engines for the tiled detection if {@link PipelineConfig#boxTiles} is set.
+   */
+  public static TagPipeline create(final PipelineConfig config, final InferenceEngine.Factory factory)
+      throws Exception {
+    TiledBoxDetector tiledDetector = null;
+    if (config.boxTiles > 1) {
+      final List<InferenceEngine> engines = new ArrayList<InferenceEngine>();
+      for (int i = 0; i < Math.max(1, config.boxTileWorkers); ++i) {
+        engines.add(factory.createBoxEngine(config));
+      }
+      tiledDetector = new TiledBoxDetector(config, engines);
+    }
+    return new TagPipeline(
+        config, factory.createBoxEngine(config), factory.createDigitEngine(config), tiledDetector);
+  }
+
+  public PipelineConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * @param frame Frame in ARGB_8888.
+   * @param width Width of the frame.
+   * @param height Height of the frame.
+   * @param orientationDegrees Device orientation, added to the rotation of the tag crop.
+   */
+  public Result process(
+      final int[] frame, final int width, final int height, final int orientationDegrees) {
+    final long preprocessStart = TraceRecorder.now();
+    ImageOps.transform(
+        frame, width, height, 0, 0, width, height, 0, config.maintainAspect,
+        boxPixels, proxyWidth, proxyHeight);
+
+    if (config.boxLuma) {
+      ImageOps.toLuma(boxPixels, boxPixels.length, boxLuma);
+    }
+    trace(TraceRecorder.PREPROCESS, preprocessStart);
+    if (!isTagPresent()) {
+      return track(
+          new Result(
+              null, null, 0.0f, 0, 0, 0, false, Collections.<TagRead>emptyList(), false, false));
+    }
+    startSpeculation(frame, width, height, orientationDegrees);
+
+    final long boxStart = System.nanoTime();
+    // returns list sorted by confidence
+    List<Detection> boxes = runBoxEngine();
+    mapToFrame(boxes, proxyWidth, proxyHeight, width, height);
+
+    List<Detection> refinedBoxes = null;
+    if (config.hasBoxProxy()) {
+      refinedBoxes = refine(boxes, frame, null, 0, width, height);
+    }
+    final boolean refined = refinedBoxes != null;
+    if (refined) {
+      boxes = refinedBoxes;
+    }
+
+    // small tags may only show up at full resolution
+    final boolean tiled = !hasBox(boxes) && tiledDetector != null;
+    if (tiled) {
+      boxes = tiledDetector.detect(frame, width, height);
+    }
+    final long boxNs = System.nanoTime() - boxStart;
+    trace(TraceRecorder.INFERENCE, boxStart);
+
+    return track(readTag(boxes, boxNs, tiled, refined, frame, width, height, orientationDegrees));
+  }
+
+  /**
+   * Processes a camera frame. With {@link PipelineConfig#boxLuma} the box detector runs on the
+   * luma plane and the frame is only converted to ARGB for the tag crop, frames without a tag never
+   * have their chroma decoded.
+   *
+   * @param frame YUV frame, not released.
+   * @param orientationDegrees Device orientation, added to the rotation of the tag crop.
+   */
+  public Result process(final Frame frame, final int orientationDegrees) {
+    final int width = frame.getWidth();
+    final int height = frame.getHeight();
+    if (framePixels.length != width * height) {
+      framePixels = new int[width * height];
+    }
+    final long preprocessStart = TraceRecorder.now();
+    if (!config.boxLuma) {
+      yuvConverter.convert(frame, framePixels);
+      trace(TraceRecorder.PREPROCESS, preprocessStart);
+      return process(framePixels, width, height, orientationDegrees);
+    }
+
+    ImageOps.scaleLuma(
+        frame.getYPlane(), frame.getYRowStride(), width, height, config.maintainAspect,
+        boxLuma, proxyWidth, proxyHeight);
+    trace(TraceRecorder.PREPROCESS, preprocessStart);
+    if (!isTagPresent()) {
+      return track(
+          new Result(
+              null, null, 0.0f, 0, 0, 0, false, Collections.<TagRead>emptyList(), false, false));
+    }
+    // the speculative crop needs the ARGB frame before the box detector runs
+    final boolean converted =
+        speculativeReader != null && speculativeReader.predict(width, height) != null;
+    if (converted) {
+      final long convertStart = TraceRecorder.now();
+      yuvConverter.convert(frame, framePixels);
+      trace(TraceRecorder.PREPROCESS, convertStart);
+      startSpeculation(framePixels, width, height, orientationDegrees);
+    }
+
+    final long boxStart = System.nanoTime();
+    List<Detection> boxes = boxEngine.recognizeLuma(boxLuma, proxyWidth, proxyHeight);
+    mapToFrame(boxes, proxyWidth, proxyHeight, width, height);
+
+    List<Detection> refinedBoxes = null;
+    if (config.hasBoxProxy()) {
+      refinedBoxes = refine(boxes, null, frame.getYPlane(), frame.getYRowStride(), width, height);
+    }
+    final boolean refined = refinedBoxes != null;
+    if (refined) {
+      boxes = refinedBoxes;
+    }
+
+    final boolean tiled = !hasBox(boxes) && tiledDetector != null;
+    if (tiled) {
+      boxes =
+          tiledDetector.detectLuma(frame.getYPlane(), frame.getYRowStride(), width, height);
+    }
+    final long boxNs = System.nanoTime() - boxStart;
+    trace(TraceRecorder.INFERENCE, boxStart);
+
+    if (hasBox(boxes) && !converted) {
+      final long convertStart = TraceRecorder.now();
+      yuvConverter.convert(frame, framePixels);
+      trace(TraceRecorder.PREPROCESS, convertStart);
+    }
+    return track(
+        readTag(boxes, boxNs, tiled, refined, framePixels, width, height, orientationDegrees));
+  }
+
+  /**
+   * Crops the tag box predicted from the previous frames into the first image of the digit
+   * detector input and starts reading it, if the speculative read is enabled.
+   */
+  private void startSpeculation(
+      final int[] frame, final int width, final int height, final int orientationDegrees) {
+    if (speculativeReader == null) {
+      return;
+    }
+    // the running read of a frame the box detector failed on still uses digitPixels
+    speculativeReader.cancel();
+    final Box predicted = speculativeReader.predict(width, height);
+    if (predicted == null || !cropTag(frame, width, height, predicted, orientationDegrees)) {
+      return;
+    }
+    speculativeReader.start(predicted, digitPixels, digitInputWidth, digitInputHeight);
+  }
+
+  /**
+   * Commits the speculative read if the frame has a single tag box that overlaps the predicted one
+   * enough, discards it otherwise.
+   *
+   * @return the result of the frame, null if there was no read to commit.
+   */
+  private Result finishSpeculation(
+      final List<Detection> boxes, final long boxNs, final boolean tiled, final boolean refined) {
+    // the speculative read covers one tag, frames with more read them all in one batch
+    final boolean single =
+        hasBox(boxes)
+            && (rects.length == 1
+                || boxes.size() == 1
+                || boxes.get(1).getConfidence() < config.minConfidence);
+    final Detection box = single ? boxes.get(0) : null;
+    final long digitStart = System.nanoTime();
+    final List<Detection> digits = speculativeReader.finish(box != null ? box.getLocation() : null);
+    if (digits == null) {
+      return null;
+    }
+    final long digitNs = System.nanoTime() - digitStart;
+
+    final List<String> layout = DigitLayout.parse(digits, config.minConfidence);
+    final List<TagRead> tags =
+        layout != null
+            ? Collections.singletonList(
+                new TagRead(layout, box.getLocation(), box.getConfidence()))
+            : Collections.<TagRead>emptyList();
+    return new Result(
+        layout, box.getLocation(), box.getConfidence(), boxNs, digitNs, digitInputWidth, tiled,
+        tags, refined, true);
+  }
+
+  /** Records the tag box of a frame for the prediction of the speculative read. */
+  private Result track(final Result result) {
+    if (speculativeReader != null) {
+      speculativeReader.update(result.box);
+    }
+    return result;
+  }
+
+  /**
+   * Compares a candidate digit detector with the live one on a sample of the tags read, see
+   * {@link ShadowDigitReader}. The pipeline closes the reader.
+   */
+  public void setShadowReader(final ShadowDigitReader shadowReader) {
+    this.shadowReader = shadowReader;
+  }
+
+  /** The shadow reader, null if none was set. */
+  public ShadowDigitReader getShadowReader() {
+    return shadowReader;
+  }
+
+  /**
+   * Records the preprocessing, inference and postprocessing stages of every frame, null records
+   * nothing.
+   */
+  public void setTraceRecorder(final TraceRecorder trace) {
+    this.trace = trace;
+  }
+
+  private void trace(final int stage, final long startNs) {
+    if (trace != null) {
+      trace.record(stage, startNs);
+    }
+  }
+
+  /** The speculative digit reader, null if {@link PipelineConfig#speculativeIou} is 0. */
+  public SpeculativeDigitReader getSpeculativeReader() {
+    return speculativeReader;
+  }
+
+  /** Runs the box detector on its input, boxLuma or boxPixels. */
+  private List<Detection> runBoxEngine() {
+    if (config.boxLuma) {
+      return boxEngine.recognizeLuma(boxLuma, proxyWidth, proxyHeight);
+    }
+    return boxEngine.recognize(boxPixels, proxyWidth, proxyHeight);
+  }
+
+  /**
+   * Refinement pass of coarse-to-fine box detection: runs the box detector at the proxy input size
+   * on the region around the most confident proxy box, see {@link TagGeometry#refineRegion}. Proxy
+   * boxes outside the region are kept.
+   *
+   * @param boxes Boxes of the proxy pass in frame coordinates, sorted by confidence.
+   * @param frame Frame in ARGB_8888, null to sample the region from the luma plane.
+   * @param yPlane Luma plane of the frame if frame is null.
+   * @param rowStride Row stride of the luma plane.
+   * @return the boxes in frame coordinates sorted by confidence, null if the proxy pass found no
+   *     candidate or one too large to gain from the refinement.
+   */
+  private List<Detection> refine(
+      final List<Detection> boxes,
+      final int[] frame,
+      final ByteBuffer yPlane,
+      final int rowStride,
+      final int width,
+      final int height) {
+    if (boxes.isEmpty()
+        || boxes.get(0).getConfidence() < config.boxProxyConfidence
+        || !TagGeometry.refineRegion(
+            boxes.get(0).getLocation(), width, height, config.boxProxyScale, REFINE_MARGIN,
+            refineRect)) {
+      return null;
+    }
+    final int left = refineRect[TagGeometry.LEFT];
+    final int top = refineRect[TagGeometry.TOP];
+    final int regionWidth = refineRect[TagGeometry.RIGHT] - left;
+    final int regionHeight = refineRect[TagGeometry.BOTTOM] - top;
+
+    // the engine may reuse its result list, keep the proxy boxes the refinement doesn't cover
+    final List<Detection> all = new ArrayList<Detection>();
+    for (final Detection detection : boxes) {
+      final Box box = detection.getLocation();
+      if (box.centerX() < left
+          || box.centerX() >= left + regionWidth
+          || box.centerY() < top
+          || box.centerY() >= top + regionHeight) {
+        all.add(detection);
+      }
+    }
+
+    if (frame != null) {
+      ImageOps.transform(
+          frame, width, height, left, top, regionWidth, regionHeight, 0, config.maintainAspect,
+          boxPixels, proxyWidth, proxyHeight);
+      if (config.boxLuma) {
+        ImageOps.toLuma(boxPixels, boxPixels.length, boxLuma);
+      }
+    } else {
+      final ByteBuffer region = yPlane.duplicate();
+      region.position(yPlane.position() + top * rowStride + left);
+      ImageOps.scaleLuma(
+          region, rowStride, regionWidth, regionHeight, config.maintainAspect,
+          boxLuma, proxyWidth, proxyHeight);
+    }
+
+    final List<Detection> refined = runBoxEngine();
+    mapToFrame(refined, proxyWidth, proxyHeight, regionWidth, regionHeight);
+    for (final Detection detection : refined) {
+      final Box box = detection.getLocation();
+      box.offset(left, top);
+      detection.setLocation(box);
+      all.add(detection);
+    }
+    return NonMaxSuppression.apply(all, 0.0f, REFINE_IOU_THRESHOLD, false, all.size());
+  }
+
+  /** First stage of the cascade on the box detector input, true if the box detector should run. */
+  private boolean isTagPresent() {
+    if (presenceFilter == null) {
+      return true;
+    }
+    final float score =
+        config.boxLuma
+            ? presenceFilter.score(boxLuma, proxyWidth, proxyHeight)
+            : presenceFilter.score(boxPixels, proxyWidth, proxyHeight);
+    return presenceFilter.accept(score);
+  }
+
+  /** The presence filter of the pipeline, null if {@link PipelineConfig#presenceThreshold} is 0. */
+  public PresenceFilter getPresenceFilter() {
+    return presenceFilter;
+  }
+
+  private boolean hasBox(final List<Detection> boxes) {
+    return !boxes.isEmpty() && boxes.get(0).getConfidence() >= config.minConfidence;
+  }
+
+  /**
+   * Crops the most confident boxes, up to {@link PipelineConfig#maxTags}, and reads them with one
+   * digit detector call.
+   *
+   * @param boxes Box detections in frame coordinates, sorted by confidence.
+   */
+  private Result readTag(
+      final List<Detection> boxes,
+      final long boxNs,
+      final boolean tiled,
+      final boolean refined,
+      final int[] frame,
+      final int width,
+      final int height,
+      final int orientationDegrees) {
+    if (speculativeReader != null && speculativeReader.isRunning()) {
+      final Result result = finishSpeculation(boxes, boxNs, tiled, refined);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    // case: nothing detected
+    if (!hasBox(boxes)) {
+      return new Result(
+          null, null, 0.0f, boxNs, 0, 0, tiled, Collections.<TagRead>emptyList(), refined, false);
+    }
+
+    int count = 0;
+    int cropSize = 0;
+    for (int i = 0; i < Math.min(boxes.size(), rects.length); ++i) {
+      final Detection detection = boxes.get(i);
+      if (detection.getConfidence() < config.minConfidence) {
+        break;
+      }
+      if (squareCrop(detection.getLocation(), count, width, height)) {
+        final int[] rect = rects[count];
+        cropSize =
+            Math.max(
+                cropSize,
+                Math.max(
+                    rect[TagGeometry.RIGHT] - rect[TagGeometry.LEFT],
+                    rect[TagGeometry.BOTTOM] - rect[TagGeometry.TOP]));
+        slotBoxes[count++] = detection;
+      }
+    }
+    if (count == 0) {
+      return new Result(
+          null, boxes.get(0).getLocation(), boxes.get(0).getConfidence(), boxNs, 0, 0, tiled,
+          Collections.<TagRead>emptyList(), refined, false);
+    }
+
+    // one input size for the whole batch, the one of its largest crop
+    final long cropStart = TraceRecorder.now();
+    chooseDigitInputSize(cropSize);
+    for (int slot = 0; slot < count; ++slot) {
+      cropSlot(frame, width, height, slot, orientationDegrees);
+    }
+    trace(TraceRecorder.PREPROCESS, cropStart);
+
+    final long digitStart = System.nanoTime();
+    final List<List<Detection>> digits;
+    if (count == 1) {
+      digits =
+          Collections.singletonList(
+              digitEngine.recognize(digitPixels, digitInputWidth, digitInputHeight));
+    } else {
+      digits = digitEngine.recognizeBatch(digitPixels, count, digitInputWidth, digitInputHeight);
+    }
+    final long digitNs = System.nanoTime() - digitStart;
+    trace(TraceRecorder.INFERENCE, digitStart);
+
+    final long parseStart = TraceRecorder.now();
+    final List<TagRead> tags = new ArrayList<TagRead>(count);
+    for (int slot = 0; slot < count; ++slot) {
+      final List<String> layout = DigitLayout.parse(digits.get(slot), config.minConfidence);
+      if (layout != null) {
+        tags.add(
+            new TagRead(layout, slotBoxes[slot].getLocation(), slotBoxes[slot].getConfidence()));
+      }
+    }
+    trace(TraceRecorder.POSTPROCESS, parseStart);
+    // batched reads have no latency of their own, only single ones are compared
+    if (shadowReader != null && count == 1) {
+      shadowReader.offer(
+          digitPixels,
+          digitInputWidth,
+          digitInputHeight,
+          tags.isEmpty() ? null : tags.get(0).digits,
+          digitNs);
+    }
+
+    final Detection first = slotBoxes[0];
+    final TagRead read = tags.isEmpty() ? null : tags.get(0);
+    return new Result(
+        read != null ? read.digits : null,
+        read != null ? read.box : first.getLocation(),
+        read != null ? read.confidence : first.getConfidence(),
+        boxNs,
+        digitNs,
+        digitInputWidth,
+        tiled,
+        tags,
+        refined,
+        false);
+  }
+
+  private void mapToFrame(
+      final List<Detection> boxes,
+      final int inputWidth,
+      final int inputHeight,
+      final int width,
+      final int height) {
+    for (final Detection detection : boxes) {
+      final Box box = detection.getLocation();
+      mapToFrame(box, inputWidth, inputHeight, width, height);
+      detection.setLocation(box);
+    }
+  }
+
+  /** Maps a box from the box detector input of the proxy pass back into frame coordinates. */
+  public void mapToFrame(final Box box, final int width, final int height) {
+    mapToFrame(box, proxyWidth, proxyHeight, width, height);
+  }
+
+  private void mapToFrame(
+      final Box box,
+      final int inputWidth,
+      final int inputHeight,
+      final int width,
+      final int height) {
+    if (config.maintainAspect) {
+      final float scale = Math.max(inputWidth / (float) width, inputHeight / (float) height);
+      box.scale(1.0f / scale, 1.0f / scale);
+    } else {
+      box.scale(width / (float) inputWidth, height / (float) inputHeight);
+    }
+  }
+
+  /**
+   * Crops the square around the tag box into the digit detector input, at the input size chosen
+   * from {@link PipelineConfig#digitSizes}.
+   *
+   * @return false if the box is degenerate.
+   */
+  public boolean cropTag(
+      final int[] frame,
+      final int width,
+      final int height,
+      final Box box,
+      final int orientationDegrees) {
+    if (!squareCrop(box, 0, width, height)) {
+      return false;
+    }
+    final int[] rect = rects[0];
+    chooseDigitInputSize(
+        Math.max(
+            rect[TagGeometry.RIGHT] - rect[TagGeometry.LEFT],
+            rect[TagGeometry.BOTTOM] - rect[TagGeometry.TOP]));
+    cropSlot(frame, width, height, 0, orientationDegrees);
+    return true;
+  }
+
+  /**
+   * Expands the tag box to the square crop of a batch image.
+   *
+   * @return false if the box is degenerate.
+   */
+  private boolean squareCrop(final Box box, final int slot, final int width, final int height) {
+    final int[] rect = rects[slot];
+    rect[TagGeometry.LEFT] = (int) box.left;
+    rect[TagGeometry.TOP] = (int) box.top;
+    rect[TagGeometry.RIGHT] = (int) box.right;
+    rect[TagGeometry.BOTTOM] = (int) box.bottom;
+    rotations[slot] = TagGeometry.expandToSquare(rect, width, height);
+    return rect[TagGeometry.RIGHT] > rect[TagGeometry.LEFT]
+        && rect[TagGeometry.BOTTOM] > rect[TagGeometry.TOP];
+  }
+
+  private void chooseDigitInputSize(final int cropSize) {
+    digitInputWidth = config.digitWidth;
+    digitInputHeight = config.digitHeight;
+    if (config.digitSizes != null) {
+      final int fullSize = Math.min(config.digitWidth, config.digitHeight);
+      final int size = TagGeometry.chooseInputSize(cropSize, config.digitSizes, fullSize);
+      if (size < fullSize) {
+        digitInputWidth = size;
+        digitInputHeight = size;
+      }
+    }
+  }
+
+  /** Resamples the square crop of a batch image into its part of the digit detector input. */
+  private void cropSlot(
+      final int[] frame,
+      final int width,
+      final int height,
+      final int slot,
+      final int orientationDegrees) {
+    final int[] rect = rects[slot];
+    ImageOps.transform(
+        frame, width, height, rect[TagGeometry.LEFT], rect[TagGeometry.TOP],
+        rect[TagGeometry.RIGHT] - rect[TagGeometry.LEFT],
+        rect[TagGeometry.BOTTOM] - rect[TagGeometry.TOP],
+        orientationDegrees + rotations[slot], config.maintainAspect,
+        digitPixels, slot * digitInputWidth * digitInputHeight, digitInputWidth, digitInputHeight);
+  }
+
+  /**
+   * The digit detector input of the last processed frame, {@link #getDigitInputWidth()} x {@link
+   * #getDigitInputHeight()} pixels.
+   */
+  public int[] getDigitPixels() {
+    return digitPixels;
+  }
+
+  public int getDigitInputWidth() {
+    return digitInputWidth;
+  }
+
+  public int getDigitInputHeight() {
+    return digitInputHeight;
+  }
+
+  public void close() {
+    if (speculativeReader != null) {
+      speculativeReader.close();
+    }
+    if (shadowReader != null) {
+      shadowReader.close();
+    }
+    boxEngine.close();
+    digitEngine.close();
+    if (tiledDetector != null) {
+      tiledDetector.close();
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * High resolution box detection for tags that are too small in the coarse box detector input. The
+ * frame is scaled once into a mosaic of {@link PipelineConfig#boxTiles} x {@link
+ * PipelineConfig#boxTiles} overlapping tiles of the box detector input size. The tiles are copied
+ * out of the mosaic and run on a pool of box engines in parallel, one engine per worker. The
+ * detections of all tiles are mapped back to the frame and merged with non-maximum suppression.
+ *
+ * <p>An N x N grid scales both axes by the same factor, so the tiles keep the aspect ratio the box
+ * detector sees in the coarse pass. Not thread safe, one detector per pipeline.
+ */
+public class TiledBoxDetector {
+  // Overlap above which two boxes of neighbouring tiles are the same tag.
+  private static final float IOU_THRESHOLD = 0.5f;
+  // Detections kept after the merge.
+  private static final int MAX_RESULTS = 10;
+
+  private final PipelineConfig config;
+  private final List<InferenceEngine> engines;
+  private final ExecutorService executor;
+
+  private final int grid;
+  private final int mosaicWidth;
+  private final int mosaicHeight;
+  // Top left corner of each tile in the mosaic, tile i is at column i % grid and row i / grid.
+  private final int[] tileX;
+  private final int[] tileY;
+
+  // Pre-allocated buffers, one tile buffer per worker.
+  private final int[] mosaic;
+  private final byte[] lumaMosaic;
+  private final int[][] tilePixels;
+  private final byte[][] tileLuma;
+  private final List<List<Detection>> tileResults = new ArrayList<List<Detection>>();
+  private final List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+
+  /**
+   * @param config Pipeline parameters, boxTiles must be at least 2.
+   * @param engines Box engines, one per parallel worker. Owned by the detector.
+   */
+  public TiledBoxDetector(final PipelineConfig config, final List<InferenceEngine> engines) {
+    if (config.boxTiles < 2 || engines.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Need a grid of at least 2x2 tiles and one engine: " + config.boxTiles);
+    }
+    this.config = config.copy();
+    this.engines = new ArrayList<InferenceEngine>(engines);
+    grid = config.boxTiles;
+
+    // n tiles of size t advancing by t * (1 - overlap) span t * (1 + (n - 1) * (1 - overlap)).
+    final float advance = 1.0f - config.boxTileOverlap;
+    final float span = 1.0f + (grid - 1) * advance;
+    mosaicWidth = Math.round(config.boxWidth * span);
+    mosaicHeight = Math.round(config.boxHeight * span);
+    tileX = new int[grid * grid];
+    tileY = new int[grid * grid];
+    for (int i = 0; i < grid * grid; ++i) {
+      final int col = i % grid;
+      final int row = i / grid;
+      // The last column and row end exactly at the mosaic border.
+      tileX[i] =
+          col == grid - 1
+              ? mosaicWidth - config.boxWidth
+              : Math.round(col * config.boxWidth * advance);
+      tileY[i] =
+          row == grid - 1
+              ? mosaicHeight - config.boxHeight
+              : Math.round(row * config.boxHeight * advance);
+      tileResults.add(null);
+    }
+
+    mosaic = new int[mosaicWidth * mosaicHeight];
+    lumaMosaic = config.boxLuma ? new byte[mosaicWidth * mosaicHeight] : null;
+    final int numWorkers = Math.min(this.engines.size(), grid * grid);
+    tilePixels = new int[numWorkers][];
+    tileLuma = new byte[numWorkers][];
+    for (int w = 0; w < numWorkers; ++w) {
+      final int worker = w;
+      if (config.boxLuma) {
+        tileLuma[w] = new byte[config.boxWidth * config.boxHeight];
+      } else {
+        tilePixels[w] = new int[config.boxWidth * config.boxHeight];
+      }
+      workers.add(
+          new Callable<Void>() {
+            @Override
+            public Void call() {
+              runTiles(worker);
+              return null;
+            }
+          });
+    }
+    executor =
+        numWorkers > 1
+            ? Executors.newFixedThreadPool(
+                numWorkers,
+                r -> {
+                  final Thread thread = new Thread(r, "box-tiles");
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
+  }
+
+  /**
+   * Detects boxes in an ARGB frame, on its luma if {@link PipelineConfig#boxLuma} is set.
+   *
+   * @return detections in frame coordinates, sorted by confidence.
+   */
+  public List<Detection> detect(final int[] frame, final int width, final int height) {
+    ImageOps.transform(
+        frame, width, height, 0, 0, width, height, 0, config.maintainAspect,
+        mosaic, mosaicWidth, mosaicHeight);
+    if (config.boxLuma) {
+      ImageOps.toLuma(mosaic, mosaic.length, lumaMosaic);
+    }
+    return runAll(width, height);
+  }
+
+  /**
+   * Detects boxes in the luma plane of a camera frame, requires {@link PipelineConfig#boxLuma}.
+   *
+   * @return detections in frame coordinates, sorted by confidence.
+   */
+  public List<Detection> detectLuma(
+      final ByteBuffer yPlane, final int rowStride, final int width, final int height) {
+    if (!config.boxLuma) {
+      throw new IllegalStateException("Tiled detector was configured for ARGB input");
+    }
+    ImageOps.scaleLuma(
+        yPlane, rowStride, width, height, config.maintainAspect,
+        lumaMosaic, mosaicWidth, mosaicHeight);
+    return runAll(width, height);
+  }
+
+  private List<Detection> runAll(final int width, final int height) {
+    if (executor == null) {
+      runTiles(0);
+    } else {
+      try {
+        for (final Future<Void> future : executor.invokeAll(workers)) {
+          future.get();
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new ArrayList<Detection>();
+      } catch (final ExecutionException e) {
+        final Throwable cause = e.getCause();
+        throw cause instanceof RuntimeException
+            ? (RuntimeException) cause
+            : new RuntimeException(cause);
+      }
+    }
+
+    // Same mapping as TagPipeline.mapToFrame, with the mosaic in place of the coarse input.
+    float scaleX = width / (float) mosaicWidth;
+    float scaleY = height / (float) mosaicHeight;
+    if (config.maintainAspect) {
+      scaleX = scaleY = 1.0f / Math.max(mosaicWidth / (float) width, mosaicHeight / (float) height);
+    }
+    final List<Detection> all = new ArrayList<Detection>();
+    for (int i = 0; i < tileResults.size(); ++i) {
+      for (final Detection d : tileResults.get(i)) {
+        final Box box = d.getLocation();
+        box.offset(tileX[i], tileY[i]);
+        box.scale(scaleX, scaleY);
+        all.add(new Detection(d.getId(), d.getTitle(), d.getConfidence(), box));
+      }
+      tileResults.set(i, null);
+    }
+    return NonMaxSuppression.apply(all, 0.0f, IOU_THRESHOLD, false, MAX_RESULTS);
+  }
+
+  /** Runs every tile assigned to a worker on the engine of that worker. */
+  private void runTiles(final int worker) {
+    final InferenceEngine engine = engines.get(worker);
+    final int boxWidth = config.boxWidth;
+    final int boxHeight = config.boxHeight;
+    for (int i = worker; i < grid * grid; i += workers.size()) {
+      final int offset = tileY[i] * mosaicWidth + tileX[i];
+      final List<Detection> detections;
+      if (config.boxLuma) {
+        final byte[] tile = tileLuma[worker];
+        for (int y = 0; y < boxHeight; ++y) {
+          System.arraycopy(lumaMosaic, offset + y * mosaicWidth, tile, y * boxWidth, boxWidth);
+        }
+        detections = engine.recognizeLuma(tile, boxWidth, boxHeight);
+      } else {
+        final int[] tile = tilePixels[worker];
+        for (int y = 0; y < boxHeight; ++y) {
+          System.arraycopy(mosaic, offset + y * mosaicWidth, tile, y * boxWidth, boxWidth);
+        }
+        detections = engine.recognize(tile, boxWidth, boxHeight);
+      }
+      // Each worker writes its own tiles, invokeAll publishes them to the caller.
+      tileResults.set(i, detections);
+    }
+  }
+
+  /** Number of tiles per frame. */
+  public int getTileCount() {
+    return grid * grid;
+  }
+
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    for (final InferenceEngine engine : engines) {
+      engine.close();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * In-process trace of the pipeline stages, readable without systrace attached. The last events,
+ * each a stage with its thread, start and end, are kept in a preallocated ring, recording one
+ * allocates nothing. The ring is written as Chrome trace JSON, which chrome://tracing and the
+ * Perfetto UI open, on demand or when a result misses its latency budget (see {@link
+ * #claimDump}). Thread safe.
+ */
+public class TraceRecorder {
+  /** Delivery of a frame by the camera or the replay. */
+  public static final int CAMERA = 0;
+  /** Conversion, scaling and cropping of the model inputs. */
+  public static final int PREPROCESS = 1;
+  /** Model invocations. */
+  public static final int INFERENCE = 2;
+  /** Decoding of the model outputs and the digit layout. */
+  public static final int POSTPROCESS = 3;
+  /** Display of a result. */
+  public static final int UI = 4;
+
+  private static final String[] STAGE_NAMES = {
+    "camera", "preprocess", "inference", "postprocess", "ui"
+  };
+  // Dumps kept in a directory, the oldest are deleted.
+  private static final int MAX_DUMPS = 5;
+  private static final String DUMP_PREFIX = "trace-";
+
+  // The ring, guarded by this.
+  private final int[] stages;
+  private final Thread[] threads;
+  private final long[] startNs;
+  private final long[] endNs;
+  private long recorded;
+  private long lastDumpNs = Long.MIN_VALUE;
+
+  /** @param capacity Number of events kept. */
+  public TraceRecorder(final int capacity) {
+    stages = new int[capacity];
+    threads = new Thread[capacity];
+    startNs = new long[capacity];
+    endNs = new long[capacity];
+  }
+
+  /** Current time on the clock of the events, {@link System#nanoTime}. */
+  public static long now() {
+    return System.nanoTime();
+  }
+
+  /** Records a stage that ran on the current thread from startNs until now. */
+  public void record(final int stage, final long startNs) {
+    record(stage, startNs, now());
+  }
+
+  /** Records a stage that ran on the current thread, overwriting the oldest event if full. */
+  public synchronized void record(final int stage, final long startNs, final long endNs) {
+    final int i = (int) (recorded % stages.length);
+    stages[i] = stage;
+    threads[i] = Thread.currentThread();
+    this.startNs[i] = startNs;
+    this.endNs[i] = endNs;
+    ++recorded;
+  }
+
+  /** Number of events recorded since the start, including the overwritten ones. */
+  public synchronized long getRecorded() {
+    return recorded;
+  }
+
+  /**
+   * Rate limit of the dumps on missed budgets: true if no dump was claimed within minIntervalNs
+   * before nowNs, the caller then writes one.
+   */
+  public synchronized boolean claimDump(final long nowNs, final long minIntervalNs) {
+    if (lastDumpNs != Long.MIN_VALUE && nowNs - lastDumpNs < minIntervalNs) {
+      return false;
+    }
+    lastDumpNs = nowNs;
+    return true;
+  }
+
+  /**
+   * Writes the events in the ring as Chrome trace JSON: one complete event per stage, in
+   * microseconds, and the name of each thread.
+   */
+  public void writeChromeTrace(final Writer out) throws IOException {
+    // copy the ring, so recording goes on while the JSON is written
+    final int count;
+    final int[] stages;
+    final Thread[] threads;
+    final long[] startNs;
+    final long[] endNs;
+    synchronized (this) {
+      count = (int) Math.min(recorded, this.stages.length);
+      final int first = (int) ((recorded - count) % this.stages.length);
+      stages = new int[count];
+      threads = new Thread[count];
+      startNs = new long[count];
+      endNs = new long[count];
+      for (int k = 0; k < count; ++k) {
+        final int i = (first + k) % this.stages.length;
+        stages[k] = this.stages[i];
+        threads[k] = this.threads[i];
+        startNs[k] = this.startNs[i];
+        endNs[k] = this.endNs[i];
+      }
+    }
+
+    out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+    final Set<Thread> named = new LinkedHashSet<Thread>();
+    for (int k = 0; k < count; ++k) {
+      if (k > 0) {
+        out.write(',');
+      }
+      out.write(
+          String.format(
+              Locale.ROOT,
+              "%n{\"name\":\"%s\",\"cat\":\"pipeline\",\"ph\":\"X\",\"pid\":1,\"tid\":%d,"
+                  + "\"ts\":%.3f,\"dur\":%.3f}",
+              STAGE_NAMES[stages[k]],
+              threads[k].getId(),
+              startNs[k] / 1e3,
+              Math.max(0, endNs[k] - startNs[k]) / 1e3));
+      named.add(threads[k]);
+    }
+    for (final Thread thread : named) {
+      out.write(
+          String.format(
+              Locale.ROOT,
+              ",%n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":%d,"
+                  + "\"args\":{\"name\":\"%s\"}}",
+              thread.getId(),
+              escape(thread.getName())));
+    }
+    out.write(String.format("%n]}%n"));
+  }
+
+  /**
+   * Writes the trace to a new file in dir and deletes the oldest dumps in it beyond the last
+   * {@value #MAX_DUMPS}.
+   *
+   * @return the file written.
+   */
+  public File dump(final File dir) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Can't create " + dir);
+    }
+    final File file = new File(dir, DUMP_PREFIX + System.currentTimeMillis() + ".json");
+    try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+      writeChromeTrace(out);
+    }
+
+    final File[] dumps =
+        dir.listFiles((d, name) -> name.startsWith(DUMP_PREFIX) && name.endsWith(".json"));
+    if (dumps != null && dumps.length > MAX_DUMPS) {
+      // the names sort by time
+      Arrays.sort(dumps);
+      for (int i = 0; i < dumps.length - MAX_DUMPS; ++i) {
+        dumps[i].delete();
+      }
+    }
+    return file;
+  }
+
+  private static String escape(final String text) {
+    final StringBuilder sb = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); ++i) {
+      final char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
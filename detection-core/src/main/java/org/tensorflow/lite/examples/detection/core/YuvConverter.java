@@ -0,0 +1,141 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+/** Conversion of YUV camera frames into ARGB_8888 pixels. */
+public final class YuvConverter {
+  private YuvConverter() {}
+
+  // This value is 2 ^ 18 - 1, and is used to clamp the RGB values before their ranges
+  // are normalized to eight bits.
+  static final int kMaxChannelValue = 262143;
+
+  public static void convertYUV420SPToARGB8888(
+      final byte[] input, final int width, final int height, final int[] output) {
+    final int frameSize = width * height;
+    for (int j = 0, yp = 0; j < height; j++) {
+      int uvp = frameSize + (j >> 1) * width;
+      int u = 0;
+      int v = 0;
+
+      for (int i = 0; i < width; i++, yp++) {
+        int y = 0xff & input[yp];
+        if ((i & 1) == 0) {
+          v = 0xff & input[uvp++];
+          u = 0xff & input[uvp++];
+        }
+
+        output[yp] = YUV2RGB(y, u, v);
+      }
+    }
+  }
+
+  static int YUV2RGB(int y, int u, int v) {
+    // Adjust and check YUV values
+    y = (y - 16) < 0 ? 0 : (y - 16);
+    u -= 128;
+    v -= 128;
+
+    // This is the floating point equivalent. We do the conversion in integer
+    // because some Android devices do not have floating point in hardware.
+    // nR = (int)(1.164 * nY + 2.018 * nU);
+    // nG = (int)(1.164 * nY - 0.813 * nV - 0.391 * nU);
+    // nB = (int)(1.164 * nY + 1.596 * nV);
+    int y1192 = 1192 * y;
+    int r = (y1192 + 1634 * v);
+    int g = (y1192 - 833 * v - 400 * u);
+    int b = (y1192 + 2066 * u);
+
+    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
+    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
+    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
+    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  public static void convertYUV420ToARGB8888(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    int yp = 0;
+    for (int j = 0; j < height; j++) {
+      int pY = yRowStride * j;
+      int pUV = uvRowStride * (j >> 1);
+
+      for (int i = 0; i < width; i++) {
+        int uv_offset = pUV + (i >> 1) * uvPixelStride;
+
+        out[yp++] = YUV2RGB(0xff & yData[pY + i], 0xff & uData[uv_offset], 0xff & vData[uv_offset]);
+      }
+    }
+  }
+
+  /**
+   * Encodes ARGB_8888 pixels as planar YUV 4:2:0 with video range BT.601, the inverse of {@link
+   * #convertYUV420ToARGB8888} up to rounding. Each chroma sample is the mean of its 2x2 block.
+   *
+   * @param argb Pixels in ARGB_8888.
+   * @param width Width of the image.
+   * @param height Height of the image.
+   * @param yData Luma plane, width bytes per row.
+   * @param uData U plane, (width + 1) / 2 bytes per row.
+   * @param vData V plane, (width + 1) / 2 bytes per row.
+   */
+  public static void convertARGB8888ToYUV420(
+      final int[] argb,
+      final int width,
+      final int height,
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData) {
+    for (int i = 0; i < width * height; ++i) {
+      final int p = argb[i];
+      final int r = (p >> 16) & 0xff;
+      final int g = (p >> 8) & 0xff;
+      final int b = p & 0xff;
+      yData[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+    }
+
+    final int uvWidth = (width + 1) / 2;
+    for (int j = 0; j < (height + 1) / 2; ++j) {
+      for (int i = 0; i < uvWidth; ++i) {
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int k = 0; k < 4; ++k) {
+          final int x = Math.min(2 * i + (k & 1), width - 1);
+          final int y = Math.min(2 * j + (k >> 1), height - 1);
+          final int p = argb[y * width + x];
+          r += (p >> 16) & 0xff;
+          g += (p >> 8) & 0xff;
+          b += p & 0xff;
+        }
+        r = (r + 2) >> 2;
+        g = (g + 2) >> 2;
+        b = (b + 2) >> 2;
+        uData[j * uvWidth + i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+        vData[j * uvWidth + i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+      }
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts frames to ARGB_8888 straight from their plane buffers, without copying whole planes
+ * into byte arrays first. Planes backed by an array are read in place. Direct planes, like the
+ * ones of Image and ImageProxy, are read one row at a time with a bulk get into reused row
+ * buffers, and each chroma row is read once for the two luma rows that share it. Bit-exact with
+ * {@link LutYuvConverter}. Not thread safe, use one converter per thread.
+ */
+public class YuvPlaneConverter {
+  private byte[] yRow = new byte[0];
+  private byte[] uRow = new byte[0];
+  private byte[] vRow = new byte[0];
+
+  /** Converts a frame into out, which must hold width * height pixels. */
+  public void convert(final Frame frame, final int[] out) {
+    convert(
+        frame.getYPlane(),
+        frame.getUPlane(),
+        frame.getVPlane(),
+        frame.getWidth(),
+        frame.getHeight(),
+        frame.getYRowStride(),
+        frame.getUvRowStride(),
+        frame.getUvPixelStride(),
+        out);
+  }
+
+  /**
+   * Converts a YUV_420_888 frame. The planes are read from their current position, which is left
+   * unchanged.
+   */
+  public void convert(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    if (yPlane.hasArray() && uPlane.hasArray() && vPlane.hasArray()) {
+      convertArrays(
+          yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+      return;
+    }
+
+    // The last row of a plane is often not padded, so only the bytes in use are read.
+    final int uvRowBytes = (((width + 1) >> 1) - 1) * uvPixelStride + 1;
+    if (yRow.length < width) {
+      yRow = new byte[width];
+    }
+    if (uRow.length < uvRowBytes) {
+      uRow = new byte[uvRowBytes];
+      vRow = new byte[uvRowBytes];
+    }
+
+    final ByteBuffer y = yPlane.duplicate();
+    final ByteBuffer u = uPlane.duplicate();
+    final ByteBuffer v = vPlane.duplicate();
+    final int yBase = yPlane.position();
+    final int uBase = uPlane.position();
+    final int vBase = vPlane.position();
+    for (int j = 0; j < height; j++) {
+      if ((j & 1) == 0) {
+        final int pUV = uvRowStride * (j >> 1);
+        u.position(uBase + pUV);
+        u.get(uRow, 0, uvRowBytes);
+        v.position(vBase + pUV);
+        v.get(vRow, 0, uvRowBytes);
+      }
+      y.position(yBase + yRowStride * j);
+      y.get(yRow, 0, width);
+      LutYuvConverter.convertRow(yRow, 0, uRow, 0, vRow, 0, uvPixelStride, width, out, width * j);
+    }
+  }
+
+  private static void convertArrays(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final int[] out) {
+    final byte[] yData = yPlane.array();
+    final byte[] uData = uPlane.array();
+    final byte[] vData = vPlane.array();
+    final int yBase = yPlane.arrayOffset() + yPlane.position();
+    final int uBase = uPlane.arrayOffset() + uPlane.position();
+    final int vBase = vPlane.arrayOffset() + vPlane.position();
+    for (int j = 0; j < height; j++) {
+      final int pUV = uvRowStride * (j >> 1);
+      LutYuvConverter.convertRow(
+          yData, yBase + yRowStride * j, uData, uBase + pUV, vData, vBase + pUV, uvPixelStride,
+          width, out, width * j);
+    }
+  }
+}
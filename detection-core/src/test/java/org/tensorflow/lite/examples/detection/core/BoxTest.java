@@ -0,0 +1,55 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class BoxTest {
+  @Test
+  public void iouOfSameBoxIsOne() {
+    final Box box = new Box(10, 20, 30, 60);
+    assertEquals(1.0f, Box.iou(box, new Box(box)), 1e-6f);
+  }
+
+  @Test
+  public void iouOfPartialOverlap() {
+    // intersection 50, union 150
+    assertEquals(1.0f / 3, Box.iou(new Box(0, 0, 10, 10), new Box(5, 0, 15, 10)), 1e-6f);
+    // a box inside another one, 25 of 100
+    assertEquals(0.25f, Box.iou(new Box(0, 0, 10, 10), new Box(0, 0, 5, 5)), 1e-6f);
+  }
+
+  @Test
+  public void iouIsSymmetric() {
+    final Box a = new Box(0, 0, 10, 20);
+    final Box b = new Box(3, 7, 17, 12);
+    assertEquals(Box.iou(a, b), Box.iou(b, a), 0.0f);
+  }
+
+  @Test
+  public void iouOfDisjointOrTouchingBoxesIsZero() {
+    assertEquals(0.0f, Box.iou(new Box(0, 0, 10, 10), new Box(20, 20, 30, 30)), 0.0f);
+    assertEquals(0.0f, Box.iou(new Box(0, 0, 10, 10), new Box(10, 0, 20, 10)), 0.0f);
+    assertEquals(0.0f, Box.iou(new Box(0, 0, 10, 10), new Box(0, 10, 10, 20)), 0.0f);
+  }
+
+  @Test
+  public void iouOfEmptyBoxesIsZero() {
+    assertEquals(0.0f, Box.iou(new Box(5, 5, 5, 5), new Box(5, 5, 5, 5)), 0.0f);
+  }
+}
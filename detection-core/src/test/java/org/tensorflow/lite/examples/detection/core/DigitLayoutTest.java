@@ -0,0 +1,100 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class DigitLayoutTest {
+  private static final float LARGE_HEIGHT = 40;
+  private static final float SMALL_HEIGHT = 20;
+
+  private static Detection digit(
+      final String title, final float confidence, final float centerX, final float centerY,
+      final float height) {
+    return new Detection(
+        title, title, confidence,
+        new Box(centerX - 5, centerY - height / 2, centerX + 5, centerY + height / 2));
+  }
+
+  /** The large digits of a tag, left to right from x = 60, below the small ones. */
+  private static List<Detection> largeDigits(final String titles) {
+    final List<Detection> digits = new ArrayList<Detection>();
+    for (int i = 0; i < titles.length(); ++i) {
+      digits.add(digit(titles.substring(i, i + 1), 0.9f, 60 + 15 * i, 100, LARGE_HEIGHT));
+    }
+    return digits;
+  }
+
+  @Test
+  public void twoSmallDigitsComeFirst() {
+    final List<Detection> digits = largeDigits("1234567");
+    digits.add(digit("9", 0.9f, 35, 40, SMALL_HEIGHT));
+    digits.add(digit("8", 0.9f, 20, 40, SMALL_HEIGHT));
+    // the detector order must not matter
+    digits.add(0, digits.remove(3));
+
+    assertEquals(
+        Arrays.asList("8", "9", "1", "2", "3", "4", "5", "6", "7"),
+        DigitLayout.parse(digits, 0.5f));
+  }
+
+  @Test
+  public void oneSmallDigit() {
+    final List<Detection> digits = largeDigits("1234567");
+    digits.add(digit("8", 0.9f, 20, 40, SMALL_HEIGHT));
+
+    assertEquals(
+        Arrays.asList("8", DigitLayout.MISSING, "1", "2", "3", "4", "5", "6", "7"),
+        DigitLayout.parse(digits, 0.5f));
+  }
+
+  @Test
+  public void missingDigitsAreFilledIn() {
+    final List<String> layout = DigitLayout.parse(largeDigits("12345"), 0.5f);
+
+    assertEquals(DigitLayout.LAYOUT_SIZE, layout.size());
+    assertEquals(
+        Arrays.asList(
+            DigitLayout.MISSING, DigitLayout.MISSING, "1", "2", "3", "4", "5",
+            DigitLayout.MISSING, DigitLayout.MISSING),
+        layout);
+  }
+
+  @Test
+  public void unconfidentDigitsAreIgnored() {
+    final List<Detection> digits = largeDigits("123");
+    digits.add(1, digit("0", 0.2f, 67, 100, LARGE_HEIGHT));
+
+    assertEquals(
+        Arrays.asList(
+            DigitLayout.MISSING, DigitLayout.MISSING, "1", "2", "3",
+            DigitLayout.MISSING, DigitLayout.MISSING, DigitLayout.MISSING, DigitLayout.MISSING),
+        DigitLayout.parse(digits, 0.5f));
+  }
+
+  @Test
+  public void fewerThanThreeDigitsIsNoTag() {
+    assertNull(DigitLayout.parse(largeDigits("12"), 0.5f));
+    assertNull(DigitLayout.parse(largeDigits("123"), 0.95f));
+    assertNull(DigitLayout.parse(new ArrayList<Detection>(), 0.5f));
+  }
+}
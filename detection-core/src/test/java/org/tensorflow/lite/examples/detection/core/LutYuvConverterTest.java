@@ -0,0 +1,201 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that {@link LutYuvConverter} is bit-exact with {@link YuvConverter}: for every YUV triple
+ * on its own, for every triple through each frame layout, and for random frames with odd sizes and
+ * padded strides. The random frames also go through the plane buffer paths, array backed and
+ * direct.
+ */
+public class LutYuvConverterTest {
+  // Every chroma row covers all 256 luma values, each one on both pixels of a chroma sample.
+  private static final int TILE_WIDTH = 512;
+  // Two luma rows per chroma row, one chroma row per U value.
+  private static final int TILE_HEIGHT = 512;
+
+  @Test
+  public void everyTripleMatches() {
+    for (int y = 0; y < 256; ++y) {
+      for (int u = 0; u < 256; ++u) {
+        for (int v = 0; v < 256; ++v) {
+          final int expected = YuvConverter.YUV2RGB(y, u, v);
+          final int actual = LutYuvConverter.toArgb(y, u, v);
+          if (expected != actual) {
+            assertEquals(String.format("y %d u %d v %d", y, u, v), expected, actual);
+          }
+        }
+      }
+    }
+  }
+
+  /** One frame per V value covering all Y and U values. */
+  @Test
+  public void everyTripleMatchesInPlanarFrames() {
+    for (final int pixelStride : new int[] {1, 2, 3}) {
+      final int uvRowStride = TILE_WIDTH / 2 * pixelStride;
+      final byte[] yData = new byte[TILE_WIDTH * TILE_HEIGHT];
+      final byte[] uData = new byte[uvRowStride * TILE_HEIGHT / 2];
+      final byte[] vData = new byte[uData.length];
+      for (int j = 0; j < TILE_HEIGHT; ++j) {
+        for (int i = 0; i < TILE_WIDTH; ++i) {
+          yData[j * TILE_WIDTH + i] = (byte) (i >> 1);
+        }
+      }
+      for (int j = 0; j < TILE_HEIGHT / 2; ++j) {
+        for (int k = 0; k < TILE_WIDTH / 2; ++k) {
+          uData[j * uvRowStride + k * pixelStride] = (byte) j;
+        }
+      }
+
+      final int[] expected = new int[TILE_WIDTH * TILE_HEIGHT];
+      final int[] actual = new int[TILE_WIDTH * TILE_HEIGHT];
+      for (int v = 0; v < 256; ++v) {
+        Arrays.fill(vData, (byte) v);
+        YuvConverter.convertYUV420ToARGB8888(
+            yData, uData, vData, TILE_WIDTH, TILE_HEIGHT, TILE_WIDTH, uvRowStride, pixelStride,
+            expected);
+        LutYuvConverter.convertYUV420ToARGB8888(
+            yData, uData, vData, TILE_WIDTH, TILE_HEIGHT, TILE_WIDTH, uvRowStride, pixelStride,
+            actual);
+        compare(expected, actual, "pixel stride " + pixelStride + ", v " + v);
+      }
+    }
+  }
+
+  @Test
+  public void everyTripleMatchesInNv21Frames() {
+    final int frameSize = TILE_WIDTH * TILE_HEIGHT;
+    final byte[] nv21 = new byte[frameSize * 3 / 2];
+    for (int j = 0; j < TILE_HEIGHT; ++j) {
+      for (int i = 0; i < TILE_WIDTH; ++i) {
+        nv21[j * TILE_WIDTH + i] = (byte) (i >> 1);
+      }
+    }
+    final int[] expected = new int[frameSize];
+    final int[] actual = new int[frameSize];
+    for (int v = 0; v < 256; ++v) {
+      for (int j = 0; j < TILE_HEIGHT / 2; ++j) {
+        for (int k = 0; k < TILE_WIDTH / 2; ++k) {
+          nv21[frameSize + j * TILE_WIDTH + 2 * k] = (byte) v;
+          nv21[frameSize + j * TILE_WIDTH + 2 * k + 1] = (byte) j;
+        }
+      }
+      YuvConverter.convertYUV420SPToARGB8888(nv21, TILE_WIDTH, TILE_HEIGHT, expected);
+      LutYuvConverter.convertYUV420SPToARGB8888(nv21, TILE_WIDTH, TILE_HEIGHT, actual);
+      compare(expected, actual, "NV21, v " + v);
+    }
+  }
+
+  /** Odd sizes and padded rows, where the pair loops need their tail handling. */
+  @Test
+  public void randomFramesMatch() {
+    final Random random = new Random(0);
+    for (int n = 0; n < 500; ++n) {
+      final int width = 1 + random.nextInt(67);
+      final int height = 1 + random.nextInt(67);
+      final int pixelStride = 1 + random.nextInt(2);
+      final int yRowStride = width + random.nextInt(16);
+      final int uvRowStride = (width + 1) / 2 * pixelStride + random.nextInt(16);
+      final int uvRows = (height + 1) / 2;
+      final byte[] yData = new byte[yRowStride * height];
+      final byte[] uData = new byte[uvRowStride * uvRows];
+      final byte[] vData = new byte[uvRowStride * uvRows];
+      random.nextBytes(yData);
+      random.nextBytes(uData);
+      random.nextBytes(vData);
+      final int[] expected = new int[width * height];
+      final int[] actual = new int[width * height];
+      YuvConverter.convertYUV420ToARGB8888(
+          yData, uData, vData, width, height, yRowStride, uvRowStride, pixelStride, expected);
+      LutYuvConverter.convertYUV420ToARGB8888(
+          yData, uData, vData, width, height, yRowStride, uvRowStride, pixelStride, actual);
+      compare(expected, actual, "random " + width + "x" + height + " stride " + pixelStride);
+      comparePlaneBuffers(
+          yData, uData, vData, width, height, yRowStride, uvRowStride, pixelStride, expected);
+
+      // NV21 needs even rows of chroma, odd widths are still possible.
+      final byte[] nv21 = new byte[width * height + width * uvRows + 1];
+      random.nextBytes(nv21);
+      YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, expected);
+      LutYuvConverter.convertYUV420SPToARGB8888(nv21, width, height, actual);
+      compare(expected, actual, "random NV21 " + width + "x" + height);
+    }
+  }
+
+  private static void comparePlaneBuffers(
+      final byte[] yData,
+      final byte[] uData,
+      final byte[] vData,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int pixelStride,
+      final int[] expected) {
+    final YuvPlaneConverter converter = new YuvPlaneConverter();
+    final int[] actual = new int[width * height];
+    final String what = "planes " + width + "x" + height + " stride " + pixelStride;
+    for (final boolean direct : new boolean[] {false, true}) {
+      // Planes that don't start at the beginning of their buffer, like the camera ones.
+      final ByteBuffer y = plane(yData, direct);
+      final ByteBuffer u = plane(uData, direct);
+      final ByteBuffer v = plane(vData, direct);
+
+      Arrays.fill(actual, 0);
+      LutYuvConverter.convertYUV420ToARGB8888(
+          y, u, v, width, height, yRowStride, uvRowStride, pixelStride, actual);
+      compare(expected, actual, what + (direct ? ", direct absolute" : ", heap absolute"));
+
+      Arrays.fill(actual, 0);
+      converter.convert(y, u, v, width, height, yRowStride, uvRowStride, pixelStride, actual);
+      compare(expected, actual, what + (direct ? ", direct rows" : ", heap arrays"));
+      assertEquals(what + ": y position", 1, y.position());
+      assertEquals(what + ": u position", 1, u.position());
+      assertEquals(what + ": v position", 1, v.position());
+    }
+  }
+
+  private static ByteBuffer plane(final byte[] data, final boolean direct) {
+    final ByteBuffer buffer =
+        direct ? ByteBuffer.allocateDirect(data.length + 5) : ByteBuffer.allocate(data.length + 5);
+    buffer.position(2);
+    buffer.put(data);
+    buffer.position(1);
+    final ByteBuffer slice = buffer.slice();
+    slice.position(1);
+    slice.limit(1 + data.length);
+    return slice;
+  }
+
+  private static void compare(final int[] expected, final int[] actual, final String what) {
+    for (int i = 0; i < expected.length; ++i) {
+      if (expected[i] != actual[i]) {
+        assertEquals(
+            String.format("%s, pixel %d: %08x != %08x", what, i, actual[i], expected[i]),
+            expected[i],
+            actual[i]);
+      }
+    }
+  }
+}
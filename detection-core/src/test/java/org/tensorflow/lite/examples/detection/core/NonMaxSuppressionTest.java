@@ -0,0 +1,93 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class NonMaxSuppressionTest {
+  private static Detection detection(
+      final String title, final float confidence, final float left, final float top) {
+    return new Detection(title, title, confidence, new Box(left, top, left + 10, top + 10));
+  }
+
+  @Test
+  public void overlappingDetectionsKeepTheMostConfident() {
+    final Detection weak = detection("1", 0.6f, 2, 0);
+    final Detection strong = detection("1", 0.9f, 0, 0);
+    final Detection apart = detection("1", 0.7f, 50, 50);
+
+    final List<Detection> kept =
+        NonMaxSuppression.apply(Arrays.asList(weak, strong, apart), 0.5f, 0.5f, false, 10);
+
+    assertEquals(2, kept.size());
+    assertSame(strong, kept.get(0));
+    assertSame(apart, kept.get(1));
+  }
+
+  @Test
+  public void overlapAtTheThresholdIsKept() {
+    // iou 1/3
+    final Detection a = detection("1", 0.9f, 0, 0);
+    final Detection b = detection("1", 0.8f, 5, 0);
+
+    assertEquals(2, NonMaxSuppression.apply(Arrays.asList(a, b), 0.0f, 0.5f, false, 10).size());
+    assertEquals(1, NonMaxSuppression.apply(Arrays.asList(a, b), 0.0f, 0.3f, false, 10).size());
+  }
+
+  @Test
+  public void perClassOnlySuppressesTheSameTitle() {
+    final Detection one = detection("1", 0.9f, 0, 0);
+    final Detection seven = detection("7", 0.8f, 1, 0);
+    final List<Detection> detections = Arrays.asList(one, seven);
+
+    assertEquals(
+        Arrays.asList(one, seven), NonMaxSuppression.apply(detections, 0.0f, 0.5f, true, 10));
+    assertEquals(Arrays.asList(one), NonMaxSuppression.apply(detections, 0.0f, 0.5f, false, 10));
+  }
+
+  @Test
+  public void dropsUnconfidentDetectionsAndLimitsTheResults() {
+    final List<Detection> detections = new ArrayList<Detection>();
+    for (int i = 0; i < 10; ++i) {
+      detections.add(detection("1", 0.05f + 0.1f * i, 20 * i, 0));
+    }
+
+    final List<Detection> kept = NonMaxSuppression.apply(detections, 0.5f, 0.5f, false, 3);
+
+    assertEquals(3, kept.size());
+    assertSame(detections.get(9), kept.get(0));
+    assertSame(detections.get(8), kept.get(1));
+    assertSame(detections.get(7), kept.get(2));
+    assertEquals(5, NonMaxSuppression.apply(detections, 0.5f, 0.5f, false, 10).size());
+  }
+
+  @Test
+  public void leavesTheInputUnchanged() {
+    final List<Detection> detections =
+        Arrays.asList(detection("1", 0.2f, 0, 0), detection("1", 0.9f, 1, 0));
+    final List<Detection> copy = new ArrayList<Detection>(detections);
+
+    NonMaxSuppression.apply(detections, 0.5f, 0.5f, false, 10);
+
+    assertEquals(copy, detections);
+  }
+}
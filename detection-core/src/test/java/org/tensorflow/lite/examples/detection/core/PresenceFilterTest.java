@@ -0,0 +1,86 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class PresenceFilterTest {
+  private static float[] shuffledScores(final int count) {
+    final float[] scores = new float[count];
+    for (int i = 0; i < count; ++i) {
+      scores[i] = i;
+    }
+    final Random random = new Random(42);
+    for (int i = count - 1; i > 0; --i) {
+      final int j = random.nextInt(i + 1);
+      final float t = scores[i];
+      scores[i] = scores[j];
+      scores[j] = t;
+    }
+    return scores;
+  }
+
+  @Test
+  public void calibrateRejectsTheLowestScores() {
+    final float[] scores = shuffledScores(100);
+
+    assertEquals(1.0f, PresenceFilter.calibrate(scores, 0.99f), 0.0f);
+    assertEquals(10.0f, PresenceFilter.calibrate(scores, 0.9f), 0.0f);
+    assertEquals(50.0f, PresenceFilter.calibrate(scores, 0.5f), 0.0f);
+  }
+
+  @Test
+  public void calibratedThresholdReachesTheRecall() {
+    final float[] scores = shuffledScores(37);
+    for (final float recall : new float[] {0.5f, 0.8f, 0.9f, 0.95f, 0.99f}) {
+      final PresenceFilter filter =
+          new PresenceFilter(PresenceFilter.calibrate(scores, recall), 64, 64);
+      int accepted = 0;
+      for (final float score : scores) {
+        if (filter.accept(score)) {
+          ++accepted;
+        }
+      }
+      assertTrue("recall " + recall, accepted >= recall * scores.length);
+      assertEquals(scores.length - accepted, filter.getSkipped());
+    }
+  }
+
+  @Test
+  public void fullRecallKeepsEveryFrame() {
+    assertEquals(0.0f, PresenceFilter.calibrate(shuffledScores(20), 1.0f), 0.0f);
+    assertEquals(0.0f, PresenceFilter.calibrate(shuffledScores(20), 2.0f), 0.0f);
+  }
+
+  @Test
+  public void calibrateWithoutScoresOrRecallIsZero() {
+    assertEquals(0.0f, PresenceFilter.calibrate(new float[0], 0.99f), 0.0f);
+    assertEquals(0.0f, PresenceFilter.calibrate(shuffledScores(10), 0.0f), 0.0f);
+  }
+
+  @Test
+  public void calibrateDoesNotSortTheScores() {
+    final float[] scores = {3, 1, 2};
+    PresenceFilter.calibrate(scores, 0.5f);
+    assertEquals(3.0f, scores[0], 0.0f);
+    assertEquals(1.0f, scores[1], 0.0f);
+    assertEquals(2.0f, scores[2], 0.0f);
+  }
+}
@@ -0,0 +1,203 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class ShadowDigitReaderTest {
+  private static final List<String> TAG =
+      Arrays.asList("-", "-", "1", "2", "3", "-", "-", "-", "-");
+  private static final List<String> OTHER_TAG =
+      Arrays.asList("-", "-", "4", "5", "6", "-", "-", "-", "-");
+
+  /** Candidate that reads {@link #TAG}, or no tag when {@link #digits} is emptied. */
+  private static class Candidate implements InferenceEngine {
+    volatile List<Detection> digits = new ArrayList<Detection>();
+    volatile CountDownLatch gate;
+    volatile boolean fail;
+
+    Candidate() {
+      for (int i = 0; i < 3; ++i) {
+        digits.add(
+            new Detection("" + i, "" + (i + 1), 0.9f, new Box(15 * i, 80, 15 * i + 10, 120)));
+      }
+    }
+
+    @Override
+    public List<Detection> recognize(final int[] argb, final int width, final int height) {
+      final CountDownLatch latch = gate;
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (fail) {
+        throw new IllegalArgumentException("input size");
+      }
+      return digits;
+    }
+
+    @Override
+    public List<Detection> recognizeLuma(final byte[] luma, final int width, final int height) {
+      return recognize(null, width, height);
+    }
+
+    @Override
+    public List<List<Detection>> recognizeBatch(
+        final int[] argb, final int count, final int width, final int height) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private final Candidate candidate = new Candidate();
+  private final int[] input = new int[16];
+  private ShadowDigitReader reader;
+
+  @After
+  public void tearDown() {
+    if (reader != null) {
+      reader.close();
+    }
+  }
+
+  /** Waits until the candidate finished the given number of reads, failed or not. */
+  private void awaitReads(final long reads) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (reader.getCompared() + failedReads() < reads) {
+      assertTrue("reads didn't finish", System.nanoTime() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private long failedReads() {
+    return counter("failed");
+  }
+
+  /** One of the counters of the CSV header. */
+  private long counter(final String name) {
+    final StringWriter out = new StringWriter();
+    try {
+      reader.writeCsv(out);
+    } catch (final IOException e) {
+      throw new AssertionError(e);
+    }
+    final String header = out.toString().split("\n")[0];
+    for (final String field : header.substring(2).split(",")) {
+      final String trimmed = field.trim();
+      if (trimmed.startsWith(name + " ")) {
+        return Long.parseLong(trimmed.substring(name.length() + 1));
+      }
+    }
+    throw new AssertionError("no counter " + name + " in " + header);
+  }
+
+  @Test
+  public void samplesTheGivenShareOfTheReads() throws InterruptedException {
+    reader = new ShadowDigitReader(candidate, 0.25f, 0.5f);
+    int sampled = 0;
+    for (int i = 0; i < 20; ++i) {
+      if (reader.offer(input, 4, 4, TAG, 1000)) {
+        ++sampled;
+        awaitReads(sampled);
+      }
+    }
+
+    assertEquals(5, sampled);
+    assertEquals(20, counter("offered"));
+    assertEquals(5, reader.getCompared());
+  }
+
+  @Test
+  public void noSharesNoReads() {
+    reader = new ShadowDigitReader(candidate, 0.0f, 0.5f);
+    for (int i = 0; i < 10; ++i) {
+      assertFalse(reader.offer(input, 4, 4, TAG, 1000));
+    }
+    assertEquals(0, reader.getCompared());
+  }
+
+  @Test
+  public void countsAgreements() throws InterruptedException {
+    reader = new ShadowDigitReader(candidate, 1.0f, 0.5f);
+
+    assertTrue(reader.offer(input, 4, 4, TAG, 1000));
+    awaitReads(1);
+    assertTrue(reader.offer(input, 4, 4, OTHER_TAG, 1000));
+    awaitReads(2);
+    assertTrue(reader.offer(input, 4, 4, null, 1000));
+    awaitReads(3);
+    candidate.digits = new ArrayList<Detection>();
+    assertTrue(reader.offer(input, 4, 4, TAG, 1000));
+    awaitReads(4);
+    assertTrue(reader.offer(input, 4, 4, null, 1000));
+    awaitReads(5);
+
+    assertEquals(5, reader.getCompared());
+    // the same tag, and no tag by either
+    assertEquals(2, reader.getAgreed());
+    assertEquals(0.4f, reader.getAgreement(), 1e-6f);
+    assertEquals(1, counter("live only"));
+    assertEquals(1, counter("candidate only"));
+  }
+
+  @Test
+  public void skipsTagsWhileTheCandidateIsBusy() throws InterruptedException {
+    reader = new ShadowDigitReader(candidate, 1.0f, 0.5f);
+    candidate.gate = new CountDownLatch(1);
+
+    assertTrue(reader.offer(input, 4, 4, TAG, 1000));
+    assertFalse(reader.offer(input, 4, 4, TAG, 1000));
+    assertFalse(reader.offer(input, 4, 4, TAG, 1000));
+    candidate.gate.countDown();
+    awaitReads(1);
+    assertTrue(reader.offer(input, 4, 4, TAG, 1000));
+    awaitReads(2);
+
+    assertEquals(2, counter("skipped"));
+    assertEquals(2, reader.getCompared());
+    assertEquals(2, reader.getAgreed());
+  }
+
+  @Test
+  public void failedReadsAreNotCompared() throws InterruptedException {
+    reader = new ShadowDigitReader(candidate, 1.0f, 0.5f);
+    candidate.fail = true;
+
+    assertTrue(reader.offer(input, 4, 4, TAG, 1000));
+    awaitReads(1);
+
+    assertEquals(1, failedReads());
+    assertEquals(0, reader.getCompared());
+    assertEquals(0.0f, reader.getAgreement(), 0.0f);
+  }
+}
@@ -0,0 +1,151 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+public class SpeculativeDigitReaderTest {
+  /** Digit engine that returns the same detections for every input. */
+  private static class FixedEngine implements InferenceEngine {
+    final List<Detection> digits =
+        Collections.singletonList(new Detection("0", "1", 0.9f, new Box(0, 0, 10, 10)));
+    int calls;
+
+    @Override
+    public List<Detection> recognize(final int[] argb, final int width, final int height) {
+      ++calls;
+      return digits;
+    }
+
+    @Override
+    public List<Detection> recognizeLuma(final byte[] luma, final int width, final int height) {
+      return recognize(null, width, height);
+    }
+
+    @Override
+    public List<List<Detection>> recognizeBatch(
+        final int[] argb, final int count, final int width, final int height) {
+      final List<List<Detection>> batch = new ArrayList<List<Detection>>();
+      for (int i = 0; i < count; ++i) {
+        batch.add(recognize(argb, width, height));
+      }
+      return batch;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private final FixedEngine engine = new FixedEngine();
+  private final SpeculativeDigitReader reader = new SpeculativeDigitReader(engine, 0.5f);
+
+  @After
+  public void tearDown() {
+    reader.close();
+  }
+
+  private static void assertBox(final Box expected, final Box actual) {
+    assertEquals(expected.left, actual.left, 1e-4f);
+    assertEquals(expected.top, actual.top, 1e-4f);
+    assertEquals(expected.right, actual.right, 1e-4f);
+    assertEquals(expected.bottom, actual.bottom, 1e-4f);
+  }
+
+  @Test
+  public void predictsNothingWithoutATag() {
+    assertNull(reader.predict(100, 100));
+    reader.update(new Box(10, 10, 20, 20));
+    reader.update(null);
+    assertNull(reader.predict(100, 100));
+  }
+
+  @Test
+  public void predictsTheLastBoxAfterOneFrame() {
+    reader.update(new Box(10, 10, 20, 20));
+    assertBox(new Box(10, 10, 20, 20), reader.predict(100, 100));
+  }
+
+  @Test
+  public void extrapolatesTheMotionOfTheLastTwoFrames() {
+    reader.update(new Box(10, 10, 20, 20));
+    reader.update(new Box(14, 7, 26, 19));
+    // the center moved by (5, -2), the size of the last box is kept
+    assertBox(new Box(19, 5, 31, 17), reader.predict(100, 100));
+  }
+
+  @Test
+  public void motionRestartsAfterAFrameWithoutTag() {
+    reader.update(new Box(10, 10, 20, 20));
+    reader.update(null);
+    reader.update(new Box(30, 30, 40, 40));
+    assertBox(new Box(30, 30, 40, 40), reader.predict(100, 100));
+  }
+
+  @Test
+  public void updateCopiesTheBox() {
+    final Box box = new Box(10, 10, 20, 20);
+    reader.update(box);
+    box.offset(50, 50);
+    assertBox(new Box(10, 10, 20, 20), reader.predict(100, 100));
+  }
+
+  @Test
+  public void predictionIsClampedToTheFrame() {
+    reader.update(new Box(70, 80, 90, 95));
+    reader.update(new Box(80, 85, 100, 100));
+    assertBox(new Box(90, 90, 100, 100), reader.predict(100, 100));
+
+    reader.update(new Box(95, 10, 100, 20));
+    reader.update(new Box(110, 10, 120, 20));
+    assertNull(reader.predict(100, 100));
+  }
+
+  @Test
+  public void commitsAReadOfAMatchingBox() {
+    final Box predicted = new Box(10, 10, 20, 20);
+    reader.start(predicted, new int[4], 2, 2);
+    assertTrue(reader.isRunning());
+
+    assertSame(engine.digits, reader.finish(new Box(11, 10, 21, 20)));
+    assertFalse(reader.isRunning());
+    assertEquals(1, reader.getStarted());
+    assertEquals(1, reader.getCommitted());
+  }
+
+  @Test
+  public void discardsAReadOfAnotherBox() {
+    reader.start(new Box(10, 10, 20, 20), new int[4], 2, 2);
+    assertNull(reader.finish(new Box(30, 30, 40, 40)));
+
+    reader.start(new Box(10, 10, 20, 20), new int[4], 2, 2);
+    assertNull(reader.finish(null));
+
+    assertNull(reader.finish(new Box(10, 10, 20, 20)));
+    assertEquals(2, reader.getStarted());
+    assertEquals(0, reader.getCommitted());
+    assertEquals(2, engine.calls);
+  }
+}
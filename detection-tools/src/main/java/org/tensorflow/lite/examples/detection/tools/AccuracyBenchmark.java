@@ -0,0 +1,714 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.core.DigitLayout;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FramePool;
+import org.tensorflow.lite.examples.detection.core.ImageOps;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.PresenceFilter;
+import org.tensorflow.lite.examples.detection.core.SpeculativeDigitReader;
+import org.tensorflow.lite.examples.detection.core.TagPipeline;
+import org.tensorflow.lite.examples.detection.core.YuvConverter;
+
+/**
+ * Sweeps the pipeline parameters over a labeled directory of tag images and reports accuracy
+ * against latency and allocations for every combination, so that operating points can be picked
+ * from the Pareto front.
+ *
+ * <p>The directory contains the images and a labels.txt with one "&lt;file name&gt; &lt;7 digits&gt;"
+ * line per image, the ground truth being the seven large digits of the tag.
+ *
+ * <pre>
+ * AccuracyBenchmark &lt;dataset dir&gt; --engine &lt;factory class&gt; [--engine-arg &lt;value&gt;]
+ *     [--confidence 0.3,0.4,0.5] [--box-size 360x640,270x480] [--digit-size 600x600,400x400]
+ *     [--aspect false,true] [--box-luma false,true] [--digit-sizes none,320:384:480]
+ *     [--box-tiles 0,2,3] [--box-tile-workers &lt;n&gt;] [--max-tags 1,4]
+ *     [--presence-recall 0,0.99,0.95] [--box-proxy 0,0.5] [--speculative-iou 0,0.6]
+ *     [--from-yuv] [--warmup &lt;passes&gt;] [--csv &lt;file&gt;]
+ * </pre>
+ *
+ * A --digit-sizes entry lists the smaller digit detector inputs a row may pick from per tag, "none"
+ * keeps the fixed digit size. A --box-tiles entry is the grid of the tiled box detection that
+ * runs on images where the coarse pass finds no tag, 0 disables it. The tiles run on worker threads,
+ * so their allocations are not part of the KB/image column. A --max-tags entry is the number of
+ * tags read per image with one batched digit detector call, the accuracy is the one of the most
+ * confident tag read and tags/min counts every tag read over the pipeline time. A --presence-recall
+ * entry calibrates the {@link PresenceFilter} threshold on the images of the dataset so that this
+ * share of them still reaches the box detector, 0 disables the filter. The recall% column is the
+ * share that did. A --box-proxy entry is the size of the proxy box pass of coarse-to-fine detection
+ * relative to the box size, 0 runs a single full size pass. The refined% column is the share of
+ * images the refinement pass ran on. A --speculative-iou entry enables the speculative digit read
+ * of the tag box predicted from the previous image, committed at that overlap with the box found.
+ * The images are read in order, so this only hits on datasets of consecutive frames. The hit%
+ * column is the share of speculative reads committed, saved ms the mean digit detector time per
+ * image that ran alongside the box detector.
+ *
+ * With --from-yuv the images are encoded as YUV 4:2:0 frames once and the pipeline starts from the
+ * planes like it does on camera frames, so the latencies include the chroma decoding that the luma
+ * box input skips. Runs on a single thread so the allocation counter of the thread covers all
+ * pipeline work.
+ */
+public class AccuracyBenchmark {
+  /** File with the ground truth of a dataset directory. */
+  public static final String LABELS_FILE = "labels.txt";
+  /** Number of large digits of a tag, the part that is compared to the ground truth. */
+  public static final int LARGE_DIGITS = 7;
+
+  /** Aggregated result of one parameter combination. */
+  public static class Row {
+    public final PipelineConfig config;
+    public final int images;
+    public final int exactMatches;
+    public final int correctDigits;
+    public final double meanMs;
+    public final double p95Ms;
+    /** Bytes allocated per image, -1 if the JVM can't measure it. */
+    public final long allocatedBytes;
+    /** Mean width of the digit detector input over the images it ran on, 0 if it never ran. */
+    public final double meanDigitInput;
+    /** Number of images the tiled box detection ran on. */
+    public final int tiledImages;
+    /** Tags read over all images. */
+    public final int tagsRead;
+    /** Total pipeline time over all images. */
+    public final long totalNs;
+    /** Images the presence filter kept from the box detector. */
+    public final long presenceSkipped;
+    /** Number of images the refinement pass of coarse-to-fine box detection ran on. */
+    public final int refinedImages;
+    /** Speculative digit reads started and committed. */
+    public final long speculativeStarted;
+    public final long speculativeCommitted;
+    /** Digit detector time of the committed speculative reads that overlapped the box detector. */
+    public final long speculativeSavedNs;
+    /** True if no other row is both more accurate and faster. */
+    public boolean pareto;
+
+    Row(
+        final PipelineConfig config,
+        final int images,
+        final int exactMatches,
+        final int correctDigits,
+        final double meanMs,
+        final double p95Ms,
+        final long allocatedBytes,
+        final double meanDigitInput,
+        final int tiledImages,
+        final int tagsRead,
+        final long totalNs,
+        final long presenceSkipped,
+        final int refinedImages,
+        final long speculativeStarted,
+        final long speculativeCommitted,
+        final long speculativeSavedNs) {
+      this.config = config;
+      this.images = images;
+      this.exactMatches = exactMatches;
+      this.correctDigits = correctDigits;
+      this.meanMs = meanMs;
+      this.p95Ms = p95Ms;
+      this.allocatedBytes = allocatedBytes;
+      this.meanDigitInput = meanDigitInput;
+      this.tiledImages = tiledImages;
+      this.tagsRead = tagsRead;
+      this.totalNs = totalNs;
+      this.presenceSkipped = presenceSkipped;
+      this.refinedImages = refinedImages;
+      this.speculativeStarted = speculativeStarted;
+      this.speculativeCommitted = speculativeCommitted;
+      this.speculativeSavedNs = speculativeSavedNs;
+    }
+
+    /** Share of the speculative reads that were committed. */
+    public double speculativeHitRate() {
+      return speculativeStarted > 0 ? speculativeCommitted / (double) speculativeStarted : 0;
+    }
+
+    /** Share of the images that passed the presence filter. */
+    public double presenceRecall() {
+      return images > 0 ? 1.0 - presenceSkipped / (double) images : 0;
+    }
+
+    public double tagsPerMinute() {
+      return totalNs > 0 ? tagsRead / (totalNs / 60e9) : 0;
+    }
+
+    public double exactAccuracy() {
+      return images > 0 ? exactMatches / (double) images : 0;
+    }
+
+    public double digitAccuracy() {
+      return images > 0 ? correctDigits / (double) (images * LARGE_DIGITS) : 0;
+    }
+  }
+
+  private final InferenceEngine.Factory factory;
+  private final List<BatchRunner.Image> images;
+  private final List<String> truths;
+  private final int warmup;
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  // Y, U and V planes per image, null to run the pipeline on the ARGB images.
+  private final List<ByteBuffer[]> planes;
+  private final FramePool framePool = new FramePool(1, frame -> {});
+
+  public AccuracyBenchmark(
+      final InferenceEngine.Factory factory,
+      final List<BatchRunner.Image> images,
+      final List<String> truths,
+      final int warmup) {
+    this(factory, images, truths, warmup, false);
+  }
+
+  public AccuracyBenchmark(
+      final InferenceEngine.Factory factory,
+      final List<BatchRunner.Image> images,
+      final List<String> truths,
+      final int warmup,
+      final boolean fromYuv) {
+    this.factory = factory;
+    this.images = images;
+    this.truths = truths;
+    this.warmup = warmup;
+    planes = fromYuv ? encodeYuv(images) : null;
+  }
+
+  private static List<ByteBuffer[]> encodeYuv(final List<BatchRunner.Image> images) {
+    final List<ByteBuffer[]> planes = new ArrayList<ByteBuffer[]>(images.size());
+    for (final BatchRunner.Image image : images) {
+      final int uvSize = ((image.width + 1) / 2) * ((image.height + 1) / 2);
+      final byte[] y = new byte[image.width * image.height];
+      final byte[] u = new byte[uvSize];
+      final byte[] v = new byte[uvSize];
+      YuvConverter.convertARGB8888ToYUV420(image.argb, image.width, image.height, y, u, v);
+      planes.add(new ByteBuffer[] {ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v)});
+    }
+    return planes;
+  }
+
+  private TagPipeline.Result process(final TagPipeline pipeline, final int index) {
+    final BatchRunner.Image image = images.get(index);
+    if (planes == null) {
+      return pipeline.process(image.argb, image.width, image.height, 0);
+    }
+    final ByteBuffer[] p = planes.get(index);
+    final Frame frame = framePool.obtain();
+    try {
+      frame.set(
+          p[0], p[1], p[2], image.width, image.height, image.width, (image.width + 1) / 2, 1, 0,
+          0, null);
+      return pipeline.process(frame, 0);
+    } finally {
+      frame.release();
+    }
+  }
+
+  /** Reads the labels file of a dataset directory, keyed by file name in file order. */
+  public static Map<String, String> loadLabels(final File dir) throws IOException {
+    final Map<String, String> labels = new LinkedHashMap<String, String>();
+    final BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(new File(dir, LABELS_FILE)), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        final String[] parts = line.split("\\s+");
+        if (parts.length != 2 || parts[1].length() != LARGE_DIGITS) {
+          throw new IOException("Expected '<file> <" + LARGE_DIGITS + " digits>': " + line);
+        }
+        labels.put(parts[0], parts[1]);
+      }
+    } finally {
+      reader.close();
+    }
+    return labels;
+  }
+
+  /**
+   * Number of large digits of the layout that match the ground truth, an unread tag counts as no
+   * match.
+   */
+  public static int countCorrectDigits(final List<String> layout, final String truth) {
+    if (layout == null) {
+      return 0;
+    }
+    int correct = 0;
+    final int offset = DigitLayout.LAYOUT_SIZE - LARGE_DIGITS;
+    for (int i = 0; i < LARGE_DIGITS && offset + i < layout.size(); ++i) {
+      if (layout.get(offset + i).equals(String.valueOf(truth.charAt(i)))) {
+        correct++;
+      }
+    }
+    return correct;
+  }
+
+  public Row run(final PipelineConfig config) throws Exception {
+    final TagPipeline pipeline = TagPipeline.create(config, factory);
+    try {
+      for (int pass = 0; pass < warmup; ++pass) {
+        for (int i = 0; i < images.size(); ++i) {
+          process(pipeline, i);
+        }
+      }
+
+      final long[] latencies = new long[images.size()];
+      int exactMatches = 0;
+      int correctDigits = 0;
+      long digitInputSum = 0;
+      int digitRuns = 0;
+      int tiledImages = 0;
+      int tagsRead = 0;
+      int refinedImages = 0;
+      final PresenceFilter presenceFilter = pipeline.getPresenceFilter();
+      final long skippedBefore = presenceFilter != null ? presenceFilter.getSkipped() : 0;
+      final SpeculativeDigitReader reader = pipeline.getSpeculativeReader();
+      final long startedBefore = reader != null ? reader.getStarted() : 0;
+      final long committedBefore = reader != null ? reader.getCommitted() : 0;
+      final long savedBefore = reader != null ? reader.getSavedNs() : 0;
+      final long allocatedBefore = allocatedBytes();
+      for (int i = 0; i < images.size(); ++i) {
+        final long t = System.nanoTime();
+        final TagPipeline.Result result = process(pipeline, i);
+        latencies[i] = System.nanoTime() - t;
+        if (result.digitInputWidth > 0) {
+          digitInputSum += result.digitInputWidth;
+          digitRuns++;
+        }
+        if (result.tiled) {
+          tiledImages++;
+        }
+        if (result.refined) {
+          refinedImages++;
+        }
+        tagsRead += result.tags.size();
+
+        final int correct = countCorrectDigits(result.digits, truths.get(i));
+        correctDigits += correct;
+        if (correct == LARGE_DIGITS) {
+          exactMatches++;
+        }
+      }
+      final long allocatedAfter = allocatedBytes();
+
+      long sum = 0;
+      for (final long l : latencies) {
+        sum += l;
+      }
+      Arrays.sort(latencies);
+      final int n = images.size();
+      return new Row(
+          config,
+          n,
+          exactMatches,
+          correctDigits,
+          n > 0 ? sum / 1e6 / n : 0,
+          n > 0 ? latencies[Math.min(n - 1, n * 95 / 100)] / 1e6 : 0,
+          allocatedBefore >= 0 && n > 0 ? (allocatedAfter - allocatedBefore) / n : -1,
+          digitRuns > 0 ? digitInputSum / (double) digitRuns : 0,
+          tiledImages,
+          tagsRead,
+          sum,
+          presenceFilter != null ? presenceFilter.getSkipped() - skippedBefore : 0,
+          refinedImages,
+          reader != null ? reader.getStarted() - startedBefore : 0,
+          reader != null ? reader.getCommitted() - committedBefore : 0,
+          reader != null ? reader.getSavedNs() - savedBefore : 0);
+    } finally {
+      pipeline.close();
+    }
+  }
+
+  /**
+   * Presence filter scores of the box detector input of every image, the one of the proxy pass
+   * with coarse-to-fine detection, for calibrating the filter threshold of a configuration.
+   */
+  public float[] presenceScores(final PipelineConfig config) {
+    final int width = config.proxyWidth();
+    final int height = config.proxyHeight();
+    final PresenceFilter filter = new PresenceFilter(0.0f, width, height);
+    final int[] boxPixels = new int[width * height];
+    final byte[] boxLuma = new byte[width * height];
+    final float[] scores = new float[images.size()];
+    for (int i = 0; i < images.size(); ++i) {
+      final BatchRunner.Image image = images.get(i);
+      ImageOps.transform(
+          image.argb, image.width, image.height, 0, 0, image.width, image.height, 0,
+          config.maintainAspect, boxPixels, width, height);
+      if (config.boxLuma) {
+        ImageOps.toLuma(boxPixels, boxPixels.length, boxLuma);
+        scores[i] = filter.score(boxLuma, width, height);
+      } else {
+        scores[i] = filter.score(boxPixels, width, height);
+      }
+    }
+    return scores;
+  }
+
+  private long allocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) threads;
+      if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+        return t.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  /** Marks the rows on the Pareto front of exact-match accuracy against mean latency. */
+  public static void markPareto(final List<Row> rows) {
+    for (final Row row : rows) {
+      row.pareto = true;
+      for (final Row other : rows) {
+        final boolean notWorse =
+            other.exactAccuracy() >= row.exactAccuracy() && other.meanMs <= row.meanMs;
+        final boolean better =
+            other.exactAccuracy() > row.exactAccuracy() || other.meanMs < row.meanMs;
+        if (other != row && notWorse && better) {
+          row.pareto = false;
+          break;
+        }
+      }
+    }
+  }
+
+  public static void printTable(final List<Row> rows, final PrintWriter out) {
+    out.println(
+        String.format(
+            Locale.ROOT,
+            "%-10s %-10s %-5s %-5s %8s %-8s %7s %-5s %7s %-10s %-12s %8s %-6s %4s %-5s %6s %8s %8s %8s %9s %9s %9s %11s %s",
+            "confidence", "box", "input", "proxy", "refined%", "presence", "recall%", "tiles", "tiled%", "digit", "digit sizes", "digit in", "aspect", "tags", "spec", "hit%", "saved ms", "exact%", "digit%", "mean ms", "p95 ms",
+            "tags/min", "KB/image", "pareto"));
+    for (final Row r : rows) {
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%-10.2f %-10s %-5s %-5s %8.1f %-8s %7.1f %-5s %7.1f %-10s %-12s %8.0f %-6b %4d %-5s %6.1f %8.2f %8.1f %8.1f %9.2f %9.2f %9.0f %11s %s",
+              r.config.minConfidence,
+              r.config.boxWidth + "x" + r.config.boxHeight,
+              r.config.boxLuma ? "luma" : "rgb",
+              r.config.hasBoxProxy()
+                  ? String.format(Locale.ROOT, "%.2f", r.config.boxProxyScale)
+                  : "off",
+              r.images > 0 ? 100.0 * r.refinedImages / r.images : 0,
+              r.config.presenceThreshold > 0
+                  ? String.format(Locale.ROOT, "%.3f", r.config.presenceThreshold)
+                  : "off",
+              100 * r.presenceRecall(),
+              r.config.boxTiles > 1 ? r.config.boxTiles + "x" + r.config.boxTiles : "off",
+              r.images > 0 ? 100.0 * r.tiledImages / r.images : 0,
+              r.config.digitWidth + "x" + r.config.digitHeight,
+              formatSizes(r.config.digitSizes),
+              r.meanDigitInput,
+              r.config.maintainAspect,
+              r.config.maxTags,
+              r.config.speculativeIou > 0
+                  ? String.format(Locale.ROOT, "%.2f", r.config.speculativeIou)
+                  : "off",
+              100 * r.speculativeHitRate(),
+              r.images > 0 ? r.speculativeSavedNs / 1e6 / r.images : 0,
+              100 * r.exactAccuracy(),
+              100 * r.digitAccuracy(),
+              r.meanMs,
+              r.p95Ms,
+              r.tagsPerMinute(),
+              r.allocatedBytes >= 0
+                  ? String.format(Locale.ROOT, "%.1f", r.allocatedBytes / 1024.0)
+                  : "n/a",
+              r.pareto ? "*" : ""));
+    }
+    out.flush();
+  }
+
+  public static void writeCsv(final List<Row> rows, final File file) throws IOException {
+    final PrintWriter out =
+        new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      out.println(
+          "min_confidence,box_width,box_height,box_luma,presence_threshold,presence_skipped,"
+              + "box_tiles,tiled_images,box_proxy_scale,refined_images,digit_width,"
+              + "digit_height,digit_sizes,mean_digit_input,maintain_aspect,max_tags,"
+              + "speculative_iou,speculative_started,speculative_committed,"
+              + "speculative_saved_ms,images,"
+              + "tags_read,exact_accuracy,digit_accuracy,mean_ms,p95_ms,tags_per_minute,"
+              + "allocated_bytes,pareto");
+      for (final Row r : rows) {
+        out.println(
+            String.format(
+                Locale.ROOT,
+                "%.3f,%d,%d,%b,%.4f,%d,%d,%d,%.3f,%d,%d,%d,%s,%.1f,%b,%d,%.3f,%d,%d,%.3f,%d,%d,%.4f,%.4f,%.3f,%.3f,%.1f,%d,%b",
+                r.config.minConfidence,
+                r.config.boxWidth,
+                r.config.boxHeight,
+                r.config.boxLuma,
+                r.config.presenceThreshold,
+                r.presenceSkipped,
+                r.config.boxTiles,
+                r.tiledImages,
+                r.config.boxProxyScale,
+                r.refinedImages,
+                r.config.digitWidth,
+                r.config.digitHeight,
+                formatSizes(r.config.digitSizes),
+                r.meanDigitInput,
+                r.config.maintainAspect,
+                r.config.maxTags,
+                r.config.speculativeIou,
+                r.speculativeStarted,
+                r.speculativeCommitted,
+                r.speculativeSavedNs / 1e6,
+                r.images,
+                r.tagsRead,
+                r.exactAccuracy(),
+                r.digitAccuracy(),
+                r.meanMs,
+                r.p95Ms,
+                r.tagsPerMinute(),
+                r.allocatedBytes,
+                r.pareto));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String formatSizes(final int[] sizes) {
+    if (sizes == null) {
+      return "none";
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (final int size : sizes) {
+      if (sb.length() > 0) {
+        sb.append(':');
+      }
+      sb.append(size);
+    }
+    return sb.toString();
+  }
+
+  /** Parses a list of size sets like "none,320:384:480", null stands for none. */
+  private static int[][] parseSizeSets(final String arg) {
+    final String[] parts = arg.split(",");
+    final int[][] sets = new int[parts.length][];
+    for (int i = 0; i < parts.length; ++i) {
+      final String part = parts[i].trim();
+      if ("none".equals(part)) {
+        continue;
+      }
+      final String[] sizes = part.split(":");
+      sets[i] = new int[sizes.length];
+      for (int j = 0; j < sizes.length; ++j) {
+        sets[i][j] = Integer.parseInt(sizes[j].trim());
+      }
+      Arrays.sort(sets[i]);
+    }
+    return sets;
+  }
+
+  private static int[][] parseSizes(final String arg) {
+    final String[] parts = arg.split(",");
+    final int[][] sizes = new int[parts.length][];
+    for (int i = 0; i < parts.length; ++i) {
+      final String[] wh = parts[i].trim().split("x");
+      sizes[i] = new int[] {Integer.parseInt(wh[0]), Integer.parseInt(wh[1])};
+    }
+    return sizes;
+  }
+
+  private static int[] parseInts(final String arg) {
+    final String[] parts = arg.split(",");
+    final int[] values = new int[parts.length];
+    for (int i = 0; i < parts.length; ++i) {
+      values[i] = Integer.parseInt(parts[i].trim());
+    }
+    return values;
+  }
+
+  private static float[] parseFloats(final String arg) {
+    final String[] parts = arg.split(",");
+    final float[] values = new float[parts.length];
+    for (int i = 0; i < parts.length; ++i) {
+      values[i] = Float.parseFloat(parts[i].trim());
+    }
+    return values;
+  }
+
+  private static boolean[] parseBooleans(final String arg) {
+    final String[] parts = arg.split(",");
+    final boolean[] values = new boolean[parts.length];
+    for (int i = 0; i < parts.length; ++i) {
+      values[i] = Boolean.parseBoolean(parts[i].trim());
+    }
+    return values;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final PipelineConfig defaults = new PipelineConfig();
+    String dir = null;
+    String engine = null;
+    String engineArg = null;
+    String csv = null;
+    int warmup = 1;
+    boolean fromYuv = false;
+    float[] confidences = {defaults.minConfidence};
+    int[][] boxSizes = {{defaults.boxWidth, defaults.boxHeight}};
+    int[][] digitSizes = {{defaults.digitWidth, defaults.digitHeight}};
+    boolean[] aspects = {defaults.maintainAspect};
+    boolean[] boxLumas = {defaults.boxLuma};
+    int[][] digitSizeSets = {defaults.digitSizes};
+    int[] boxTiles = {defaults.boxTiles};
+    int boxTileWorkers = defaults.boxTileWorkers;
+    int[] maxTags = {defaults.maxTags};
+    float[] presenceRecalls = {0.0f};
+    float[] boxProxyScales = {defaults.boxProxyScale};
+    float[] speculativeIous = {defaults.speculativeIou};
+    for (int i = 0; i < args.length; ++i) {
+      if ("--engine".equals(args[i])) {
+        engine = args[++i];
+      } else if ("--engine-arg".equals(args[i])) {
+        engineArg = args[++i];
+      } else if ("--confidence".equals(args[i])) {
+        confidences = parseFloats(args[++i]);
+      } else if ("--box-size".equals(args[i])) {
+        boxSizes = parseSizes(args[++i]);
+      } else if ("--digit-size".equals(args[i])) {
+        digitSizes = parseSizes(args[++i]);
+      } else if ("--aspect".equals(args[i])) {
+        aspects = parseBooleans(args[++i]);
+      } else if ("--box-luma".equals(args[i])) {
+        boxLumas = parseBooleans(args[++i]);
+      } else if ("--digit-sizes".equals(args[i])) {
+        digitSizeSets = parseSizeSets(args[++i]);
+      } else if ("--box-tiles".equals(args[i])) {
+        boxTiles = parseInts(args[++i]);
+      } else if ("--box-tile-workers".equals(args[i])) {
+        boxTileWorkers = Integer.parseInt(args[++i]);
+      } else if ("--max-tags".equals(args[i])) {
+        maxTags = parseInts(args[++i]);
+      } else if ("--presence-recall".equals(args[i])) {
+        presenceRecalls = parseFloats(args[++i]);
+      } else if ("--box-proxy".equals(args[i])) {
+        boxProxyScales = parseFloats(args[++i]);
+      } else if ("--speculative-iou".equals(args[i])) {
+        speculativeIous = parseFloats(args[++i]);
+      } else if ("--from-yuv".equals(args[i])) {
+        fromYuv = true;
+      } else if ("--warmup".equals(args[i])) {
+        warmup = Integer.parseInt(args[++i]);
+      } else if ("--csv".equals(args[i])) {
+        csv = args[++i];
+      } else {
+        dir = args[i];
+      }
+    }
+    if (dir == null || engine == null) {
+      System.err.println(
+          "Usage: AccuracyBenchmark <dataset dir> --engine <factory class> [--engine-arg <value>]"
+              + " [--confidence <list>] [--box-size <WxH list>] [--digit-size <WxH list>]"
+              + " [--aspect <list>] [--box-luma <list>] [--digit-sizes <list>]"
+              + " [--box-tiles <list>] [--box-tile-workers <n>] [--max-tags <list>]"
+              + " [--presence-recall <list>] [--box-proxy <list>] [--speculative-iou <list>]"
+              + " [--from-yuv]"
+              + " [--warmup <passes>] [--csv <file>]");
+      System.exit(1);
+    }
+
+    final File dataset = new File(dir);
+    final Map<String, String> labels = loadLabels(dataset);
+    final List<BatchRunner.Image> images = new ArrayList<BatchRunner.Image>();
+    final List<String> truths = new ArrayList<String>();
+    for (final Map.Entry<String, String> label : labels.entrySet()) {
+      images.add(BatchRunner.load(new File(dataset, label.getKey())));
+      truths.add(label.getValue());
+    }
+
+    final AccuracyBenchmark benchmark =
+        new AccuracyBenchmark(
+            BatchRunner.loadFactory(engine, engineArg), images, truths, warmup, fromYuv);
+    final List<Row> rows = new ArrayList<Row>();
+    for (final float confidence : confidences) {
+      for (final int[] boxSize : boxSizes) {
+        for (final int[] digitSize : digitSizes) {
+          for (final boolean aspect : aspects) {
+            for (final boolean boxLuma : boxLumas) {
+              for (final int[] sizeSet : digitSizeSets) {
+                for (final int tiles : boxTiles) {
+                  for (final int tags : maxTags) {
+                    for (final float proxyScale : boxProxyScales) {
+                      for (final float speculativeIou : speculativeIous) {
+                        for (final float recall : presenceRecalls) {
+                          final PipelineConfig config = defaults.copy();
+                          config.minConfidence = confidence;
+                          config.boxWidth = boxSize[0];
+                          config.boxHeight = boxSize[1];
+                          config.digitWidth = digitSize[0];
+                          config.digitHeight = digitSize[1];
+                          config.maintainAspect = aspect;
+                          config.boxLuma = boxLuma;
+                          config.digitSizes = sizeSet;
+                          config.boxTiles = tiles;
+                          config.boxTileWorkers = boxTileWorkers;
+                          config.maxTags = tags;
+                          config.boxProxyScale = proxyScale;
+                          config.speculativeIou = speculativeIou;
+                          if (recall > 0) {
+                            config.presenceThreshold =
+                                PresenceFilter.calibrate(benchmark.presenceScores(config), recall);
+                          }
+                          System.err.println("Running " + config);
+                          rows.add(benchmark.run(config));
+                        }
+                      }
+                    }
+                  }
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    markPareto(rows);
+    System.out.println(images.size() + " images");
+    printTable(rows, new PrintWriter(System.out));
+    if (csv != null) {
+      writeCsv(rows, new File(csv));
+    }
+  }
+}
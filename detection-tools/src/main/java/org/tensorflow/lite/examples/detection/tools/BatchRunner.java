@@ -0,0 +1,245 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.TagPipeline;
+
+/**
+ * Command line runner that reads every tag image of a directory with the two-stage pipeline on all
+ * cores and reports the throughput.
+ *
+ * <pre>
+ * BatchRunner &lt;image dir&gt; --engine &lt;factory class&gt; [--engine-arg &lt;value&gt;]
+ *     [--threads &lt;n&gt;] [--repeat &lt;n&gt;] [--max-tags &lt;n&gt;] [--quiet]
+ * </pre>
+ *
+ * The engine factory is an {@link InferenceEngine.Factory} with a public no-argument constructor,
+ * or a constructor taking the single --engine-arg string.
+ */
+public class BatchRunner {
+  private final InferenceEngine.Factory factory;
+  private final PipelineConfig config;
+  private final int threads;
+  private final List<TagPipeline> pipelines = new ArrayList<TagPipeline>();
+  private final ThreadLocal<TagPipeline> pipeline =
+      new ThreadLocal<TagPipeline>() {
+        @Override
+        protected TagPipeline initialValue() {
+          try {
+            final TagPipeline p = TagPipeline.create(config, factory);
+            synchronized (pipelines) {
+              pipelines.add(p);
+            }
+            return p;
+          } catch (final Exception e) {
+            throw new IllegalStateException("Could not create inference engines", e);
+          }
+        }
+      };
+
+  public BatchRunner(
+      final InferenceEngine.Factory factory, final PipelineConfig config, final int threads) {
+    this.factory = factory;
+    this.config = config;
+    this.threads = threads;
+  }
+
+  /** A loaded image in ARGB_8888. */
+  public static class Image {
+    public final String name;
+    public final int[] argb;
+    public final int width;
+    public final int height;
+
+    public Image(final String name, final int[] argb, final int width, final int height) {
+      this.name = name;
+      this.argb = argb;
+      this.width = width;
+      this.height = height;
+    }
+  }
+
+  public static Image load(final File file) throws IOException {
+    final BufferedImage image = ImageIO.read(file);
+    if (image == null) {
+      throw new IOException("Unsupported image format: " + file);
+    }
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    return new Image(file.getName(), image.getRGB(0, 0, width, height, null, 0, width), width, height);
+  }
+
+  /** @return the image files of a directory, sorted by name. */
+  public static List<File> listImages(final File dir) {
+    final List<File> files = new ArrayList<File>();
+    final File[] entries = dir.listFiles();
+    if (entries == null) {
+      return files;
+    }
+    Arrays.sort(entries);
+    for (final File f : entries) {
+      final String name = f.getName().toLowerCase(Locale.ROOT);
+      if (f.isFile()
+          && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg")
+              || name.endsWith(".bmp"))) {
+        files.add(f);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Reads all files, each one repeat times.
+   *
+   * @return the number of images processed.
+   */
+  public long run(final List<File> files, final int repeat, final boolean quiet) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final AtomicLong pipelineNs = new AtomicLong();
+    final AtomicLong tagsRead = new AtomicLong();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+    final long start = System.nanoTime();
+    for (int r = 0; r < repeat; ++r) {
+      for (final File file : files) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  final Image image = load(file);
+                  final long t = System.nanoTime();
+                  final TagPipeline.Result result =
+                      pipeline.get().process(image.argb, image.width, image.height, 0);
+                  pipelineNs.addAndGet(System.nanoTime() - t);
+                  tagsRead.addAndGet(result.tags.size());
+                  if (!quiet) {
+                    System.out.println(image.name + "\t" + joinTags(result.tags));
+                  }
+                  return null;
+                }));
+      }
+    }
+    for (final Future<?> f : futures) {
+      f.get();
+    }
+    final long elapsedNs = System.nanoTime() - start;
+    executor.shutdown();
+    synchronized (pipelines) {
+      for (final TagPipeline p : pipelines) {
+        p.close();
+      }
+      pipelines.clear();
+    }
+
+    final long count = futures.size();
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "Processed %d images (%d tags read) in %.2f s on %d threads: %.1f images/s,"
+                + " %.2f ms pipeline time per image",
+            count,
+            tagsRead.get(),
+            elapsedNs / 1e9,
+            threads,
+            count / (elapsedNs / 1e9),
+            count > 0 ? pipelineNs.get() / 1e6 / count : 0.0));
+    return count;
+  }
+
+  static String join(final List<String> digits) {
+    final StringBuilder sb = new StringBuilder(digits.size());
+    for (final String d : digits) {
+      sb.append(d);
+    }
+    return sb.toString();
+  }
+
+  /** The digits of each tag separated by spaces, "-" if no tag was read. */
+  static String joinTags(final List<TagPipeline.TagRead> tags) {
+    if (tags.isEmpty()) {
+      return "-";
+    }
+    final StringBuilder sb = new StringBuilder();
+    for (final TagPipeline.TagRead tag : tags) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(join(tag.digits));
+    }
+    return sb.toString();
+  }
+
+  /** Instantiates an engine factory by class name. */
+  public static InferenceEngine.Factory loadFactory(final String className, final String arg)
+      throws Exception {
+    final Class<?> clazz = Class.forName(className);
+    if (arg != null) {
+      return (InferenceEngine.Factory) clazz.getConstructor(String.class).newInstance(arg);
+    }
+    return (InferenceEngine.Factory) clazz.getConstructor().newInstance();
+  }
+
+  public static void main(final String[] args) throws Exception {
+    String dir = null;
+    String engine = null;
+    String engineArg = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    int repeat = 1;
+    boolean quiet = false;
+    final PipelineConfig config = new PipelineConfig();
+    for (int i = 0; i < args.length; ++i) {
+      if ("--engine".equals(args[i])) {
+        engine = args[++i];
+      } else if ("--engine-arg".equals(args[i])) {
+        engineArg = args[++i];
+      } else if ("--threads".equals(args[i])) {
+        threads = Integer.parseInt(args[++i]);
+      } else if ("--repeat".equals(args[i])) {
+        repeat = Integer.parseInt(args[++i]);
+      } else if ("--max-tags".equals(args[i])) {
+        config.maxTags = Integer.parseInt(args[++i]);
+      } else if ("--quiet".equals(args[i])) {
+        quiet = true;
+      } else {
+        dir = args[i];
+      }
+    }
+    if (dir == null || engine == null) {
+      System.err.println(
+          "Usage: BatchRunner <image dir> --engine <factory class> [--engine-arg <value>]"
+              + " [--threads <n>] [--repeat <n>] [--max-tags <n>] [--quiet]");
+      System.exit(1);
+    }
+
+    final List<File> files = listImages(new File(dir));
+    final BatchRunner runner =
+        new BatchRunner(loadFactory(engine, engineArg), config, threads);
+    runner.run(files, repeat, quiet);
+  }
+}
@@ -0,0 +1,219 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader for test fixtures and recordings. Objects become {@link Map}s, arrays {@link
+ * List}s, numbers {@link Double}s.
+ */
+public final class Json {
+  private final String text;
+  private int pos = 0;
+
+  private Json(final String text) {
+    this.text = text;
+  }
+
+  public static Object parse(final String text) {
+    final Json json = new Json(text);
+    final Object value = json.readValue();
+    json.skipWhitespace();
+    if (json.pos != text.length()) {
+      throw json.error("Trailing characters");
+    }
+    return value;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> asObject(final Object value) {
+    return (Map<String, Object>) value;
+  }
+
+  @SuppressWarnings("unchecked")
+  public static List<Object> asArray(final Object value) {
+    return (List<Object>) value;
+  }
+
+  /** @return the number stored under key, or the fallback if it is missing. */
+  public static double getNumber(
+      final Map<String, Object> object, final String key, final double fallback) {
+    final Object value = object.get(key);
+    return value instanceof Number ? ((Number) value).doubleValue() : fallback;
+  }
+
+  public static String getString(
+      final Map<String, Object> object, final String key, final String fallback) {
+    final Object value = object.get(key);
+    return value instanceof String ? (String) value : fallback;
+  }
+
+  private Object readValue() {
+    skipWhitespace();
+    if (pos >= text.length()) {
+      throw error("Unexpected end of input");
+    }
+    final char c = text.charAt(pos);
+    switch (c) {
+      case '{':
+        return readObject();
+      case '[':
+        return readArray();
+      case '"':
+        return readString();
+      case 't':
+        expect("true");
+        return Boolean.TRUE;
+      case 'f':
+        expect("false");
+        return Boolean.FALSE;
+      case 'n':
+        expect("null");
+        return null;
+      default:
+        return readNumber();
+    }
+  }
+
+  private Map<String, Object> readObject() {
+    final Map<String, Object> object = new LinkedHashMap<String, Object>();
+    pos++;
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+      return object;
+    }
+    while (true) {
+      skipWhitespace();
+      final String key = readString();
+      skipWhitespace();
+      consume(':');
+      object.put(key, readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        pos++;
+      } else {
+        consume('}');
+        return object;
+      }
+    }
+  }
+
+  private List<Object> readArray() {
+    final List<Object> array = new ArrayList<Object>();
+    pos++;
+    skipWhitespace();
+    if (peek() == ']') {
+      pos++;
+      return array;
+    }
+    while (true) {
+      array.add(readValue());
+      skipWhitespace();
+      if (peek() == ',') {
+        pos++;
+      } else {
+        consume(']');
+        return array;
+      }
+    }
+  }
+
+  private String readString() {
+    consume('"');
+    final StringBuilder sb = new StringBuilder();
+    while (true) {
+      if (pos >= text.length()) {
+        throw error("Unterminated string");
+      }
+      final char c = text.charAt(pos++);
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      final char e = text.charAt(pos++);
+      switch (e) {
+        case 'n':
+          sb.append('\n');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'u':
+          sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+          pos += 4;
+          break;
+        default:
+          sb.append(e);
+      }
+    }
+  }
+
+  private Double readNumber() {
+    final int start = pos;
+    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+      pos++;
+    }
+    if (start == pos) {
+      throw error("Unexpected character '" + text.charAt(pos) + "'");
+    }
+    return Double.valueOf(text.substring(start, pos));
+  }
+
+  private void expect(final String literal) {
+    if (!text.startsWith(literal, pos)) {
+      throw error("Expected " + literal);
+    }
+    pos += literal.length();
+  }
+
+  private void consume(final char c) {
+    if (peek() != c) {
+      throw error("Expected '" + c + "'");
+    }
+    pos++;
+  }
+
+  private char peek() {
+    return pos < text.length() ? text.charAt(pos) : '\0';
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private IllegalArgumentException error(final String message) {
+    return new IllegalArgumentException(message + " at offset " + pos);
+  }
+}
@@ -0,0 +1,393 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.tensorflow.lite.examples.detection.core.Frame;
+import org.tensorflow.lite.examples.detection.core.FrameContext;
+import org.tensorflow.lite.examples.detection.core.FrameLatencyTracker;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.ReplayFrameSource;
+import org.tensorflow.lite.examples.detection.core.ShadowDigitReader;
+import org.tensorflow.lite.examples.detection.core.TagPipeline;
+import org.tensorflow.lite.examples.detection.core.TraceRecorder;
+
+/**
+ * Headless replay of a frame recording through the detection pipeline. Frames are handed from the
+ * replay thread to a worker thread like the camera hands them to the inference worker in the app,
+ * in realtime the frames that arrive while the worker is busy are dropped. Writes one line per processed frame, so
+ * runs of different builds can be diffed for accuracy, and prints a latency summary. A replayed
+ * frame counts as captured when the replay hands it over.
+ *
+ * <pre>
+ * ReplayRunner &lt;recording dir&gt; --engine &lt;factory class&gt; [--engine-arg &lt;value&gt;]
+ *     [--realtime] [--loops &lt;n&gt;] [--box-luma] [--box-tiles &lt;n&gt;]
+ *     [--max-tags &lt;n&gt;] [--presence-threshold &lt;score&gt;] [--box-proxy &lt;scale&gt;]
+ *     [--speculative-iou &lt;iou&gt;] [--shadow-engine &lt;factory class&gt;]
+ *     [--shadow-engine-arg &lt;value&gt;] [--shadow-fraction &lt;f&gt;] [--shadow-report &lt;csv&gt;]
+ *     [--age-budget-ms &lt;ms&gt;] [--trace &lt;dir&gt;] [--output &lt;file&gt;]
+ * </pre>
+ *
+ * <p>With --trace the pipeline stages of the last frames are written to the directory as Chrome
+ * trace JSON whenever a result misses the age budget, at most once per second, and at the end.
+ */
+public class ReplayRunner {
+  // Frames that may wait for the worker, the frames of the replay pool. Like the frame ring of the
+  // app, frames replayed in realtime that arrive while the worker is busy are dropped instead, so
+  // it always gets the latest frame.
+  private static final int QUEUE_SIZE = 2;
+  // Default age of a result up to which it counts as fresh, matches the app.
+  private static final long AGE_BUDGET_MS = 250;
+  // Stage events kept for a trace, about the last 500 frames.
+  private static final int TRACE_EVENTS = 4096;
+  // Minimum time between two traces of missed budgets.
+  private static final long TRACE_DUMP_INTERVAL_MS = 1000;
+
+  /** A frame waiting for the worker, with the time it was handed over. */
+  private static final class QueuedFrame {
+    final Frame frame;
+    final long receivedNs;
+
+    QueuedFrame(final Frame frame, final long receivedNs) {
+      this.frame = frame;
+      this.receivedNs = receivedNs;
+    }
+  }
+
+  private final ReplayFrameSource source;
+  private final TagPipeline pipeline;
+  private final PrintWriter output;
+  private final BlockingQueue<QueuedFrame> queue = new ArrayBlockingQueue<QueuedFrame>(QUEUE_SIZE);
+  private final FrameContext context = new FrameContext();
+  private final FrameLatencyTracker latencyTracker;
+  private TraceRecorder trace;
+  private File traceDir;
+
+  private volatile boolean replayDone = false;
+  // From the hand-over of a frame until the worker has processed it.
+  private volatile boolean workerBusy = false;
+  private long[] latencies = new long[1024];
+  private int processed = 0;
+  private long framesQueueFull = 0;
+  private long tagsRead = 0;
+  private long framesRefined = 0;
+
+  public ReplayRunner(
+      final ReplayFrameSource source, final TagPipeline pipeline, final PrintWriter output) {
+    this(source, pipeline, output, AGE_BUDGET_MS * 1000000L);
+  }
+
+  /** @param ageBudgetNs Age up to which a result counts as fresh. */
+  public ReplayRunner(
+      final ReplayFrameSource source,
+      final TagPipeline pipeline,
+      final PrintWriter output,
+      final long ageBudgetNs) {
+    this.source = source;
+    this.pipeline = pipeline;
+    this.output = output;
+    latencyTracker = new FrameLatencyTracker(ageBudgetNs);
+  }
+
+  /**
+   * Records the stages of the replay and the pipeline and writes them to traceDir when a result
+   * misses the age budget and at the end of the replay.
+   */
+  public void setTrace(final TraceRecorder trace, final File traceDir) {
+    this.trace = trace;
+    this.traceDir = traceDir;
+    pipeline.setTraceRecorder(trace);
+  }
+
+  public void run() throws InterruptedException {
+    final long start = System.nanoTime();
+    source.start(
+        frame -> {
+          final long receivedNs = System.nanoTime();
+          if ((workerBusy && source.isRealtime())
+              || !queue.offer(new QueuedFrame(frame, receivedNs))) {
+            framesQueueFull++;
+            frame.release();
+          } else {
+            workerBusy = true;
+          }
+          if (trace != null) {
+            trace.record(TraceRecorder.CAMERA, receivedNs);
+          }
+        });
+
+    final Thread worker =
+        new Thread(
+            () -> {
+              try {
+                while (true) {
+                  final QueuedFrame queued = queue.poll(10, TimeUnit.MILLISECONDS);
+                  if (queued != null) {
+                    context.start(queued.receivedNs, queued.receivedNs);
+                    try {
+                      process(queued.frame);
+                    } finally {
+                      workerBusy = false;
+                    }
+                  } else if (replayDone) {
+                    return;
+                  }
+                }
+              } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            },
+            "replay-worker");
+    worker.start();
+    source.awaitCompletion();
+    // The replay thread has offered its last frame, the worker drains the queue and exits.
+    replayDone = true;
+    worker.join();
+    final long elapsedNs = System.nanoTime() - start;
+    if (output != null) {
+      output.flush();
+    }
+    printSummary(elapsedNs);
+    if (trace != null) {
+      dumpTrace();
+    }
+  }
+
+  private void dumpTrace() {
+    try {
+      System.out.println("Trace written to " + trace.dump(traceDir));
+    } catch (final IOException e) {
+      System.err.println("Can't write the trace to " + traceDir + ": " + e);
+    }
+  }
+
+  private void process(final Frame frame) {
+    final long t = System.nanoTime();
+    context.markInferenceStart(t);
+    final int orientation = (Integer) frame.getPayload();
+    final long timestampNs = frame.getTimestampNs();
+    final TagPipeline.Result result;
+    try {
+      result = pipeline.process(frame, orientation);
+    } finally {
+      frame.release();
+    }
+    final long latencyNs = System.nanoTime() - t;
+    context.markInferenceEnd(t + latencyNs);
+
+    if (processed == latencies.length) {
+      latencies = Arrays.copyOf(latencies, 2 * latencies.length);
+    }
+    latencies[processed++] = latencyNs;
+    tagsRead += result.tags.size();
+    if (result.refined) {
+      framesRefined++;
+    }
+    final long displayStart = System.nanoTime();
+    if (output != null) {
+      output.println(
+          String.format(
+              Locale.ROOT,
+              "%d\t%d\t%.3f\t%s",
+              processed - 1,
+              timestampNs,
+              latencyNs / 1e6,
+              BatchRunner.joinTags(result.tags)));
+    }
+    // the output line is the display of the replay
+    final long displayNs = System.nanoTime();
+    context.markDisplay(displayNs);
+    final boolean stale = latencyTracker.record(context);
+    if (trace != null) {
+      trace.record(TraceRecorder.UI, displayStart, displayNs);
+      // written on the worker, the frames waiting meanwhile show up in the next results
+      if (stale && trace.claimDump(displayNs, TRACE_DUMP_INTERVAL_MS * 1000000L)) {
+        dumpTrace();
+      }
+    }
+  }
+
+  private void printSummary(final long elapsedNs) {
+    final long[] sorted = Arrays.copyOf(latencies, processed);
+    Arrays.sort(sorted);
+    long sum = 0;
+    for (final long l : sorted) {
+      sum += l;
+    }
+    System.out.println(
+        String.format(
+            Locale.ROOT,
+            "%s: %d frames processed (%d tags read), %d dropped, %.1f frames/s, %.0f tags/min",
+            source.getName(),
+            processed,
+            tagsRead,
+            source.getFramesDropped() + framesQueueFull,
+            processed / (elapsedNs / 1e9),
+            tagsRead / (elapsedNs / 60e9)));
+    if (processed > 0) {
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "Latency: mean %.2f ms, p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms",
+              sum / 1e6 / processed,
+              percentile(sorted, 50) / 1e6,
+              percentile(sorted, 95) / 1e6,
+              percentile(sorted, 99) / 1e6,
+              sorted[processed - 1] / 1e6));
+    }
+    if (processed > 0) {
+      System.out.println(latencyTracker.getStatString());
+    }
+    if (pipeline.getConfig().hasBoxProxy()) {
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "Coarse-to-fine: %d of %d frames refined",
+              framesRefined,
+              processed));
+    }
+    // digit detector time hidden behind the box detector
+    if (pipeline.getSpeculativeReader() != null) {
+      System.out.println(pipeline.getSpeculativeReader().getStatString());
+    }
+    // candidate digit detector against the live one
+    if (pipeline.getShadowReader() != null) {
+      System.out.println(pipeline.getShadowReader().getStatString());
+    }
+    // box detector runs saved by the first stage of the cascade
+    if (pipeline.getPresenceFilter() != null) {
+      System.out.println(pipeline.getPresenceFilter().getStatString());
+    }
+  }
+
+  private static long percentile(final long[] sorted, final int p) {
+    return sorted[(int) Math.min(sorted.length - 1, (long) sorted.length * p / 100)];
+  }
+
+  public static void main(final String[] args) throws Exception {
+    String dir = null;
+    String engine = null;
+    String engineArg = null;
+    String outputPath = null;
+    String shadowEngine = null;
+    String shadowEngineArg = null;
+    float shadowFraction = 1.0f;
+    String shadowReport = null;
+    long ageBudgetMs = AGE_BUDGET_MS;
+    String traceDir = null;
+    boolean realtime = false;
+    int loops = 1;
+    final PipelineConfig config = new PipelineConfig();
+    for (int i = 0; i < args.length; ++i) {
+      if ("--engine".equals(args[i])) {
+        engine = args[++i];
+      } else if ("--engine-arg".equals(args[i])) {
+        engineArg = args[++i];
+      } else if ("--realtime".equals(args[i])) {
+        realtime = true;
+      } else if ("--loops".equals(args[i])) {
+        loops = Integer.parseInt(args[++i]);
+      } else if ("--box-luma".equals(args[i])) {
+        config.boxLuma = true;
+      } else if ("--box-tiles".equals(args[i])) {
+        config.boxTiles = Integer.parseInt(args[++i]);
+      } else if ("--max-tags".equals(args[i])) {
+        config.maxTags = Integer.parseInt(args[++i]);
+      } else if ("--presence-threshold".equals(args[i])) {
+        config.presenceThreshold = Float.parseFloat(args[++i]);
+      } else if ("--box-proxy".equals(args[i])) {
+        config.boxProxyScale = Float.parseFloat(args[++i]);
+      } else if ("--speculative-iou".equals(args[i])) {
+        config.speculativeIou = Float.parseFloat(args[++i]);
+      } else if ("--shadow-engine".equals(args[i])) {
+        shadowEngine = args[++i];
+      } else if ("--shadow-engine-arg".equals(args[i])) {
+        shadowEngineArg = args[++i];
+      } else if ("--shadow-fraction".equals(args[i])) {
+        shadowFraction = Float.parseFloat(args[++i]);
+      } else if ("--shadow-report".equals(args[i])) {
+        shadowReport = args[++i];
+      } else if ("--age-budget-ms".equals(args[i])) {
+        ageBudgetMs = Long.parseLong(args[++i]);
+      } else if ("--trace".equals(args[i])) {
+        traceDir = args[++i];
+      } else if ("--output".equals(args[i])) {
+        outputPath = args[++i];
+      } else {
+        dir = args[i];
+      }
+    }
+    if (dir == null || engine == null || loops <= 0) {
+      System.err.println(
+          "Usage: ReplayRunner <recording dir> --engine <factory class> [--engine-arg <value>]"
+              + " [--realtime] [--loops <n>] [--box-luma] [--box-tiles <n>]"
+              + " [--max-tags <n>] [--presence-threshold <score>] [--box-proxy <scale>]"
+              + " [--speculative-iou <iou>] [--shadow-engine <factory class>]"
+              + " [--shadow-engine-arg <value>] [--shadow-fraction <f>] [--shadow-report <csv>]"
+              + " [--age-budget-ms <ms>] [--trace <dir>] [--output <file>]");
+      System.exit(1);
+    }
+
+    final TagPipeline pipeline =
+        TagPipeline.create(config, BatchRunner.loadFactory(engine, engineArg));
+    if (shadowEngine != null) {
+      pipeline.setShadowReader(
+          new ShadowDigitReader(
+              BatchRunner.loadFactory(shadowEngine, shadowEngineArg).createDigitEngine(config),
+              shadowFraction,
+              config.minConfidence));
+    }
+    final PrintWriter output =
+        outputPath != null
+            ? new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputPath), "UTF-8"))
+            : null;
+    try {
+      final ReplayRunner runner =
+          new ReplayRunner(
+              new ReplayFrameSource(new File(dir), realtime, loops),
+              pipeline,
+              output,
+              ageBudgetMs * 1000000L);
+      if (traceDir != null) {
+        runner.setTrace(new TraceRecorder(TRACE_EVENTS), new File(traceDir));
+      }
+      runner.run();
+    } finally {
+      pipeline.close();
+      if (output != null) {
+        output.close();
+      }
+    }
+    if (shadowReport != null && pipeline.getShadowReader() != null) {
+      final Writer report = new OutputStreamWriter(new FileOutputStream(shadowReport), "UTF-8");
+      try {
+        pipeline.getShadowReader().writeCsv(report);
+      } finally {
+        report.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,292 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import org.tensorflow.lite.examples.detection.core.Box;
+import org.tensorflow.lite.examples.detection.core.Detection;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+
+/**
+ * Deterministic stand-in for a detection model. Replays scripted detections in order, waits for a
+ * latency drawn from a configurable distribution and injects failures and stalls, so that the
+ * pipeline can be exercised without models or a camera. The same script and seed always produce
+ * the same sequence of results.
+ */
+public class ScriptedEngine implements InferenceEngine {
+  /** Thrown by {@link #recognize} when a failure is injected. */
+  public static class InjectedFailure extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    InjectedFailure(final String message) {
+      super(message);
+    }
+  }
+
+  /** Latency distribution of a scripted engine. */
+  public static class Latency {
+    public static final String FIXED = "fixed";
+    public static final String UNIFORM = "uniform";
+    public static final String NORMAL = "normal";
+    public static final String LOGNORMAL = "lognormal";
+
+    public String distribution = FIXED;
+    /** Mean latency, the value of the fixed distribution. */
+    public float meanMs = 0.0f;
+    /** Standard deviation of the normal and lognormal distributions. */
+    public float sdMs = 0.0f;
+    /** Bounds of the uniform distribution. */
+    public float minMs = 0.0f;
+    public float maxMs = 0.0f;
+
+    /** @return a latency in nanoseconds, never negative. */
+    long sample(final Random random) {
+      final double ms;
+      if (UNIFORM.equals(distribution)) {
+        ms = minMs + random.nextDouble() * (maxMs - minMs);
+      } else if (NORMAL.equals(distribution)) {
+        ms = meanMs + random.nextGaussian() * sdMs;
+      } else if (LOGNORMAL.equals(distribution)) {
+        // Parameters of the underlying normal distribution for the given mean and sd.
+        if (meanMs <= 0) {
+          ms = 0;
+        } else {
+          final double sigma2 = Math.log(1 + (sdMs * sdMs) / (meanMs * (double) meanMs));
+          final double mu = Math.log(meanMs) - sigma2 / 2;
+          ms = Math.exp(mu + Math.sqrt(sigma2) * random.nextGaussian());
+        }
+      } else if (FIXED.equals(distribution)) {
+        ms = meanMs;
+      } else {
+        throw new IllegalArgumentException("Unknown latency distribution: " + distribution);
+      }
+      return Math.max(0, (long) (ms * 1e6));
+    }
+
+    static Latency fromJson(final Map<String, Object> json) {
+      final Latency latency = new Latency();
+      if (json == null) {
+        return latency;
+      }
+      latency.distribution = Json.getString(json, "distribution", FIXED);
+      latency.meanMs = (float) Json.getNumber(json, "meanMs", 0);
+      latency.sdMs = (float) Json.getNumber(json, "sdMs", 0);
+      latency.minMs = (float) Json.getNumber(json, "minMs", 0);
+      latency.maxMs = (float) Json.getNumber(json, "maxMs", 0);
+      return latency;
+    }
+  }
+
+  /** Behaviour of one scripted engine. */
+  public static class Script {
+    public Latency latency = new Latency();
+    /** Probability that a call throws an {@link InjectedFailure}. */
+    public float failureRate = 0.0f;
+    /** Probability that a call stalls for stallMs on top of its latency. */
+    public float stallRate = 0.0f;
+    public float stallMs = 0.0f;
+    /**
+     * Latency each further image of a batch adds, as a fraction of the latency of one image. 1
+     * means batching saves nothing.
+     */
+    public float batchCost = 1.0f;
+    /**
+     * Input size in pixels the latency distribution is given for, calls at other input sizes
+     * scale their latency by the pixel count. 0 makes the latency independent of the input size.
+     */
+    public int latencyPixels = 0;
+    /**
+     * Results returned by consecutive calls, repeated when exhausted. Boxes are normalized to the
+     * input size, i.e. in the range 0-1.
+     */
+    public final List<List<Detection>> responses = new ArrayList<List<Detection>>();
+
+    /**
+     * Reads a script of the form
+     *
+     * <pre>
+     * {"latency": {"distribution": "lognormal", "meanMs": 30, "sdMs": 8},
+     *  "failureRate": 0.001, "stallRate": 0.0001, "stallMs": 500, "batchCost": 0.6,
+     *  "latencyPixels": 230400,
+     *  "responses": [[{"title": "tag", "confidence": 0.9, "box": [0.3, 0.4, 0.6, 0.5]}], []]}
+     * </pre>
+     */
+    public static Script fromJson(final Map<String, Object> json) {
+      final Script script = new Script();
+      script.latency = Latency.fromJson(Json.asObject(json.get("latency")));
+      script.failureRate = (float) Json.getNumber(json, "failureRate", 0);
+      script.stallRate = (float) Json.getNumber(json, "stallRate", 0);
+      script.stallMs = (float) Json.getNumber(json, "stallMs", 0);
+      script.batchCost = (float) Json.getNumber(json, "batchCost", 1);
+      script.latencyPixels = (int) Json.getNumber(json, "latencyPixels", 0);
+      final List<Object> responses = Json.asArray(json.get("responses"));
+      if (responses != null) {
+        for (final Object response : responses) {
+          final List<Detection> detections = new ArrayList<Detection>();
+          for (final Object d : Json.asArray(response)) {
+            final Map<String, Object> detection = Json.asObject(d);
+            final List<Object> box = Json.asArray(detection.get("box"));
+            detections.add(
+                new Detection(
+                    String.valueOf(detections.size()),
+                    Json.getString(detection, "title", ""),
+                    (float) Json.getNumber(detection, "confidence", 1),
+                    new Box(
+                        ((Number) box.get(0)).floatValue(),
+                        ((Number) box.get(1)).floatValue(),
+                        ((Number) box.get(2)).floatValue(),
+                        ((Number) box.get(3)).floatValue())));
+          }
+          script.responses.add(detections);
+        }
+      }
+      return script;
+    }
+  }
+
+  private static final Comparator<Detection> BY_CONFIDENCE =
+      new Comparator<Detection>() {
+        @Override
+        public int compare(final Detection d1, final Detection d2) {
+          return Float.compare(d2.getConfidence(), d1.getConfidence());
+        }
+      };
+
+  // Sleeping is only accurate to about a millisecond, the rest is spun.
+  private static final long SPIN_NS = 1000000;
+
+  private final Script script;
+  private final Random random;
+  private final float latencyScale;
+
+  private long calls;
+  private long failures;
+  private long stalls;
+  // Responses consumed beyond one per call by batches.
+  private long responseOffset;
+  private volatile boolean closed = false;
+
+  /**
+   * @param script Behaviour of the engine.
+   * @param seed Seed of the latency and failure draws.
+   * @param latencyScale Factor applied to all latencies, 0 disables waiting.
+   */
+  public ScriptedEngine(final Script script, final long seed, final float latencyScale) {
+    this.script = script;
+    this.random = new Random(seed);
+    this.latencyScale = latencyScale;
+  }
+
+  @Override
+  public List<Detection> recognize(final int[] argb, final int width, final int height) {
+    return respond(width, height, 1).get(0);
+  }
+
+  @Override
+  public List<Detection> recognizeLuma(final byte[] luma, final int width, final int height) {
+    return respond(width, height, 1).get(0);
+  }
+
+  /** One call with one latency draw for the batch, and the next count responses. */
+  @Override
+  public List<List<Detection>> recognizeBatch(
+      final int[] argb, final int count, final int width, final int height) {
+    return respond(width, height, count);
+  }
+
+  private List<List<Detection>> respond(final int width, final int height, final int count) {
+    if (closed) {
+      throw new IllegalStateException("Engine is closed");
+    }
+    final long index = calls++;
+
+    // Draw all random values up front so the sequence doesn't depend on which branch is taken.
+    long waitNs = script.latency.sample(random);
+    if (script.latencyPixels > 0) {
+      waitNs = (long) (waitNs * ((double) width * height / script.latencyPixels));
+    }
+    waitNs += (long) (waitNs * (count - 1) * (double) script.batchCost);
+    final boolean stall = random.nextFloat() < script.stallRate;
+    final boolean fail = random.nextFloat() < script.failureRate;
+    if (stall) {
+      stalls++;
+      waitNs += (long) (script.stallMs * 1e6);
+    }
+    waitNanos((long) (waitNs * latencyScale));
+
+    if (fail) {
+      failures++;
+      throw new InjectedFailure("Injected failure on call " + index);
+    }
+
+    final List<List<Detection>> batch = new ArrayList<List<Detection>>(count);
+    for (int i = 0; i < count; ++i) {
+      if (script.responses.isEmpty()) {
+        batch.add(Collections.<Detection>emptyList());
+        continue;
+      }
+      // A batch consumes the responses its images would get one call each.
+      final List<Detection> response =
+          script.responses.get((int) ((index + responseOffset + i) % script.responses.size()));
+      final List<Detection> results = new ArrayList<Detection>(response.size());
+      for (final Detection d : response) {
+        final Box location = d.getLocation();
+        location.scale(width, height);
+        results.add(new Detection(d.getId(), d.getTitle(), d.getConfidence(), location));
+      }
+      Collections.sort(results, BY_CONFIDENCE);
+      batch.add(results);
+    }
+    responseOffset += count - 1;
+    return batch;
+  }
+
+  private static void waitNanos(final long ns) {
+    if (ns <= 0) {
+      return;
+    }
+    final long deadline = System.nanoTime() + ns;
+    if (ns > SPIN_NS) {
+      LockSupport.parkNanos(ns - SPIN_NS);
+    }
+    while (System.nanoTime() < deadline) {
+      // spin
+    }
+  }
+
+  public long getCalls() {
+    return calls;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public long getStalls() {
+    return stalls;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.tensorflow.lite.examples.detection.core.InferenceEngine;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+
+/**
+ * Creates {@link ScriptedEngine}s from a JSON fixture with a "box" and a "digit" script, see {@link
+ * ScriptedEngine.Script#fromJson}. The fixture may also set the "seed" and a "latencyScale". Without
+ * a fixture path the bundled default fixture is used. Every created pair of engines gets its own
+ * seed derived from the fixture seed, so pipelines on different threads don't replay in lockstep.
+ */
+public class ScriptedEngineFactory implements InferenceEngine.Factory {
+  /** Fixture bundled with the module. */
+  public static final String DEFAULT_FIXTURE = "scripted_default.json";
+
+  private final ScriptedEngine.Script boxScript;
+  private final ScriptedEngine.Script digitScript;
+  private final long seed;
+  private float latencyScale;
+  private int created = 0;
+
+  public ScriptedEngineFactory() throws IOException {
+    this(
+        Json.asObject(
+            Json.parse(read(ScriptedEngineFactory.class.getResourceAsStream(DEFAULT_FIXTURE)))));
+  }
+
+  /** @param fixturePath Path of the JSON fixture. */
+  public ScriptedEngineFactory(final String fixturePath) throws IOException {
+    this(Json.asObject(Json.parse(read(new FileInputStream(fixturePath)))));
+  }
+
+  public ScriptedEngineFactory(final Map<String, Object> fixture) {
+    boxScript = ScriptedEngine.Script.fromJson(Json.asObject(fixture.get("box")));
+    digitScript = ScriptedEngine.Script.fromJson(Json.asObject(fixture.get("digit")));
+    seed = (long) Json.getNumber(fixture, "seed", 0);
+    latencyScale = (float) Json.getNumber(fixture, "latencyScale", 1);
+  }
+
+  /** Overrides the latency scale of the fixture, 0 disables waiting. */
+  public void setLatencyScale(final float latencyScale) {
+    this.latencyScale = latencyScale;
+  }
+
+  @Override
+  public synchronized ScriptedEngine createBoxEngine(final PipelineConfig config) {
+    return new ScriptedEngine(boxScript, seed * 31 + 2 * created, latencyScale);
+  }
+
+  @Override
+  public synchronized ScriptedEngine createDigitEngine(final PipelineConfig config) {
+    return new ScriptedEngine(digitScript, seed * 31 + 2 * created++ + 1, latencyScale);
+  }
+
+  private static String read(final InputStream in) throws IOException {
+    if (in == null) {
+      throw new IOException("Fixture not found: " + DEFAULT_FIXTURE);
+    }
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        out.write(buffer, 0, n);
+      }
+      return out.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,279 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.tensorflow.lite.examples.detection.core.PipelineConfig;
+import org.tensorflow.lite.examples.detection.core.TagPipeline;
+
+/**
+ * Pushes a large number of synthetic frames through the full crop/detect/parse pipeline with
+ * {@link ScriptedEngine}s and checks that the pipeline holds up over time:
+ *
+ * <ul>
+ *   <li>the heap retained after a full GC stays within a fixed budget,
+ *   <li>no frame stays in flight longer than the stuck timeout, and the busy flag is always
+ *       cleared again, also after injected failures,
+ *   <li>the p99 latency doesn't drift: the median p99 of the last third of the windows stays close
+ *       to the one of the first third.
+ * </ul>
+ *
+ * <pre>
+ * SoakHarness [--frames &lt;n&gt;] [--windows &lt;n&gt;] [--fixture &lt;json&gt;]
+ *     [--latency-scale &lt;f&gt;] [--max-heap-growth-mb &lt;n&gt;] [--p99-tolerance &lt;f&gt;]
+ *     [--stuck-ms &lt;n&gt;]
+ * </pre>
+ *
+ * Exits with status 1 if a check fails.
+ */
+public class SoakHarness {
+  private static final int FRAME_WIDTH = 640;
+  private static final int FRAME_HEIGHT = 480;
+  private static final int NUM_FRAMES = 8;
+  private static final int WARMUP_FRAMES = 2000;
+  // Added to the p99 budget so that sub-millisecond jitter doesn't fail the check.
+  private static final long P99_SLACK_NS = 1000000;
+
+  private int frames = 100000;
+  private int windows = 10;
+  private String fixture = null;
+  private float latencyScale = 0.01f;
+  private long maxHeapGrowthBytes = 16L << 20;
+  private float p99Tolerance = 1.5f;
+  private long stuckMs = 10000;
+
+  // Set while a frame is in the pipeline, the counterpart of DetectorActivity's busy state.
+  private volatile boolean busy = false;
+  private volatile long busySinceNs = 0;
+  private volatile boolean stuck = false;
+
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  /** @return true if all checks passed. */
+  public boolean run() throws Exception {
+    final ScriptedEngineFactory factory =
+        fixture != null ? new ScriptedEngineFactory(fixture) : new ScriptedEngineFactory();
+    factory.setLatencyScale(latencyScale);
+    final PipelineConfig config = new PipelineConfig();
+    final TagPipeline pipeline = TagPipeline.create(config, factory);
+    final int[][] inputs = createFrames();
+
+    final Thread watchdog = startWatchdog();
+    boolean passed = true;
+    try {
+      for (int i = 0; i < WARMUP_FRAMES; ++i) {
+        processFrame(pipeline, inputs, i);
+      }
+
+      final int windowSize = frames / windows;
+      final long[] latencies = new long[windowSize];
+      final long baseHeap = usedHeapAfterGc();
+      final long[] p99s = new long[windows];
+      long reads = 0;
+      long failures = 0;
+      long checksum = 17;
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "Soaking %d frames in %d windows, latency scale %.3f, base heap %.1f MB",
+              windowSize * windows, windows, latencyScale, baseHeap / 1e6));
+
+      for (int w = 0; w < windows; ++w) {
+        for (int i = 0; i < windowSize; ++i) {
+          final long start = System.nanoTime();
+          final Outcome outcome = processFrame(pipeline, inputs, w * windowSize + i);
+          latencies[i] = System.nanoTime() - start;
+          if (busy) {
+            System.out.println("FAIL: busy flag still set after frame " + (w * windowSize + i));
+            return false;
+          }
+          if (outcome.failed) {
+            failures++;
+          } else if (outcome.digits != null) {
+            reads++;
+            checksum = 31 * checksum + outcome.digits.hashCode();
+          }
+        }
+
+        Arrays.sort(latencies);
+        final long p50 = latencies[windowSize / 2];
+        final long p99 = latencies[(int) Math.min(windowSize - 1, (long) windowSize * 99 / 100)];
+        final long max = latencies[windowSize - 1];
+        final long heap = usedHeapAfterGc();
+        p99s[w] = p99;
+        System.out.println(
+            String.format(
+                Locale.ROOT,
+                "Window %2d: p50 %.3f ms, p99 %.3f ms, max %.3f ms, heap %.1f MB,"
+                    + " reads %d, failures %d",
+                w, p50 / 1e6, p99 / 1e6, max / 1e6, heap / 1e6, reads, failures));
+
+        if (heap - baseHeap > maxHeapGrowthBytes) {
+          System.out.println(
+              String.format(
+                  Locale.ROOT,
+                  "FAIL: heap grew by %.1f MB, budget %.1f MB",
+                  (heap - baseHeap) / 1e6, maxHeapGrowthBytes / 1e6));
+          passed = false;
+        }
+        if (stuck) {
+          passed = false;
+        }
+      }
+
+      // Single slow windows are scheduling noise, a drift shows in the median of several.
+      final int third = Math.max(1, windows / 3);
+      final long firstP99 = median(Arrays.copyOfRange(p99s, 0, third));
+      final long lastP99 = median(Arrays.copyOfRange(p99s, windows - third, windows));
+      if (lastP99 > firstP99 * p99Tolerance + P99_SLACK_NS) {
+        System.out.println(
+            String.format(
+                Locale.ROOT,
+                "FAIL: p99 drifted from %.3f ms to %.3f ms, tolerance %.1fx",
+                firstP99 / 1e6, lastP99 / 1e6, p99Tolerance));
+        passed = false;
+      }
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "%s: %d tags read, %d injected failures, result checksum %016x",
+              passed ? "PASS" : "FAIL", reads, failures, checksum));
+      return passed;
+    } finally {
+      watchdog.interrupt();
+      pipeline.close();
+    }
+  }
+
+  /** Outcome of one frame. */
+  private static class Outcome {
+    static final Outcome FAILED = new Outcome(null, true);
+
+    final List<String> digits;
+    final boolean failed;
+
+    Outcome(final List<String> digits, final boolean failed) {
+      this.digits = digits;
+      this.failed = failed;
+    }
+  }
+
+  private Outcome processFrame(final TagPipeline pipeline, final int[][] inputs, final int index) {
+    busySinceNs = System.nanoTime();
+    busy = true;
+    try {
+      // Alternate the device orientation so both crop paths are exercised.
+      final TagPipeline.Result result =
+          pipeline.process(
+              inputs[index % inputs.length], FRAME_WIDTH, FRAME_HEIGHT, (index & 8) != 0 ? 90 : 0);
+      return new Outcome(result.digits, false);
+    } catch (final ScriptedEngine.InjectedFailure e) {
+      return Outcome.FAILED;
+    } finally {
+      busy = false;
+    }
+  }
+
+  private Thread startWatchdog() {
+    final Thread watchdog =
+        new Thread(
+            () -> {
+              while (!Thread.currentThread().isInterrupted()) {
+                final long since = busySinceNs;
+                if (busy && System.nanoTime() - since > stuckMs * 1000000L) {
+                  System.out.println("FAIL: frame in flight for more than " + stuckMs + " ms");
+                  stuck = true;
+                }
+                try {
+                  Thread.sleep(Math.max(1, stuckMs / 4));
+                } catch (final InterruptedException e) {
+                  return;
+                }
+              }
+            },
+            "soak-watchdog");
+    watchdog.setDaemon(true);
+    watchdog.start();
+    return watchdog;
+  }
+
+  private static long median(final long[] values) {
+    Arrays.sort(values);
+    return values[values.length / 2];
+  }
+
+  private long usedHeapAfterGc() {
+    System.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  /** Noise frames with a bright tag shaped rectangle in varying positions. */
+  private static int[][] createFrames() {
+    final Random random = new Random(0);
+    final int[][] inputs = new int[NUM_FRAMES][FRAME_WIDTH * FRAME_HEIGHT];
+    for (int f = 0; f < NUM_FRAMES; ++f) {
+      final int[] argb = inputs[f];
+      for (int i = 0; i < argb.length; ++i) {
+        final int v = 64 + random.nextInt(64);
+        argb[i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+      }
+      final int left = FRAME_WIDTH / 4 + random.nextInt(FRAME_WIDTH / 4);
+      final int top = FRAME_HEIGHT / 4 + random.nextInt(FRAME_HEIGHT / 4);
+      for (int y = top; y < top + FRAME_HEIGHT / 5; ++y) {
+        Arrays.fill(
+            argb, y * FRAME_WIDTH + left, y * FRAME_WIDTH + left + FRAME_WIDTH / 3, 0xFFF0E040);
+      }
+    }
+    return inputs;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final SoakHarness harness = new SoakHarness();
+    for (int i = 0; i < args.length; ++i) {
+      if ("--frames".equals(args[i])) {
+        harness.frames = Integer.parseInt(args[++i]);
+      } else if ("--windows".equals(args[i])) {
+        harness.windows = Integer.parseInt(args[++i]);
+      } else if ("--fixture".equals(args[i])) {
+        harness.fixture = args[++i];
+      } else if ("--latency-scale".equals(args[i])) {
+        harness.latencyScale = Float.parseFloat(args[++i]);
+      } else if ("--max-heap-growth-mb".equals(args[i])) {
+        harness.maxHeapGrowthBytes = Long.parseLong(args[++i]) << 20;
+      } else if ("--p99-tolerance".equals(args[i])) {
+        harness.p99Tolerance = Float.parseFloat(args[++i]);
+      } else if ("--stuck-ms".equals(args[i])) {
+        harness.stuckMs = Long.parseLong(args[++i]);
+      } else {
+        System.err.println(
+            "Usage: SoakHarness [--frames <n>] [--windows <n>] [--fixture <json>]"
+                + " [--latency-scale <f>] [--max-heap-growth-mb <n>] [--p99-tolerance <f>]"
+                + " [--stuck-ms <n>]");
+        System.exit(1);
+      }
+    }
+    if (harness.windows <= 0 || harness.frames < harness.windows) {
+      System.err.println("Need at least one frame per window");
+      System.exit(1);
+    }
+    System.exit(harness.run() ? 0 : 1);
+  }
+}